@@ -0,0 +1,117 @@
+plugins {
+  java
+}
+
+java {
+  targetCompatibility = JavaVersion.VERSION_1_8
+  sourceCompatibility = JavaVersion.VERSION_1_8
+}
+
+repositories {
+  jcenter()
+}
+
+val benchmarkedPlugins by configurations.creating {
+  isCanBeConsumed = false
+  isCanBeResolved = true
+}
+
+dependencies {
+  implementation(gradleTestKit())
+  implementation(project(":hypertrace-gradle-publish-test-fixtures"))
+  benchmarkedPlugins(project(":hypertrace-gradle-publish-maven-central-plugin"))
+}
+
+tasks.register<JavaExec>("benchmark") {
+  group = "verification"
+  description = "Measures configuring synthetic builds with and without the plugins"
+  classpath = sourceSets.main.get().runtimeClasspath
+  mainClass.set("org.hypertrace.gradle.publishing.ConfigurationBenchmark")
+  // The plugins' runtime classpath, as the gradle-plugin plugin injects it into functional tests
+  val pluginClasspath =
+    benchmarkedPlugins.minus(configurations.detachedConfiguration(dependencies.gradleApi()))
+  val workDirectory = layout.buildDirectory.dir("benchmark")
+  val report = layout.buildDirectory.file("reports/benchmark/configuration-benchmark.json")
+  val sizes = providers.gradleProperty("benchmarkSizes").orElse("10,100,500,1000")
+  val iterations = providers.gradleProperty("benchmarkIterations").orElse("3")
+  val gradleHome = gradle.gradleHomeDir
+  inputs.files(pluginClasspath)
+  outputs.upToDateWhen { false }
+  argumentProviders.add(CommandLineArgumentProvider {
+    listOf(
+      "--plugin-classpath", pluginClasspath.asPath,
+      "--gradle-home", gradleHome.toString(),
+      "--work-dir", workDirectory.get().asFile.path,
+      "--report", report.get().asFile.path,
+      "--sizes", sizes.get(),
+      "--iterations", iterations.get()
+    )
+  })
+}
+
+tasks.register<JavaExec>("benchmarkArchives") {
+  group = "verification"
+  description = "Measures distZip with Gradle's zip writer and with parallel archives"
+  classpath = sourceSets.main.get().runtimeClasspath
+  mainClass.set("org.hypertrace.gradle.publishing.ArchiveBenchmark")
+  val pluginClasspath =
+    benchmarkedPlugins.minus(configurations.detachedConfiguration(dependencies.gradleApi()))
+  val workDirectory = layout.buildDirectory.dir("benchmark-archives")
+  val report = layout.buildDirectory.file("reports/benchmark/archive-benchmark.json")
+  val files = providers.gradleProperty("benchmarkArchiveFiles").orElse("64")
+  val fileSize = providers.gradleProperty("benchmarkArchiveFileSize").orElse("8388608")
+  val iterations = providers.gradleProperty("benchmarkIterations").orElse("3")
+  val gradleHome = gradle.gradleHomeDir
+  inputs.files(pluginClasspath)
+  outputs.upToDateWhen { false }
+  argumentProviders.add(CommandLineArgumentProvider {
+    listOf(
+      "--plugin-classpath", pluginClasspath.asPath,
+      "--gradle-home", gradleHome.toString(),
+      "--work-dir", workDirectory.get().asFile.path,
+      "--report", report.get().asFile.path,
+      "--files", files.get(),
+      "--file-size", fileSize.get(),
+      "--iterations", iterations.get()
+    )
+  })
+}
+
+tasks.register<JavaExec>("benchmarkPublish") {
+  group = "verification"
+  description = "Measures staged publishing throughput to a local fault-injecting repository"
+  classpath = sourceSets.main.get().runtimeClasspath
+  mainClass.set("org.hypertrace.gradle.publishing.PublishThroughputBenchmark")
+  val pluginClasspath =
+    benchmarkedPlugins.minus(configurations.detachedConfiguration(dependencies.gradleApi()))
+  val workDirectory = layout.buildDirectory.dir("benchmark-publish")
+  val report = layout.buildDirectory.file("reports/benchmark/publish-benchmark.json")
+  val flows = providers.gradleProperty("benchmarkPublishFlows").orElse("maven,ossrh")
+  val modules = providers.gradleProperty("benchmarkPublishModules").orElse("20")
+  val artifactSize = providers.gradleProperty("benchmarkPublishArtifactSize").orElse("1048576")
+  val distributionSize =
+    providers.gradleProperty("benchmarkPublishDistributionSize").orElse("33554432")
+  val parallelism = providers.gradleProperty("benchmarkPublishParallelism").orElse("1,4,16")
+  val latency = providers.gradleProperty("benchmarkPublishLatency").orElse("20")
+  val bandwidth = providers.gradleProperty("benchmarkPublishBandwidth").orElse("0")
+  val iterations = providers.gradleProperty("benchmarkIterations").orElse("3")
+  val gradleHome = gradle.gradleHomeDir
+  inputs.files(pluginClasspath)
+  outputs.upToDateWhen { false }
+  argumentProviders.add(CommandLineArgumentProvider {
+    listOf(
+      "--plugin-classpath", pluginClasspath.asPath,
+      "--gradle-home", gradleHome.toString(),
+      "--work-dir", workDirectory.get().asFile.path,
+      "--report", report.get().asFile.path,
+      "--flows", flows.get(),
+      "--modules", modules.get(),
+      "--artifact-size", artifactSize.get(),
+      "--distribution-size", distributionSize.get(),
+      "--parallelism", parallelism.get(),
+      "--latency", latency.get(),
+      "--bandwidth", bandwidth.get(),
+      "--iterations", iterations.get()
+    )
+  })
+}
@@ -0,0 +1,232 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+
+/**
+ * Measures writing a synthetic distribution with Gradle's own zip writer, as {@code distZip}, and
+ * with {@code publish_parallel_archives}, as {@code parallelDistZip}. Half of the distribution's
+ * files are text, which compresses well, and half random bytes, which stand in for jars. Each mode
+ * is run once to warm the daemon up and then for the requested number of iterations, and the
+ * medians are written to a JSON report along with whether every archive of a mode had the same
+ * bytes.
+ */
+public class ArchiveBenchmark {
+  private static final String MEASUREMENT_PREFIX = "BENCHMARK ";
+  private static final String PARALLEL_ARCHIVES_PROPERTY = "publish_parallel_archives";
+  private static final String ARCHIVE = "build/distributions/benchmark-1.0.0.zip";
+  private static final String PARALLEL_ARCHIVE =
+      "build/hypertrace-publish/archives/benchmark-1.0.0.zip";
+
+  private final List<File> pluginClasspath;
+  private final File gradleHome;
+  private final Path workDirectory;
+  private final int iterations;
+
+  ArchiveBenchmark(
+      List<File> pluginClasspath, File gradleHome, Path workDirectory, int iterations) {
+    this.pluginClasspath = pluginClasspath;
+    this.gradleHome = gradleHome;
+    this.workDirectory = workDirectory;
+    this.iterations = iterations;
+  }
+
+  public static void main(String[] args) throws IOException {
+    Map<String, String> options =
+        BenchmarkOptions.parse(
+            args, "plugin-classpath", "gradle-home", "work-dir", "report", "files", "file-size");
+    List<File> pluginClasspath =
+        Arrays.stream(options.get("plugin-classpath").split(File.pathSeparator))
+            .map(File::new)
+            .collect(Collectors.toList());
+    ArchiveBenchmark benchmark =
+        new ArchiveBenchmark(
+            pluginClasspath,
+            new File(options.get("gradle-home")),
+            Paths.get(options.get("work-dir")),
+            Integer.parseInt(options.getOrDefault("iterations", "3")));
+    int files = Integer.parseInt(options.get("files"));
+    int fileSize = Integer.parseInt(options.get("file-size"));
+    benchmark.writeBuild(files, fileSize);
+
+    Measurement stock = benchmark.measure(false);
+    Measurement parallel = benchmark.measure(true);
+
+    Path report = Paths.get(options.get("report"));
+    Files.createDirectories(report.getParent());
+    String json =
+        String.format(
+            Locale.ROOT,
+            "{\n  \"files\": %d,\n  \"fileBytes\": %d,\n  \"iterations\": %d,\n"
+                + "  \"processors\": %d,\n  \"results\": [\n%s,\n%s\n  ]\n}\n",
+            files,
+            fileSize,
+            benchmark.iterations,
+            Runtime.getRuntime().availableProcessors(),
+            stock.toJson(),
+            parallel.toJson());
+    Files.write(report, json.getBytes(StandardCharsets.UTF_8));
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "%10s %12s %14s %13s%n%s%n%s%nSpeedup: %.2fx",
+            "mode",
+            "distZip (ms)",
+            "archive (MiB)",
+            "reproducible",
+            stock.toRow(),
+            parallel.toRow(),
+            stock.millis / (double) Math.max(1, parallel.millis)));
+    System.out.println("Report: " + report.toUri());
+  }
+
+  void writeBuild(int files, int fileSize) throws IOException {
+    Path build = workDirectory.resolve("build");
+    Files.createDirectories(build.resolve("data"));
+    Files.write(
+        build.resolve("settings.gradle"),
+        "rootProject.name = 'benchmark'\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(
+        build.resolve("build.gradle"),
+        ("plugins {\n"
+                + "  id 'distribution'\n"
+                + "  id 'org.hypertrace.publish-plugin'\n"
+                + "}\n"
+                + "version = '1.0.0'\n"
+                + "distributions { main { contents { from 'data' } } }\n"
+                + "tasks.matching { it.name in ['distZip', 'parallelDistZip'] }.configureEach {\n"
+                + "  def startNanos = 0L\n"
+                + "  doFirst { startNanos = System.nanoTime() }\n"
+                + "  doLast {\n"
+                + "    println('"
+                + MEASUREMENT_PREFIX
+                + "' + ((System.nanoTime() - startNanos).intdiv(1000000)))\n"
+                + "  }\n"
+                + "}\n")
+            .getBytes(StandardCharsets.UTF_8));
+    Random random = new Random(1);
+    String[] words = new String[1000];
+    for (int i = 0; i < words.length; i++) {
+      words[i] = Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+    }
+    for (int i = 0; i < files; i++) {
+      byte[] content = new byte[fileSize];
+      if (i % 2 == 0) {
+        StringBuilder text = new StringBuilder(fileSize);
+        while (text.length() < fileSize) {
+          text.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        System.arraycopy(text.toString().getBytes(StandardCharsets.UTF_8), 0, content, 0, fileSize);
+      } else {
+        random.nextBytes(content);
+      }
+      Files.write(build.resolve(String.format("data/file-%04d", i)), content);
+    }
+  }
+
+  Measurement measure(boolean parallel) throws IOException {
+    this.distZip(parallel);
+    List<Long> samples = new ArrayList<>();
+    Set<String> digests = new HashSet<>();
+    Path archive = workDirectory.resolve("build").resolve(parallel ? PARALLEL_ARCHIVE : ARCHIVE);
+    for (int i = 0; i < iterations; i++) {
+      samples.add(this.distZip(parallel));
+      digests.add(sha256(archive));
+    }
+    samples.sort(null);
+    return new Measurement(
+        parallel, samples.get(samples.size() / 2), Files.size(archive), digests.size() == 1);
+  }
+
+  private long distZip(boolean parallel) {
+    List<String> arguments =
+        new ArrayList<>(
+            Arrays.asList(
+                parallel ? "parallelDistZip" : "distZip",
+                "--rerun",
+                "--no-configuration-cache",
+                "--quiet"));
+    if (parallel) {
+      arguments.add("-P" + PARALLEL_ARCHIVES_PROPERTY + "=true");
+    }
+    BuildResult result =
+        GradleRunner.create()
+            .withGradleInstallation(gradleHome)
+            .withTestKitDir(workDirectory.resolve("testkit").toFile())
+            .withProjectDir(workDirectory.resolve("build").toFile())
+            .withPluginClasspath(pluginClasspath)
+            .withArguments(arguments)
+            .build();
+    return Arrays.stream(result.getOutput().split("\\R"))
+        .filter(line -> line.startsWith(MEASUREMENT_PREFIX))
+        .map(line -> Long.parseLong(line.substring(MEASUREMENT_PREFIX.length()).trim()))
+        .findFirst()
+        .orElseThrow(
+            () -> new IllegalStateException("No measurement in:\n" + result.getOutput()));
+  }
+
+  private static String sha256(Path file) throws IOException {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file));
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static class Measurement {
+    private final boolean parallel;
+    private final long millis;
+    private final long archiveBytes;
+    private final boolean reproducible;
+
+    Measurement(boolean parallel, long millis, long archiveBytes, boolean reproducible) {
+      this.parallel = parallel;
+      this.millis = millis;
+      this.archiveBytes = archiveBytes;
+      this.reproducible = reproducible;
+    }
+
+    String toJson() {
+      return String.format(
+          Locale.ROOT,
+          "    {\"mode\": \"%s\", \"distZipMillis\": %d, \"archiveBytes\": %d,"
+              + " \"reproducible\": %b}",
+          parallel ? "parallel" : "stock",
+          millis,
+          archiveBytes,
+          reproducible);
+    }
+
+    String toRow() {
+      return String.format(
+          Locale.ROOT,
+          "%10s %12d %14.1f %13b",
+          parallel ? "parallel" : "stock",
+          millis,
+          archiveBytes / (1024.0 * 1024),
+          reproducible);
+    }
+  }
+}
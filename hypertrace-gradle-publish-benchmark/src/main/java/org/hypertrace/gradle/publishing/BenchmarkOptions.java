@@ -0,0 +1,22 @@
+package org.hypertrace.gradle.publishing;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** Parses the {@code --name value} pairs the benchmark tasks pass to the benchmarks. */
+final class BenchmarkOptions {
+  private BenchmarkOptions() {}
+
+  static Map<String, String> parse(String[] args, String... required) {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+    }
+    for (String name : required) {
+      if (!options.containsKey(name)) {
+        throw new IllegalArgumentException("Missing --" + name);
+      }
+    }
+    return options;
+  }
+}
@@ -0,0 +1,201 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+
+/**
+ * Measures what the publish plugins cost to configure. For each size, synthetic builds with and
+ * without the plugins are configured for {@code help}, once to warm the daemon up and then for
+ * the requested number of iterations, and the medians are written to a JSON report with a stable
+ * layout, so reports of two revisions can be compared line by line.
+ */
+public class ConfigurationBenchmark {
+  private final List<File> pluginClasspath;
+  private final File gradleHome;
+  private final Path workDirectory;
+  private final int iterations;
+
+  ConfigurationBenchmark(
+      List<File> pluginClasspath, File gradleHome, Path workDirectory, int iterations) {
+    this.pluginClasspath = pluginClasspath;
+    this.gradleHome = gradleHome;
+    this.workDirectory = workDirectory;
+    this.iterations = iterations;
+  }
+
+  public static void main(String[] args) throws IOException {
+    Map<String, String> options =
+        BenchmarkOptions.parse(
+            args, "plugin-classpath", "gradle-home", "work-dir", "report", "sizes");
+    List<File> pluginClasspath =
+        Arrays.stream(options.get("plugin-classpath").split(File.pathSeparator))
+            .map(File::new)
+            .collect(Collectors.toList());
+    ConfigurationBenchmark benchmark =
+        new ConfigurationBenchmark(
+            pluginClasspath,
+            new File(options.get("gradle-home")),
+            Paths.get(options.get("work-dir")),
+            Integer.parseInt(options.getOrDefault("iterations", "3")));
+
+    List<Measurement> measurements = new ArrayList<>();
+    for (String size : options.get("sizes").split(",")) {
+      int projectCount = Integer.parseInt(size.trim());
+      measurements.add(benchmark.measure(projectCount, false));
+      measurements.add(benchmark.measure(projectCount, true));
+    }
+
+    Path report = Paths.get(options.get("report"));
+    Files.createDirectories(report.getParent());
+    Files.write(
+        report, toJson(measurements, benchmark.iterations).getBytes(StandardCharsets.UTF_8));
+    System.out.println(toTable(measurements));
+    System.out.println("Report: " + report.toUri());
+  }
+
+  Measurement measure(int projectCount, boolean withPlugins) throws IOException {
+    SyntheticBuild build =
+        new SyntheticBuild(
+            workDirectory.resolve(projectCount + (withPlugins ? "-plugins" : "-baseline")),
+            projectCount,
+            withPlugins);
+    build.write();
+    this.configure(build);
+    List<Measurement> samples = new ArrayList<>();
+    for (int i = 0; i < iterations; i++) {
+      samples.add(this.configure(build));
+    }
+    return Measurement.median(projectCount, withPlugins, samples);
+  }
+
+  private Measurement configure(SyntheticBuild build) {
+    BuildResult result =
+        GradleRunner.create()
+            .withGradleInstallation(gradleHome)
+            .withTestKitDir(workDirectory.resolve("testkit").toFile())
+            .withProjectDir(build.getDirectory().toFile())
+            .withPluginClasspath(pluginClasspath)
+            .withArguments("help", "--no-configuration-cache", "--quiet")
+            .build();
+    String line =
+        Arrays.stream(result.getOutput().split("\\R"))
+            .filter(outputLine -> outputLine.startsWith(SyntheticBuild.MEASUREMENT_PREFIX))
+            .findFirst()
+            .orElseThrow(
+                () -> new IllegalStateException("No measurements in:\n" + result.getOutput()));
+    String[] values = line.substring(SyntheticBuild.MEASUREMENT_PREFIX.length()).split(" ");
+    return new Measurement(
+        build.getProjectCount(),
+        build.isWithPlugins(),
+        Long.parseLong(values[0]),
+        Integer.parseInt(values[1]),
+        Long.parseLong(values[2]));
+  }
+
+  private static String toJson(List<Measurement> measurements, int iterations) {
+    return "{\n  \"iterations\": "
+        + iterations
+        + ",\n  \"results\": [\n"
+        + measurements.stream()
+            .map(
+                measurement ->
+                    String.format(
+                        Locale.ROOT,
+                        "    {\"projects\": %d, \"plugins\": %b, \"configurationMillis\": %d,"
+                            + " \"realizedTasks\": %d, \"heapUsedBytes\": %d}",
+                        measurement.projectCount,
+                        measurement.withPlugins,
+                        measurement.configurationMillis,
+                        measurement.realizedTasks,
+                        measurement.heapUsedBytes))
+            .collect(Collectors.joining(",\n"))
+        + "\n  ]\n}\n";
+  }
+
+  // Each size's baseline is measured right before the same size with the plugins
+  private static String toTable(List<Measurement> measurements) {
+    StringBuilder table =
+        new StringBuilder(
+            String.format(
+                Locale.ROOT,
+                "%8s %9s %12s %14s %10s %16s%n",
+                "projects",
+                "plugins",
+                "config (ms)",
+                "realized tasks",
+                "heap (MiB)",
+                "ms per project"));
+    for (int i = 0; i + 1 < measurements.size(); i += 2) {
+      Measurement baseline = measurements.get(i);
+      Measurement withPlugins = measurements.get(i + 1);
+      for (Measurement measurement : Arrays.asList(baseline, withPlugins)) {
+        table.append(
+            String.format(
+                Locale.ROOT,
+                "%8d %9s %12d %14d %10.1f %16s%n",
+                measurement.projectCount,
+                measurement.withPlugins ? "applied" : "none",
+                measurement.configurationMillis,
+                measurement.realizedTasks,
+                measurement.heapUsedBytes / (1024.0 * 1024),
+                measurement.withPlugins
+                    ? String.format(
+                        Locale.ROOT,
+                        "+%.2f",
+                        (measurement.configurationMillis - baseline.configurationMillis)
+                            / (double) measurement.projectCount)
+                    : ""));
+      }
+    }
+    return table.toString();
+  }
+
+  static class Measurement {
+    private final int projectCount;
+    private final boolean withPlugins;
+    private final long configurationMillis;
+    private final int realizedTasks;
+    private final long heapUsedBytes;
+
+    Measurement(
+        int projectCount,
+        boolean withPlugins,
+        long configurationMillis,
+        int realizedTasks,
+        long heapUsedBytes) {
+      this.projectCount = projectCount;
+      this.withPlugins = withPlugins;
+      this.configurationMillis = configurationMillis;
+      this.realizedTasks = realizedTasks;
+      this.heapUsedBytes = heapUsedBytes;
+    }
+
+    static Measurement median(int projectCount, boolean withPlugins, List<Measurement> samples) {
+      return new Measurement(
+          projectCount,
+          withPlugins,
+          median(samples.stream().map(sample -> sample.configurationMillis)),
+          // Realization is deterministic, so any sample's count will do
+          samples.get(0).realizedTasks,
+          median(samples.stream().map(sample -> sample.heapUsedBytes)));
+    }
+
+    private static long median(Stream<Long> values) {
+      List<Long> sorted = values.sorted().collect(Collectors.toList());
+      return sorted.get(sorted.size() / 2);
+    }
+  }
+}
@@ -0,0 +1,344 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.gradle.testkit.runner.GradleRunner;
+
+/**
+ * Measures publishing multi-project builds to a local {@link MavenRepositoryServer} with staged
+ * uploads, at each requested {@code publish_parallel_uploads}. The {@code maven} flow publishes
+ * libraries and a distribution through {@code maven_repo_url}, and the {@code ossrh} flow
+ * publishes signed libraries, with their sources and javadoc jars, through {@code ossrhUrl}.
+ * Every library jar holds random bytes of the requested size, so it does not compress.
+ *
+ * <p>The server can add latency to every request and cap the bandwidth shared by all uploads, to
+ * stand in for a remote repository. Throughput is measured by the server, from the first upload
+ * it received to the last it answered, so it leaves out configuring the build and building the
+ * first publication. Each run is repeated for the requested number of iterations after a warm up,
+ * and the medians are written to a JSON report.
+ */
+public class PublishThroughputBenchmark {
+  private static final String USER = "benchmark";
+  private static final String PASSWORD = "benchmark";
+  private static final String[] METADATA_SUFFIXES = {
+    ".md5", ".sha1", ".sha256", ".sha512", "maven-metadata.xml"
+  };
+
+  private final List<File> pluginClasspath;
+  private final File gradleHome;
+  private final Path workDirectory;
+  private final int iterations;
+  private final MavenRepositoryServer server;
+
+  PublishThroughputBenchmark(
+      List<File> pluginClasspath,
+      File gradleHome,
+      Path workDirectory,
+      int iterations,
+      MavenRepositoryServer server) {
+    this.pluginClasspath = pluginClasspath;
+    this.gradleHome = gradleHome;
+    this.workDirectory = workDirectory;
+    this.iterations = iterations;
+    this.server = server;
+  }
+
+  public static void main(String[] args) throws IOException {
+    Map<String, String> options =
+        BenchmarkOptions.parse(
+            args,
+            "plugin-classpath",
+            "gradle-home",
+            "work-dir",
+            "report",
+            "flows",
+            "modules",
+            "artifact-size",
+            "distribution-size",
+            "parallelism");
+    List<File> pluginClasspath =
+        Arrays.stream(options.get("plugin-classpath").split(File.pathSeparator))
+            .map(File::new)
+            .collect(Collectors.toList());
+    int modules = Integer.parseInt(options.get("modules"));
+    int artifactSize = Integer.parseInt(options.get("artifact-size"));
+    int distributionSize = Integer.parseInt(options.get("distribution-size"));
+    long latencyMillis = Long.parseLong(options.getOrDefault("latency", "0"));
+    long bandwidth = Long.parseLong(options.getOrDefault("bandwidth", "0"));
+    int iterations = Integer.parseInt(options.getOrDefault("iterations", "3"));
+
+    List<Measurement> measurements = new ArrayList<>();
+    try (MavenRepositoryServer server =
+        MavenRepositoryServer.start()
+            .withCredentials(USER, PASSWORD)
+            .withLatency(latencyMillis)
+            .withBandwidth(bandwidth)) {
+      PublishThroughputBenchmark benchmark =
+          new PublishThroughputBenchmark(
+              pluginClasspath,
+              new File(options.get("gradle-home")),
+              Paths.get(options.get("work-dir")),
+              iterations,
+              server);
+      for (String flow : options.get("flows").split(",")) {
+        Flow publishFlow = Flow.valueOf(flow.trim().toUpperCase(Locale.ROOT));
+        benchmark.writeBuild(publishFlow, modules, artifactSize, distributionSize);
+        for (String parallelism : options.get("parallelism").split(",")) {
+          measurements.add(benchmark.measure(publishFlow, Integer.parseInt(parallelism.trim())));
+        }
+      }
+    }
+
+    Path report = Paths.get(options.get("report"));
+    Files.createDirectories(report.getParent());
+    String json =
+        String.format(
+            Locale.ROOT,
+            "{\n  \"modules\": %d,\n  \"artifactBytes\": %d,\n  \"distributionBytes\": %d,\n"
+                + "  \"latencyMillis\": %d,\n  \"bandwidthBytesPerSecond\": %d,\n"
+                + "  \"iterations\": %d,\n  \"results\": [\n%s\n  ]\n}\n",
+            modules,
+            artifactSize,
+            distributionSize,
+            latencyMillis,
+            bandwidth,
+            iterations,
+            measurements.stream().map(Measurement::toJson).collect(Collectors.joining(",\n")));
+    Files.write(report, json.getBytes(StandardCharsets.UTF_8));
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "%6s %8s %10s %10s %12s %12s %11s %8s",
+            "flow",
+            "uploads",
+            "artifacts",
+            "MiB",
+            "upload (ms)",
+            "build (ms)",
+            "artifacts/s",
+            "MB/s"));
+    measurements.forEach(measurement -> System.out.println(measurement.toRow()));
+    System.out.println("Report: " + report.toUri());
+  }
+
+  void writeBuild(Flow flow, int modules, int artifactSize, int distributionSize)
+      throws IOException {
+    Path build = workDirectory.resolve(flow.directoryName());
+    StringBuilder settings = new StringBuilder("rootProject.name = 'benchmark'\n");
+    Random random = new Random(1);
+    for (int i = 0; i < modules; i++) {
+      String name = String.format("library-%04d", i);
+      settings.append("include '").append(name).append("'\n");
+      writeFile(build.resolve(name + "/build.gradle"), flow.libraryScript());
+      writeFile(
+          build.resolve(name + "/src/main/java/org/hypertrace/benchmark/Library" + i + ".java"),
+          "package org.hypertrace.benchmark;\n\n/** A library. */\npublic class Library"
+              + i
+              + " {}\n");
+      byte[] content = new byte[artifactSize];
+      random.nextBytes(content);
+      Path resource = build.resolve(name + "/src/main/resources/data.bin");
+      Files.createDirectories(resource.getParent());
+      Files.write(resource, content);
+    }
+    if (flow == Flow.MAVEN && distributionSize > 0) {
+      settings.append("include 'distribution'\n");
+      writeFile(
+          build.resolve("distribution/build.gradle"),
+          "plugins {\n"
+              + "  id 'distribution'\n"
+              + "  id 'org.hypertrace.publish-plugin'\n"
+              + "}\n"
+              + "group = 'org.hypertrace.benchmark'\n"
+              + "version = '1.0.0'\n"
+              + "hypertracePublish {\n"
+              + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+              + "}\n"
+              + "distributions { main { contents { from 'data' } } }\n");
+      byte[] content = new byte[distributionSize];
+      random.nextBytes(content);
+      Path data = build.resolve("distribution/data/data.bin");
+      Files.createDirectories(data.getParent());
+      Files.write(data, content);
+    }
+    writeFile(build.resolve("settings.gradle"), settings.toString());
+    writeFile(build.resolve("build.gradle"), "");
+  }
+
+  Measurement measure(Flow flow, int parallelism) {
+    this.publish(flow, parallelism);
+    List<Measurement> samples = new ArrayList<>();
+    for (int i = 0; i < iterations; i++) {
+      samples.add(this.publish(flow, parallelism));
+    }
+    samples.sort((first, second) -> Long.compare(first.uploadNanos, second.uploadNanos));
+    return samples.get(samples.size() / 2);
+  }
+
+  private Measurement publish(Flow flow, int parallelism) {
+    server.clear();
+    List<String> arguments = new ArrayList<>(Arrays.asList("publish", "--quiet"));
+    arguments.add("-Ppublish_parallel_uploads=" + parallelism);
+    arguments.addAll(flow.arguments(server));
+    long startNanos = System.nanoTime();
+    GradleRunner.create()
+        .withGradleInstallation(gradleHome)
+        .withTestKitDir(workDirectory.resolve("testkit").toFile())
+        .withProjectDir(workDirectory.resolve(flow.directoryName()).toFile())
+        .withPluginClasspath(pluginClasspath)
+        .withArguments(arguments)
+        .build();
+    long buildNanos = System.nanoTime() - startNanos;
+
+    long firstUpload = Long.MAX_VALUE;
+    long lastUpload = Long.MIN_VALUE;
+    int artifacts = 0;
+    long bytes = 0;
+    for (MavenRepositoryServer.Request request : server.getRequests()) {
+      if (!request.getMethod().equals("PUT") || !request.isSuccessful()) {
+        continue;
+      }
+      firstUpload = Math.min(firstUpload, request.getStartNanos());
+      lastUpload = Math.max(lastUpload, request.getEndNanos());
+      bytes += request.getBytesReceived();
+      if (isArtifact(request.getPath())) {
+        artifacts++;
+      }
+    }
+    if (artifacts == 0) {
+      throw new IllegalStateException("Nothing was published by the " + flow + " flow");
+    }
+    return new Measurement(
+        flow, parallelism, artifacts, bytes, lastUpload - firstUpload, buildNanos);
+  }
+
+  // Checksums and metadata accompany the artifacts, signatures are counted as artifacts
+  private static boolean isArtifact(String path) {
+    for (String suffix : METADATA_SUFFIXES) {
+      if (path.endsWith(suffix)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void writeFile(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  enum Flow {
+    MAVEN("org.hypertrace.publish-plugin", "hypertracePublish {\n"),
+    OSSRH("org.hypertrace.publish-maven-central-plugin", "hypertracePublishMavenCentral {\n");
+
+    private final String pluginId;
+    private final String extensionBlock;
+
+    Flow(String pluginId, String extensionBlock) {
+      this.pluginId = pluginId;
+      this.extensionBlock = extensionBlock;
+    }
+
+    String directoryName() {
+      return "build-" + this.name().toLowerCase(Locale.ROOT);
+    }
+
+    String libraryScript() {
+      return "plugins {\n"
+          + "  id 'java-library'\n"
+          + "  id '"
+          + pluginId
+          + "'\n"
+          + "}\n"
+          + "group = 'org.hypertrace.benchmark'\n"
+          + "version = '1.0.0'\n"
+          + extensionBlock
+          + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+          + (this == OSSRH ? "  repoName.set('benchmark')\n" : "")
+          + "}\n";
+    }
+
+    List<String> arguments(MavenRepositoryServer server) {
+      if (this == MAVEN) {
+        return Arrays.asList(
+            "-Pmaven_repo_url=" + server.getUrl(),
+            "-PmavenUsername=" + USER,
+            "-PmavenPassword=" + PASSWORD);
+      }
+      return Arrays.asList(
+          "-PossrhUrl=" + server.getUrl(),
+          "-PossrhUsername=" + USER,
+          "-PossrhPassword=" + PASSWORD,
+          "-PsigningKey=" + TestSigningKey.armoredKey(),
+          "-PsigningPassword=" + TestSigningKey.PASSWORD);
+    }
+  }
+
+  static class Measurement {
+    private final Flow flow;
+    private final int parallelism;
+    private final int artifacts;
+    private final long bytes;
+    private final long uploadNanos;
+    private final long buildNanos;
+
+    Measurement(
+        Flow flow, int parallelism, int artifacts, long bytes, long uploadNanos, long buildNanos) {
+      this.flow = flow;
+      this.parallelism = parallelism;
+      this.artifacts = artifacts;
+      this.bytes = bytes;
+      this.uploadNanos = uploadNanos;
+      this.buildNanos = buildNanos;
+    }
+
+    double artifactsPerSecond() {
+      return artifacts / (uploadNanos / 1e9);
+    }
+
+    double megabytesPerSecond() {
+      return bytes / 1e6 / (uploadNanos / 1e9);
+    }
+
+    String toJson() {
+      return String.format(
+          Locale.ROOT,
+          "    {\"flow\": \"%s\", \"parallelUploads\": %d, \"artifacts\": %d, \"bytes\": %d,"
+              + " \"uploadMillis\": %d, \"buildMillis\": %d, \"artifactsPerSecond\": %.1f,"
+              + " \"megabytesPerSecond\": %.2f}",
+          flow.name().toLowerCase(Locale.ROOT),
+          parallelism,
+          artifacts,
+          bytes,
+          uploadNanos / 1_000_000,
+          buildNanos / 1_000_000,
+          artifactsPerSecond(),
+          megabytesPerSecond());
+    }
+
+    String toRow() {
+      return String.format(
+          Locale.ROOT,
+          "%6s %8d %10d %10.1f %12d %12d %11.1f %8.2f",
+          flow.name().toLowerCase(Locale.ROOT),
+          parallelism,
+          artifacts,
+          bytes / (1024.0 * 1024),
+          uploadNanos / 1_000_000,
+          buildNanos / 1_000_000,
+          artifactsPerSecond(),
+          megabytesPerSecond());
+    }
+  }
+}
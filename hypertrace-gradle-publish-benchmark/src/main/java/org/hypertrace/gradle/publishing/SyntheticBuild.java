@@ -0,0 +1,154 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Writes a multi-project build of {@code java-library}, {@code java-platform}, {@code
+ * distribution} and {@code java-gradle-plugin} projects, in turn. Every project of a kind has the
+ * same build script, so each script is compiled once and the measurements are dominated by
+ * configuring the projects rather than by compiling their scripts.
+ */
+public class SyntheticBuild {
+  /** Printed by the build once its task graph is ready, followed by the measurements. */
+  public static final String MEASUREMENT_PREFIX = "BENCHMARK ";
+
+  private static final List<ProjectKind> KINDS =
+      Arrays.asList(
+          new ProjectKind(
+              "java-library",
+              "",
+              "org.hypertrace.publish-maven-central-plugin",
+              "hypertracePublishMavenCentral {\n"
+                  + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+                  + "  repoName.set('benchmark')\n"
+                  + "}\n"),
+          new ProjectKind("java-platform", "", null, ""),
+          new ProjectKind("distribution", "", null, ""),
+          new ProjectKind(
+              "java-gradle-plugin",
+              "gradlePlugin {\n"
+                  + "  plugins {\n"
+                  + "    generated {\n"
+                  + "      id = \"org.hypertrace.benchmark.${project.name}\"\n"
+                  + "      implementationClass = 'org.hypertrace.benchmark.GeneratedPlugin'\n"
+                  + "    }\n"
+                  + "  }\n"
+                  + "}\n",
+              null,
+              ""));
+
+  private final Path directory;
+  private final int projectCount;
+  private final boolean withPlugins;
+
+  public SyntheticBuild(Path directory, int projectCount, boolean withPlugins) {
+    this.directory = directory;
+    this.projectCount = projectCount;
+    this.withPlugins = withPlugins;
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  public int getProjectCount() {
+    return projectCount;
+  }
+
+  public boolean isWithPlugins() {
+    return withPlugins;
+  }
+
+  public void write() throws IOException {
+    StringBuilder settings = new StringBuilder("rootProject.name = 'benchmark'\n");
+    for (int i = 0; i < projectCount; i++) {
+      ProjectKind kind = KINDS.get(i % KINDS.size());
+      String name = String.format("%s-%04d", kind.plugin, i);
+      settings.append("include '").append(name).append("'\n");
+      this.writeFile(name + "/build.gradle", kind.buildScript(withPlugins));
+    }
+    settings.append(measurementScript());
+    this.writeFile("settings.gradle", settings.toString());
+    this.writeFile(
+        "build.gradle",
+        withPlugins ? "plugins {\n  id 'org.hypertrace.publish-maven-central-plugin'\n}\n" : "");
+    this.writeFile(
+        "gradle.properties",
+        "group=org.hypertrace.benchmark\n"
+            + "version=1.0.0\n"
+            + "org.gradle.jvmargs=-Xmx2g\n"
+            + "org.gradle.parallel=false\n"
+            + "org.gradle.configureondemand=false\n"
+            + "org.gradle.caching=false\n");
+  }
+
+  /**
+   * Times configuration from the start of settings evaluation until the task graph is ready,
+   * counts every task realized on the way, and samples the heap the configured build retains.
+   */
+  private static String measurementScript() {
+    return "def benchmarkStart = System.nanoTime()\n"
+        + "def realizedTasks = new java.util.concurrent.atomic.AtomicInteger()\n"
+        + "gradle.beforeProject { project ->\n"
+        + "  project.tasks.configureEach { realizedTasks.incrementAndGet() }\n"
+        + "}\n"
+        + "gradle.taskGraph.whenReady {\n"
+        + "  long configurationMillis = (System.nanoTime() - benchmarkStart).intdiv(1000000)\n"
+        + "  System.gc()\n"
+        + "  def runtime = Runtime.runtime\n"
+        + "  println \""
+        + MEASUREMENT_PREFIX
+        + "${configurationMillis} ${realizedTasks.get()}"
+        + " ${runtime.totalMemory() - runtime.freeMemory()}\"\n"
+        + "}\n";
+  }
+
+  private void writeFile(String path, String content) throws IOException {
+    Path file = directory.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static class ProjectKind {
+    private final String plugin;
+    private final String configuration;
+    @Nullable private final String publishPlugin;
+    private final String publishConfiguration;
+
+    ProjectKind(
+        String plugin,
+        String configuration,
+        @Nullable String publishPlugin,
+        String publishConfiguration) {
+      this.plugin = plugin;
+      this.configuration = configuration;
+      this.publishPlugin = publishPlugin;
+      this.publishConfiguration = publishConfiguration;
+    }
+
+    String buildScript(boolean withPlugins) {
+      StringBuilder script = new StringBuilder("plugins {\n  id '").append(plugin).append("'\n");
+      if (withPlugins) {
+        script.append("  id 'org.hypertrace.publish-plugin'\n");
+        if (publishPlugin != null) {
+          script.append("  id '").append(publishPlugin).append("'\n");
+        }
+      }
+      script.append("}\n").append(configuration);
+      if (withPlugins) {
+        script
+            .append("hypertracePublish {\n")
+            .append("  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n")
+            .append("}\n")
+            .append(publishConfiguration);
+      }
+      return script.toString();
+    }
+  }
+}
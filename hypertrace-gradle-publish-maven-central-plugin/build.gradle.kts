@@ -23,10 +23,12 @@ gradlePlugin {
 
 dependencies {
   api(project(":hypertrace-gradle-publish-plugin"))
-  implementation("io.codearte.gradle.nexus:gradle-nexus-staging-plugin:0.30.0")
+  implementation("org.bouncycastle:bcpg-jdk18on:1.81")
+  implementation("com.google.code.gson:gson:2.13.1")
   testImplementation("org.junit.jupiter:junit-jupiter-api:5.7.1")
   testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.7.1")
   testImplementation(gradleTestKit())
+  testImplementation(project(":hypertrace-gradle-publish-test-fixtures"))
 }
 
 tasks {
@@ -0,0 +1,228 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/** Uploads a deployment bundle to the Sonatype Central Portal and follows its deployment. */
+public class CentralPortalClient implements AutoCloseable {
+  public static final String DEFAULT_PORTAL_URL = "https://central.sonatype.com";
+  public static final String STATE_FAILED = "FAILED";
+  private static final Pattern DEPLOYMENT_STATE =
+      Pattern.compile("\"deploymentState\"\\s*:\\s*\"([A-Z_]+)\"");
+  private static final int TIMEOUT_MILLIS = 60_000;
+  private static final double POLL_BACKOFF_MULTIPLIER = 1.5;
+
+  private final URI portalUrl;
+  private final String authorization;
+  private final Duration initialPollInterval;
+  private final Duration maxPollInterval;
+  private final PublishTelemetryListener telemetry;
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "central-portal-status");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  public CentralPortalClient(
+      URI portalUrl,
+      String username,
+      String password,
+      Duration initialPollInterval,
+      Duration maxPollInterval) {
+    this(
+        portalUrl,
+        username,
+        password,
+        initialPollInterval,
+        maxPollInterval,
+        PublishTelemetryListener.NONE);
+  }
+
+  /** Reports the bundle upload, successful or not, to the telemetry. */
+  public CentralPortalClient(
+      URI portalUrl,
+      String username,
+      String password,
+      Duration initialPollInterval,
+      Duration maxPollInterval,
+      PublishTelemetryListener telemetry) {
+    this.portalUrl = portalUrl;
+    this.authorization =
+        "Bearer "
+            + Base64.getEncoder()
+                .encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+    this.initialPollInterval = initialPollInterval;
+    this.maxPollInterval = maxPollInterval;
+    this.telemetry = telemetry;
+  }
+
+  /** Streams the bundle as a multipart upload and returns the new deployment's id. */
+  public String upload(File bundle, String deploymentName, String publishingType)
+      throws IOException {
+    String boundary = "----hypertrace-" + UUID.randomUUID();
+    byte[] preamble =
+        ("--"
+                + boundary
+                + "\r\nContent-Disposition: form-data; name=\"bundle\"; filename=\""
+                + bundle.getName()
+                + "\"\r\nContent-Type: application/octet-stream\r\n\r\n")
+            .getBytes(StandardCharsets.UTF_8);
+    byte[] epilogue = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+
+    HttpURLConnection connection =
+        this.open(
+            "/api/v1/publisher/upload?name="
+                + encode(deploymentName)
+                + "&publishingType="
+                + encode(publishingType),
+            "POST");
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
+    connection.setFixedLengthStreamingMode(preamble.length + bundle.length() + epilogue.length);
+    long startMillis = System.currentTimeMillis();
+    int status = ArtifactMetric.NO_STATUS;
+    String failure = null;
+    try {
+      try (OutputStream outputStream = connection.getOutputStream()) {
+        outputStream.write(preamble);
+        Files.copy(bundle.toPath(), outputStream);
+        outputStream.write(epilogue);
+      }
+      status = connection.getResponseCode();
+      return this.readSuccessfulResponse(connection, "uploading " + bundle.getName()).trim();
+    } catch (IOException e) {
+      failure = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+      throw e;
+    } finally {
+      telemetry.onArtifact(
+          new ArtifactMetric(
+              ArtifactMetric.OPERATION_UPLOAD,
+              "centralPortal",
+              bundle.getName(),
+              bundle.length(),
+              startMillis,
+              System.currentTimeMillis() - startMillis,
+              status,
+              0,
+              failure));
+    }
+  }
+
+  public String fetchState(String deploymentId) throws IOException {
+    HttpURLConnection connection =
+        this.open("/api/v1/publisher/status?id=" + encode(deploymentId), "POST");
+    String response = this.readSuccessfulResponse(connection, "checking " + deploymentId);
+    Matcher matcher = DEPLOYMENT_STATE.matcher(response);
+    if (!matcher.find()) {
+      throw new IOException("Unexpected deployment status response: " + response);
+    }
+    if (STATE_FAILED.equals(matcher.group(1))) {
+      throw new IOException("Deployment " + deploymentId + " failed: " + response);
+    }
+    return matcher.group(1);
+  }
+
+  /**
+   * Polls the deployment without blocking the caller, backing off between polls, and completes
+   * once it reaches one of the target states.
+   */
+  public CompletableFuture<String> awaitDeployment(String deploymentId, Set<String> targetStates) {
+    CompletableFuture<String> result = new CompletableFuture<>();
+    this.schedulePoll(deploymentId, targetStates, initialPollInterval, result);
+    return result;
+  }
+
+  private void schedulePoll(
+      String deploymentId,
+      Set<String> targetStates,
+      Duration delay,
+      CompletableFuture<String> result) {
+    scheduler.schedule(
+        () -> {
+          try {
+            String state = this.fetchState(deploymentId);
+            if (targetStates.contains(state)) {
+              result.complete(state);
+              return;
+            }
+            long nextDelayMillis =
+                Math.min(
+                    (long) (delay.toMillis() * POLL_BACKOFF_MULTIPLIER),
+                    maxPollInterval.toMillis());
+            this.schedulePoll(
+                deploymentId, targetStates, Duration.ofMillis(nextDelayMillis), result);
+          } catch (IOException | RuntimeException e) {
+            result.completeExceptionally(e);
+          }
+        },
+        delay.toMillis(),
+        TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+
+  private HttpURLConnection open(String pathAndQuery, String method) throws IOException {
+    HttpURLConnection connection =
+        (HttpURLConnection) URI.create(portalUrl + pathAndQuery).toURL().openConnection();
+    connection.setConnectTimeout(TIMEOUT_MILLIS);
+    connection.setReadTimeout(TIMEOUT_MILLIS);
+    connection.setRequestMethod(method);
+    connection.setRequestProperty("Authorization", authorization);
+    return connection;
+  }
+
+  private String readSuccessfulResponse(HttpURLConnection connection, String action)
+      throws IOException {
+    int status = connection.getResponseCode();
+    boolean successful = status >= 200 && status < 300;
+    String body = read(successful ? connection.getInputStream() : connection.getErrorStream());
+    if (!successful) {
+      throw new IOException("Unexpected status " + status + " " + action + ": " + body);
+    }
+    return body;
+  }
+
+  private static String read(@Nullable InputStream inputStream) throws IOException {
+    if (inputStream == null) {
+      return "";
+    }
+    try (InputStream stream = inputStream) {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = stream.read(buffer)) != -1) {
+        outputStream.write(buffer, 0, read);
+      }
+      return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static String encode(String value) throws UnsupportedEncodingException {
+    return URLEncoder.encode(value, "UTF-8");
+  }
+}
@@ -0,0 +1,180 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.inject.Inject;
+import javax.tools.ToolProvider;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.JavaVersion;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.file.FileType;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.IgnoreEmptyDirectories;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.ChangeType;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
+
+/**
+ * Writes the sources the javadoc task documents with everything javadoc does not read removed, as
+ * described by {@link JavadocSources}, along with the compiled classes that have no source among
+ * them, such as those of generated sources. Only changed files are rewritten, and the javadoc task
+ * stays up to date, or is taken from the build cache, for as long as the declarations and doc
+ * comments of the sources are unchanged.
+ */
+@CacheableTask
+public abstract class GenerateJavadocSources extends DefaultTask {
+  private static final String JAVA_EXTENSION = ".java";
+  private static final String CLASS_EXTENSION = ".class";
+  static final String UNSUPPORTED_MESSAGE =
+      "Stripping javadoc sources requires Gradle to run on a JDK 9 or later, found Java "
+          + JavaVersion.current()
+          + " at "
+          + System.getProperty("java.home")
+          + ". Run Gradle on a newer JDK, or remove the stripJavadocSources property.";
+
+  @Incremental
+  @InputFiles
+  @IgnoreEmptyDirectories
+  @PathSensitive(PathSensitivity.RELATIVE)
+  public abstract ConfigurableFileCollection getSources();
+
+  /** The directories the sources are compiled into. */
+  @Incremental
+  @InputFiles
+  @IgnoreEmptyDirectories
+  @PathSensitive(PathSensitivity.RELATIVE)
+  public abstract ConfigurableFileCollection getClasses();
+
+  @Input
+  public abstract Property<String> getEncoding();
+
+  @OutputDirectory
+  public abstract DirectoryProperty getOutputDirectory();
+
+  /** Receives the classes javadoc resolves from the classpath rather than from the sources. */
+  @OutputDirectory
+  public abstract DirectoryProperty getClassesOutputDirectory();
+
+  @Inject
+  protected abstract FileSystemOperations getFileSystemOperations();
+
+  @TaskAction
+  public void generate(InputChanges inputChanges) throws IOException {
+    File outputDirectory = this.getOutputDirectory().get().getAsFile();
+    File classesOutputDirectory = this.getClassesOutputDirectory().get().getAsFile();
+    if (!inputChanges.isIncremental()) {
+      this.getFileSystemOperations()
+          .delete(spec -> spec.delete(outputDirectory, classesOutputDirectory));
+    }
+    this.writeSources(inputChanges, outputDirectory);
+    this.copyClassesWithoutSources(inputChanges, classesOutputDirectory);
+  }
+
+  private void writeSources(InputChanges inputChanges, File outputDirectory) throws IOException {
+    Charset encoding = Charset.forName(this.getEncoding().get());
+    if (!isSupported()) {
+      throw new GradleException(UNSUPPORTED_MESSAGE);
+    }
+    List<File> sources = new ArrayList<>();
+    List<File> targets = new ArrayList<>();
+    for (FileChange change : inputChanges.getFileChanges(this.getSources())) {
+      if (change.getFileType() == FileType.DIRECTORY) {
+        continue;
+      }
+      File target = new File(outputDirectory, change.getNormalizedPath());
+      if (change.getChangeType() == ChangeType.REMOVED) {
+        Files.deleteIfExists(target.toPath());
+      } else if (change.getFile().getName().endsWith(JAVA_EXTENSION)) {
+        sources.add(change.getFile());
+        targets.add(target);
+      } else {
+        copy(change.getFile(), target);
+      }
+    }
+    if (sources.isEmpty()) {
+      return;
+    }
+    List<String> contents = new ArrayList<>();
+    for (File source : sources) {
+      contents.add(new String(Files.readAllBytes(source.toPath()), encoding));
+    }
+    List<String> stripped = JavadocSources.strip(contents);
+    for (int i = 0; i < targets.size(); i++) {
+      Files.createDirectories(targets.get(i).getParentFile().toPath());
+      Files.write(targets.get(i).toPath(), stripped.get(i).getBytes(encoding));
+    }
+  }
+
+  // The classes of the documented sources change with every edit, so javadoc must not see them
+  private void copyClassesWithoutSources(InputChanges inputChanges, File classesOutputDirectory)
+      throws IOException {
+    Set<String> sourcePaths = new HashSet<>();
+    this.getSources()
+        .getAsFileTree()
+        .visit(
+            details -> {
+              if (!details.isDirectory()) {
+                sourcePaths.add(details.getRelativePath().getPathString());
+              }
+            });
+    for (FileChange change : inputChanges.getFileChanges(this.getClasses())) {
+      String path = change.getNormalizedPath();
+      if (change.getFileType() == FileType.DIRECTORY
+          || !path.endsWith(CLASS_EXTENSION)
+          || sourcePaths.contains(sourcePath(path))) {
+        continue;
+      }
+      File target = new File(classesOutputDirectory, path);
+      if (change.getChangeType() == ChangeType.REMOVED) {
+        Files.deleteIfExists(target.toPath());
+      } else {
+        copy(change.getFile(), target);
+      }
+    }
+  }
+
+  // The source a class is compiled from, if it is a top level class or one nested in it
+  private static String sourcePath(String classPath) {
+    String name = classPath.substring(0, classPath.length() - CLASS_EXTENSION.length());
+    int nested = name.indexOf('$', name.lastIndexOf('/') + 1);
+    return (nested < 0 ? name : name.substring(0, nested)) + JAVA_EXTENSION;
+  }
+
+  private static void copy(File source, File target) throws IOException {
+    Files.createDirectories(target.getParentFile().toPath());
+    Files.write(target.toPath(), Files.readAllBytes(source.toPath()));
+  }
+
+  /**
+   * Whether Gradle runs on a JDK that can parse the sources. The compiler tree API is only part of
+   * a JDK, and of a JDK 8 is only in its tools.jar, which is not on the classpath of the plugins.
+   */
+  static boolean isSupported() {
+    if (!JavaVersion.current().isJava9Compatible()) {
+      return false;
+    }
+    try {
+      Class.forName("com.sun.source.util.JavacTask");
+      return ToolProvider.getSystemJavaCompiler() != null;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+}
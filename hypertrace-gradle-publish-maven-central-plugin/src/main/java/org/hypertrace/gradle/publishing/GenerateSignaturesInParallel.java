@@ -0,0 +1,41 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.provider.Provider;
+import org.gradle.plugins.signing.Sign;
+import org.gradle.plugins.signing.Signature;
+import org.gradle.plugins.signing.signatory.Signatory;
+
+/**
+ * Runs first of a {@link Sign} task's actions, starting every signature of the task on the shared
+ * signing pool. The task's own action then finds each signature being generated by its {@link
+ * ParallelSignatureType}, and waits for it. Signatures are only generated ahead by the shared
+ * in-memory key, any other signatory signs one file at a time in the task's own action.
+ */
+public class GenerateSignaturesInParallel implements Action<Task> {
+  private final Provider<PgpSigningService> signingService;
+
+  public GenerateSignaturesInParallel(Provider<PgpSigningService> signingService) {
+    this.signingService = signingService;
+  }
+
+  @Override
+  public void execute(Task task) {
+    Sign sign = (Sign) task;
+    Signatory signatory = sign.getSignatory();
+    if (!(signatory instanceof SharedPgpSignatory)
+        || !((SharedPgpSignatory) signatory).usesSharedKey()
+        || !(sign.getSignatureType() instanceof ParallelSignatureType)) {
+      return;
+    }
+    ParallelSignatureType signatureType = (ParallelSignatureType) sign.getSignatureType();
+    PgpSigningService service = signingService.get();
+    // Generators, unlike signatures, survive the configuration cache
+    for (Signature.Generator generator : sign.getGeneratorsByKey().values()) {
+      File toSign = generator.getToSign();
+      service.signAhead(toSign, () -> signatureType.generate(signatory, toSign));
+    }
+  }
+}
@@ -13,7 +13,7 @@ public abstract class HypertracePublishMavenCentralExtension implements Extensio
   private static final String DEFAULT_DEVELOPER_EMAIL = "community@hypertrace.org";
   private static final String DEFAULT_DEVELOPER_ORG = "Hypertrace";
   private static final String DEFAULT_DEVELOPER_ORG_URL = "https://www.hypertrace.org";
-  private static final String DEFAULT_PACKAGE_GROUP = "org.hypertrace";
+  static final String DEFAULT_PACKAGE_GROUP = "org.hypertrace";
   private static final String DEFAULT_SCM_ORGANIZATION = "hypertrace";
 
   public final Property<String> url;
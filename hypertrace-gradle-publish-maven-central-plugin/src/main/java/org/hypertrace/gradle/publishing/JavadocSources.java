@@ -0,0 +1,226 @@
+package org.hypertrace.gradle.publishing;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.PrimitiveTypeTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.Trees;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.lang.model.element.Modifier;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+/**
+ * Reduces java sources to what javadoc reads from them: every declaration and doc comment is kept,
+ * while method bodies, initializer blocks and field initializers, other than those of constants,
+ * are dropped. Sources that do not parse are returned unchanged. Only usable on a JDK 9 or later,
+ * see {@link GenerateJavadocSources#isSupported()}.
+ */
+final class JavadocSources {
+  private JavadocSources() {}
+
+  static List<String> strip(List<String> sources) {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    // The compiler wraps the files it is given, so they are told apart by their URIs
+    Map<URI, StringSource> files = new LinkedHashMap<>();
+    for (int i = 0; i < sources.size(); i++) {
+      StringSource file = new StringSource(i, sources.get(i));
+      files.put(file.toUri(), file);
+    }
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    JavacTask task =
+        (JavacTask)
+            compiler.getTask(
+                null,
+                null,
+                diagnostics,
+                Collections.singletonList("-proc:none"),
+                null,
+                files.values());
+    Iterable<? extends CompilationUnitTree> units;
+    try {
+      units = task.parse();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    Set<URI> failed = new HashSet<>();
+    for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+      if (diagnostic.getKind() == Diagnostic.Kind.ERROR && diagnostic.getSource() != null) {
+        failed.add(diagnostic.getSource().toUri());
+      }
+    }
+    SourcePositions positions = Trees.instance(task).getSourcePositions();
+    List<String> stripped = new ArrayList<>(sources);
+    for (CompilationUnitTree unit : units) {
+      URI uri = unit.getSourceFile().toUri();
+      StringSource file = files.get(uri);
+      if (failed.contains(uri)) {
+        continue;
+      }
+      Edits edits = new Edits(file.content, unit, positions);
+      for (Tree type : unit.getTypeDecls()) {
+        if (type instanceof ClassTree) {
+          edits.stripType((ClassTree) type);
+        }
+      }
+      stripped.set(file.index, edits.apply());
+    }
+    return stripped;
+  }
+
+  private static final class Edits {
+    private final String content;
+    private final CompilationUnitTree unit;
+    private final SourcePositions positions;
+    // Replacements by start offset; none overlap, since only leaves of the tree are replaced
+    private final TreeMap<Integer, Replacement> replacements = new TreeMap<>();
+
+    Edits(String content, CompilationUnitTree unit, SourcePositions positions) {
+      this.content = content;
+      this.unit = unit;
+      this.positions = positions;
+    }
+
+    void stripType(ClassTree type) {
+      boolean constantsOnly =
+          type.getKind() == Tree.Kind.INTERFACE || type.getKind() == Tree.Kind.ANNOTATION_TYPE;
+      for (Tree member : type.getMembers()) {
+        if (member instanceof ClassTree) {
+          this.stripType((ClassTree) member);
+        } else if (member instanceof MethodTree) {
+          MethodTree method = (MethodTree) member;
+          if (method.getBody() != null) {
+            this.replace(method.getBody(), "{}");
+          }
+        } else if (member.getKind() == Tree.Kind.BLOCK) {
+          this.replace(member, "");
+        } else if (member instanceof VariableTree) {
+          VariableTree field = (VariableTree) member;
+          if (this.isEnumConstant(type, field)) {
+            ClassTree body = ((NewClassTree) field.getInitializer()).getClassBody();
+            if (body != null) {
+              this.stripType(body);
+            }
+          } else if (field.getInitializer() != null
+              && !constantsOnly
+              && !this.mayBeConstant(field)
+              && !this.isDeclaredTogether(type, field)) {
+            int equals = content.lastIndexOf('=', this.start(field.getInitializer()));
+            this.replace(equals, this.end(field.getInitializer()), "");
+          }
+        }
+      }
+    }
+
+    String apply() {
+      StringBuilder builder = new StringBuilder(content.length());
+      int position = 0;
+      for (Replacement replacement : replacements.values()) {
+        builder.append(content, position, replacement.start).append(replacement.text);
+        position = replacement.end;
+      }
+      return builder.append(content, position, content.length()).toString();
+    }
+
+    // Constants appear in the constant field values page, so their values are kept
+    private boolean mayBeConstant(VariableTree field) {
+      Set<Modifier> flags = field.getModifiers().getFlags();
+      if (!flags.contains(Modifier.STATIC) || !flags.contains(Modifier.FINAL)) {
+        return false;
+      }
+      Tree type = field.getType();
+      if (type instanceof PrimitiveTypeTree) {
+        return true;
+      }
+      return (type instanceof IdentifierTree
+              && ((IdentifierTree) type).getName().contentEquals("String"))
+          || (type instanceof MemberSelectTree
+              && type.toString().equals("java.lang.String"));
+    }
+
+    private boolean isEnumConstant(ClassTree type, VariableTree field) {
+      // An enum constant has no modifiers or type of its own, so it starts with its name
+      return type.getKind() == Tree.Kind.ENUM
+          && field.getInitializer() instanceof NewClassTree
+          && this.start(field.getModifiers()) < 0
+          && content.startsWith(field.getName().toString(), this.start(field));
+    }
+
+    // Fields declared together share their modifiers and type, so are left as written
+    private boolean isDeclaredTogether(ClassTree type, VariableTree field) {
+      int start = this.start(field);
+      for (Tree member : type.getMembers()) {
+        if (member != field && member instanceof VariableTree && this.start(member) == start) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void replace(Tree tree, String text) {
+      this.replace(this.start(tree), this.end(tree), text);
+    }
+
+    private void replace(int start, int end, String text) {
+      replacements.put(start, new Replacement(start, end, text));
+    }
+
+    // Positions are offsets into the source string, so always fit an int
+    private int start(Tree tree) {
+      return (int) positions.getStartPosition(unit, tree);
+    }
+
+    private int end(Tree tree) {
+      return (int) positions.getEndPosition(unit, tree);
+    }
+  }
+
+  private static final class Replacement {
+    private final int start;
+    private final int end;
+    private final String text;
+
+    Replacement(int start, int end, String text) {
+      this.start = start;
+      this.end = end;
+      this.text = text;
+    }
+  }
+
+  private static final class StringSource extends SimpleJavaFileObject {
+    private final int index;
+    private final String content;
+
+    StringSource(int index, String content) {
+      super(URI.create("string:///Source" + index + ".java"), Kind.SOURCE);
+      this.index = index;
+      this.content = content;
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+      return content;
+    }
+  }
+}
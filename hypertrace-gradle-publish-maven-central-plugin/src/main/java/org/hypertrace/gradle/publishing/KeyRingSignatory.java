@@ -0,0 +1,60 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.annotation.Nullable;
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.provider.Provider;
+import org.gradle.plugins.signing.signatory.SignatorySupport;
+import org.gradle.plugins.signing.signatory.pgp.PgpSignatory;
+import org.gradle.plugins.signing.signatory.pgp.PgpSignatoryFactory;
+
+/**
+ * Signatory that signs with the secret key ring named by the {@code signing.keyId}, {@code
+ * signing.secretKeyRingFile} and {@code signing.password} Gradle properties. Unlike the signing
+ * plugin's default signatory, it reads them as build properties rather than searching the parent
+ * projects, so a project's configuration never depends on another project's state.
+ */
+public class KeyRingSignatory extends SignatorySupport {
+  private static final String NAME = "hypertracePublishKeyRing";
+
+  private final Provider<String> keyId;
+  private final Provider<String> secretKeyRingFile;
+  private final Provider<String> password;
+  @Nullable private transient PgpSignatory signatory;
+
+  public KeyRingSignatory(
+      Provider<String> keyId, Provider<String> secretKeyRingFile, Provider<String> password) {
+    this.keyId = keyId;
+    this.secretKeyRingFile = secretKeyRingFile;
+    this.password = password;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Nullable
+  @Override
+  public String getKeyId() {
+    return keyId.getOrNull();
+  }
+
+  @Override
+  public synchronized void sign(InputStream toSign, OutputStream destination) {
+    if (signatory == null) {
+      if (!keyId.isPresent() || !secretKeyRingFile.isPresent() || !password.isPresent()) {
+        throw new InvalidUserDataException(
+            "No signing key is configured. Set the signingKey and signingPassword properties, or "
+                + "signing.keyId, signing.secretKeyRingFile and signing.password.");
+      }
+      signatory =
+          new PgpSignatoryFactory()
+              .createSignatory(
+                  NAME, keyId.get(), new File(secretKeyRingFile.get()), password.get());
+    }
+    signatory.sign(toSign, destination);
+  }
+}
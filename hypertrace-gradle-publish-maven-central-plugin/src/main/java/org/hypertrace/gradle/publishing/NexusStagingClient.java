@@ -0,0 +1,294 @@
+package org.hypertrace.gradle.publishing;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Closes and releases Nexus staging repositories through the staging REST API. Every repository
+ * moves through its own close and release, so a slow repository never holds back the others, and
+ * transitions are polled with a backoff that starts short, as most of them finish in seconds.
+ */
+public class NexusStagingClient implements AutoCloseable {
+  public static final String DEFAULT_SERVER_URL = "https://s01.oss.sonatype.org/service/local/";
+  public static final String TYPE_OPEN = "open";
+  public static final String TYPE_CLOSED = "closed";
+  public static final String TYPE_RELEASED = "released";
+  private static final int TIMEOUT_MILLIS = 60_000;
+  private static final int POLL_THREADS = 4;
+  private static final double POLL_BACKOFF_MULTIPLIER = 1.5;
+
+  private final URI serverUrl;
+  private final String authorization;
+  private final Duration initialPollInterval;
+  private final Duration maxPollInterval;
+  private final ScheduledExecutorService scheduler =
+      Executors.newScheduledThreadPool(
+          POLL_THREADS,
+          runnable -> {
+            Thread thread = new Thread(runnable, "nexus-staging");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  public NexusStagingClient(
+      URI serverUrl,
+      String username,
+      String password,
+      Duration initialPollInterval,
+      Duration maxPollInterval) {
+    this.serverUrl = serverUrl.toString().endsWith("/") ? serverUrl : URI.create(serverUrl + "/");
+    this.authorization =
+        "Basic "
+            + Base64.getEncoder()
+                .encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+    this.initialPollInterval = initialPollInterval;
+    this.maxPollInterval = maxPollInterval;
+  }
+
+  /** Returns the id of the staging profile named after the package group. */
+  public String findProfileId(String packageGroup) throws IOException {
+    for (JsonObject profile : dataObjects(this.get("staging/profiles"))) {
+      if (packageGroup.equals(field(profile, "name"))) {
+        return field(profile, "id");
+      }
+    }
+    throw new IOException("No staging profile matches the package group " + packageGroup);
+  }
+
+  /** Returns the profile's repositories of the given type that are not transitioning. */
+  public List<String> findRepositories(String profileId, String type) throws IOException {
+    List<String> repositoryIds = new ArrayList<>();
+    for (JsonObject repository :
+        dataObjects(this.get("staging/profile_repositories/" + profileId))) {
+      if (type.equals(field(repository, "type"))
+          && !"true".equals(field(repository, "transitioning"))) {
+        repositoryIds.add(field(repository, "repositoryId"));
+      }
+    }
+    return repositoryIds;
+  }
+
+  /** Whether the repository holds any of the given paths, relative to its root. */
+  public boolean containsAny(String repositoryId, Collection<String> paths) throws IOException {
+    for (String path : paths) {
+      String contentPath = "repositories/" + repositoryId + "/content/" + path;
+      HttpURLConnection connection = this.open(contentPath, "HEAD");
+      int status = connection.getResponseCode();
+      connection.disconnect();
+      if (status == HttpURLConnection.HTTP_OK) {
+        return true;
+      }
+      if (status != HttpURLConnection.HTTP_NOT_FOUND) {
+        throw new IOException("Unexpected status " + status + " requesting " + contentPath);
+      }
+    }
+    return false;
+  }
+
+  /** Closes the repository and completes once Nexus has validated and closed it. */
+  public CompletableFuture<Void> closeRepository(String repositoryId, String description) {
+    return this.transition("close", repositoryId, description, TYPE_CLOSED);
+  }
+
+  /**
+   * Releases a closed repository and completes once its content is released. The repository is
+   * dropped once released, so it may no longer exist by the time it is next polled.
+   */
+  public CompletableFuture<Void> releaseRepository(String repositoryId, String description) {
+    return this.transition("promote", repositoryId, description, TYPE_RELEASED);
+  }
+
+  public CompletableFuture<Void> closeAndReleaseRepository(
+      String repositoryId, String description) {
+    return this.closeRepository(repositoryId, description)
+        .thenCompose(unused -> this.releaseRepository(repositoryId, description));
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+
+  private CompletableFuture<Void> transition(
+      String operation, String repositoryId, String description, String targetType) {
+    CompletableFuture<Void> result = new CompletableFuture<>();
+    scheduler.execute(
+        () -> {
+          try {
+            this.post("staging/bulk/" + operation, bulkRequest(repositoryId, description));
+            this.schedulePoll(repositoryId, targetType, initialPollInterval, result);
+          } catch (IOException | RuntimeException e) {
+            result.completeExceptionally(e);
+          }
+        });
+    return result;
+  }
+
+  private void schedulePoll(
+      String repositoryId, String targetType, Duration delay, CompletableFuture<Void> result) {
+    scheduler.schedule(
+        () -> {
+          try {
+            if (this.hasReached(repositoryId, targetType)) {
+              result.complete(null);
+              return;
+            }
+            long nextDelayMillis =
+                Math.min(
+                    (long) (delay.toMillis() * POLL_BACKOFF_MULTIPLIER),
+                    maxPollInterval.toMillis());
+            this.schedulePoll(repositoryId, targetType, Duration.ofMillis(nextDelayMillis), result);
+          } catch (IOException | RuntimeException e) {
+            result.completeExceptionally(e);
+          }
+        },
+        delay.toMillis(),
+        TimeUnit.MILLISECONDS);
+  }
+
+  private boolean hasReached(String repositoryId, String targetType) throws IOException {
+    HttpURLConnection connection = this.open("staging/repository/" + repositoryId, "GET");
+    if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND
+        && TYPE_RELEASED.equals(targetType)) {
+      return true;
+    }
+    JsonObject repository =
+        object(readSuccessfulResponse(connection, "checking " + repositoryId));
+    if ("true".equals(field(repository, "transitioning"))) {
+      return false;
+    }
+    String type = field(repository, "type");
+    if (targetType.equals(type)) {
+      return true;
+    }
+    // A repository that failed validation is left open with a notification for each failure
+    String notifications = field(repository, "notifications");
+    if (TYPE_OPEN.equals(type) && notifications != null && !"0".equals(notifications)) {
+      throw new IOException(
+          "Staging repository "
+              + repositoryId
+              + " failed to close: "
+              + this.get("staging/repository/" + repositoryId + "/activity"));
+    }
+    return false;
+  }
+
+  private String get(String path) throws IOException {
+    return readSuccessfulResponse(this.open(path, "GET"), "requesting " + path);
+  }
+
+  private void post(String path, String body) throws IOException {
+    HttpURLConnection connection = this.open(path, "POST");
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Content-Type", "application/json");
+    connection.setFixedLengthStreamingMode(bytes.length);
+    try (OutputStream outputStream = connection.getOutputStream()) {
+      outputStream.write(bytes);
+    }
+    readSuccessfulResponse(connection, "requesting " + path);
+  }
+
+  private HttpURLConnection open(String path, String method) throws IOException {
+    HttpURLConnection connection =
+        (HttpURLConnection) serverUrl.resolve(path).toURL().openConnection();
+    connection.setConnectTimeout(TIMEOUT_MILLIS);
+    connection.setReadTimeout(TIMEOUT_MILLIS);
+    connection.setRequestMethod(method);
+    connection.setRequestProperty("Authorization", authorization);
+    connection.setRequestProperty("Accept", "application/json");
+    return connection;
+  }
+
+  private static String readSuccessfulResponse(HttpURLConnection connection, String action)
+      throws IOException {
+    int status = connection.getResponseCode();
+    boolean successful = status >= 200 && status < 300;
+    String body = read(successful ? connection.getInputStream() : connection.getErrorStream());
+    if (!successful) {
+      throw new IOException("Unexpected status " + status + " " + action + ": " + body);
+    }
+    return body;
+  }
+
+  private static String read(@Nullable InputStream inputStream) throws IOException {
+    if (inputStream == null) {
+      return "";
+    }
+    try (InputStream stream = inputStream) {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = stream.read(buffer)) != -1) {
+        outputStream.write(buffer, 0, read);
+      }
+      return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+  static String bulkRequest(String repositoryId, String description) {
+    JsonArray repositoryIds = new JsonArray();
+    repositoryIds.add(repositoryId);
+    JsonObject data = new JsonObject();
+    data.add("stagedRepositoryIds", repositoryIds);
+    data.addProperty("description", description);
+    data.addProperty("autoDropAfterRelease", true);
+    JsonObject request = new JsonObject();
+    request.add("data", data);
+    return request.toString();
+  }
+
+  /** The objects of the response's {@code data} array. */
+  static List<JsonObject> dataObjects(String json) throws IOException {
+    List<JsonObject> objects = new ArrayList<>();
+    JsonElement data = object(json).get("data");
+    if (data == null || !data.isJsonArray()) {
+      return objects;
+    }
+    for (JsonElement element : data.getAsJsonArray()) {
+      if (element.isJsonObject()) {
+        objects.add(element.getAsJsonObject());
+      }
+    }
+    return objects;
+  }
+
+  static JsonObject object(String json) throws IOException {
+    try {
+      JsonElement element = JsonParser.parseString(json);
+      if (!element.isJsonObject()) {
+        throw new IOException("Expected a JSON object from Nexus, but got: " + json);
+      }
+      return element.getAsJsonObject();
+    } catch (JsonParseException e) {
+      throw new IOException("Unable to parse the response from Nexus: " + json, e);
+    }
+  }
+
+  /** The value of a string, boolean or numeric field, or null if the object has no such field. */
+  @Nullable
+  static String field(JsonObject object, String name) {
+    JsonElement value = object.get(name);
+    return value == null || !value.isJsonPrimitive() ? null : value.getAsString();
+  }
+}
@@ -0,0 +1,96 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.gradle.api.GradleException;
+import org.gradle.api.provider.Provider;
+import org.gradle.plugins.signing.signatory.Signatory;
+import org.gradle.plugins.signing.type.SignatureType;
+
+/**
+ * Signature type of the publication's {@code Sign} task, writing signatures as the signing
+ * extension's type does. A signature that {@link GenerateSignaturesInParallel} started generating
+ * ahead of the task's own action is waited for rather than generated again, so the action, which
+ * signs one file after the other, gets them as they complete.
+ */
+public class ParallelSignatureType implements SignatureType {
+  private final Provider<SignatureType> signatureType;
+  private final Provider<PgpSigningService> signingService;
+  private final Provider<PublishTelemetry> telemetry;
+
+  public ParallelSignatureType(
+      Provider<SignatureType> signatureType,
+      Provider<PgpSigningService> signingService,
+      Provider<PublishTelemetry> telemetry) {
+    this.signatureType = signatureType;
+    this.signingService = signingService;
+    this.telemetry = telemetry;
+  }
+
+  @Override
+  public String getExtension() {
+    return signatureType.get().getExtension();
+  }
+
+  @Override
+  public File fileFor(File toSign) {
+    return signatureType.get().fileFor(toSign);
+  }
+
+  @Override
+  public String combinedExtension(File toSign) {
+    return signatureType.get().combinedExtension(toSign);
+  }
+
+  @Override
+  public File sign(Signatory signatory, File toSign) {
+    CompletableFuture<Void> signedAhead = signingService.get().takeSignedAhead(toSign);
+    if (signedAhead == null) {
+      this.generate(signatory, toSign);
+      return this.fileFor(toSign);
+    }
+    try {
+      signedAhead.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new GradleException("Failed to sign " + toSign, e.getCause());
+    }
+    return this.fileFor(toSign);
+  }
+
+  @Override
+  public void sign(Signatory signatory, InputStream toSign, OutputStream destination) {
+    signatureType.get().sign(signatory, toSign, destination);
+  }
+
+  /** Writes the signature of the file, recording how long it took. */
+  void generate(Signatory signatory, File toSign) {
+    long startMillis = System.currentTimeMillis();
+    String failure = null;
+    try {
+      signatureType.get().sign(signatory, toSign);
+    } catch (RuntimeException e) {
+      failure = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+      throw e;
+    } finally {
+      telemetry
+          .get()
+          .onArtifact(
+              new ArtifactMetric(
+                  ArtifactMetric.OPERATION_SIGN,
+                  null,
+                  toSign.getName(),
+                  toSign.length(),
+                  startMillis,
+                  System.currentTimeMillis() - startMillis,
+                  ArtifactMetric.NO_STATUS,
+                  0,
+                  failure));
+    }
+  }
+}
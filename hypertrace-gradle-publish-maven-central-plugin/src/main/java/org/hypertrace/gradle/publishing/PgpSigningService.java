@@ -0,0 +1,201 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import org.bouncycastle.bcpg.BCPGOutputStream;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureGenerator;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.bc.BcPGPSecretKeyRingCollection;
+import org.bouncycastle.openpgp.operator.bc.BcPBESecretKeyDecryptorBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPGPDigestCalculatorProvider;
+import org.gradle.api.GradleException;
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.Project;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.plugins.signing.signatory.pgp.PgpKeyId;
+
+/**
+ * Build-wide holder of the in-memory signing key. The armored key is parsed and decrypted once,
+ * on first use, and every project's signing tasks share the resulting key and a bounded pool to
+ * generate their signatures on. The key and its password are only read from their providers then,
+ * at execution time, so they are never part of the configuration cache.
+ */
+public abstract class PgpSigningService
+    implements BuildService<PgpSigningService.Params>, AutoCloseable {
+  private static final String SERVICE_NAME = "hypertracePgpSigning";
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  public interface Params extends BuildServiceParameters {
+    Property<String> getKeyId();
+
+    Property<String> getKey();
+
+    Property<String> getPassword();
+  }
+
+  private final ExecutorService executor;
+  private final Map<File, CompletableFuture<Void>> signedAhead = new ConcurrentHashMap<>();
+  private PGPSecretKey secretKey;
+  private PGPPrivateKey privateKey;
+
+  public PgpSigningService() {
+    this.executor =
+        Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new SigningThreadFactory());
+  }
+
+  /** The providers must not be queried while configuring, or their values are cached. */
+  public static Provider<PgpSigningService> register(
+      Project project,
+      Provider<String> keyId,
+      Provider<String> key,
+      Provider<String> password) {
+    return project
+        .getGradle()
+        .getSharedServices()
+        .registerIfAbsent(
+            SERVICE_NAME,
+            PgpSigningService.class,
+            spec -> {
+              spec.getParameters().getKeyId().set(keyId);
+              spec.getParameters().getKey().set(key);
+              spec.getParameters().getPassword().set(password);
+            });
+  }
+
+  /** Whether the build was given an in-memory key to sign with. */
+  public boolean hasKey() {
+    return this.getParameters().getKey().isPresent()
+        && this.getParameters().getPassword().isPresent();
+  }
+
+  public String getKeyId() {
+    return new PgpKeyId(this.getSecretKey().getKeyID()).getAsHex();
+  }
+
+  /** Writes the binary signature of the input, as Gradle's own PGP signatory does. */
+  public void sign(InputStream toSign, OutputStream destination) {
+    PGPSecretKey key = this.getSecretKey();
+    PGPSignatureGenerator generator =
+        new PGPSignatureGenerator(
+            new BcPGPContentSignerBuilder(key.getPublicKey().getAlgorithm(), PGPUtil.SHA512),
+            key.getPublicKey());
+    try {
+      generator.init(PGPSignature.BINARY_DOCUMENT, this.privateKey);
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = toSign.read(buffer)) >= 0) {
+        generator.update(buffer, 0, read);
+      }
+      BCPGOutputStream output = new BCPGOutputStream(destination);
+      generator.generate().encode(output);
+      output.flush();
+    } catch (IOException | PGPException e) {
+      throw new GradleException("Unable to sign with key " + this.getKeyId(), e);
+    }
+  }
+
+  public CompletableFuture<Void> submit(Runnable signing) {
+    return CompletableFuture.runAsync(signing, executor);
+  }
+
+  /** Starts signing the file on the signing pool, for {@link #takeSignedAhead} to wait for. */
+  public void signAhead(File toSign, Runnable signing) {
+    signedAhead.put(toSign, this.submit(signing));
+  }
+
+  /** The signing of the file started ahead of time, if any, which is then forgotten. */
+  @Nullable
+  public CompletableFuture<Void> takeSignedAhead(File toSign) {
+    return signedAhead.remove(toSign);
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  private synchronized PGPSecretKey getSecretKey() {
+    if (this.secretKey == null) {
+      this.readKey();
+    }
+    return this.secretKey;
+  }
+
+  private void readKey() {
+    String keyId = this.getParameters().getKeyId().getOrNull();
+    String key = this.getParameters().getKey().get();
+    String password = this.getParameters().getPassword().get();
+    try (InputStream inputStream =
+        PGPUtil.getDecoderStream(new ByteArrayInputStream(key.getBytes(StandardCharsets.UTF_8)))) {
+      PGPSecretKey found = findSecretKey(new BcPGPSecretKeyRingCollection(inputStream), keyId);
+      if (found == null) {
+        throw new InvalidUserDataException(
+            "The signingKey property does not contain the secret key "
+                + (keyId == null ? "to sign with" : keyId));
+      }
+      this.privateKey =
+          found.extractPrivateKey(
+              new BcPBESecretKeyDecryptorBuilder(new BcPGPDigestCalculatorProvider())
+                  .build(password.toCharArray()));
+      this.secretKey = found;
+    } catch (IOException | PGPException e) {
+      throw new InvalidUserDataException(
+          "Unable to read the signingKey property: " + e.getMessage(), e);
+    }
+  }
+
+  // Without a key id, the master key of the first key ring signs
+  @Nullable
+  private static PGPSecretKey findSecretKey(
+      BcPGPSecretKeyRingCollection keyRings, @Nullable String keyId) {
+    Iterator<PGPSecretKeyRing> rings = keyRings.getKeyRings();
+    while (rings.hasNext()) {
+      PGPSecretKeyRing ring = rings.next();
+      if (keyId == null) {
+        return ring.getSecretKey();
+      }
+      Iterator<PGPSecretKey> secretKeys = ring.getSecretKeys();
+      while (secretKeys.hasNext()) {
+        PGPSecretKey secretKey = secretKeys.next();
+        if (new PgpKeyId(secretKey.getKeyID()).equals(new PgpKeyId(keyId))) {
+          return secretKey;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static class SigningThreadFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "hypertrace-publish-signing-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -1,47 +1,128 @@
 package org.hypertrace.gradle.publishing;
 
-import io.codearte.gradle.nexus.BaseStagingTask;
-import io.codearte.gradle.nexus.NexusStagingExtension;
-import io.codearte.gradle.nexus.NexusStagingPlugin;
-import org.gradle.api.GradleException;
+import org.gradle.api.Action;
+import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.JavaVersion;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
-import org.gradle.api.UnknownDomainObjectException;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.attributes.AttributeContainer;
+import org.gradle.api.attributes.Usage;
+import org.gradle.api.credentials.PasswordCredentials;
+import org.gradle.api.file.Directory;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.plugins.JavaLibraryPlugin;
+import org.gradle.api.plugins.JavaPlugin;
 import org.gradle.api.plugins.JavaPluginExtension;
 import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Delete;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.WriteProperties;
+import org.gradle.api.tasks.bundling.Zip;
 import org.gradle.api.publish.PublicationContainer;
 import org.gradle.api.publish.PublishingExtension;
 import org.gradle.api.publish.maven.MavenPublication;
 import org.gradle.api.publish.maven.plugins.MavenPublishPlugin;
+import org.gradle.api.publish.maven.tasks.GenerateMavenPom;
+import org.gradle.api.publish.maven.tasks.PublishToMavenRepository;
 import org.gradle.api.tasks.javadoc.Javadoc;
+import org.gradle.build.event.BuildEventsListenerRegistry;
 import org.gradle.external.javadoc.StandardJavadocDocletOptions;
+import org.gradle.plugins.signing.Sign;
 import org.gradle.plugins.signing.SigningExtension;
 import org.gradle.plugins.signing.SigningPlugin;
+import org.gradle.plugins.signing.signatory.Signatory;
+import org.gradle.plugins.signing.signatory.pgp.PgpSignatoryProvider;
+import org.gradle.plugins.signing.type.SignatureType;
 
 import javax.annotation.Nonnull;
-import java.util.Optional;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
 
 public class PublishMavenCentralPlugin implements Plugin<Project> {
 
   private static final String EXTENSION_NAME = "hypertracePublishMavenCentral";
+  private static final String PUBLICATION_NAME = "javaLibrary";
+  private static final String VALIDATE_PUBLISH_TASK_NAME = "validateMavenCentralGradleProperties";
+  private static final String VALIDATE_STAGING_TASK_NAME = "validateNexusStagingGradleProperties";
+  private static final String VALIDATE_EXTENSION_TASK_NAME = "validateMavenCentralPublishExtension";
 
   private static final String PROPERTY_SIGNING_KEY_ID = "signingKeyId";
   private static final String PROPERTY_SIGNING_KEY = "signingKey";
   private static final String PROPERTY_SIGNING_PASSWORD = "signingPassword";
+  private static final String PROPERTY_KEY_RING_KEY_ID = "signing.keyId";
+  private static final String PROPERTY_KEY_RING_FILE = "signing.secretKeyRingFile";
+  private static final String PROPERTY_KEY_RING_PASSWORD = "signing.password";
+  private static final String OSSRH_REPOSITORY_NAME = "ossrh";
   private static final String PROPERTY_OSSRH_USERNAME = "ossrhUsername";
   private static final String PROPERTY_OSSRH_PASSWORD = "ossrhPassword";
-
+  private static final String PROPERTY_OSSRH_URL = "ossrhUrl";
+  private static final String PROPERTY_CENTRAL_PORTAL_BUNDLE = "centralPortalBundle";
+  private static final String PROPERTY_CENTRAL_PORTAL_URL = "centralPortalUrl";
+  private static final String PROPERTY_CENTRAL_PORTAL_PUBLISHING_TYPE =
+      "centralPortalPublishingType";
+  private static final String PROPERTY_NEXUS_STAGING_URL = "nexusStagingUrl";
+  private static final String PROPERTY_STRIP_JAVADOC_SOURCES = "stripJavadocSources";
+  private static final String DEFAULT_OSSRH_URL = "https://ossrh-staging-api.central.sonatype.com/";
+  private static final String PROPERTY_CENTRAL_RELEASES_URL = "centralReleasesUrl";
+  private static final String DEFAULT_CENTRAL_RELEASES_URL = "https://repo1.maven.org/maven2/";
+  private static final String CENTRAL_RELEASES_REPOSITORY_NAME = "mavenCentralReleases";
+
+  private static final String CLOSE_TASK_NAME = "closeRepository";
+  private static final String RELEASE_TASK_NAME = "releaseRepository";
+  private static final String JAVADOC_JAR_TASK_NAME = "javadocJar";
+  private static final String SOURCES_JAR_TASK_NAME = "sourcesJar";
+  private static final String JAVADOC_SOURCES_TASK_NAME = "generateJavadocSources";
+  private static final String JAVADOC_SOURCES_DIRECTORY = "hypertrace-publish/javadoc-sources";
+  private static final String JAVADOC_CLASSES_DIRECTORY = "hypertrace-publish/javadoc-classes";
+  private static final String CLOSE_AND_RELEASE_TASK_NAME = "closeAndReleaseRepository";
+  private static final String STAGING_PROFILE_TASK_NAME = "writeNexusStagingProfile";
+  private static final String STAGING_PROFILE_FILE = "hypertrace-publish/nexus-staging.properties";
+  private static final String STAGING_PROFILE_ELEMENTS_CONFIGURATION_NAME =
+      "nexusStagingProfileElements";
+  private static final String STAGING_PROFILE_CONFIGURATION_NAME = "nexusStagingProfiles";
+  private static final String STAGING_PROFILE_USAGE = "hypertrace-nexus-staging-profile";
+
+  private static final String BUNDLE_REPOSITORY_NAME = "centralBundle";
+  private static final String BUNDLE_REPOSITORY_DIRECTORY = "hypertrace-publish/central-bundle";
+  private static final String BUNDLE_ELEMENTS_CONFIGURATION_NAME = "mavenCentralBundleElements";
+  private static final String BUNDLE_CONFIGURATION_NAME = "mavenCentralBundle";
+  private static final String BUNDLE_USAGE = "hypertrace-central-bundle";
+  private static final String BUNDLE_TASK_NAME = "mavenCentralBundle";
+  private static final String UPLOAD_BUNDLE_TASK_NAME = "publishMavenCentralBundle";
+  private static final String PUBLISH_TO_BUNDLE_REPOSITORY_TASK_NAME =
+      "publishAllPublicationsToCentralBundleRepository";
+
+  private final BuildEventsListenerRegistry buildEventsListenerRegistry;
   private Project project;
   private HypertracePublishMavenCentralExtension extension;
 
+  @Inject
+  public PublishMavenCentralPlugin(BuildEventsListenerRegistry buildEventsListenerRegistry) {
+    this.buildEventsListenerRegistry = buildEventsListenerRegistry;
+  }
+
   @Override
   public void apply(@Nonnull Project target) {
     project = target;
+    this.recordTelemetry();
+    project.getPluginManager().apply(ReproducibleArtifacts.class);
     // Root projects only should configure nexus staging
     if (project.equals(project.getRootProject())) {
-      project.getPluginManager().apply(NexusStagingPlugin.class);
+      this.addStagingTasks();
+      this.validateGradlePropertiesBeforeStagingTasks();
+      PublishPreflight.maybeRegisterRootTask(project);
+      if (this.isCentralPortalBundleEnabled()) {
+        this.addCentralPortalBundleTasks();
+      }
     }
     // Library projects only (whether root or not) should set up publishing
     project
@@ -58,26 +139,165 @@ public class PublishMavenCentralPlugin implements Plugin<Project> {
               this.applyWithJavadocJar();
               this.applyWithSourcesJar();
               this.addPublishRepository();
+              this.limitParallelUploads();
               this.addPublications();
+              this.addPreflight();
             });
   }
 
+  private void recordTelemetry() {
+    Provider<PublishTelemetry> telemetry =
+        PublishTelemetry.register(project, buildEventsListenerRegistry);
+    // Publishing elsewhere, such as to maven local, doesn't count
+    List<String> repositoryNames =
+        Arrays.asList(
+            OSSRH_REPOSITORY_NAME,
+            BUNDLE_REPOSITORY_NAME,
+            StagedPublishing.STAGING_REPOSITORY_NAME);
+    PublishTelemetry.timePublishingTo(project, telemetry, repositoryNames);
+    project
+        .getTasks()
+        .withType(UploadStagedPublications.class)
+        .configureEach(task -> PublishTelemetry.timePublishing(task, telemetry));
+    project
+        .getTasks()
+        .withType(UploadCentralPortalBundle.class)
+        .configureEach(task -> PublishTelemetry.timePublishing(task, telemetry));
+    project
+        .getTasks()
+        .withType(ReleaseStagingRepositories.class)
+        .configureEach(task -> PublishTelemetry.timePublishing(task, telemetry));
+  }
+
   private void applySigning() {
     project.getPluginManager().apply(SigningPlugin.class);
   }
 
-  private void configureNexusStagingPlugin() {
-    Optional<String> user = getProperty(PROPERTY_OSSRH_USERNAME);
-    Optional<String> password = getProperty(PROPERTY_OSSRH_PASSWORD);
+  // Libraries share their staging profile through a variant rather than configuring the root
+  // project's tasks, so that every project is configured in isolation
+  private void addStagingTasks() {
+    Configuration stagingProfiles =
+        this.createAggregatingConfiguration(
+            STAGING_PROFILE_CONFIGURATION_NAME, STAGING_PROFILE_USAGE);
+    FileCollection stagingProfileFiles =
+        stagingProfiles.getIncoming().artifactView(view -> view.lenient(true)).getFiles();
+    this.registerStagingTask(
+        CLOSE_TASK_NAME,
+        "Closes the open staging repositories",
+        true,
+        false,
+        stagingProfileFiles);
+    this.registerStagingTask(
+        RELEASE_TASK_NAME,
+        "Releases the closed staging repositories",
+        false,
+        true,
+        stagingProfileFiles);
+    this.registerStagingTask(
+        CLOSE_AND_RELEASE_TASK_NAME,
+        "Closes the open staging repositories and releases each once closed",
+        true,
+        true,
+        stagingProfileFiles);
+  }
 
-    getNexusStagingExtension().setServerUrl("https://s01.oss.sonatype.org/service/local/");
-    if (user.isPresent() && password.isPresent()) {
-      getNexusStagingExtension().setUsername(user.get());
-      getNexusStagingExtension().setPassword(password.get());
+  private void registerStagingTask(
+      String taskName,
+      String description,
+      boolean close,
+      boolean release,
+      FileCollection stagingProfileFiles) {
+    project
+        .getTasks()
+        .register(
+            taskName,
+            ReleaseStagingRepositories.class,
+            task -> {
+              task.setGroup("publishing");
+              task.setDescription(description);
+              task.getServerUrl()
+                  .set(
+                      getProperty(PROPERTY_NEXUS_STAGING_URL)
+                          .orElse(NexusStagingClient.DEFAULT_SERVER_URL));
+              task.getUsername().set(getProperty(PROPERTY_OSSRH_USERNAME));
+              task.getPassword().set(getProperty(PROPERTY_OSSRH_PASSWORD));
+              task.getStagingProfiles().from(stagingProfileFiles);
+              task.getPackageGroup()
+                  .convention(HypertracePublishMavenCentralExtension.DEFAULT_PACKAGE_GROUP);
+              task.getCloseRepositories().set(close);
+              task.getReleaseRepositories().set(release);
+              task.getInitialPollInterval().set(Duration.ofSeconds(1));
+              task.getMaxPollInterval().set(Duration.ofSeconds(15));
+              task.getTransitionTimeout().set(Duration.ofMinutes(30));
+            });
+  }
+
+  // A library's staging profile is written after its uploads, so the root staging tasks that
+  // depend on it start closing as soon as the last upload in the same build finishes
+  private void addStagingProfile() {
+    TaskProvider<WriteProperties> profileTask =
+        project
+            .getTasks()
+            .register(
+                STAGING_PROFILE_TASK_NAME,
+                WriteProperties.class,
+                task -> {
+                  task.setDescription("Writes the staging profile this project publishes to");
+                  task.property(
+                      ReleaseStagingRepositories.PACKAGE_GROUP_PROPERTY,
+                      this.extension.packageGroup);
+                  task.property(
+                      ReleaseStagingRepositories.PUBLISHED_POMS_PROPERTY,
+                      project.provider(this::publishedReleasePoms));
+                  task.getDestinationFile()
+                      .set(project.getLayout().getBuildDirectory().file(STAGING_PROFILE_FILE));
+                  task.mustRunAfter(
+                      project.getTasks().withType(PublishToMavenRepository.class),
+                      project.getTasks().withType(UploadStagedPublications.class));
+                });
+    project
+        .getConfigurations()
+        .create(
+            STAGING_PROFILE_ELEMENTS_CONFIGURATION_NAME,
+            configuration -> {
+              configuration.setCanBeConsumed(true);
+              configuration.setCanBeResolved(false);
+              configuration.attributes(
+                  attributes -> this.usageAttribute(attributes, STAGING_PROFILE_USAGE));
+            });
+    project
+        .getArtifacts()
+        .add(
+            STAGING_PROFILE_ELEMENTS_CONFIGURATION_NAME,
+            profileTask.flatMap(WriteProperties::getDestinationFile),
+            artifact -> artifact.builtBy(profileTask));
+    // A root project that is itself a library hands its profile to its own staging tasks
+    if (project.equals(project.getRootProject())) {
+      project
+          .getTasks()
+          .withType(ReleaseStagingRepositories.class)
+          .configureEach(
+              task ->
+                  task.getStagingProfiles()
+                      .from(profileTask.flatMap(WriteProperties::getDestinationFile)));
     }
+  }
 
-    // packageGroup
-    getNexusStagingExtension().setPackageGroup(this.extension.packageGroup.get());
+  // The repository paths the staging tasks look for to tell this build's staging repositories
+  // from other builds'; snapshots are never staged
+  private String publishedReleasePoms() {
+    return getPublishingExtension().getPublications().withType(MavenPublication.class).stream()
+        .filter(publication -> !publication.getVersion().endsWith("-SNAPSHOT"))
+        .map(
+            publication ->
+                String.format(
+                    "%s/%s/%s/%s-%s.pom",
+                    publication.getGroupId().replace('.', '/'),
+                    publication.getArtifactId(),
+                    publication.getVersion(),
+                    publication.getArtifactId(),
+                    publication.getVersion()))
+        .collect(Collectors.joining(","));
   }
 
   private void applyMavenPublish() {
@@ -85,6 +305,11 @@ public class PublishMavenCentralPlugin implements Plugin<Project> {
   }
 
   private void applyWithJavadocJar() {
+    ParallelArchives.registerDocumentationJar(
+        project,
+        JAVADOC_JAR_TASK_NAME,
+        "javadoc",
+        project.getTasks().named(JavaPlugin.JAVADOC_TASK_NAME));
     getJavaPluginExtension().withJavadocJar();
     project
         .getTasks()
@@ -96,160 +321,497 @@ public class PublishMavenCentralPlugin implements Plugin<Project> {
               if (JavaVersion.current().isJava9Compatible()) {
                 options.addBooleanOption("html5", true);
               }
+              // Dated pages would make every javadoc jar differ from the last
+              options.noTimestamp(true);
             });
+    if (this.isStripJavadocSourcesEnabled()) {
+      this.addJavadocSources();
+    }
+  }
+
+  // Javadoc only reads declarations and doc comments, so it is pointed at sources holding nothing
+  // else, and at a classpath without their classes, and so is up to date for any change to method
+  // bodies or field initializers
+  private void addJavadocSources() {
+    // Fails while configuring rather than once the build reaches javadoc
+    if (!GenerateJavadocSources.isSupported()) {
+      throw new InvalidUserDataException(GenerateJavadocSources.UNSUPPORTED_MESSAGE);
+    }
+    SourceSet main =
+        getJavaPluginExtension().getSourceSets().getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+    TaskProvider<Javadoc> javadoc =
+        project.getTasks().named(JavaPlugin.JAVADOC_TASK_NAME, Javadoc.class);
+    TaskProvider<GenerateJavadocSources> javadocSources =
+        project
+            .getTasks()
+            .register(
+                JAVADOC_SOURCES_TASK_NAME,
+                GenerateJavadocSources.class,
+                task -> {
+                  task.setDescription("Reduces the main sources to what javadoc reads from them");
+                  task.getSources().from(main.getAllJava());
+                  task.getClasses().from(main.getOutput().getClassesDirs());
+                  task.getEncoding()
+                      .set(
+                          javadoc
+                              .map(javadocTask -> javadocTask.getOptions().getEncoding())
+                              .orElse(Charset.defaultCharset().name()));
+                  task.getOutputDirectory()
+                      .set(project.getLayout().getBuildDirectory().dir(JAVADOC_SOURCES_DIRECTORY));
+                  task.getClassesOutputDirectory()
+                      .set(project.getLayout().getBuildDirectory().dir(JAVADOC_CLASSES_DIRECTORY));
+                });
+    javadoc.configure(
+        task -> {
+          task.setSource(javadocSources.flatMap(GenerateJavadocSources::getOutputDirectory));
+          task.setClasspath(
+              main.getCompileClasspath()
+                  .plus(
+                      project.files(
+                          javadocSources.flatMap(
+                              GenerateJavadocSources::getClassesOutputDirectory))));
+        });
+  }
+
+  private boolean isStripJavadocSourcesEnabled() {
+    return getProperty(PROPERTY_STRIP_JAVADOC_SOURCES).map(Boolean::parseBoolean).getOrElse(false);
   }
 
   private void applyWithSourcesJar() {
+    ParallelArchives.registerDocumentationJar(
+        project,
+        SOURCES_JAR_TASK_NAME,
+        "sources",
+        getJavaPluginExtension()
+            .getSourceSets()
+            .getByName(SourceSet.MAIN_SOURCE_SET_NAME)
+            .getAllSource());
     getJavaPluginExtension().withSourcesJar();
   }
 
+  // Releases are looked up where Maven Central serves them, as the upload urls can't be read
+  private void addPreflight() {
+    PublishPreflight.describe(project).configure(task -> task.getMavenCentral().set(true));
+    PublishPreflight.addRepository(
+        project,
+        new RemoteRepository(
+            CENTRAL_RELEASES_REPOSITORY_NAME,
+            URI.create(
+                getProperty(PROPERTY_CENTRAL_RELEASES_URL).getOrElse(DEFAULT_CENTRAL_RELEASES_URL)),
+            null,
+            null));
+    project
+        .getTasks()
+        .withType(PublishToMavenRepository.class)
+        .configureEach(
+            task -> {
+              if (!StagedPublishing.isStagingTask(task)
+                  && !task.getName().endsWith("ToCentralBundleRepository")) {
+                PublishPreflight.requireBefore(project, task);
+              }
+            });
+    project
+        .getTasks()
+        .withType(UploadStagedPublications.class)
+        .configureEach(
+            task -> {
+              if (!(task instanceof DrainPublishOutbox)) {
+                PublishPreflight.requireBefore(project, task);
+              }
+            });
+  }
+
   private void addPublishRepository() {
-    String url;
-    Optional<String> user = getProperty(PROPERTY_OSSRH_USERNAME);
-    Optional<String> password = getProperty(PROPERTY_OSSRH_PASSWORD);
-
-    if (project.getVersion().toString().endsWith("SNAPSHOT")) {
-      url = "https://ossrh-staging-api.central.sonatype.com/content/repositories/snapshots/";
-    } else {
-      url = "https://ossrh-staging-api.central.sonatype.com/service/local/staging/deploy/maven2/";
+    Provider<String> user = getProperty(PROPERTY_OSSRH_USERNAME);
+    Provider<String> password = getProperty(PROPERTY_OSSRH_PASSWORD);
+    Provider<String> serverUrl =
+        getProperty(PROPERTY_OSSRH_URL)
+            .map(ossrhUrl -> ossrhUrl.endsWith("/") ? ossrhUrl : ossrhUrl + "/")
+            .orElse(DEFAULT_OSSRH_URL);
+    // Resolved as the configuration cache is stored, so the url doesn't hold on to the project
+    Provider<String> version = project.provider(() -> project.getVersion().toString());
+    Provider<String> url =
+        serverUrl.zip(
+            version,
+            (ossrhUrl, projectVersion) -> {
+              if (projectVersion.endsWith("SNAPSHOT")) {
+                return ossrhUrl + "content/repositories/snapshots/";
+              }
+              return ossrhUrl + "service/local/staging/deploy/maven2/";
+            });
+
+    if (this.isCentralPortalBundleEnabled()) {
+      this.addCentralPortalBundleRepository();
+      return;
     }
 
     if (user.isPresent() && password.isPresent()) {
+      if (StagedPublishing.isEnabled(project)) {
+        StagedPublishing.addRemoteRepository(
+            project,
+            url.map(
+                repoUrl ->
+                    new RemoteRepository(
+                        OSSRH_REPOSITORY_NAME,
+                        URI.create(repoUrl),
+                        user.get(),
+                        password.get())));
+        return;
+      }
       getPublishingExtension()
           .repositories(
               artifactRepositories ->
                   artifactRepositories.maven(
                       mavenArtifactRepository -> {
-                        mavenArtifactRepository.setName("mavenCentral");
+                        // Named for the identity based ossrhUsername and ossrhPassword credentials,
+                        // which Gradle reads itself, keeping the configuration cache usable
+                        mavenArtifactRepository.setName(OSSRH_REPOSITORY_NAME);
                         mavenArtifactRepository.setUrl(url);
-                        mavenArtifactRepository.credentials(
-                            passwordCredentials -> {
-                              passwordCredentials.setUsername(user.get());
-                              passwordCredentials.setPassword(password.get());
-                            });
+                        if (!"file".equals(URI.create(serverUrl.get()).getScheme())) {
+                          mavenArtifactRepository.credentials(PasswordCredentials.class);
+                        }
                       }));
     }
   }
 
-  private void addPublications() {
-    project.afterEvaluate(
-        unused -> {
-          validateExtensionAtConfigurationTime();
-          getPublishingExtension().publications(this::addJavaLibraryPublicationWhenApplied);
-          validateGradlePropertiesBeforePublishTask();
-          // sign after publication is added
-          addSigning();
-          // configure staging plugin
-          configureNexusStagingPlugin();
-          validateGradlePropertiesBeforeStagingTasks();
-        });
+  private boolean isCentralPortalBundleEnabled() {
+    return getProperty(PROPERTY_CENTRAL_PORTAL_BUNDLE).map(Boolean::parseBoolean).getOrElse(false);
+  }
+
+  // Each library stages its signed publications locally and shares them with the root project
+  private void addCentralPortalBundleRepository() {
+    Provider<Directory> bundleRepository =
+        project.getLayout().getBuildDirectory().dir(BUNDLE_REPOSITORY_DIRECTORY);
+    getPublishingExtension()
+        .getRepositories()
+        .maven(
+            mavenArtifactRepository -> {
+              mavenArtifactRepository.setName(BUNDLE_REPOSITORY_NAME);
+              mavenArtifactRepository.setUrl(bundleRepository);
+            });
+    TaskProvider<Delete> cleanTask =
+        project
+            .getTasks()
+            .register(
+                "cleanCentralBundleRepository",
+                Delete.class,
+                task -> task.delete(bundleRepository));
+    project
+        .getTasks()
+        .withType(PublishToMavenRepository.class)
+        .configureEach(
+            task -> {
+              if (task.getName().endsWith("ToCentralBundleRepository")) {
+                task.dependsOn(cleanTask);
+              }
+            });
+
+    project
+        .getConfigurations()
+        .create(
+            BUNDLE_ELEMENTS_CONFIGURATION_NAME,
+            configuration -> {
+              configuration.setCanBeConsumed(true);
+              configuration.setCanBeResolved(false);
+              configuration.attributes(
+                  attributes -> this.usageAttribute(attributes, BUNDLE_USAGE));
+            });
+    project
+        .getArtifacts()
+        .add(
+            BUNDLE_ELEMENTS_CONFIGURATION_NAME,
+            bundleRepository,
+            artifact -> artifact.builtBy(PUBLISH_TO_BUNDLE_REPOSITORY_TASK_NAME));
   }
 
-  private void addJavaLibraryPublicationWhenApplied(PublicationContainer publications) {
+  private void addCentralPortalBundleTasks() {
+    Configuration bundleConfiguration =
+        this.createAggregatingConfiguration(BUNDLE_CONFIGURATION_NAME, BUNDLE_USAGE);
+    // Subprojects that don't publish to maven central have no bundle variant and are skipped
+    FileCollection stagedRepositories =
+        bundleConfiguration.getIncoming().artifactView(view -> view.lenient(true)).getFiles();
+
+    TaskProvider<? extends Zip> bundleTask =
+        project
+            .getTasks()
+            .register(
+                BUNDLE_TASK_NAME,
+                ParallelArchives.zipType(project),
+                task -> {
+                  task.setGroup("publishing");
+                  task.setDescription(
+                      "Assembles every staged maven central publication into one bundle");
+                  task.from(stagedRepositories);
+                  task.exclude("**/maven-metadata.xml*");
+                  task.getArchiveFileName()
+                      .set(
+                          project.provider(
+                              () ->
+                                  String.format(
+                                      "%s-%s-bundle.zip",
+                                      project.getName(),
+                                      project.getVersion())));
+                  task.getDestinationDirectory()
+                      .set(project.getLayout().getBuildDirectory().dir("hypertrace-publish"));
+                });
+    ReproducibleArtifacts.configureArchive(bundleTask);
+    // A root project that is itself a library contributes its own staged repository directly
     project
         .getPluginManager()
         .withPlugin(
             "java-library",
-            appliedPlugin -> {
-              MavenPublication publication;
-
-              try {
-                // use existing publication from org.hypertrace.publish-plugin plugin
-                publication = (MavenPublication) publications.getByName("javaLibrary");
-              } catch (UnknownDomainObjectException e) {
-                // create new publication
-                publication = publications.create("javaLibrary", MavenPublication.class);
-                publication.from(project.getComponents().getByName("java"));
-              }
+            unused ->
+                bundleTask.configure(
+                    task ->
+                        task.from(
+                            project
+                                .files(
+                                    project
+                                        .getLayout()
+                                        .getBuildDirectory()
+                                        .dir(BUNDLE_REPOSITORY_DIRECTORY))
+                                .builtBy(PUBLISH_TO_BUNDLE_REPOSITORY_TASK_NAME))));
+
+    Provider<PublishTelemetry> telemetry = PublishTelemetry.register(project);
+    project
+        .getTasks()
+        .register(
+            UPLOAD_BUNDLE_TASK_NAME,
+            UploadCentralPortalBundle.class,
+            task -> {
+              task.setGroup("publishing");
+              task.setDescription("Uploads the maven central bundle through the Central Portal");
+              task.dependsOn(VALIDATE_STAGING_TASK_NAME);
+              task.getBundle().set(bundleTask.flatMap(Zip::getArchiveFile));
+              task.getPortalUrl()
+                  .set(
+                      getProperty(PROPERTY_CENTRAL_PORTAL_URL)
+                          .orElse(CentralPortalClient.DEFAULT_PORTAL_URL));
+              task.getUsername().set(getProperty(PROPERTY_OSSRH_USERNAME));
+              task.getPassword().set(getProperty(PROPERTY_OSSRH_PASSWORD));
+              task.getDeploymentName()
+                  .set(project.provider(() -> project.getName() + "-" + project.getVersion()));
+              task.getPublishingType()
+                  .set(
+                      getProperty(PROPERTY_CENTRAL_PORTAL_PUBLISHING_TYPE)
+                          .orElse(UploadCentralPortalBundle.PUBLISHING_TYPE_AUTOMATIC));
+              task.getInitialPollInterval().set(Duration.ofSeconds(5));
+              task.getDeploymentTimeout().set(Duration.ofMinutes(30));
+              task.getTelemetry().set(telemetry);
+              task.usesService(telemetry);
+              PublishPreflight.requireBefore(project, task);
+            });
+  }
+
+  // Resolves the variant of the given usage from every subproject that has one
+  private Configuration createAggregatingConfiguration(String name, String usage) {
+    Configuration aggregatingConfiguration =
+        project
+            .getConfigurations()
+            .create(
+                name,
+                configuration -> {
+                  configuration.setCanBeConsumed(false);
+                  configuration.setCanBeResolved(true);
+                  configuration.attributes(attributes -> this.usageAttribute(attributes, usage));
+                });
+    project
+        .getSubprojects()
+        .forEach(
+            subproject ->
+                project
+                    .getDependencies()
+                    .add(
+                        name,
+                        project
+                            .getDependencies()
+                            .project(Collections.singletonMap("path", subproject.getPath()))));
+    return aggregatingConfiguration;
+  }
+
+  private void usageAttribute(AttributeContainer attributes, String usage) {
+    attributes.attribute(Usage.USAGE_ATTRIBUTE, project.getObjects().named(Usage.class, usage));
+  }
 
-              // configure pom
-              publication.pom(
-                  mavenPom -> {
-                    // name
-                    mavenPom
-                        .getName()
-                        .set(
-                            project.provider(
-                                () -> {
-                                  return String.format(
-                                      "%s:%s", project.getGroup(), project.getName());
-                                }));
-
-                    // url
-                    mavenPom.getUrl().set(this.extension.url);
-
-                    // description
-                    mavenPom.getDescription().set(project.getDescription());
-
-                    // scm
-                    Provider<String> qualifiedRepoProvider =
-                        this.extension.scmOrganization.flatMap(
-                            orgName ->
-                                this.extension.repoName.map(
-                                    repoName -> String.format("%s/%s", orgName, repoName)));
-                    Provider<String> scmConnectionProvider =
-                        qualifiedRepoProvider.map(
-                            qualifiedRepo ->
-                                String.format("scm:git:git://github.com/%s.git", qualifiedRepo));
-                    Provider<String> scmDeveloperConnectionProvider =
-                        qualifiedRepoProvider.map(
-                            qualifiedRepo ->
-                                String.format("scm:git:ssh://github.com:%s.git", qualifiedRepo));
-                    Provider<String> scmUrlProvider =
-                        qualifiedRepoProvider.map(
-                            qualifiedRepo ->
-                                String.format("https://github.com/%s/tree/main", qualifiedRepo));
-                    mavenPom.scm(
-                        mavenPomScm -> {
-                          mavenPomScm.getConnection().set(scmConnectionProvider);
-                          mavenPomScm.getDeveloperConnection().set(scmDeveloperConnectionProvider);
-                          mavenPomScm.getUrl().set(scmUrlProvider);
-                        });
-
-                    // developers
-                    mavenPom.developers(
-                        mavenPomDeveloperSpec -> {
-                          mavenPomDeveloperSpec.developer(
-                              mavenPomDeveloper -> {
-                                mavenPomDeveloper.getId().set(this.extension.developerId);
-                                mavenPomDeveloper.getName().set(this.extension.developerName);
-                                mavenPomDeveloper.getEmail().set(this.extension.developerEmail);
-                                mavenPomDeveloper
-                                    .getOrganization()
-                                    .set(this.extension.developerOrganization);
-                                mavenPomDeveloper
-                                    .getOrganizationUrl()
-                                    .set(this.extension.developerOrganizationUrl);
-                              });
-                        });
-
-                    // licenses
-                    mavenPom.licenses(
-                        mavenPomLicenseSpec -> {
-                          mavenPomLicenseSpec.license(
-                              mavenPomLicense -> {
-                                mavenPomLicense
-                                    .getName()
-                                    .set(this.extension.license.get().toString());
-                              });
-                        });
-                  });
+  private void limitParallelUploads() {
+    Provider<PublishUploadService> uploadService = PublishUploadService.register(project);
+    project
+        .getTasks()
+        .withType(PublishToMavenRepository.class)
+        .configureEach(
+            task -> {
+              if (!StagedPublishing.isStagingTask(task)) {
+                task.usesService(uploadService);
+              }
             });
   }
 
-  private void addSigning() {
-    if (project.hasProperty(PROPERTY_SIGNING_KEY)
-        && project.hasProperty(PROPERTY_SIGNING_PASSWORD)) {
-      String signingKey = (String) project.property(PROPERTY_SIGNING_KEY);
-      String signingPassword = (String) project.property(PROPERTY_SIGNING_PASSWORD);
-      if (project.hasProperty(PROPERTY_SIGNING_KEY_ID)) {
-        String signingKeyId = (String) project.property(PROPERTY_SIGNING_KEY_ID);
-        getSigningExtension().useInMemoryPgpKeys(signingKeyId, signingKey, signingPassword);
-      } else {
-        getSigningExtension().useInMemoryPgpKeys(signingKey, signingPassword);
-      }
+  private void addPublications() {
+    validateExtensionBeforeGeneratePom();
+    addJavaLibraryPublication();
+    validateGradlePropertiesBeforePublishTask();
+    addSigning();
+    addStagingProfile();
+  }
+
+  private void addJavaLibraryPublication() {
+    PublicationContainer publications = getPublishingExtension().getPublications();
+    // reuse the publication from org.hypertrace.publish-plugin if it has already been registered
+    if (!publications.getNames().contains(PUBLICATION_NAME)) {
+      publications.register(
+          PUBLICATION_NAME,
+          MavenPublication.class,
+          publication -> publication.from(project.getComponents().getByName("java")));
     }
-    getSigningExtension().sign(getPublishingExtension().getPublications().getByName("javaLibrary"));
+    configureJavaLibraryPublication(
+        publication ->
+            publication.pom(
+                mavenPom -> {
+                  // name
+                  mavenPom
+                      .getName()
+                      .set(
+                          project.provider(
+                              () -> {
+                                return String.format(
+                                    "%s:%s", project.getGroup(), project.getName());
+                              }));
+
+                  // url
+                  mavenPom.getUrl().set(this.extension.url);
+
+                  // description
+                  mavenPom.getDescription().set(project.provider(project::getDescription));
+
+                  // scm
+                  Provider<String> qualifiedRepoProvider =
+                      this.extension.scmOrganization.flatMap(
+                          orgName ->
+                              this.extension.repoName.map(
+                                  repoName -> String.format("%s/%s", orgName, repoName)));
+                  Provider<String> scmConnectionProvider =
+                      qualifiedRepoProvider.map(
+                          qualifiedRepo ->
+                              String.format("scm:git:git://github.com/%s.git", qualifiedRepo));
+                  Provider<String> scmDeveloperConnectionProvider =
+                      qualifiedRepoProvider.map(
+                          qualifiedRepo ->
+                              String.format("scm:git:ssh://github.com:%s.git", qualifiedRepo));
+                  Provider<String> scmUrlProvider =
+                      qualifiedRepoProvider.map(
+                          qualifiedRepo ->
+                              String.format("https://github.com/%s/tree/main", qualifiedRepo));
+                  mavenPom.scm(
+                      mavenPomScm -> {
+                        mavenPomScm.getConnection().set(scmConnectionProvider);
+                        mavenPomScm.getDeveloperConnection().set(scmDeveloperConnectionProvider);
+                        mavenPomScm.getUrl().set(scmUrlProvider);
+                      });
+
+                  // developers
+                  mavenPom.developers(
+                      mavenPomDeveloperSpec -> {
+                        mavenPomDeveloperSpec.developer(
+                            mavenPomDeveloper -> {
+                              mavenPomDeveloper.getId().set(this.extension.developerId);
+                              mavenPomDeveloper.getName().set(this.extension.developerName);
+                              mavenPomDeveloper.getEmail().set(this.extension.developerEmail);
+                              mavenPomDeveloper
+                                  .getOrganization()
+                                  .set(this.extension.developerOrganization);
+                              mavenPomDeveloper
+                                  .getOrganizationUrl()
+                                  .set(this.extension.developerOrganizationUrl);
+                            });
+                      });
+
+                  // licenses
+                  mavenPom.licenses(
+                      mavenPomLicenseSpec -> {
+                        mavenPomLicenseSpec.license(
+                            mavenPomLicense -> {
+                              mavenPomLicense
+                                  .getName()
+                                  .set(this.extension.license.map(License::toString));
+                            });
+                      });
+                }));
+  }
+
+  private void configureJavaLibraryPublication(Action<MavenPublication> action) {
+    getPublishingExtension()
+        .getPublications()
+        .withType(MavenPublication.class)
+        .matching(publication -> publication.getName().equals(PUBLICATION_NAME))
+        .configureEach(action);
+  }
+
+  private void addSigning() {
+    // Read when signing, never while configuring, so neither is stored in the configuration cache
+    Provider<PgpSigningService> signingService =
+        PgpSigningService.register(
+            project,
+            getProperty(PROPERTY_SIGNING_KEY_ID),
+            getProperty(PROPERTY_SIGNING_KEY),
+            getProperty(PROPERTY_SIGNING_PASSWORD));
+    Provider<PublishTelemetry> telemetry = PublishTelemetry.register(project);
+    Signatory keyRingSignatory =
+        new KeyRingSignatory(
+            getProperty(PROPERTY_KEY_RING_KEY_ID),
+            getProperty(PROPERTY_KEY_RING_FILE),
+            getProperty(PROPERTY_KEY_RING_PASSWORD));
+    // Read once the build configured the signing extension
+    Signatory signatory =
+        new SharedPgpSignatory(
+            signingService, project.provider(() -> this.getExtensionSignatory(keyRingSignatory)));
+    SignatureType signatureType =
+        new ParallelSignatureType(
+            project.provider(() -> getSigningExtension().getSignatureType()),
+            signingService,
+            telemetry);
+    configureJavaLibraryPublication(
+        publication ->
+            getSigningExtension()
+                .sign(publication)
+                .forEach(
+                    task ->
+                        this.configureSignTask(
+                            task, signatory, signatureType, signingService, telemetry)));
+  }
+
+  // The extension's default signatory reads the key ring properties of the parent projects too,
+  // which a project configured in isolation must not, so they are read as build properties instead
+  @Nullable
+  private Signatory getExtensionSignatory(Signatory keyRingSignatory) {
+    SigningExtension signing = getSigningExtension();
+    return signing.getSignatories() instanceof PgpSignatoryProvider
+        ? keyRingSignatory
+        : signing.getSignatory();
+  }
+
+  private void configureSignTask(
+      Sign task,
+      Signatory signatory,
+      SignatureType signatureType,
+      Provider<PgpSigningService> signingService,
+      Provider<PublishTelemetry> telemetry) {
+    task.setSignatory(signatory);
+    task.setSignatureType(signatureType);
+    task.usesService(signingService);
+    task.usesService(telemetry);
+    // Runs ahead of the task's own action, which then waits for each signature in turn
+    task.doFirst(new GenerateSignaturesInParallel(signingService));
+    // Inputs are the artifact contents and the signing key id, so a signature made with the
+    // shared key is never regenerated for an artifact that was already signed. Other signatories,
+    // such as a gpg agent's, may not produce signatures that are safe to share.
+    task.getOutputs()
+        .cacheIf(
+            "signatures are made with the shared in-memory key",
+            signTask -> {
+              Signatory taskSignatory = ((Sign) signTask).getSignatory();
+              return taskSignatory instanceof SharedPgpSignatory
+                  && ((SharedPgpSignatory) taskSignatory).usesSharedKey();
+            });
   }
 
   private PublishingExtension getPublishingExtension() {
@@ -264,60 +826,62 @@ public class PublishMavenCentralPlugin implements Plugin<Project> {
     return project.getExtensions().getByType(SigningExtension.class);
   }
 
-  private NexusStagingExtension getNexusStagingExtension() {
-    return project.getRootProject().getExtensions().getByType(NexusStagingExtension.class);
+  private Provider<String> getProperty(String propertyName) {
+    return project.getProviders().gradleProperty(propertyName);
   }
 
-  private Optional<String> getProperty(String propertyName) {
-    return Optional.ofNullable(project.findProperty(propertyName)).map(String::valueOf);
-  }
-
-  private void validateExtensionAtConfigurationTime() {
-    if (!this.extension.license.isPresent()) {
-      throw new GradleException(
-          "A license type must be specified in the build DSL to use the Hypertrace maven central publish plugin");
-    }
-    if (!this.extension.repoName.isPresent()) {
-      throw new GradleException(
-          "Repository Name must be specified in the build DSL to use the Hypertrace maven central publish plugin");
-    }
+  private void validateExtensionBeforeGeneratePom() {
+    TaskProvider<ValidatePublishExtension> validateTask =
+        project
+            .getTasks()
+            .register(
+                VALIDATE_EXTENSION_TASK_NAME,
+                ValidatePublishExtension.class,
+                task -> {
+                  task.require(
+                      this.extension.license,
+                      "A license type must be specified in the build DSL to use the Hypertrace maven central publish plugin");
+                  task.require(
+                      this.extension.repoName,
+                      "Repository Name must be specified in the build DSL to use the Hypertrace maven central publish plugin");
+                });
+    project
+        .getTasks()
+        .withType(GenerateMavenPom.class)
+        .configureEach(task -> task.dependsOn(validateTask));
   }
 
   private void validateGradlePropertiesBeforePublishTask() {
+    TaskProvider<ValidateGradleProperties> validateTask =
+        registerOssrhValidationTask(VALIDATE_PUBLISH_TASK_NAME);
+    project.getTasks().named("publish").configure(task -> task.dependsOn(validateTask));
     project
         .getTasks()
-        .named("publish")
-        .configure(
-            task -> {
-              task.doFirst(
-                  unused -> {
-                    validateGradleProperty(PROPERTY_OSSRH_USERNAME);
-                    validateGradleProperty(PROPERTY_OSSRH_PASSWORD);
-                  });
-            });
+        .withType(PublishToMavenRepository.class)
+        .configureEach(task -> task.dependsOn(validateTask));
   }
 
   private void validateGradlePropertiesBeforeStagingTasks() {
-    project.getRootProject().getTasks().withType(BaseStagingTask.class).stream()
-        .forEach(
-            task -> {
-              task.doFirst(
-                  unused -> {
-                    validateGradleProperty(PROPERTY_OSSRH_USERNAME);
-                    validateGradleProperty(PROPERTY_OSSRH_PASSWORD);
-                  });
-            });
+    TaskProvider<ValidateGradleProperties> validateTask =
+        registerOssrhValidationTask(VALIDATE_STAGING_TASK_NAME);
+    project
+        .getTasks()
+        .withType(ReleaseStagingRepositories.class)
+        .configureEach(task -> task.dependsOn(validateTask));
   }
 
-  private void validateGradleProperty(String propertyName) {
-    if (!project.hasProperty(propertyName)) {
-      throw new GradleException(
-          "Missing expected gradle property: "
-              + propertyName
-              + ". It should be added "
-              + "in your ~/.gradle/gradle.properties file, or in a an environment variable of the form "
-              + "ORG_GRADLE_PROJECT_"
-              + propertyName);
-    }
+  private TaskProvider<ValidateGradleProperties> registerOssrhValidationTask(String taskName) {
+    return project
+        .getTasks()
+        .register(
+            taskName,
+            ValidateGradleProperties.class,
+            task -> {
+              for (String propertyName :
+                  Arrays.asList(PROPERTY_OSSRH_USERNAME, PROPERTY_OSSRH_PASSWORD)) {
+                task.getRequiredProperties().add(propertyName);
+                task.trackProperty(propertyName, getProperty(propertyName));
+              }
+            });
   }
 }
@@ -0,0 +1,192 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Closes, releases, or closes and then releases the staging repositories of each of the package
+ * groups' profiles that hold this build's publications, each repository in parallel with the
+ * others. The package groups and publications are read from the staging profiles the published
+ * projects write, falling back to {@link #getPackageGroup()}.
+ */
+public abstract class ReleaseStagingRepositories extends DefaultTask {
+  static final String PACKAGE_GROUP_PROPERTY = "packageGroup";
+  static final String PUBLISHED_POMS_PROPERTY = "publishedPoms";
+
+  @Internal
+  public abstract Property<String> getServerUrl();
+
+  @Internal
+  public abstract Property<String> getUsername();
+
+  @Internal
+  public abstract Property<String> getPassword();
+
+  /**
+   * Properties files each naming the package group a project publishes to and the comma separated
+   * repository paths of the release POMs it publishes.
+   */
+  @InputFiles
+  @PathSensitive(PathSensitivity.NONE)
+  public abstract ConfigurableFileCollection getStagingProfiles();
+
+  /** The package group to release if no project provides a staging profile. */
+  @Internal
+  public abstract Property<String> getPackageGroup();
+
+  /** Whether open repositories are closed. */
+  @Internal
+  public abstract Property<Boolean> getCloseRepositories();
+
+  /** Whether repositories are released, either once closed or, if not closing, already closed. */
+  @Internal
+  public abstract Property<Boolean> getReleaseRepositories();
+
+  @Internal
+  public abstract Property<Duration> getInitialPollInterval();
+
+  @Internal
+  public abstract Property<Duration> getMaxPollInterval();
+
+  @Internal
+  public abstract Property<Duration> getTransitionTimeout();
+
+  @TaskAction
+  public void release() throws IOException, InterruptedException {
+    boolean close = this.getCloseRepositories().get();
+    boolean release = this.getReleaseRepositories().get();
+    String type = close ? NexusStagingClient.TYPE_OPEN : NexusStagingClient.TYPE_CLOSED;
+    Map<String, Set<String>> packageGroups = this.readStagingProfiles();
+    try (NexusStagingClient client =
+        new NexusStagingClient(
+            URI.create(this.getServerUrl().get()),
+            this.getUsername().get(),
+            this.getPassword().get(),
+            this.getInitialPollInterval().get(),
+            this.getMaxPollInterval().get())) {
+      List<CompletableFuture<Void>> transitions = new ArrayList<>();
+      for (Map.Entry<String, Set<String>> packageGroup : packageGroups.entrySet()) {
+        String description = packageGroup.getKey() + " release by " + this.getPath();
+        for (String repositoryId :
+            findRepositories(client, packageGroup.getKey(), type, packageGroup.getValue())) {
+          this.getLogger()
+              .lifecycle("{} staging repository {}", describe(close, release), repositoryId);
+          if (close && release) {
+            transitions.add(client.closeAndReleaseRepository(repositoryId, description));
+          } else if (close) {
+            transitions.add(client.closeRepository(repositoryId, description));
+          } else {
+            transitions.add(client.releaseRepository(repositoryId, description));
+          }
+        }
+      }
+      CompletableFuture.allOf(transitions.toArray(new CompletableFuture<?>[0]))
+          .get(this.getTransitionTimeout().get().toMillis(), TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      throw new GradleException("Staging repository transition failed", e.getCause());
+    } catch (TimeoutException e) {
+      throw new GradleException(
+          "Timed out waiting for the staging repositories of " + packageGroups.keySet(), e);
+    }
+  }
+
+  /**
+   * Returns the package group's staging repositories of the given type that hold any of the
+   * published POMs. Nexus stages uploads without saying which build made them, so a repository is
+   * this build's if it holds what this build uploaded; every such repository is returned, as Nexus
+   * may have split the uploads across several. Without any published POMs, the package group must
+   * have exactly one repository of the type, as with several, some may still be receiving another
+   * build's uploads.
+   */
+  static List<String> findRepositories(
+      NexusStagingClient client, String packageGroup, String type, Set<String> publishedPoms)
+      throws IOException {
+    List<String> repositoryIds = client.findRepositories(client.findProfileId(packageGroup), type);
+    if (repositoryIds.isEmpty()) {
+      throw new GradleException(
+          String.format("No %s staging repositories found for %s", type, packageGroup));
+    }
+    if (publishedPoms.isEmpty()) {
+      if (repositoryIds.size() > 1) {
+        throw new GradleException(
+            String.format(
+                "Found %d %s staging repositories for %s, %s, but expected the one this build"
+                    + " staged. Drop or release the others before running this task again.",
+                repositoryIds.size(), type, packageGroup, repositoryIds));
+      }
+      return repositoryIds;
+    }
+    List<String> stagedRepositoryIds = new ArrayList<>();
+    for (String repositoryId : repositoryIds) {
+      if (client.containsAny(repositoryId, publishedPoms)) {
+        stagedRepositoryIds.add(repositoryId);
+      }
+    }
+    if (stagedRepositoryIds.isEmpty()) {
+      throw new GradleException(
+          String.format(
+              "None of the %s staging repositories for %s, %s, holds any of %s",
+              type, packageGroup, repositoryIds, publishedPoms));
+    }
+    return stagedRepositoryIds;
+  }
+
+  private Map<String, Set<String>> readStagingProfiles() throws IOException {
+    Map<String, Set<String>> packageGroups = new LinkedHashMap<>();
+    for (File stagingProfile : this.getStagingProfiles().getFiles()) {
+      if (!stagingProfile.isFile()) {
+        continue;
+      }
+      Properties properties = new Properties();
+      try (InputStream inputStream = Files.newInputStream(stagingProfile.toPath())) {
+        properties.load(inputStream);
+      }
+      String packageGroup = properties.getProperty(PACKAGE_GROUP_PROPERTY);
+      if (packageGroup == null) {
+        continue;
+      }
+      Set<String> publishedPoms =
+          packageGroups.computeIfAbsent(packageGroup, unused -> new LinkedHashSet<>());
+      for (String pom : properties.getProperty(PUBLISHED_POMS_PROPERTY, "").split(",")) {
+        if (!pom.isEmpty()) {
+          publishedPoms.add(pom);
+        }
+      }
+    }
+    if (packageGroups.isEmpty()) {
+      packageGroups.put(this.getPackageGroup().get(), new LinkedHashSet<>());
+    }
+    return packageGroups;
+  }
+
+  private static String describe(boolean close, boolean release) {
+    if (close && release) {
+      return "Closing and releasing";
+    }
+    return close ? "Closing" : "Releasing";
+  }
+}
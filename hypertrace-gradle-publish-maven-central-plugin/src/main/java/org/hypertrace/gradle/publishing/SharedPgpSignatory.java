@@ -0,0 +1,62 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.annotation.Nullable;
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.provider.Provider;
+import org.gradle.plugins.signing.signatory.Signatory;
+import org.gradle.plugins.signing.signatory.SignatorySupport;
+
+/**
+ * Signatory that signs with the key held by {@link PgpSigningService}, so the secret key is parsed
+ * once per build rather than per project. Whether the build has an in-memory key is only decided
+ * when signing, as deciding while configuring would store the key in the configuration cache.
+ * Without one, it signs with the signatory the signing extension is configured with instead, such
+ * as the gpg agent's, or by default the secret key ring named by the gradle properties.
+ */
+public class SharedPgpSignatory extends SignatorySupport {
+  private static final String NAME = "hypertracePublish";
+
+  private final Provider<PgpSigningService> signingService;
+  private final Provider<Signatory> extensionSignatory;
+
+  public SharedPgpSignatory(
+      Provider<PgpSigningService> signingService, Provider<Signatory> extensionSignatory) {
+    this.signingService = signingService;
+    this.extensionSignatory = extensionSignatory;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  /** Whether signatures are generated by the shared service, which may sign concurrently. */
+  public boolean usesSharedKey() {
+    return signingService.get().hasKey();
+  }
+
+  @Nullable
+  @Override
+  public String getKeyId() {
+    if (this.usesSharedKey()) {
+      return signingService.get().getKeyId();
+    }
+    return extensionSignatory.isPresent() ? extensionSignatory.get().getKeyId() : null;
+  }
+
+  @Override
+  public void sign(InputStream toSign, OutputStream destination) {
+    if (this.usesSharedKey()) {
+      signingService.get().sign(toSign, destination);
+      return;
+    }
+    if (!extensionSignatory.isPresent()) {
+      throw new InvalidUserDataException(
+          "No signing key is configured. Set the signingKey and signingPassword properties, or "
+              + "configure a signatory of the signing extension.");
+    }
+    extensionSignatory.get().sign(toSign, destination);
+  }
+}
@@ -0,0 +1,84 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+public abstract class UploadCentralPortalBundle extends DefaultTask {
+  public static final String PUBLISHING_TYPE_AUTOMATIC = "AUTOMATIC";
+
+  @InputFile
+  @PathSensitive(PathSensitivity.NONE)
+  public abstract RegularFileProperty getBundle();
+
+  @Internal
+  public abstract Property<String> getPortalUrl();
+
+  @Internal
+  public abstract Property<String> getUsername();
+
+  @Internal
+  public abstract Property<String> getPassword();
+
+  @Internal
+  public abstract Property<String> getDeploymentName();
+
+  @Internal
+  public abstract Property<String> getPublishingType();
+
+  @Internal
+  public abstract Property<Duration> getInitialPollInterval();
+
+  @Internal
+  public abstract Property<Duration> getDeploymentTimeout();
+
+  @Internal
+  public abstract Property<PublishTelemetry> getTelemetry();
+
+  @TaskAction
+  public void upload() throws IOException, InterruptedException {
+    // Automatic deployments are done once published, user managed ones once ready to publish
+    String targetState =
+        PUBLISHING_TYPE_AUTOMATIC.equals(this.getPublishingType().get())
+            ? "PUBLISHED"
+            : "VALIDATED";
+    try (CentralPortalClient client =
+        new CentralPortalClient(
+            URI.create(this.getPortalUrl().get()),
+            this.getUsername().get(),
+            this.getPassword().get(),
+            this.getInitialPollInterval().get(),
+            Duration.ofSeconds(30),
+            this.getTelemetry().get())) {
+      String deploymentId =
+          client.upload(
+              this.getBundle().get().getAsFile(),
+              this.getDeploymentName().get(),
+              this.getPublishingType().get());
+      this.getLogger().lifecycle("Uploaded bundle as Central Portal deployment {}", deploymentId);
+      String state =
+          client
+              .awaitDeployment(deploymentId, Collections.singleton(targetState))
+              .get(this.getDeploymentTimeout().get().toMillis(), TimeUnit.MILLISECONDS);
+      this.getLogger().lifecycle("Central Portal deployment {} is {}", deploymentId, state);
+    } catch (ExecutionException e) {
+      throw new GradleException("Central Portal deployment failed", e.getCause());
+    } catch (TimeoutException e) {
+      throw new GradleException(
+          "Timed out waiting for the Central Portal deployment to become " + targetState, e);
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package org.hypertrace.gradle.publishing;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CentralPortalClientTest {
+  private static final String BUNDLE_CONTENT = "bundle-bytes";
+
+  @TempDir Path tempDir;
+
+  private HttpServer server;
+  private final AtomicReference<String> uploadedBody = new AtomicReference<>();
+  private final AtomicReference<String> uploadQuery = new AtomicReference<>();
+  private final AtomicReference<String> authorization = new AtomicReference<>();
+  private final AtomicInteger statusRequests = new AtomicInteger();
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+        "/api/v1/publisher/upload",
+        exchange -> {
+          authorization.set(exchange.getRequestHeaders().getFirst("Authorization"));
+          uploadQuery.set(exchange.getRequestURI().getQuery());
+          uploadedBody.set(read(exchange.getRequestBody()));
+          respond(exchange, 201, "deployment-1");
+        });
+    server.createContext(
+        "/api/v1/publisher/status",
+        exchange -> {
+          String state = statusRequests.incrementAndGet() < 3 ? "VALIDATING" : "PUBLISHED";
+          respond(
+              exchange,
+              200,
+              "{\"deploymentId\":\"deployment-1\",\"deploymentState\":\"" + state + "\"}");
+        });
+    server.start();
+  }
+
+  @AfterEach
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testUploadsBundleAndWaitsForDeployment() throws Exception {
+    File bundle = tempDir.resolve("bundle.zip").toFile();
+    Files.write(bundle.toPath(), BUNDLE_CONTENT.getBytes(StandardCharsets.UTF_8));
+
+    try (CentralPortalClient client = newClient()) {
+      String deploymentId = client.upload(bundle, "lib-1.0.0", "AUTOMATIC");
+      Assertions.assertEquals("deployment-1", deploymentId);
+      Assertions.assertEquals(
+          "PUBLISHED",
+          client
+              .awaitDeployment(deploymentId, Collections.singleton("PUBLISHED"))
+              .get(10, TimeUnit.SECONDS));
+    }
+
+    Assertions.assertTrue(uploadedBody.get().contains("name=\"bundle\"; filename=\"bundle.zip\""));
+    Assertions.assertTrue(uploadedBody.get().contains(BUNDLE_CONTENT));
+    Assertions.assertEquals("name=lib-1.0.0&publishingType=AUTOMATIC", uploadQuery.get());
+    Assertions.assertEquals("Bearer dXNlcjpwYXNzd29yZA==", authorization.get());
+    Assertions.assertEquals(3, statusRequests.get());
+  }
+
+  @Test
+  public void testFailedDeploymentCompletesExceptionally() throws IOException {
+    server.removeContext("/api/v1/publisher/status");
+    server.createContext(
+        "/api/v1/publisher/status",
+        exchange ->
+            respond(
+                exchange,
+                200,
+                "{\"deploymentState\":\"FAILED\",\"errors\":{\"lib\":[\"Missing signature\"]}}"));
+
+    try (CentralPortalClient client = newClient()) {
+      ExecutionException exception =
+          Assertions.assertThrows(
+              ExecutionException.class,
+              () ->
+                  client
+                      .awaitDeployment("deployment-1", Collections.singleton("PUBLISHED"))
+                      .get(10, TimeUnit.SECONDS));
+      Assertions.assertTrue(exception.getCause().getMessage().contains("Missing signature"));
+    }
+  }
+
+  private CentralPortalClient newClient() {
+    return new CentralPortalClient(
+        URI.create("http://localhost:" + server.getAddress().getPort()),
+        "user",
+        "password",
+        Duration.ofMillis(10),
+        Duration.ofMillis(50));
+  }
+
+  private static String read(InputStream inputStream) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = inputStream.read(buffer)) != -1) {
+      outputStream.write(buffer, 0, read);
+    }
+    return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream outputStream = exchange.getResponseBody()) {
+      outputStream.write(bytes);
+    }
+  }
+}
@@ -0,0 +1,276 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipFile;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ConfigurationCacheTest {
+  private static final String OSSRH_DEPLOY_PATH = "service/local/staging/deploy/maven2/";
+
+  @TempDir Path projectDir;
+
+  @Test
+  public void testPublishReusesConfigurationCache() throws IOException {
+    File repository = projectDir.resolve("repository").toFile();
+    writeLibrary();
+    writeFile(
+        "gradle.properties",
+        "maven_repo_url="
+            + repository.toURI()
+            + "\nmavenUsername=user\nmavenPassword=password\n");
+
+    BuildResult first = runWithConfigurationCache("publish");
+    Assertions.assertTrue(first.getOutput().contains("Configuration cache entry stored"));
+    Assertions.assertTrue(
+        new File(repository, "org/hypertrace/test/lib/1.0.0/lib-1.0.0.pom").exists());
+
+    BuildResult second = runWithConfigurationCache("publish");
+    Assertions.assertTrue(second.getOutput().contains("Configuration cache entry reused"));
+  }
+
+  @Test
+  public void testPublishToRemoteRepositoryStoresConfigurationCache() throws IOException {
+    writeLibrary();
+    writeFile(
+        "gradle.properties",
+        "maven_repo_url=https://repository.invalid/maven\n"
+            + "mavenUsername=user\nmavenPassword=password\n");
+
+    // Explicit credentials would make Gradle discard the entry of a build that publishes
+    BuildResult result = runWithConfigurationCache("publish", "--dry-run");
+    Assertions.assertTrue(
+        result.getOutput().contains("Configuration cache entry stored"), result.getOutput());
+  }
+
+  @Test
+  public void testMavenCentralTasksReuseConfigurationCache() throws IOException {
+    writeFile("settings.gradle", "rootProject.name = 'root'\ninclude 'lib'\n");
+    // nexus staging is configured on the root project
+    writeFile("build.gradle", "plugins {\n  id 'org.hypertrace.publish-maven-central-plugin'\n}\n");
+    writeFile(
+        "lib/build.gradle",
+        "plugins {\n"
+            + "  id 'java-library'\n"
+            + "  id 'org.hypertrace.publish-maven-central-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '1.0.0'\n"
+            + "hypertracePublishMavenCentral {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "  repoName.set('test')\n"
+            + "}\n");
+
+    String[] tasks = {"generatePomFileForJavaLibraryPublication", "javadocJar", "sourcesJar"};
+    BuildResult first = runWithConfigurationCache(tasks);
+    Assertions.assertTrue(first.getOutput().contains("Configuration cache entry stored"));
+
+    BuildResult second = runWithConfigurationCache(tasks);
+    Assertions.assertTrue(second.getOutput().contains("Configuration cache entry reused"));
+  }
+
+  @Test
+  public void testParallelDocumentationJarsReuseConfigurationCache() throws IOException {
+    writeFile("settings.gradle", "rootProject.name = 'root'\ninclude 'lib'\n");
+    writeFile("build.gradle", "");
+    writeFile(
+        "lib/build.gradle",
+        "plugins {\n"
+            + "  id 'java-library'\n"
+            + "  id 'org.hypertrace.publish-maven-central-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '1.0.0'\n"
+            + "hypertracePublishMavenCentral {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "  repoName.set('test')\n"
+            + "}\n");
+    writeFile(
+        "lib/src/main/java/org/hypertrace/test/Library.java",
+        "package org.hypertrace.test;\n\n/** A library. */\npublic class Library {}\n");
+
+    String[] arguments = {"assemble", "-Ppublish_parallel_archives=true"};
+    BuildResult first = runWithConfigurationCache(arguments);
+    Assertions.assertTrue(first.getOutput().contains("Configuration cache entry stored"));
+    // The java extension publishes the jars the plugin registered, which assemble builds
+    Assertions.assertNotNull(first.task(":lib:javadocJar"), first.getOutput());
+    try (ZipFile sources =
+        new ZipFile(projectDir.resolve("lib/build/libs/lib-1.0.0-sources.jar").toFile())) {
+      Assertions.assertNotNull(sources.getEntry("org/hypertrace/test/Library.java"));
+    }
+
+    BuildResult second = runWithConfigurationCache(arguments);
+    Assertions.assertTrue(second.getOutput().contains("Configuration cache entry reused"));
+  }
+
+  @Test
+  public void testStagedMavenCentralPublishReusesConfigurationCache() throws IOException {
+    writeFile("settings.gradle", "rootProject.name = 'root'\ninclude 'lib'\n");
+    writeFile("build.gradle", "");
+    writeFile(
+        "lib/build.gradle",
+        "plugins {\n"
+            + "  id 'java-library'\n"
+            + "  id 'org.hypertrace.publish-maven-central-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '1.0.0'\n"
+            + "hypertracePublishMavenCentral {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "  repoName.set('test')\n"
+            + "}\n");
+
+    try (MavenRepositoryServer server =
+        MavenRepositoryServer.start().withCredentials("user", "password")) {
+      writeFile(
+          "gradle.properties",
+          "ossrhUrl="
+              + server.getUrl()
+              + "\nossrhUsername=user\nossrhPassword=password\npublish_parallel_uploads=2\n"
+              + "signingPassword="
+              + TestSigningKey.PASSWORD
+              + "\nsigningKey="
+              + TestSigningKey.armoredKey().replace("\n", "\\n")
+              + "\n");
+
+      BuildResult first = runWithConfigurationCache("publish");
+      Assertions.assertTrue(
+          first.getOutput().contains("Configuration cache entry stored"), first.getOutput());
+      Assertions.assertTrue(
+          server
+              .getPaths()
+              .contains(OSSRH_DEPLOY_PATH + "org/hypertrace/test/lib/1.0.0/lib-1.0.0.jar"));
+
+      BuildResult second = runWithConfigurationCache("publish");
+      Assertions.assertTrue(
+          second.getOutput().contains("Configuration cache entry reused"), second.getOutput());
+    }
+  }
+
+  @Test
+  public void testSigningKeyIsReadWhenSigning() throws IOException {
+    writeFile("settings.gradle", "rootProject.name = 'root'\ninclude 'lib'\n");
+    writeFile("build.gradle", "");
+    writeFile(
+        "lib/build.gradle",
+        "plugins {\n"
+            + "  id 'java-library'\n"
+            + "  id 'org.hypertrace.publish-maven-central-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '1.0.0'\n"
+            + "hypertracePublishMavenCentral {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "  repoName.set('test')\n"
+            + "}\n"
+            + "tasks.named('signJavaLibraryPublication') {\n"
+            + "  doLast { println('Signed by ' + signatory.keyId) }\n"
+            + "}\n");
+    writeFile(
+        "gradle.properties",
+        "signingKey=" + TestSigningKey.armoredKey().replace("\n", "\\n") + "\n");
+
+    BuildResult first =
+        runner("signJavaLibraryPublication", "--configuration-cache", "-PsigningPassword=wrong")
+            .buildAndFail();
+    Assertions.assertTrue(
+        first.getOutput().contains("Unable to read the signingKey property"), first.getOutput());
+
+    // Neither the key nor its password is an input of the cached configuration
+    BuildResult second =
+        runner(
+                "signJavaLibraryPublication",
+                "--configuration-cache",
+                "-PsigningPassword=" + TestSigningKey.PASSWORD)
+            .build();
+    Assertions.assertTrue(
+        second.getOutput().contains("Configuration cache entry reused"), second.getOutput());
+    // Actions added to the task still run
+    Assertions.assertTrue(
+        second.getOutput().contains("Signed by " + TestSigningKey.KEY_ID),
+        second.getOutput());
+    Assertions.assertTrue(
+        Files.isRegularFile(projectDir.resolve("lib/build/libs/lib-1.0.0.jar.asc")));
+  }
+
+  @Test
+  public void testSigningExtensionSignatoryIsUsedWithoutSigningKey() throws IOException {
+    writeFile("settings.gradle", "rootProject.name = 'root'\ninclude 'lib'\n");
+    writeFile("build.gradle", "");
+    writeFile("lib/signing-key.asc", TestSigningKey.armoredKey());
+    writeFile("lib/notes.txt", "notes");
+    writeFile(
+        "lib/build.gradle",
+        "plugins {\n"
+            + "  id 'java-library'\n"
+            + "  id 'org.hypertrace.publish-maven-central-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '1.0.0'\n"
+            + "hypertracePublishMavenCentral {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "  repoName.set('test')\n"
+            + "}\n"
+            + "signing {\n"
+            + "  useInMemoryPgpKeys(file('signing-key.asc').text, '"
+            + TestSigningKey.PASSWORD
+            + "')\n"
+            + "}\n"
+            + "tasks.register('signNotes', Sign) {\n"
+            + "  sign file('notes.txt')\n"
+            + "  doLast { println('Notes signed by ' + signatory.name) }\n"
+            + "}\n");
+
+    BuildResult result =
+        runWithConfigurationCache("signJavaLibraryPublication", "signNotes");
+    Assertions.assertTrue(
+        Files.isRegularFile(projectDir.resolve("lib/build/libs/lib-1.0.0.jar.asc")));
+    // Only the publication's signing task is configured by the plugin
+    Assertions.assertTrue(result.getOutput().contains("Notes signed by "), result.getOutput());
+    Assertions.assertFalse(
+        result.getOutput().contains("Notes signed by hypertracePublish"), result.getOutput());
+  }
+
+  private void writeLibrary() throws IOException {
+    writeFile("settings.gradle", "rootProject.name = 'root'\ninclude 'lib'\n");
+    writeFile("build.gradle", "");
+    writeFile(
+        "lib/build.gradle",
+        "plugins {\n"
+            + "  id 'java-library'\n"
+            + "  id 'org.hypertrace.publish-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '1.0.0'\n"
+            + "hypertracePublish {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "}\n");
+  }
+
+  private BuildResult runWithConfigurationCache(String... tasks) {
+    String[] arguments = new String[tasks.length + 1];
+    System.arraycopy(tasks, 0, arguments, 0, tasks.length);
+    arguments[tasks.length] = "--configuration-cache";
+    return runner(arguments).build();
+  }
+
+  private GradleRunner runner(String... arguments) {
+    return GradleRunner.create()
+        .withProjectDir(projectDir.toFile())
+        .withPluginClasspath()
+        .withArguments(arguments);
+  }
+
+  private void writeFile(String path, String content) throws IOException {
+    Path file = projectDir.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,98 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class IsolatedProjectsTest {
+  @TempDir Path projectDir;
+
+  @BeforeEach
+  public void writeBuild() throws IOException {
+    writeFile("settings.gradle", "rootProject.name = 'root'\ninclude 'lib', 'other'\n");
+    writeFile("build.gradle", "plugins {\n  id 'org.hypertrace.publish-maven-central-plugin'\n}\n");
+    writeLibrary("lib", "org.hypertrace");
+    writeLibrary("other", "org.hypertrace.other");
+  }
+
+  @Test
+  public void testStagingTasksConfigureWithIsolatedProjects() {
+    BuildResult result =
+        runWithIsolatedProjects("closeAndReleaseRepository", "publish", "--dry-run");
+    String output = result.getOutput();
+    Assertions.assertTrue(output.contains(":lib:writeNexusStagingProfile SKIPPED"), output);
+    Assertions.assertTrue(output.contains(":other:writeNexusStagingProfile SKIPPED"), output);
+    // The staging profiles are written once every upload has finished
+    Assertions.assertTrue(
+        output.indexOf(":lib:publishJavaLibraryPublicationToOssrhRepository")
+            < output.indexOf(":lib:writeNexusStagingProfile"),
+        output);
+    Assertions.assertTrue(output.contains(":closeAndReleaseRepository SKIPPED"), output);
+  }
+
+  @Test
+  public void testStagingProfileNamesPublishedPoms() throws IOException {
+    runWithIsolatedProjects(":lib:writeNexusStagingProfile");
+    String profile =
+        new String(
+            Files.readAllBytes(
+                projectDir.resolve("lib/build/hypertrace-publish/nexus-staging.properties")),
+            StandardCharsets.UTF_8);
+    Assertions.assertTrue(profile.contains("packageGroup=org.hypertrace"), profile);
+    Assertions.assertTrue(
+        profile.contains("publishedPoms=org/hypertrace/test/lib/1.0.0/lib-1.0.0.pom"), profile);
+  }
+
+  @Test
+  public void testCentralPortalBundleConfiguresWithIsolatedProjects() {
+    BuildResult result =
+        runWithIsolatedProjects(
+            "publishMavenCentralBundle", "-PcentralPortalBundle=true", "--dry-run");
+    Assertions.assertTrue(
+        result.getOutput().contains(":publishMavenCentralBundle SKIPPED"), result.getOutput());
+  }
+
+  private void writeLibrary(String name, String packageGroup) throws IOException {
+    writeFile(
+        name + "/build.gradle",
+        "plugins {\n"
+            + "  id 'java-library'\n"
+            + "  id 'org.hypertrace.publish-maven-central-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '1.0.0'\n"
+            + "hypertracePublishMavenCentral {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "  repoName.set('test')\n"
+            + "  packageGroup.set('"
+            + packageGroup
+            + "')\n"
+            + "}\n");
+  }
+
+  private BuildResult runWithIsolatedProjects(String... tasks) {
+    String[] arguments = new String[tasks.length + 3];
+    System.arraycopy(tasks, 0, arguments, 0, tasks.length);
+    arguments[tasks.length] = "-Dorg.gradle.unsafe.isolated-projects=true";
+    arguments[tasks.length + 1] = "-PossrhUsername=user";
+    arguments[tasks.length + 2] = "-PossrhPassword=password";
+    return GradleRunner.create()
+        .withProjectDir(projectDir.toFile())
+        .withPluginClasspath()
+        .withArguments(arguments)
+        .build();
+  }
+
+  private void writeFile(String path, String content) throws IOException {
+    Path file = projectDir.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
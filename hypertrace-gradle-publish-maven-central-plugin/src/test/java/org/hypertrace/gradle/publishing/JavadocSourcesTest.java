@@ -0,0 +1,120 @@
+package org.hypertrace.gradle.publishing;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class JavadocSourcesTest {
+  private static final String SOURCE =
+      "package p;\n"
+          + "\n"
+          + "/** A widget. */\n"
+          + "public class Widget {\n"
+          + "  /** The default size. */\n"
+          + "  public static final int SIZE = 4;\n"
+          + "  private static final Runnable TASK = () -> System.out.println(\"x\");\n"
+          + "  private final Object lock = new Object();\n"
+          + "  int a = 1, b = 2;\n"
+          + "\n"
+          + "  static {\n"
+          + "    System.out.println(\"loaded\");\n"
+          + "  }\n"
+          + "\n"
+          + "  /** Creates a widget. */\n"
+          + "  public Widget() {\n"
+          + "    super();\n"
+          + "  }\n"
+          + "\n"
+          + "  /** @return the size */\n"
+          + "  public int size() {\n"
+          + "    return SIZE;\n"
+          + "  }\n"
+          + "\n"
+          + "  abstract static class Part {\n"
+          + "    abstract void fit();\n"
+          + "\n"
+          + "    void check() { new Object() { void run() {} }; }\n"
+          + "  }\n"
+          + "\n"
+          + "  /** Colors. */\n"
+          + "  public enum Color {\n"
+          + "    RED,\n"
+          + "    /** Green. */\n"
+          + "    GREEN {\n"
+          + "      @Override\n"
+          + "      String code() { return \"g\"; }\n"
+          + "    };\n"
+          + "\n"
+          + "    String code() { return name(); }\n"
+          + "  }\n"
+          + "}\n";
+
+  @Test
+  public void testKeepsDeclarationsAndDocComments() {
+    Assertions.assertEquals(
+        "package p;\n"
+            + "\n"
+            + "/** A widget. */\n"
+            + "public class Widget {\n"
+            + "  /** The default size. */\n"
+            + "  public static final int SIZE = 4;\n"
+            + "  private static final Runnable TASK ;\n"
+            + "  private final Object lock ;\n"
+            + "  int a = 1, b = 2;\n"
+            + "\n"
+            + "  \n"
+            + "\n"
+            + "  /** Creates a widget. */\n"
+            + "  public Widget() {}\n"
+            + "\n"
+            + "  /** @return the size */\n"
+            + "  public int size() {}\n"
+            + "\n"
+            + "  abstract static class Part {\n"
+            + "    abstract void fit();\n"
+            + "\n"
+            + "    void check() {}\n"
+            + "  }\n"
+            + "\n"
+            + "  /** Colors. */\n"
+            + "  public enum Color {\n"
+            + "    RED,\n"
+            + "    /** Green. */\n"
+            + "    GREEN {\n"
+            + "      @Override\n"
+            + "      String code() {}\n"
+            + "    };\n"
+            + "\n"
+            + "    String code() {}\n"
+            + "  }\n"
+            + "}\n",
+        JavadocSources.strip(Arrays.asList(SOURCE)).get(0));
+  }
+
+  @Test
+  public void testIgnoresImplementationChanges() {
+    String changed =
+        SOURCE
+            .replace("return SIZE;", "return SIZE * 2;")
+            .replace("new Object()", "new StringBuilder()")
+            .replace("\"loaded\"", "\"initialized\"");
+
+    List<String> stripped = JavadocSources.strip(Arrays.asList(SOURCE, changed));
+
+    Assertions.assertEquals(stripped.get(0), stripped.get(1));
+    String documented = SOURCE.replace("/** Creates a widget. */", "/** Creates a new widget. */");
+    Assertions.assertNotEquals(
+        stripped.get(0), JavadocSources.strip(Arrays.asList(documented)).get(0));
+  }
+
+  @Test
+  public void testKeepsSourcesThatDoNotParse() {
+    String broken = "package p;\n\nclass Broken {\n  void run() { return\n}\n";
+
+    List<String> stripped = JavadocSources.strip(Arrays.asList(broken, SOURCE));
+
+    Assertions.assertEquals(broken, stripped.get(0));
+    Assertions.assertNotEquals(SOURCE, stripped.get(1));
+  }
+}
@@ -0,0 +1,75 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MetadataGenerationTest {
+  private static final String POM_TASK = ":lib:generatePomFileForJavaLibraryPublication";
+
+  @TempDir Path projectDir;
+
+  @Test
+  public void testMissingLicenseFailsBeforePomGeneration() throws IOException {
+    writeLibrary("");
+
+    BuildResult result = runner(POM_TASK).buildAndFail();
+
+    Assertions.assertTrue(
+        result
+            .getOutput()
+            .contains(
+                "A license type must be specified in the build DSL to use the Hypertrace publish plugin"));
+    Assertions.assertEquals(
+        TaskOutcome.FAILED, result.task(":lib:validatePublishExtension").getOutcome());
+    Assertions.assertNull(result.task(POM_TASK));
+  }
+
+  @Test
+  public void testPomIsGeneratedOnceValidated() throws IOException {
+    writeLibrary("license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n");
+
+    BuildResult result = runner(POM_TASK).build();
+
+    Assertions.assertEquals(TaskOutcome.SUCCESS, result.task(POM_TASK).getOutcome());
+    Assertions.assertTrue(
+        Files.exists(projectDir.resolve("lib/build/publications/javaLibrary/pom-default.xml")));
+  }
+
+  private void writeLibrary(String extensionConfiguration) throws IOException {
+    writeFile("settings.gradle", "rootProject.name = 'root'\ninclude 'lib'\n");
+    writeFile("build.gradle", "");
+    writeFile(
+        "lib/build.gradle",
+        "plugins {\n"
+            + "  id 'java-library'\n"
+            + "  id 'org.hypertrace.publish-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '1.0.0'\n"
+            + "hypertracePublish {\n"
+            + "  "
+            + extensionConfiguration
+            + "}\n");
+  }
+
+  private GradleRunner runner(String... arguments) {
+    return GradleRunner.create()
+        .withProjectDir(projectDir.toFile())
+        .withPluginClasspath()
+        .withArguments(arguments);
+  }
+
+  private void writeFile(String path, String content) throws IOException {
+    Path file = projectDir.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
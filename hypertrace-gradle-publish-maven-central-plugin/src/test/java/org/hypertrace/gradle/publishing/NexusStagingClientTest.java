@@ -0,0 +1,268 @@
+package org.hypertrace.gradle.publishing;
+
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.gradle.api.GradleException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class NexusStagingClientTest {
+  private static final Pattern STAGED_REPOSITORY_ID =
+      Pattern.compile("\"stagedRepositoryIds\":\\[\"([^\"]+)\"\\]");
+
+  private HttpServer server;
+  // The stand-in's repositories, as type and remaining polls until the transition completes
+  private final Map<String, String> types = new ConcurrentHashMap<>();
+  private final Map<String, AtomicInteger> transitioningPolls = new ConcurrentHashMap<>();
+  private final List<String> requests = new CopyOnWriteArrayList<>();
+  private volatile String failingRepositoryId;
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+        "/service/local/staging/profiles",
+        exchange ->
+            respond(
+                exchange,
+                200,
+                "{\"data\":[{\"id\":\"1a\",\"name\":\"org.example\"},"
+                    + "{\"id\":\"2b\",\"name\":\"org.hypertrace\",\"mode\":\"BOTH\"}]}"));
+    server.createContext(
+        "/service/local/staging/profile_repositories/2b",
+        exchange ->
+            respond(
+                exchange,
+                200,
+                "{\"data\":["
+                    + repository("orghypertrace-1001", "open", false)
+                    + "},"
+                    + repository("orghypertrace-1002", "open", false)
+                    + "},"
+                    + repository("orghypertrace-1000", "closed", false)
+                    + "}]}"));
+    server.createContext(
+        "/service/local/repositories/orghypertrace-1002/content/org/hypertrace/lib/1.0/lib-1.0.pom",
+        exchange -> respond(exchange, 200, ""));
+    server.createContext("/service/local/repositories/", exchange -> respond(exchange, 404, ""));
+    server.createContext("/service/local/staging/bulk/", this::transition);
+    server.createContext("/service/local/staging/repository/", this::repositoryStatus);
+    server.start();
+    types.put("orghypertrace-1000", "closed");
+    types.put("orghypertrace-1001", "open");
+    types.put("orghypertrace-1002", "open");
+  }
+
+  @AfterEach
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testFindsRepositoriesOfPackageGroupProfile() throws IOException {
+    try (NexusStagingClient client = newClient()) {
+      String profileId = client.findProfileId("org.hypertrace");
+      Assertions.assertEquals("2b", profileId);
+      Assertions.assertEquals(
+          Arrays.asList("orghypertrace-1001", "orghypertrace-1002"),
+          client.findRepositories(profileId, NexusStagingClient.TYPE_OPEN));
+      Assertions.assertEquals(
+          Collections.singletonList("orghypertrace-1000"),
+          client.findRepositories(profileId, NexusStagingClient.TYPE_CLOSED));
+      Assertions.assertThrows(IOException.class, () -> client.findProfileId("org.missing"));
+    }
+  }
+
+  @Test
+  public void testRefusesToPickAmongSeveralRepositoriesWithoutPublishedPoms() throws IOException {
+    try (NexusStagingClient client = newClient()) {
+      Assertions.assertEquals(
+          Collections.singletonList("orghypertrace-1000"),
+          ReleaseStagingRepositories.findRepositories(
+              client, "org.hypertrace", NexusStagingClient.TYPE_CLOSED, Collections.emptySet()));
+      GradleException exception =
+          Assertions.assertThrows(
+              GradleException.class,
+              () ->
+                  ReleaseStagingRepositories.findRepositories(
+                      client,
+                      "org.hypertrace",
+                      NexusStagingClient.TYPE_OPEN,
+                      Collections.emptySet()));
+      Assertions.assertTrue(exception.getMessage().contains("orghypertrace-1002"));
+    }
+    Assertions.assertTrue(requests.isEmpty());
+  }
+
+  @Test
+  public void testPicksRepositoriesHoldingPublishedPoms() throws IOException {
+    Set<String> publishedPoms =
+        new LinkedHashSet<>(
+            Arrays.asList(
+                "org/hypertrace/other/1.0/other-1.0.pom", "org/hypertrace/lib/1.0/lib-1.0.pom"));
+    try (NexusStagingClient client = newClient()) {
+      Assertions.assertEquals(
+          Collections.singletonList("orghypertrace-1002"),
+          ReleaseStagingRepositories.findRepositories(
+              client, "org.hypertrace", NexusStagingClient.TYPE_OPEN, publishedPoms));
+      GradleException exception =
+          Assertions.assertThrows(
+              GradleException.class,
+              () ->
+                  ReleaseStagingRepositories.findRepositories(
+                      client, "org.hypertrace", NexusStagingClient.TYPE_CLOSED, publishedPoms));
+      Assertions.assertTrue(exception.getMessage().contains("orghypertrace-1000"));
+    }
+    Assertions.assertTrue(requests.isEmpty());
+  }
+
+  @Test
+  public void testWritesBulkRequestAsJson() throws IOException {
+    JsonObject data =
+        NexusStagingClient.object(
+                NexusStagingClient.bulkRequest("orghypertrace-1001", "a \"quoted\" release"))
+            .getAsJsonObject("data");
+    Assertions.assertEquals(
+        "orghypertrace-1001", data.getAsJsonArray("stagedRepositoryIds").get(0).getAsString());
+    Assertions.assertEquals("a \"quoted\" release", NexusStagingClient.field(data, "description"));
+    Assertions.assertEquals("true", NexusStagingClient.field(data, "autoDropAfterRelease"));
+  }
+
+  @Test
+  public void testClosesAndReleasesRepositoriesIndependently() throws Exception {
+    try (NexusStagingClient client = newClient()) {
+      CompletableFuture<Void> first =
+          client.closeAndReleaseRepository("orghypertrace-1001", "release");
+      CompletableFuture<Void> second =
+          client.closeAndReleaseRepository("orghypertrace-1002", "release");
+      CompletableFuture.allOf(first, second).get(10, TimeUnit.SECONDS);
+    }
+
+    Assertions.assertFalse(types.containsKey("orghypertrace-1001"));
+    Assertions.assertFalse(types.containsKey("orghypertrace-1002"));
+    // Both repositories are closing before either is released
+    int firstRelease = requests.indexOf("promote orghypertrace-1001");
+    Assertions.assertTrue(requests.indexOf("close orghypertrace-1001") < firstRelease);
+    Assertions.assertTrue(
+        requests.indexOf("close orghypertrace-1002") < firstRelease, requests.toString());
+  }
+
+  @Test
+  public void testFailedCloseCompletesExceptionally() {
+    failingRepositoryId = "orghypertrace-1001";
+
+    try (NexusStagingClient client = newClient()) {
+      ExecutionException exception =
+          Assertions.assertThrows(
+              ExecutionException.class,
+              () ->
+                  client
+                      .closeAndReleaseRepository("orghypertrace-1001", "release")
+                      .get(10, TimeUnit.SECONDS));
+      Assertions.assertTrue(exception.getCause().getMessage().contains("Missing signature"));
+    }
+    Assertions.assertFalse(requests.contains("promote orghypertrace-1001"));
+  }
+
+  private NexusStagingClient newClient() {
+    return new NexusStagingClient(
+        URI.create("http://localhost:" + server.getAddress().getPort() + "/service/local"),
+        "user",
+        "password",
+        Duration.ofMillis(10),
+        Duration.ofMillis(50));
+  }
+
+  private void transition(HttpExchange exchange) throws IOException {
+    String operation = exchange.getRequestURI().getPath().replaceFirst(".*/", "");
+    Matcher matcher = STAGED_REPOSITORY_ID.matcher(read(exchange.getRequestBody()));
+    if (!"Basic dXNlcjpwYXNzd29yZA==".equals(
+            exchange.getRequestHeaders().getFirst("Authorization"))
+        || !matcher.find()) {
+      respond(exchange, 400, "");
+      return;
+    }
+    String repositoryId = matcher.group(1);
+    requests.add(operation + " " + repositoryId);
+    types.put(repositoryId, "close".equals(operation) ? "closed" : "released");
+    transitioningPolls.put(repositoryId, new AtomicInteger(3));
+    respond(exchange, 201, "");
+  }
+
+  private void repositoryStatus(HttpExchange exchange) throws IOException {
+    String path = exchange.getRequestURI().getPath();
+    if (path.endsWith("/activity")) {
+      respond(exchange, 200, "[{\"name\":\"close\",\"events\":[\"Missing signature\"]}]");
+      return;
+    }
+    String repositoryId = path.replaceFirst(".*/", "");
+    String type = types.get(repositoryId);
+    if (type == null) {
+      respond(exchange, 404, "");
+      return;
+    }
+    boolean transitioning = transitioningPolls.get(repositoryId).decrementAndGet() > 0;
+    if (!transitioning && "released".equals(type)) {
+      // Dropped once released
+      types.remove(repositoryId);
+    }
+    if (!transitioning && repositoryId.equals(failingRepositoryId)) {
+      respond(exchange, 200, repository(repositoryId, "open", false) + ",\"notifications\":1}");
+      return;
+    }
+    respond(exchange, 200, repository(repositoryId, type, transitioning) + "}");
+  }
+
+  // Left unterminated so that fields can be appended
+  private static String repository(String repositoryId, String type, boolean transitioning) {
+    return "{\"profileId\":\"2b\",\"repositoryId\":\""
+        + repositoryId
+        + "\",\"type\":\""
+        + type
+        + "\",\"transitioning\":"
+        + transitioning;
+  }
+
+  private static String read(InputStream inputStream) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = inputStream.read(buffer)) != -1) {
+      outputStream.write(buffer, 0, read);
+    }
+    return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+    try (OutputStream outputStream = exchange.getResponseBody()) {
+      outputStream.write(bytes);
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PublishPreflightTest {
+  private static final String RELEASES_PATH = "releases/";
+  private static final String OSSRH_DEPLOY_PATH = "service/local/staging/deploy/maven2/";
+  private static final String CENTRAL_LIBRARY_POM = "org/hypertrace/test/c/1.0.0/c-1.0.0.pom";
+
+  @TempDir Path projectDir;
+
+  private MavenRepositoryServer server;
+
+  @BeforeEach
+  public void writeBuild() throws IOException {
+    // No credentials, as Maven Central is looked up anonymously
+    server = MavenRepositoryServer.start().withRedeployment(false);
+    writeFile("settings.gradle", "rootProject.name = 'root'\ninclude 'a', 'b', 'c'\n");
+    writeFile("build.gradle", "plugins {\n  id 'org.hypertrace.publish-plugin'\n}\n");
+    writeFile(
+        "gradle.properties",
+        "maven_repo_url=" + server.getUrl() + "\nmaven_user=user\nmaven_password=password\n");
+    for (String name : Arrays.asList("a", "b")) {
+      writeFile(
+          name + "/build.gradle",
+          "plugins {\n"
+              + "  id 'java-library'\n"
+              + "  id 'org.hypertrace.publish-plugin'\n"
+              + "}\n"
+              + "group = 'org.hypertrace.test'\n"
+              + "version = '1.0.0'\n"
+              + "hypertracePublish {\n"
+              + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+              + "}\n");
+    }
+  }
+
+  @AfterEach
+  public void stopServer() {
+    server.close();
+  }
+
+  @Test
+  public void testReportsEveryProblemBeforeAnyUpload() throws IOException {
+    writeMavenCentralLibrary(null);
+    MavenRepositoryClient client =
+        new MavenRepositoryClient(
+            new RemoteRepository("seed", server.getUrl(), "user", "password"));
+    client.put("org/hypertrace/test/a/1.0.0/a-1.0.0.pom", new byte[0]);
+    client.put(RELEASES_PATH + CENTRAL_LIBRARY_POM, new byte[0]);
+
+    BuildResult result = runner().buildAndFail();
+
+    String output = result.getOutput();
+    Assertions.assertTrue(output.contains("Publish preflight found 3 problems"), output);
+    Assertions.assertTrue(
+        output.contains("org.hypertrace.test:a:1.0.0 (:a) is already published to maven"), output);
+    Assertions.assertTrue(
+        output.contains(
+            "org.hypertrace.test:c:1.0.0 (:c) is already published to mavenCentralReleases"),
+        output);
+    Assertions.assertTrue(
+        output.contains(
+            "org.hypertrace.test:c:1.0.0 (:c) POM is missing <description>, required by Maven"
+                + " Central"),
+        output);
+    // Only the two seeded files were ever uploaded
+    Assertions.assertEquals(2, countRequests("PUT"));
+  }
+
+  @Test
+  public void testUploadsOnceEveryReleaseIsChecked() throws IOException {
+    writeMavenCentralLibrary("Says hello.");
+
+    runner().build();
+
+    for (String name : Arrays.asList("a", "b")) {
+      String pom = "org/hypertrace/test/" + name + "/1.0.0/" + name + "-1.0.0.pom";
+      Assertions.assertTrue(server.getPaths().contains(pom), name);
+      Assertions.assertEquals("HEAD", firstRequest(pom).getMethod(), name);
+    }
+    Assertions.assertEquals("HEAD", firstRequest(RELEASES_PATH + CENTRAL_LIBRARY_POM).getMethod());
+    Assertions.assertTrue(server.getPaths().contains(OSSRH_DEPLOY_PATH + CENTRAL_LIBRARY_POM));
+  }
+
+  private void writeMavenCentralLibrary(String description) throws IOException {
+    writeFile(
+        "c/build.gradle",
+        "plugins {\n"
+            + "  id 'java-library'\n"
+            + "  id 'org.hypertrace.publish-maven-central-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '1.0.0'\n"
+            + (description == null ? "" : "description = '" + description + "'\n")
+            + "hypertracePublishMavenCentral {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "  repoName.set('test')\n"
+            + "}\n");
+    writeFile(
+        "c/src/main/java/org/hypertrace/test/Greeting.java",
+        "package org.hypertrace.test;\n\n/** Says hello. */\npublic class Greeting {}\n");
+  }
+
+  private long countRequests(String method) {
+    return server.getRequests().stream()
+        .filter(request -> request.getMethod().equals(method))
+        .count();
+  }
+
+  private MavenRepositoryServer.Request firstRequest(String path) {
+    for (MavenRepositoryServer.Request request : server.getRequests()) {
+      if (request.getPath().equals(path)) {
+        return request;
+      }
+    }
+    throw new AssertionError("No request for " + path);
+  }
+
+  private GradleRunner runner() {
+    List<String> arguments =
+        new ArrayList<>(
+            Arrays.asList(
+                "publish",
+                // Uploads are staged, as Gradle's own publisher refuses plain HTTP repositories
+                "-Ppublish_parallel_uploads=4",
+                "-PossrhUrl=" + server.getUrl(),
+                "-PossrhUsername=user",
+                "-PossrhPassword=password",
+                "-PcentralReleasesUrl=" + server.getUrl() + RELEASES_PATH,
+                "-PsigningKey=" + TestSigningKey.armoredKey(),
+                "-PsigningPassword=" + TestSigningKey.PASSWORD));
+    return GradleRunner.create()
+        .withProjectDir(projectDir.toFile())
+        .withPluginClasspath()
+        .withArguments(arguments);
+  }
+
+  private void writeFile(String path, String content) throws IOException {
+    Path file = projectDir.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
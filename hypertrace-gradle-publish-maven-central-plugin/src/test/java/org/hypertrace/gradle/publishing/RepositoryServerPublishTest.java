@@ -0,0 +1,326 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RepositoryServerPublishTest {
+  private static final String LIBRARY_PATH = "org/hypertrace/test/lib/1.0.0/lib-1.0.0";
+  private static final String SNAPSHOT_PATH = "org/hypertrace/test/lib/1.0.0-SNAPSHOT/";
+  private static final String DISTRIBUTION_PATH = "org/hypertrace/test/app/1.0.0/app-1.0.0.zip";
+  private static final String OSSRH_DEPLOY_PATH = "service/local/staging/deploy/maven2/";
+
+  @TempDir Path projectDir;
+
+  private MavenRepositoryServer server;
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    server =
+        MavenRepositoryServer.start()
+            .withCredentials("user", "password")
+            .withChecksumPolicy(MavenRepositoryServer.ChecksumPolicy.VERIFY)
+            .withRedeployment(false);
+    writeFile("settings.gradle", "rootProject.name = 'root'\ninclude 'lib'\n");
+    writeFile("build.gradle", "");
+    writeFile(
+        "lib/src/main/java/org/hypertrace/test/Greeting.java",
+        "package org.hypertrace.test;\n\n/** Says hello. */\npublic class Greeting {}\n");
+  }
+
+  @AfterEach
+  public void stopServer() {
+    server.close();
+  }
+
+  @Test
+  public void testStagedUploadsRetryInjectedFaults() throws IOException {
+    writeMavenRepositoryLibrary();
+    server
+        .inject(RepositoryFault.status(503).forPaths(".*\\.jar").times(2))
+        .inject(RepositoryFault.connectionReset().forPaths(".*\\.pom"))
+        .inject(RepositoryFault.tooManyRequests(1).forPaths(".*\\.module"));
+
+    run("publish");
+
+    for (String extension : Arrays.asList(".jar", ".pom", ".module")) {
+      Assertions.assertTrue(server.getPaths().contains(LIBRARY_PATH + extension), extension);
+      Assertions.assertTrue(
+          server.getPaths().contains(LIBRARY_PATH + extension + ".sha1"), extension);
+    }
+    Assertions.assertArrayEquals(
+        Files.readAllBytes(projectDir.resolve("lib/build/libs/lib-1.0.0.jar")),
+        server.getContent(LIBRARY_PATH + ".jar"));
+    Assertions.assertEquals(Arrays.asList(503, 503, 201), statuses("PUT", LIBRARY_PATH + ".jar"));
+    Assertions.assertEquals(Arrays.asList(0, 201), statuses("PUT", LIBRARY_PATH + ".pom"));
+    Assertions.assertEquals(Arrays.asList(429, 201), statuses("PUT", LIBRARY_PATH + ".module"));
+  }
+
+  @Test
+  public void testPersistentFailureFailsPublish() throws IOException {
+    writeMavenRepositoryLibrary();
+    server.inject(RepositoryFault.status(500).forPaths(".*\\.jar").always());
+
+    BuildResult result = runner("publish").buildAndFail();
+
+    Assertions.assertTrue(
+        result.getOutput().contains("Unexpected status 500 uploading " + LIBRARY_PATH + ".jar"),
+        result.getOutput());
+    Assertions.assertEquals(Arrays.asList(500, 500, 500), statuses("PUT", LIBRARY_PATH + ".jar"));
+  }
+
+  @Test
+  public void testDeprecatedCredentialsStillPublish() throws IOException {
+    writeMavenRepositoryLibrary();
+    writeFile(
+        "gradle.properties",
+        "maven_repo_url=" + server.getUrl() + "\nmaven_user=user\nmaven_password=password\n");
+
+    BuildResult result = run("publish");
+
+    Assertions.assertTrue(server.getPaths().contains(LIBRARY_PATH + ".jar"));
+    Assertions.assertTrue(
+        result
+            .getOutput()
+            .contains("The maven_user gradle property is deprecated, rename it to mavenUsername"));
+  }
+
+  @Test
+  public void testSnapshotBuildNumberIncreasesOnEachPublish() throws IOException {
+    writeMavenRepositoryLibrary("1.0.0-SNAPSHOT");
+
+    run("publish");
+    String first = snapshotVersion();
+    // The repository refuses redeployment, so reusing a file name would fail this publish
+    run("publish");
+    String second = snapshotVersion();
+
+    Assertions.assertTrue(first.endsWith("-1"), first);
+    Assertions.assertTrue(second.endsWith("-2"), second);
+    for (String version : Arrays.asList(first, second)) {
+      Assertions.assertTrue(
+          server.getPaths().contains(SNAPSHOT_PATH + "lib-1.0.0-" + version + ".jar"), version);
+      Assertions.assertTrue(
+          server.getPaths().contains(SNAPSHOT_PATH + "lib-1.0.0-" + version + ".pom.sha1"),
+          version);
+    }
+  }
+
+  @Test
+  public void testOssrhUploadsSignedPublication() throws IOException {
+    writeFile(
+        "lib/build.gradle",
+        "plugins {\n"
+            + "  id 'java-library'\n"
+            + "  id 'org.hypertrace.publish-maven-central-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '1.0.0'\n"
+            + "hypertracePublishMavenCentral {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "  repoName.set('test')\n"
+            + "}\n");
+    server.inject(RepositoryFault.status(502).forPaths(".*-sources\\.jar"));
+
+    run(
+        "publish",
+        "-PossrhUrl=" + server.getUrl(),
+        "-PossrhUsername=user",
+        "-PossrhPassword=password",
+        "-PsigningKey=" + TestSigningKey.armoredKey(),
+        "-PsigningPassword=" + TestSigningKey.PASSWORD);
+
+    for (String file : Arrays.asList(".jar", "-sources.jar", "-javadoc.jar", ".pom", ".module")) {
+      Assertions.assertTrue(
+          server.getPaths().contains(OSSRH_DEPLOY_PATH + LIBRARY_PATH + file), file);
+      Assertions.assertTrue(
+          server.getPaths().contains(OSSRH_DEPLOY_PATH + LIBRARY_PATH + file + ".asc"), file);
+    }
+    Assertions.assertEquals(
+        Arrays.asList(502, 201),
+        statuses("PUT", OSSRH_DEPLOY_PATH + LIBRARY_PATH + "-sources.jar"));
+  }
+
+  @Test
+  public void testOssrhSignsWithTheGivenKeyId() throws IOException {
+    writeFile(
+        "lib/build.gradle",
+        "plugins {\n"
+            + "  id 'java-library'\n"
+            + "  id 'org.hypertrace.publish-maven-central-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '1.0.0'\n"
+            + "hypertracePublishMavenCentral {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "  repoName.set('test')\n"
+            + "}\n");
+
+    run(
+        "publish",
+        "-PossrhUrl=" + server.getUrl(),
+        "-PossrhUsername=user",
+        "-PossrhPassword=password",
+        "-PsigningKeyId=" + TestSigningKey.KEY_ID,
+        "-PsigningKey=" + TestSigningKey.armoredKey(),
+        "-PsigningPassword=" + TestSigningKey.PASSWORD);
+
+    Assertions.assertTrue(
+        server.getPaths().contains(OSSRH_DEPLOY_PATH + LIBRARY_PATH + ".jar.asc"));
+  }
+
+  @Test
+  public void testStreamedDistributionIsUploadedOnce() throws IOException {
+    writeStreamedDistribution();
+
+    run("publish", "-Ppublish_streaming_distribution=true");
+
+    Assertions.assertArrayEquals(
+        Files.readAllBytes(projectDir.resolve("app/build/hypertrace-publish/archives/app-1.0.0.zip")),
+        server.getContent(DISTRIBUTION_PATH));
+    // The repository refuses redeployment, so a second upload of any of these would fail
+    for (String file : Arrays.asList("", ".md5", ".sha1", ".sha256", ".sha512")) {
+      Assertions.assertEquals(
+          Collections.singletonList(201), statuses("PUT", DISTRIBUTION_PATH + file), file);
+    }
+    // Streamed while streamedDistZip ran, before the publication was even staged
+    Assertions.assertTrue(
+        request("PUT", DISTRIBUTION_PATH).getEndNanos()
+            < request("PUT", "org/hypertrace/test/app/1.0.0/app-1.0.0.pom").getStartNanos());
+  }
+
+  @Test
+  public void testFailedStreamFallsBackToStagedUpload() throws IOException {
+    writeStreamedDistribution();
+    server.inject(RepositoryFault.status(503).forPaths(".*\\.zip"));
+
+    run("publish", "-Ppublish_streaming_distribution=true");
+
+    Assertions.assertArrayEquals(
+        Files.readAllBytes(projectDir.resolve("app/build/hypertrace-publish/archives/app-1.0.0.zip")),
+        server.getContent(DISTRIBUTION_PATH));
+    Assertions.assertEquals(Arrays.asList(503, 201), statuses("PUT", DISTRIBUTION_PATH));
+    Assertions.assertEquals(
+        Collections.singletonList(201), statuses("PUT", DISTRIBUTION_PATH + ".sha1"));
+  }
+
+  @Test
+  public void testDistributionIsOnlyStreamedWhenPublishing() throws IOException {
+    writeStreamedDistribution();
+
+    run(":app:streamedDistZip", "-Ppublish_streaming_distribution=true");
+
+    Assertions.assertTrue(
+        Files.isRegularFile(
+            projectDir.resolve("app/build/hypertrace-publish/archives/app-1.0.0.zip")));
+    Assertions.assertEquals(Collections.emptyList(), server.getRequests());
+  }
+
+  private void writeStreamedDistribution() throws IOException {
+    writeFile("settings.gradle", "rootProject.name = 'root'\ninclude 'app'\n");
+    writeFile(
+        "gradle.properties",
+        "maven_repo_url=" + server.getUrl() + "\nmavenUsername=user\nmavenPassword=password\n");
+    writeFile(
+        "app/build.gradle",
+        "plugins {\n"
+            + "  id 'distribution'\n"
+            + "  id 'org.hypertrace.publish-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '1.0.0'\n"
+            + "hypertracePublish {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "}\n");
+    writeFile("app/src/main/dist/README.txt", "Says hello.\n");
+    // Incompressible, so the archive spans many buffered chunks
+    byte[] data = new byte[4 * 1024 * 1024];
+    new Random(42).nextBytes(data);
+    Path dataFile = projectDir.resolve("app/src/main/dist/lib/data.bin");
+    Files.createDirectories(dataFile.getParent());
+    Files.write(dataFile, data);
+  }
+
+  private void writeMavenRepositoryLibrary() throws IOException {
+    writeMavenRepositoryLibrary("1.0.0");
+  }
+
+  private void writeMavenRepositoryLibrary(String version) throws IOException {
+    writeFile(
+        "gradle.properties",
+        "maven_repo_url=" + server.getUrl() + "\nmavenUsername=user\nmavenPassword=password\n");
+    writeFile(
+        "lib/build.gradle",
+        "plugins {\n"
+            + "  id 'java-library'\n"
+            + "  id 'org.hypertrace.publish-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '"
+            + version
+            + "'\n"
+            + "hypertracePublish {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "}\n");
+  }
+
+  // The timestamp and build number of the latest snapshot, as in its file names
+  private String snapshotVersion() throws IOException {
+    String version =
+        MavenMetadata.snapshotVersion(server.getContent(SNAPSHOT_PATH + "maven-metadata.xml"));
+    Assertions.assertNotNull(version);
+    return version;
+  }
+
+  private List<Integer> statuses(String method, String path) {
+    List<Integer> statuses = new ArrayList<>();
+    for (MavenRepositoryServer.Request request : server.getRequests()) {
+      if (request.getMethod().equals(method) && request.getPath().equals(path)) {
+        statuses.add(request.getStatus());
+      }
+    }
+    return statuses;
+  }
+
+  private MavenRepositoryServer.Request request(String method, String path) {
+    for (MavenRepositoryServer.Request request : server.getRequests()) {
+      if (request.getMethod().equals(method) && request.getPath().equals(path)) {
+        return request;
+      }
+    }
+    throw new AssertionError("No " + method + " " + path);
+  }
+
+  private BuildResult run(String... arguments) {
+    return runner(arguments).build();
+  }
+
+  private GradleRunner runner(String... arguments) {
+    List<String> allArguments = new ArrayList<>(Arrays.asList(arguments));
+    // Uploads are staged, as Gradle's own publisher refuses plain HTTP repositories
+    allArguments.add("-Ppublish_parallel_uploads=4");
+    return GradleRunner.create()
+        .withProjectDir(projectDir.toFile())
+        .withPluginClasspath()
+        .withArguments(allArguments);
+  }
+
+  private void writeFile(String path, String content) throws IOException {
+    Path file = projectDir.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,158 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ReproducibleArtifactsTest {
+  private static final List<String> OUTPUT_DIRECTORIES =
+      Arrays.asList(
+          "lib/build/libs",
+          "lib/build/publications",
+          "app/build/distributions",
+          "app/build/publications");
+
+  @TempDir Path tempDir;
+
+  @Test
+  public void testBuildsInSeparateCheckoutsProduceIdenticalArtifacts() throws IOException {
+    Path first = tempDir.resolve("first");
+    Path second = tempDir.resolve("second");
+    writeBuild(first);
+    writeBuild(second);
+    // The second checkout was made at another time, with a more permissive umask
+    try (Stream<Path> files = Files.walk(second)) {
+      for (Path file : files.collect(Collectors.toList())) {
+        Files.setLastModifiedTime(file, FileTime.from(86_400, TimeUnit.SECONDS));
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file);
+        permissions.add(PosixFilePermission.GROUP_WRITE);
+        permissions.add(PosixFilePermission.OTHERS_READ);
+        Files.setPosixFilePermissions(file, permissions);
+      }
+    }
+
+    build(first);
+    build(second);
+
+    for (String directory : OUTPUT_DIRECTORIES) {
+      List<Path> outputs = listFiles(first.resolve(directory));
+      Assertions.assertFalse(outputs.isEmpty(), directory);
+      Assertions.assertEquals(outputs, listFiles(second.resolve(directory)));
+      for (Path output : outputs) {
+        Assertions.assertArrayEquals(
+            Files.readAllBytes(first.resolve(directory).resolve(output)),
+            Files.readAllBytes(second.resolve(directory).resolve(output)),
+            directory + "/" + output);
+      }
+    }
+  }
+
+  private static void writeBuild(Path projectDir) throws IOException {
+    writeFile(projectDir, "settings.gradle", "rootProject.name = 'root'\ninclude 'lib', 'app'\n");
+    writeFile(projectDir, "build.gradle", "");
+    writeFile(
+        projectDir,
+        "lib/build.gradle",
+        "plugins {\n"
+            + "  id 'java-library'\n"
+            + "  id 'org.hypertrace.publish-maven-central-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '1.0.0'\n"
+            + "hypertracePublishMavenCentral {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "  repoName.set('test')\n"
+            + "}\n");
+    writeFile(
+        projectDir,
+        "lib/src/main/java/org/hypertrace/test/Greeting.java",
+        "package org.hypertrace.test;\n"
+            + "\n"
+            + "/** Says hello. */\n"
+            + "public class Greeting {\n"
+            + "  /** @return the greeting */\n"
+            + "  public String get() {\n"
+            + "    return \"hello\";\n"
+            + "  }\n"
+            + "}\n");
+    writeFile(projectDir, "lib/src/main/resources/greeting.properties", "greeting=hello\n");
+    writeFile(
+        projectDir,
+        "app/build.gradle",
+        "plugins {\n"
+            + "  id 'application'\n"
+            + "  id 'org.hypertrace.publish-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '1.0.0'\n"
+            + "application {\n"
+            + "  mainClass.set('org.hypertrace.test.App')\n"
+            + "}\n"
+            + "dependencies {\n"
+            + "  implementation project(':lib')\n"
+            + "}\n"
+            + "hypertracePublish {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "}\n");
+    writeFile(
+        projectDir,
+        "app/src/main/java/org/hypertrace/test/App.java",
+        "package org.hypertrace.test;\n"
+            + "\n"
+            + "public class App {\n"
+            + "  public static void main(String[] args) {\n"
+            + "    System.out.println(new Greeting().get());\n"
+            + "  }\n"
+            + "}\n");
+    Path script = writeFile(projectDir, "app/src/dist/bin/greet.sh", "#!/bin/sh\necho hello\n");
+    Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwxr-xr-x"));
+  }
+
+  private static void build(Path projectDir) {
+    GradleRunner.create()
+        .withProjectDir(projectDir.toFile())
+        .withPluginClasspath()
+        .withArguments(
+            ":lib:jar",
+            ":lib:sourcesJar",
+            ":lib:javadocJar",
+            ":lib:generatePomFileForJavaLibraryPublication",
+            ":lib:generateMetadataFileForJavaLibraryPublication",
+            ":app:distZip",
+            ":app:generatePomFileForDistributionZipPublication",
+            "--configuration-cache")
+        .build();
+  }
+
+  private static List<Path> listFiles(Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      return files
+          .filter(Files::isRegularFile)
+          .map(directory::relativize)
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static Path writeFile(Path projectDir, String path, String content)
+      throws IOException {
+    Path file = projectDir.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+}
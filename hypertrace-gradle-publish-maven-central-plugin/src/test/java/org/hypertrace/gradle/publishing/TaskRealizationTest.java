@@ -0,0 +1,72 @@
+package org.hypertrace.gradle.publishing;
+
+import java.util.Set;
+import java.util.TreeSet;
+import org.gradle.api.Project;
+import org.gradle.api.internal.project.ProjectInternal;
+import org.gradle.api.publish.PublishingExtension;
+import org.gradle.api.publish.maven.MavenPublication;
+import org.gradle.plugins.signing.SigningExtension;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TaskRealizationTest {
+
+  @Test
+  public void testPluginRealizesNoAdditionalTasks() {
+    Set<String> baseline = realizedTaskNames(false);
+    Set<String> withPlugin = realizedTaskNames(true);
+
+    withPlugin.removeAll(baseline);
+    Assertions.assertEquals(0, withPlugin.size(), "Unexpectedly realized tasks: " + withPlugin);
+  }
+
+  @Test
+  public void testDistributionPublicationLeavesDistZipUnrealized() {
+    Set<String> realized = new TreeSet<>();
+    Project project = ProjectBuilder.builder().withName("dist").build();
+    project.getTasks().configureEach(task -> realized.add(task.getName()));
+
+    project.getPluginManager().apply("distribution");
+    project.getPluginManager().apply("org.hypertrace.publish-plugin");
+    ((ProjectInternal) project).evaluate();
+
+    Assertions.assertFalse(realized.contains("distZip"), "Unexpectedly realized: " + realized);
+  }
+
+  private static Set<String> realizedTaskNames(boolean applyPublishPlugin) {
+    Set<String> realized = new TreeSet<>();
+    Project root = ProjectBuilder.builder().withName("root").build();
+    Project project = ProjectBuilder.builder().withName("lib").withParent(root).build();
+    project.getTasks().configureEach(task -> realized.add(task.getPath()));
+
+    if (applyPublishPlugin) {
+      root.getPluginManager().apply("org.hypertrace.publish-maven-central-plugin");
+    }
+    project.getPluginManager().apply("java-library");
+    if (applyPublishPlugin) {
+      project.getPluginManager().apply("org.hypertrace.publish-maven-central-plugin");
+      HypertracePublishMavenCentralExtension extension =
+          project.getExtensions().getByType(HypertracePublishMavenCentralExtension.class);
+      extension.license.set(License.APACHE_2_0);
+      extension.repoName.set("test");
+    } else {
+      // The hand-written equivalent, as signing a publication creates its Sign task eagerly
+      project.getPluginManager().apply("maven-publish");
+      project.getPluginManager().apply("signing");
+      MavenPublication publication =
+          project
+              .getExtensions()
+              .getByType(PublishingExtension.class)
+              .getPublications()
+              .create("javaLibrary", MavenPublication.class);
+      publication.from(project.getComponents().getByName("java"));
+      project.getExtensions().getByType(SigningExtension.class).sign(publication);
+    }
+    // Configures the projects as `./gradlew help` would, running their afterEvaluate actions
+    ((ProjectInternal) root).evaluate();
+    ((ProjectInternal) project).evaluate();
+    return realized;
+  }
+}
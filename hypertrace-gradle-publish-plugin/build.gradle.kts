@@ -20,3 +20,19 @@ gradlePlugin {
     }
   }
 }
+
+dependencies {
+  testImplementation("org.junit.jupiter:junit-jupiter-api:5.7.1")
+  testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.7.1")
+  testImplementation(gradleTestKit())
+  testImplementation(project(":hypertrace-gradle-publish-test-fixtures"))
+}
+
+tasks {
+  test {
+    useJUnitPlatform()
+    reports {
+      junitXml.isOutputPerTestCase = true
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package org.hypertrace.gradle.publishing;
+
+import javax.annotation.Nullable;
+
+/** Timing of one file handled while publishing: uploaded to a repository, signed or checksummed. */
+public class ArtifactMetric {
+  public static final String OPERATION_UPLOAD = "upload";
+  public static final String OPERATION_SIGN = "sign";
+  public static final String OPERATION_CHECKSUM = "checksum";
+  /** The status of operations that made no http request, or failed before a response. */
+  public static final int NO_STATUS = 0;
+
+  private final String operation;
+  @Nullable private final String repository;
+  private final String artifact;
+  private final long bytes;
+  private final long startMillis;
+  private final long durationMillis;
+  private final int status;
+  private final int retries;
+  @Nullable private final String failure;
+
+  public ArtifactMetric(
+      String operation,
+      @Nullable String repository,
+      String artifact,
+      long bytes,
+      long startMillis,
+      long durationMillis,
+      int status,
+      int retries,
+      @Nullable String failure) {
+    this.operation = operation;
+    this.repository = repository;
+    this.artifact = artifact;
+    this.bytes = bytes;
+    this.startMillis = startMillis;
+    this.durationMillis = durationMillis;
+    this.status = status;
+    this.retries = retries;
+    this.failure = failure;
+  }
+
+  public String getOperation() {
+    return operation;
+  }
+
+  /** The name of the repository uploaded to, or null for local operations. */
+  @Nullable
+  public String getRepository() {
+    return repository;
+  }
+
+  /** The repository path of an upload, or the file name of a local operation. */
+  public String getArtifact() {
+    return artifact;
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  /** Epoch millis at which the operation started. */
+  public long getStartMillis() {
+    return startMillis;
+  }
+
+  public long getDurationMillis() {
+    return durationMillis;
+  }
+
+  public long getEndMillis() {
+    return startMillis + durationMillis;
+  }
+
+  public long getThroughputBytesPerSecond() {
+    return bytes * 1000 / Math.max(1, durationMillis);
+  }
+
+  /** The final http status, or {@link #NO_STATUS}. */
+  public int getStatus() {
+    return status;
+  }
+
+  /** Attempts made after the first one, including resumed chunks of a large upload. */
+  public int getRetries() {
+    return retries;
+  }
+
+  @Nullable
+  public String getFailure() {
+    return failure;
+  }
+
+  public boolean isFailed() {
+    return failure != null;
+  }
+
+  @Override
+  public String toString() {
+    return operation + " " + artifact + (repository == null ? "" : " to " + repository);
+  }
+}
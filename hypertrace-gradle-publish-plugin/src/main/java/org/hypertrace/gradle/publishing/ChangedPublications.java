@@ -0,0 +1,265 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ProjectDependency;
+import org.gradle.api.attributes.Usage;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.publish.PublishingExtension;
+import org.gradle.api.publish.maven.MavenPublication;
+import org.gradle.api.publish.maven.tasks.GenerateMavenPom;
+import org.gradle.api.publish.maven.tasks.PublishToMavenRepository;
+import org.gradle.api.tasks.TaskProvider;
+
+/**
+ * Opt-in publishing mode, enabled by the {@value #CHANGED_ONLY_PROPERTY} gradle property, where a
+ * snapshot is only published if it or one of its project dependencies changed since it was last
+ * published. {@link FingerprintPublications} fingerprints each project's publications along with
+ * the fingerprints of its project dependencies, which it finds through a variant of each
+ * dependency, so a change reaches every dependent. The fingerprint each publication was published
+ * with is kept in a manifest under the root project's {@code .gradle} directory, or at the path of
+ * the {@value #MANIFEST_PROPERTY} gradle property, and publish tasks with a matching fingerprint
+ * are skipped. It does not apply alongside the {@value PublishOutbox#OUTBOX_PROPERTY}, whose
+ * entries are only uploaded later.
+ */
+public final class ChangedPublications {
+  public static final String CHANGED_ONLY_PROPERTY = "publish_changed_only";
+  public static final String MANIFEST_PROPERTY = "publish_changed_only_manifest";
+  static final String FINGERPRINT_TASK_NAME = "fingerprintPublications";
+  private static final String MANIFEST_FILE =
+      ".gradle/hypertrace-publish/published-fingerprints.properties";
+  private static final String FINGERPRINT_FILE = "hypertrace-publish/publication-fingerprint.txt";
+  private static final String FINGERPRINT_ELEMENTS_CONFIGURATION_NAME =
+      "publishFingerprintElements";
+  private static final String FINGERPRINTS_CONFIGURATION_NAME = "publishFingerprints";
+  private static final String FINGERPRINT_USAGE = "hypertrace-publish-fingerprint";
+  // The published variants, whose project dependencies become dependencies of the published POMs
+  private static final List<String> PUBLISHED_CONFIGURATIONS =
+      Arrays.asList("apiElements", "runtimeElements");
+
+  private ChangedPublications() {}
+
+  public static boolean isEnabled(Project project) {
+    return project
+            .getProviders()
+            .gradleProperty(CHANGED_ONLY_PROPERTY)
+            .map(Boolean::parseBoolean)
+            .getOrElse(false)
+        && !PublishOutbox.isEnabled(project);
+  }
+
+  public static void configure(Project project) {
+    if (!isEnabled(project)) {
+      return;
+    }
+    TaskProvider<FingerprintPublications> fingerprintTask = registerFingerprintTask(project);
+    Provider<RegularFile> fingerprintFile =
+        fingerprintTask.flatMap(FingerprintPublications::getFingerprintFile);
+    File manifestFile =
+        project
+            .getRootDir()
+            .toPath()
+            .resolve(
+                project.getProviders().gradleProperty(MANIFEST_PROPERTY).getOrElse(MANIFEST_FILE))
+            .toFile();
+    PublishingExtension publishing = project.getExtensions().getByType(PublishingExtension.class);
+
+    project
+        .getTasks()
+        .withType(PublishToMavenRepository.class)
+        .configureEach(
+            task -> {
+              // Staged publications are compared against the repositories they are uploaded to
+              boolean staged = StagedPublishing.isStagingTask(task);
+              Provider<List<RemoteRepository>> repositories =
+                  staged
+                      ? project
+                          .getTasks()
+                          .named(
+                              StagedPublishing.UPLOAD_TASK_NAME, UploadStagedPublications.class)
+                          .flatMap(UploadStagedPublications::getRepositories)
+                      : RemoteRepository.of(project.getProviders(), task)
+                          .map(Collections::singletonList);
+              Provider<List<String>> publications =
+                  project.provider(
+                      () ->
+                          Collections.singletonList(
+                              publicationKey(project, task.getPublication())));
+              Provider<Boolean> snapshot =
+                  project.provider(() -> isSnapshot(task.getPublication()));
+              task.dependsOn(fingerprintTask);
+              task.onlyIf(
+                  "the publication or its project dependencies changed since it was published",
+                  new PublicationChangedSpec(
+                      publications, snapshot, repositories, fingerprintFile, manifestFile));
+              if (!staged) {
+                task.doLast(
+                    new RecordPublishedFingerprints(
+                        publications, repositories, fingerprintFile, manifestFile));
+              }
+            });
+    // Staged publications are only published once uploaded
+    project
+        .getTasks()
+        .withType(UploadStagedPublications.class)
+        .configureEach(
+            task -> {
+              if (task instanceof DrainPublishOutbox) {
+                return;
+              }
+              Provider<List<String>> publications =
+                  project.provider(
+                      () -> {
+                        List<String> keys = new ArrayList<>();
+                        publishing
+                            .getPublications()
+                            .withType(MavenPublication.class)
+                            .forEach(publication -> keys.add(publicationKey(project, publication)));
+                        return keys;
+                      });
+              Provider<Boolean> snapshot =
+                  project.provider(
+                      () ->
+                          publishing.getPublications().withType(MavenPublication.class).stream()
+                              .allMatch(ChangedPublications::isSnapshot));
+              task.dependsOn(fingerprintTask);
+              task.onlyIf(
+                  "a publication or its project dependencies changed since it was published",
+                  new PublicationChangedSpec(
+                      publications,
+                      snapshot,
+                      task.getRepositories(),
+                      fingerprintFile,
+                      manifestFile));
+              task.doLast(
+                  new RecordPublishedFingerprints(
+                      publications, task.getRepositories(), fingerprintFile, manifestFile));
+            });
+  }
+
+  private static TaskProvider<FingerprintPublications> registerFingerprintTask(Project project) {
+    Configuration dependencyFingerprints =
+        project
+            .getConfigurations()
+            .create(
+                FINGERPRINTS_CONFIGURATION_NAME,
+                configuration -> {
+                  configuration.setCanBeConsumed(false);
+                  configuration.setCanBeResolved(true);
+                  configuration.attributes(
+                      attributes ->
+                          attributes.attribute(
+                              Usage.USAGE_ATTRIBUTE,
+                              project.getObjects().named(Usage.class, FINGERPRINT_USAGE)));
+                });
+    project
+        .getConfigurations()
+        .matching(configuration -> PUBLISHED_CONFIGURATIONS.contains(configuration.getName()))
+        .configureEach(
+            configuration ->
+                configuration
+                    .getAllDependencies()
+                    .withType(ProjectDependency.class)
+                    .configureEach(
+                        dependency -> {
+                          if (!dependency.getPath().equals(project.getPath())) {
+                            project
+                                .getDependencies()
+                                .add(
+                                    FINGERPRINTS_CONFIGURATION_NAME,
+                                    project
+                                        .getDependencies()
+                                        .project(
+                                            Collections.singletonMap(
+                                                "path", dependency.getPath())));
+                          }
+                        }));
+
+    Provider<ChecksumService> checksums = ChecksumService.register(project);
+    PublishingExtension publishing = project.getExtensions().getByType(PublishingExtension.class);
+    TaskProvider<FingerprintPublications> fingerprintTask =
+        project
+            .getTasks()
+            .register(
+                FINGERPRINT_TASK_NAME,
+                FingerprintPublications.class,
+                task -> {
+                  task.setDescription(
+                      "Fingerprints the publications along with their project dependencies");
+                  task.getProjectPath().set(project.getPath());
+                  publishing
+                      .getPublications()
+                      .withType(MavenPublication.class)
+                      .configureEach(publication -> addPublication(project, task, publication));
+                  // Dependencies that don't publish have no fingerprint variant and are skipped
+                  task.getDependencyFingerprints()
+                      .from(
+                          dependencyFingerprints
+                              .getIncoming()
+                              .artifactView(view -> view.lenient(true))
+                              .getFiles());
+                  task.getChecksums().set(checksums);
+                  task.usesService(checksums);
+                  task.getFingerprintFile()
+                      .set(project.getLayout().getBuildDirectory().file(FINGERPRINT_FILE));
+                });
+
+    project
+        .getConfigurations()
+        .create(
+            FINGERPRINT_ELEMENTS_CONFIGURATION_NAME,
+            configuration -> {
+              configuration.setCanBeConsumed(true);
+              configuration.setCanBeResolved(false);
+              configuration.attributes(
+                  attributes ->
+                      attributes.attribute(
+                          Usage.USAGE_ATTRIBUTE,
+                          project.getObjects().named(Usage.class, FINGERPRINT_USAGE)));
+            });
+    project
+        .getArtifacts()
+        .add(
+            FINGERPRINT_ELEMENTS_CONFIGURATION_NAME,
+            fingerprintTask.flatMap(FingerprintPublications::getFingerprintFile),
+            artifact -> artifact.builtBy(fingerprintTask));
+    return fingerprintTask;
+  }
+
+  private static void addPublication(
+      Project project, FingerprintPublications task, MavenPublication publication) {
+    // Signatures differ on every build, even of the same bytes
+    publication
+        .getArtifacts()
+        .matching(artifact -> !artifact.getExtension().endsWith("asc"))
+        .configureEach(
+            artifact -> {
+              task.getArtifacts().from(artifact.getFile());
+              task.dependsOn(artifact);
+            });
+    String pomTaskName =
+        "generatePomFileFor" + capitalize(publication.getName()) + "Publication";
+    TaskProvider<GenerateMavenPom> pomTask =
+        project.getTasks().named(pomTaskName, GenerateMavenPom.class);
+    task.getArtifacts().from(pomTask.map(GenerateMavenPom::getDestination));
+    task.dependsOn(pomTask);
+  }
+
+  private static String publicationKey(Project project, MavenPublication publication) {
+    return project.getPath() + "/" + publication.getName();
+  }
+
+  private static boolean isSnapshot(MavenPublication publication) {
+    return publication.getVersion().endsWith("-SNAPSHOT");
+  }
+
+  private static String capitalize(String name) {
+    return name.substring(0, 1).toUpperCase() + name.substring(1);
+  }
+}
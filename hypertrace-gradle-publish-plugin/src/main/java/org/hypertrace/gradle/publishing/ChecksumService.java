@@ -0,0 +1,98 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import org.gradle.api.Project;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Build-wide memo of published files' checksums. Each file is read once for all of the repository
+ * checksums, and every later consumer in the build reuses the result for as long as the file's
+ * size and modification time are unchanged.
+ */
+public abstract class ChecksumService implements BuildService<ChecksumService.Params> {
+  private static final String SERVICE_NAME = "hypertracePublishChecksums";
+
+  public interface Params extends BuildServiceParameters {
+    Property<PublishTelemetry> getTelemetry();
+  }
+
+  private final Map<FileVersion, Map<String, String>> checksums = new ConcurrentHashMap<>();
+
+  public static Provider<ChecksumService> register(Project project) {
+    Provider<PublishTelemetry> telemetry = PublishTelemetry.register(project);
+    return project
+        .getGradle()
+        .getSharedServices()
+        .registerIfAbsent(
+            SERVICE_NAME,
+            ChecksumService.class,
+            spec -> spec.getParameters().getTelemetry().set(telemetry));
+  }
+
+  /** Returns the hex checksum of the file for one of {@link Checksums#REPOSITORY_ALGORITHMS}. */
+  public String hex(File file, String algorithm) throws IOException {
+    return this.hex(file).get(algorithm);
+  }
+
+  /** Returns the hex checksums of the file, keyed by {@link Checksums#REPOSITORY_ALGORITHMS}. */
+  public Map<String, String> hex(File file) throws IOException {
+    FileVersion version = new FileVersion(file);
+    Map<String, String> fileChecksums = checksums.get(version);
+    if (fileChecksums == null) {
+      // Concurrent first reads of one file may both digest it, which is harmless
+      long startMillis = System.currentTimeMillis();
+      fileChecksums = Checksums.hex(file, Checksums.REPOSITORY_ALGORITHMS);
+      checksums.put(version, fileChecksums);
+      this.getParameters()
+          .getTelemetry()
+          .get()
+          .onArtifact(
+              new ArtifactMetric(
+                  ArtifactMetric.OPERATION_CHECKSUM,
+                  null,
+                  file.getName(),
+                  file.length(),
+                  startMillis,
+                  System.currentTimeMillis() - startMillis,
+                  ArtifactMetric.NO_STATUS,
+                  0,
+                  null));
+    }
+    return fileChecksums;
+  }
+
+  private static final class FileVersion {
+    private final String path;
+    private final long length;
+    private final long lastModified;
+
+    FileVersion(File file) {
+      this.path = file.getAbsolutePath();
+      this.length = file.length();
+      this.lastModified = file.lastModified();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof FileVersion)) {
+        return false;
+      }
+      FileVersion that = (FileVersion) other;
+      return path.equals(that.path)
+          && length == that.length
+          && lastModified == that.lastModified;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(path, length, lastModified);
+    }
+  }
+}
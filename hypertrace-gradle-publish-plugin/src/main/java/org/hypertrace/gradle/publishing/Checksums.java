@@ -0,0 +1,127 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class Checksums {
+  public static final String MD5 = "MD5";
+  public static final String SHA1 = "SHA-1";
+  public static final String SHA256 = "SHA-256";
+  public static final String SHA512 = "SHA-512";
+  /** Every checksum a maven repository publishes alongside a file. */
+  public static final List<String> REPOSITORY_ALGORITHMS =
+      Collections.unmodifiableList(Arrays.asList(MD5, SHA1, SHA256, SHA512));
+
+  private static final long MEMORY_MAPPED_THRESHOLD = 16L * 1024 * 1024;
+  private static final long MAPPED_WINDOW_SIZE = 64L * 1024 * 1024;
+  // Each slice is fed to every digest while it is still in the cpu cache
+  private static final int SLICE_SIZE = 1024 * 1024;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private Checksums() {}
+
+  /**
+   * Computes each of the algorithms' hex checksums in a single read of the file, memory mapping
+   * files that are large enough for it to pay off.
+   */
+  public static Map<String, String> hex(File file, Collection<String> algorithms)
+      throws IOException {
+    Map<String, MessageDigest> digests = newDigests(algorithms);
+    if (file.length() >= MEMORY_MAPPED_THRESHOLD) {
+      updateMapped(file, digests.values());
+    } else {
+      updateStreamed(file, digests.values());
+    }
+    return toHex(digests);
+  }
+
+  public static Map<String, String> hex(byte[] content, Collection<String> algorithms) {
+    Map<String, MessageDigest> digests = newDigests(algorithms);
+    digests.values().forEach(digest -> digest.update(content));
+    return toHex(digests);
+  }
+
+  /** The file extension of the algorithm's checksum files, for example {@code sha256}. */
+  public static String extension(String algorithm) {
+    return algorithm.replace("-", "").toLowerCase();
+  }
+
+  public static String toHex(byte[] bytes) {
+    StringBuilder builder = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+      builder.append(Character.forDigit(b & 0xF, 16));
+    }
+    return builder.toString();
+  }
+
+  static MessageDigest newDigest(String algorithm) {
+    try {
+      return MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("Unsupported digest algorithm: " + algorithm, e);
+    }
+  }
+
+  private static void updateStreamed(File file, Collection<MessageDigest> digests)
+      throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+      int read;
+      while ((read = inputStream.read(buffer)) != -1) {
+        for (MessageDigest digest : digests) {
+          digest.update(buffer, 0, read);
+        }
+      }
+    }
+  }
+
+  private static void updateMapped(File file, Collection<MessageDigest> digests)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      for (long position = 0; position < size; position += MAPPED_WINDOW_SIZE) {
+        MappedByteBuffer window =
+            channel.map(
+                FileChannel.MapMode.READ_ONLY,
+                position,
+                Math.min(MAPPED_WINDOW_SIZE, size - position));
+        for (int offset = 0; offset < window.limit(); offset += SLICE_SIZE) {
+          int end = Math.min(offset + SLICE_SIZE, window.limit());
+          for (MessageDigest digest : digests) {
+            ByteBuffer slice = window.duplicate();
+            slice.limit(end);
+            slice.position(offset);
+            digest.update(slice);
+          }
+        }
+      }
+    }
+  }
+
+  private static Map<String, MessageDigest> newDigests(Collection<String> algorithms) {
+    Map<String, MessageDigest> digests = new LinkedHashMap<>();
+    algorithms.forEach(algorithm -> digests.put(algorithm, newDigest(algorithm)));
+    return digests;
+  }
+
+  private static Map<String, String> toHex(Map<String, MessageDigest> digests) {
+    Map<String, String> checksums = new LinkedHashMap<>();
+    digests.forEach((algorithm, digest) -> checksums.put(algorithm, toHex(digest.digest())));
+    return checksums;
+  }
+}
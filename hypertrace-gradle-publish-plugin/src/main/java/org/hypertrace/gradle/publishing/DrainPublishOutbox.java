@@ -0,0 +1,94 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.inject.Inject;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Uploads the entries of a project's {@link PublishOutbox}, oldest first, each as {@link
+ * UploadStagedPublications} uploads a staged repository. An entry is removed once every
+ * repository has all of it. Each repository's journal in the entry lists the files it already
+ * has, so a drain that failed or was interrupted resumes with the files that are missing. The
+ * {@link #getStagingDirectory() staging directory} of this task is the outbox directory.
+ */
+public abstract class DrainPublishOutbox extends UploadStagedPublications {
+  private static final String LOCK_FILE = ".lock";
+
+  @Inject
+  protected abstract FileSystemOperations getFileSystemOperations();
+
+  @TaskAction
+  @Override
+  public void upload() throws IOException {
+    Path outboxDirectory = this.getStagingDirectory().get().getAsFile().toPath();
+    if (!Files.isDirectory(outboxDirectory)) {
+      return;
+    }
+    try (FileChannel channel =
+            FileChannel.open(
+                outboxDirectory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock lock = tryLock(channel)) {
+      if (lock == null) {
+        this.getLogger().lifecycle("The publish outbox is being drained by another build");
+        return;
+      }
+      this.drain(outboxDirectory);
+    }
+  }
+
+  private void drain(Path outboxDirectory) throws IOException {
+    List<File> interruptedRemovals = PublishOutbox.listDrainedEntries(outboxDirectory);
+    this.getFileSystemOperations().delete(spec -> spec.delete(interruptedRemovals));
+    List<Path> entries = PublishOutbox.listEntries(outboxDirectory);
+    Map<String, String> failures = new LinkedHashMap<>();
+    int drained = 0;
+    for (Path entry : entries) {
+      Map<String, String> entryFailures =
+          this.uploadDirectory(
+              entry.resolve(PublishOutbox.REPOSITORY_DIRECTORY),
+              repository -> UploadJournal.open(PublishOutbox.journal(entry, repository)));
+      if (entryFailures.isEmpty()) {
+        this.remove(entry);
+        drained++;
+        continue;
+      }
+      entryFailures.forEach(failures::putIfAbsent);
+      // Later entries may update the same metadata, so wait until a required repository has this
+      if (!this.getBestEffortRepositories().get().containsAll(entryFailures.keySet())) {
+        break;
+      }
+    }
+    this.getLogger().lifecycle("Drained {} of {} publish outbox entries", drained, entries.size());
+    this.reportFailures(failures);
+  }
+
+  // Renamed first, so an interrupted removal leaves no entry that looks complete
+  private void remove(Path entry) throws IOException {
+    Path drained = entry.resolveSibling(entry.getFileName() + PublishOutbox.DRAINED_SUFFIX);
+    Files.move(entry, drained, StandardCopyOption.ATOMIC_MOVE);
+    this.getFileSystemOperations().delete(spec -> spec.delete(drained.toFile()));
+  }
+
+  private static FileLock tryLock(FileChannel channel) throws IOException {
+    try {
+      return channel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      // Held by another build in this daemon
+      return null;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Adds a project's staged maven repository to its {@link PublishOutbox} as a new entry. The entry
+ * is written under a temporary name and renamed into place, so {@link DrainPublishOutbox} only ever
+ * sees complete entries. Staged files are hard linked into the entry where the filesystem allows.
+ */
+public abstract class EnqueueStagedPublications extends DefaultTask {
+  @Internal
+  public abstract DirectoryProperty getStagingDirectory();
+
+  @Internal
+  public abstract DirectoryProperty getOutboxDirectory();
+
+  @TaskAction
+  public void enqueue() throws IOException {
+    Path stagingDirectory = this.getStagingDirectory().get().getAsFile().toPath();
+    if (!Files.isDirectory(stagingDirectory)) {
+      return;
+    }
+    List<Path> stagedFiles;
+    try (Stream<Path> files = Files.walk(stagingDirectory)) {
+      stagedFiles = files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    }
+    if (stagedFiles.isEmpty()) {
+      return;
+    }
+    Path outboxDirectory = this.getOutboxDirectory().get().getAsFile().toPath();
+    // Names sort in the order the entries were added
+    String name =
+        String.format(
+            Locale.ROOT,
+            "%013d-%08x",
+            System.currentTimeMillis(),
+            ThreadLocalRandom.current().nextInt());
+    Path temporary = outboxDirectory.resolve(name + PublishOutbox.TEMPORARY_SUFFIX);
+    Path repository = temporary.resolve(PublishOutbox.REPOSITORY_DIRECTORY);
+    for (Path stagedFile : stagedFiles) {
+      Path target = repository.resolve(stagingDirectory.relativize(stagedFile).toString());
+      Files.createDirectories(target.getParent());
+      linkOrCopy(stagedFile, target);
+    }
+    Files.move(temporary, outboxDirectory.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+    this.getLogger()
+        .lifecycle(
+            "Added {} staged files to the publish outbox, {} uploads them",
+            stagedFiles.size(),
+            PublishOutbox.DRAIN_TASK_NAME);
+  }
+
+  // The staging directory is deleted before it is next written, so links stay intact
+  private static void linkOrCopy(Path source, Path target) throws IOException {
+    try {
+      Files.createLink(target, source);
+    } catch (IOException | UnsupportedOperationException e) {
+      Files.copy(source, target);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Writes a fingerprint of a project's publications: the sha256 of each published artifact and POM,
+ * together with the fingerprints of the project's own project dependencies. A change to any
+ * project a publication depends on, however indirectly, therefore changes its fingerprint too.
+ */
+public abstract class FingerprintPublications extends DefaultTask {
+  @Input
+  public abstract Property<String> getProjectPath();
+
+  /** The files of every publication of the project, other than signatures. */
+  @InputFiles
+  @PathSensitive(PathSensitivity.NAME_ONLY)
+  public abstract ConfigurableFileCollection getArtifacts();
+
+  /** The fingerprint files of the project dependencies. */
+  @InputFiles
+  @PathSensitive(PathSensitivity.NONE)
+  public abstract ConfigurableFileCollection getDependencyFingerprints();
+
+  @Internal
+  public abstract Property<ChecksumService> getChecksums();
+
+  @OutputFile
+  public abstract RegularFileProperty getFingerprintFile();
+
+  @TaskAction
+  public void fingerprint() throws IOException {
+    List<String> lines = new ArrayList<>();
+    ChecksumService checksums = this.getChecksums().get();
+    for (File artifact : this.getArtifacts().getFiles()) {
+      lines.add("artifact " + artifact.getName() + " " + checksums.hex(artifact, Checksums.SHA256));
+    }
+    for (File dependencyFingerprint : this.getDependencyFingerprints().getFiles()) {
+      lines.add("dependency " + read(dependencyFingerprint));
+    }
+    Collections.sort(lines);
+    String fingerprint =
+        Checksums.hex(
+                String.join("\n", lines).getBytes(StandardCharsets.UTF_8),
+                Collections.singleton(Checksums.SHA256))
+            .get(Checksums.SHA256);
+
+    Path fingerprintFile = this.getFingerprintFile().get().getAsFile().toPath();
+    Files.createDirectories(fingerprintFile.getParent());
+    Files.write(
+        fingerprintFile,
+        (this.getProjectPath().get() + " " + fingerprint + "\n").getBytes(StandardCharsets.UTF_8));
+  }
+
+  static String read(File fingerprintFile) throws IOException {
+    return new String(Files.readAllBytes(fingerprintFile.toPath()), StandardCharsets.UTF_8).trim();
+  }
+}
@@ -1,5 +1,6 @@
 package org.hypertrace.gradle.publishing;
 
+import java.time.Duration;
 import javax.inject.Inject;
 import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.provider.Property;
@@ -7,10 +8,22 @@ import org.gradle.api.provider.Property;
 public class HypertracePublishExtension {
   public final Property<License> license;
   public final Property<String> pomUrl;
+  public final Property<Boolean> skipUnchangedSnapshots;
+  public final Property<Duration> remoteChecksumCacheTtl;
+  public final Property<Long> largeArtifactThreshold;
+  public final Property<Boolean> resumableUploads;
+  public final Property<Boolean> conditionalMetadataUpdates;
 
   @Inject
   public HypertracePublishExtension(ObjectFactory objectFactory) {
     this.license = objectFactory.property(License.class);
     this.pomUrl = objectFactory.property(String.class).convention("https://www.hypertrace.org/");
+    this.skipUnchangedSnapshots = objectFactory.property(Boolean.class).convention(false);
+    this.remoteChecksumCacheTtl =
+      objectFactory.property(Duration.class).convention(Duration.ofDays(1));
+    this.largeArtifactThreshold = objectFactory.property(Long.class)
+      .convention(UploadStagedPublications.DEFAULT_LARGE_ARTIFACT_THRESHOLD);
+    this.resumableUploads = objectFactory.property(Boolean.class).convention(false);
+    this.conditionalMetadataUpdates = objectFactory.property(Boolean.class).convention(false);
   }
 }
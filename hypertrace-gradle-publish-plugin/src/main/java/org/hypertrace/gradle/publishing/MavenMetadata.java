@@ -0,0 +1,232 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/** Merges the maven-metadata.xml files of a staged publish into the remote ones. */
+public final class MavenMetadata {
+  private MavenMetadata() {}
+
+  public static byte[] merge(@Nullable byte[] remote, byte[] staged) throws IOException {
+    if (remote == null) {
+      return staged;
+    }
+    try {
+      Document remoteDocument = parse(remote);
+      Document stagedDocument = parse(staged);
+      Element remoteVersioning = childElement(remoteDocument.getDocumentElement(), "versioning");
+      Element stagedVersioning = childElement(stagedDocument.getDocumentElement(), "versioning");
+      if (remoteVersioning == null || stagedVersioning == null) {
+        return staged;
+      }
+
+      Set<String> versions = new LinkedHashSet<>();
+      versions.addAll(versionsOf(remoteVersioning));
+      versions.addAll(versionsOf(stagedVersioning));
+
+      // The staged document describes the versions being published now, so it wins on latest
+      Element mergedVersions = childElement(stagedVersioning, "versions");
+      if (mergedVersions == null) {
+        mergedVersions = stagedDocument.createElement("versions");
+        stagedVersioning.appendChild(mergedVersions);
+      }
+      while (mergedVersions.hasChildNodes()) {
+        mergedVersions.removeChild(mergedVersions.getFirstChild());
+      }
+      for (String version : versions) {
+        Element versionElement = stagedDocument.createElement("version");
+        versionElement.setTextContent(version);
+        mergedVersions.appendChild(versionElement);
+      }
+      if (childElement(stagedVersioning, "release") == null) {
+        Element remoteRelease = childElement(remoteVersioning, "release");
+        if (remoteRelease != null) {
+          stagedVersioning.insertBefore(
+              stagedDocument.importNode(remoteRelease, true), mergedVersions);
+        }
+      }
+      return serialize(stagedDocument);
+    } catch (Exception e) {
+      throw new IOException("Unable to merge maven-metadata.xml", e);
+    }
+  }
+
+  /**
+   * Returns the timestamp and build number of the snapshot the version metadata describes, as in
+   * its file names, such as {@code 20210101.000000-1}, or null if it describes none.
+   */
+  @Nullable
+  public static String snapshotVersion(@Nullable byte[] metadata) throws IOException {
+    if (metadata == null) {
+      return null;
+    }
+    try {
+      Element snapshot = snapshotOf(parse(metadata));
+      String timestamp = snapshot == null ? null : childText(snapshot, "timestamp");
+      String buildNumber = snapshot == null ? null : childText(snapshot, "buildNumber");
+      return timestamp == null || buildNumber == null ? null : timestamp + "-" + buildNumber;
+    } catch (Exception e) {
+      throw new IOException("Unable to read snapshot maven-metadata.xml", e);
+    }
+  }
+
+  /** Returns the build number of the snapshot the version metadata describes, or 0 if none. */
+  public static int snapshotBuildNumber(@Nullable byte[] metadata) throws IOException {
+    String snapshotVersion = snapshotVersion(metadata);
+    return snapshotVersion == null
+        ? 0
+        : Integer.parseInt(snapshotVersion.substring(snapshotVersion.lastIndexOf('-') + 1));
+  }
+
+  /**
+   * Returns the snapshot version metadata with its snapshot numbered as the given build, both in
+   * the snapshot and in the file names of its snapshot versions.
+   */
+  public static byte[] renumberSnapshot(byte[] metadata, int buildNumber) throws IOException {
+    String snapshotVersion = snapshotVersion(metadata);
+    if (snapshotVersion == null) {
+      return metadata;
+    }
+    String renumbered =
+        snapshotVersion.substring(0, snapshotVersion.lastIndexOf('-') + 1) + buildNumber;
+    try {
+      Document document = parse(metadata);
+      childElement(snapshotOf(document), "buildNumber").setTextContent(String.valueOf(buildNumber));
+      for (Element snapshotVersionElement : snapshotVersionsOf(document)) {
+        Element value = childElement(snapshotVersionElement, "value");
+        if (value != null && value.getTextContent().trim().endsWith("-" + snapshotVersion)) {
+          String text = value.getTextContent().trim();
+          value.setTextContent(
+              text.substring(0, text.length() - snapshotVersion.length()) + renumbered);
+        }
+      }
+      return serialize(document);
+    } catch (Exception e) {
+      throw new IOException("Unable to renumber snapshot maven-metadata.xml", e);
+    }
+  }
+
+  /**
+   * Merges staged snapshot version metadata into the remote one, as Maven does: the staged
+   * snapshot becomes the latest, and the remote files of the classifiers and extensions it doesn't
+   * publish are kept. Returns null, to leave the remote metadata in place, if it already describes
+   * a build as late as the staged one, which a concurrent publisher of the snapshot uploaded.
+   */
+  @Nullable
+  public static byte[] mergeSnapshot(@Nullable byte[] remote, byte[] staged) throws IOException {
+    if (remote == null) {
+      return staged;
+    }
+    if (snapshotBuildNumber(remote) >= snapshotBuildNumber(staged)) {
+      return null;
+    }
+    try {
+      Document remoteDocument = parse(remote);
+      Document stagedDocument = parse(staged);
+      Element stagedVersioning = childElement(stagedDocument.getDocumentElement(), "versioning");
+      Element stagedSnapshotVersions =
+          stagedVersioning == null ? null : childElement(stagedVersioning, "snapshotVersions");
+      if (stagedSnapshotVersions == null) {
+        return staged;
+      }
+      Set<String> stagedFiles = new HashSet<>();
+      for (Element snapshotVersion : snapshotVersionsOf(stagedDocument)) {
+        stagedFiles.add(fileKey(snapshotVersion));
+      }
+      for (Element snapshotVersion : snapshotVersionsOf(remoteDocument)) {
+        if (!stagedFiles.contains(fileKey(snapshotVersion))) {
+          stagedSnapshotVersions.appendChild(stagedDocument.importNode(snapshotVersion, true));
+        }
+      }
+      return serialize(stagedDocument);
+    } catch (Exception e) {
+      throw new IOException("Unable to merge snapshot maven-metadata.xml", e);
+    }
+  }
+
+  @Nullable
+  private static Element snapshotOf(Document document) {
+    Element versioning = childElement(document.getDocumentElement(), "versioning");
+    return versioning == null ? null : childElement(versioning, "snapshot");
+  }
+
+  private static List<Element> snapshotVersionsOf(Document document) {
+    List<Element> snapshotVersions = new ArrayList<>();
+    Element versioning = childElement(document.getDocumentElement(), "versioning");
+    Element snapshotVersionsElement =
+        versioning == null ? null : childElement(versioning, "snapshotVersions");
+    if (snapshotVersionsElement != null) {
+      NodeList children = snapshotVersionsElement.getElementsByTagName("snapshotVersion");
+      for (int i = 0; i < children.getLength(); i++) {
+        snapshotVersions.add((Element) children.item(i));
+      }
+    }
+    return snapshotVersions;
+  }
+
+  // A snapshot version describes the latest file of a classifier and extension
+  private static String fileKey(Element snapshotVersion) {
+    String classifier = childText(snapshotVersion, "classifier");
+    return (classifier == null ? "" : classifier) + ":" + childText(snapshotVersion, "extension");
+  }
+
+  @Nullable
+  private static String childText(Element parent, String tagName) {
+    Element child = childElement(parent, tagName);
+    return child == null ? null : child.getTextContent().trim();
+  }
+
+  private static Set<String> versionsOf(Element versioning) {
+    Set<String> versions = new LinkedHashSet<>();
+    Element versionsElement = childElement(versioning, "versions");
+    if (versionsElement != null) {
+      NodeList children = versionsElement.getElementsByTagName("version");
+      for (int i = 0; i < children.getLength(); i++) {
+        versions.add(children.item(i).getTextContent().trim());
+      }
+    }
+    return versions;
+  }
+
+  @Nullable
+  private static Element childElement(Element parent, String tagName) {
+    for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child instanceof Element && tagName.equals(child.getNodeName())) {
+        return (Element) child;
+      }
+    }
+    return null;
+  }
+
+  private static Document parse(byte[] content) throws Exception {
+    return DocumentBuilderFactory.newInstance()
+        .newDocumentBuilder()
+        .parse(new ByteArrayInputStream(content));
+  }
+
+  private static byte[] serialize(Document document) throws Exception {
+    Transformer transformer = TransformerFactory.newInstance().newTransformer();
+    transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+    transformer.setOutputProperty(OutputKeys.INDENT, "no");
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    transformer.transform(new DOMSource(document), new StreamResult(outputStream));
+    return outputStream.toByteArray();
+  }
+}
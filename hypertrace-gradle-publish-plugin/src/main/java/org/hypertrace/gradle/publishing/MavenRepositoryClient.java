@@ -0,0 +1,732 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/** Reads from and uploads to a maven repository over http(s) or file urls. */
+public class MavenRepositoryClient {
+  private static final int TIMEOUT_MILLIS = 30_000;
+  private static final int MAX_ATTEMPTS = 3;
+  private static final long INITIAL_BACKOFF_MILLIS = 1_000;
+  private static final int STATUS_RESUME_INCOMPLETE = 308;
+  private static final int STATUS_PRECONDITION_FAILED = 412;
+  private static final int MAX_CONDITIONAL_ATTEMPTS = 10;
+  private static final long MAX_CONDITIONAL_BACKOFF_MILLIS = 5_000;
+
+  private static final int MAX_LARGE_ARTIFACT_ATTEMPTS = 5;
+  private static final long CHUNK_SIZE = 32L * 1024 * 1024;
+  private static final long STREAMED_LENGTH = -1;
+  private static final int STREAMED_CHUNK_SIZE = 64 * 1024;
+
+  private final RemoteRepository repository;
+  private final long largeArtifactThreshold;
+  private final boolean resumableUploads;
+  private final long chunkSize;
+  private final long initialBackoffMillis;
+  private final PublishTelemetryListener telemetry;
+
+  public MavenRepositoryClient(RemoteRepository repository) {
+    this(repository, Long.MAX_VALUE, false, PublishTelemetryListener.NONE);
+  }
+
+  /**
+   * Files of at least {@code largeArtifactThreshold} bytes are retried more often and, if the
+   * repository accepts resumable uploads, are sent in chunks that resume from the last
+   * acknowledged offset after a failure. Every upload, successful or not, is reported to the
+   * telemetry.
+   */
+  public MavenRepositoryClient(
+      RemoteRepository repository,
+      long largeArtifactThreshold,
+      boolean resumableUploads,
+      PublishTelemetryListener telemetry) {
+    this(
+        repository,
+        largeArtifactThreshold,
+        resumableUploads,
+        telemetry,
+        CHUNK_SIZE,
+        INITIAL_BACKOFF_MILLIS);
+  }
+
+  MavenRepositoryClient(
+      RemoteRepository repository,
+      long largeArtifactThreshold,
+      boolean resumableUploads,
+      PublishTelemetryListener telemetry,
+      long chunkSize,
+      long initialBackoffMillis) {
+    this.repository = repository;
+    this.largeArtifactThreshold = largeArtifactThreshold;
+    this.resumableUploads = resumableUploads;
+    this.telemetry = telemetry;
+    this.chunkSize = chunkSize;
+    this.initialBackoffMillis = initialBackoffMillis;
+  }
+
+  /** Maps each artifact key of the latest published snapshot to its timestamped file name. */
+  public Map<String, String> fetchSnapshotFileNames(PublishedArtifact artifact)
+      throws IOException {
+    Map<String, String> fileNames = new HashMap<>();
+    byte[] metadata = fetch(artifact.getVersionDirectory() + "/maven-metadata.xml");
+    if (metadata == null) {
+      return fileNames;
+    }
+    try {
+      NodeList snapshotVersions =
+          DocumentBuilderFactory.newInstance()
+              .newDocumentBuilder()
+              .parse(new ByteArrayInputStream(metadata))
+              .getElementsByTagName("snapshotVersion");
+      for (int i = 0; i < snapshotVersions.getLength(); i++) {
+        Element snapshotVersion = (Element) snapshotVersions.item(i);
+        String classifier = childText(snapshotVersion, "classifier");
+        String extension = childText(snapshotVersion, "extension");
+        String value = childText(snapshotVersion, "value");
+        if (extension == null || value == null) {
+          continue;
+        }
+        PublishedArtifact published =
+            new PublishedArtifact(
+                artifact.getGroupId(),
+                artifact.getArtifactId(),
+                value,
+                classifier,
+                extension,
+                artifact.getFile());
+        fileNames.put(published.getArtifactKey(), fileName(published));
+      }
+    } catch (ParserConfigurationException | SAXException e) {
+      throw new IOException("Unable to parse snapshot metadata for " + artifact, e);
+    }
+    return fileNames;
+  }
+
+  /** Returns the hex checksum published alongside a file, or null if there is none. */
+  @Nullable
+  public String fetchChecksum(String path) throws IOException {
+    byte[] content = fetch(path);
+    if (content == null) {
+      return null;
+    }
+    String checksum = new String(content, StandardCharsets.UTF_8).trim();
+    // Some tools write "<checksum>  <file name>"
+    int separator = checksum.indexOf(' ');
+    return (separator < 0 ? checksum : checksum.substring(0, separator)).toLowerCase();
+  }
+
+  /** Whether the repository has a file at the path, asked with a {@code HEAD} request. */
+  public boolean exists(String path) throws IOException {
+    if (isFileRepository()) {
+      return Files.exists(Paths.get(repository.resolve(path)));
+    }
+    HttpURLConnection connection =
+        (HttpURLConnection) repository.resolve(path).toURL().openConnection();
+    connection.setConnectTimeout(TIMEOUT_MILLIS);
+    connection.setReadTimeout(TIMEOUT_MILLIS);
+    connection.setRequestMethod("HEAD");
+    this.authenticate(connection);
+    int status = connection.getResponseCode();
+    drain(status >= 400 ? connection.getErrorStream() : connection.getInputStream());
+    if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+      return false;
+    }
+    if (status < 200 || status >= 300) {
+      throw new IOException("Unexpected status " + status + " checking " + path);
+    }
+    return true;
+  }
+
+  @Nullable
+  public byte[] fetch(String path) throws IOException {
+    RemoteContent remote = this.fetchWithEtag(path);
+    return remote == null ? null : remote.content;
+  }
+
+  @Nullable
+  private RemoteContent fetchWithEtag(String path) throws IOException {
+    URLConnection connection = repository.resolve(path).toURL().openConnection();
+    connection.setConnectTimeout(TIMEOUT_MILLIS);
+    connection.setReadTimeout(TIMEOUT_MILLIS);
+    if (connection instanceof HttpURLConnection) {
+      HttpURLConnection httpConnection = (HttpURLConnection) connection;
+      this.authenticate(httpConnection);
+      int status = httpConnection.getResponseCode();
+      if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+        drain(httpConnection.getErrorStream());
+        return null;
+      }
+      if (status >= 300) {
+        drain(httpConnection.getErrorStream());
+        throw new IOException("Unexpected status " + status + " fetching " + path);
+      }
+    }
+    try (InputStream inputStream = connection.getInputStream()) {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = inputStream.read(buffer)) != -1) {
+        outputStream.write(buffer, 0, read);
+      }
+      return new RemoteContent(outputStream.toByteArray(), connection.getHeaderField("ETag"));
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+  }
+
+  public void put(String path, File file) throws IOException {
+    this.recordUpload(path, file.length(), attempts -> this.putFile(path, file, attempts));
+  }
+
+  public void put(String path, byte[] content) throws IOException {
+    this.recordUpload(path, content.length, attempts -> this.putContent(path, content, attempts));
+  }
+
+  /**
+   * Uploads content of unknown length as it is read, with chunked transfer encoding. The content
+   * can't be read a second time, so the upload is attempted once. If reading the content fails the
+   * connection is dropped before the final chunk, so the repository never stores a truncated file.
+   */
+  public void putStreamed(String path, InputStream content) throws IOException {
+    this.recordUpload(path, 0, attempts -> this.putStream(path, content, attempts));
+  }
+
+  /**
+   * Read-modify-writes a file that other publishers may be updating at the same time. The update
+   * is applied to the remote content and written with an {@code If-Match} on the ETag it was read
+   * with, or {@code If-None-Match: *} if there was no file yet. When another publisher wrote first
+   * the repository answers 412, and the update is applied again to the new content after a
+   * jittered backoff. A repository that sends no ETag can't detect conflicts, so its file is
+   * written unconditionally. Files in a file repository are updated under a file lock instead.
+   *
+   * @return the content written, or null if the update left the file unchanged
+   */
+  @Nullable
+  public byte[] putConditionally(String path, ContentUpdate update) throws IOException {
+    AtomicReference<byte[]> written = new AtomicReference<>();
+    this.recordUpload(
+        path,
+        0,
+        attempts ->
+            written.set(
+                isFileRepository()
+                    ? this.updateLocked(path, update, attempts)
+                    : this.updateConditionally(path, update, attempts)));
+    return written.get();
+  }
+
+  private void recordUpload(String path, long bytes, Upload upload) throws IOException {
+    Attempts attempts = new Attempts();
+    attempts.bytes = bytes;
+    long startMillis = System.currentTimeMillis();
+    String failure = null;
+    try {
+      upload.run(attempts);
+    } catch (IOException | RuntimeException e) {
+      failure = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+      throw e;
+    } finally {
+      telemetry.onArtifact(
+          new ArtifactMetric(
+              ArtifactMetric.OPERATION_UPLOAD,
+              repository.getName(),
+              path,
+              attempts.bytes,
+              startMillis,
+              System.currentTimeMillis() - startMillis,
+              attempts.status,
+              attempts.retries,
+              failure));
+    }
+  }
+
+  private void putFile(String path, File file, Attempts attempts) throws IOException {
+    if (isFileRepository()) {
+      this.linkOrCopy(file.toPath(), Paths.get(repository.resolve(path)));
+      return;
+    }
+    long length = file.length();
+    if (length < largeArtifactThreshold) {
+      this.putWithRetries(
+          path,
+          length,
+          MAX_ATTEMPTS,
+          outputStream -> transfer(file, 0, length, outputStream),
+          attempts);
+    } else if (resumableUploads) {
+      this.putResumable(path, file, length, attempts);
+    } else {
+      this.putWithRetries(
+          path,
+          length,
+          MAX_LARGE_ARTIFACT_ATTEMPTS,
+          outputStream -> transfer(file, 0, length, outputStream),
+          attempts);
+    }
+  }
+
+  private void putStream(String path, InputStream content, Attempts attempts)
+      throws IOException {
+    if (isFileRepository()) {
+      Path target = Paths.get(repository.resolve(path));
+      Files.createDirectories(target.getParent());
+      Path temporary = temporarySibling(target);
+      try {
+        attempts.bytes = Files.copy(content, temporary);
+        replace(temporary, target);
+      } finally {
+        Files.deleteIfExists(temporary);
+      }
+      return;
+    }
+    HttpURLConnection connection = this.openPut(path, STREAMED_LENGTH, null);
+    try {
+      OutputStream outputStream = connection.getOutputStream();
+      byte[] buffer = new byte[STREAMED_CHUNK_SIZE];
+      for (int read; (read = content.read(buffer)) != -1; ) {
+        outputStream.write(buffer, 0, read);
+        attempts.bytes += read;
+      }
+    } catch (IOException | RuntimeException e) {
+      // Without its final chunk the repository sees the upload cut short rather than complete
+      connection.disconnect();
+      throw e;
+    }
+    int status = this.send(connection, path, unused -> {}, attempts);
+    if (status < 200 || status >= 300) {
+      throw unexpectedStatus(status, path);
+    }
+  }
+
+  @Nullable
+  private byte[] updateConditionally(String path, ContentUpdate update, Attempts attempts)
+      throws IOException {
+    long backoffMillis = initialBackoffMillis;
+    for (int attempt = 1; ; attempt++) {
+      RemoteContent remote = this.fetchWithEtag(path);
+      byte[] content = update.apply(remote == null ? null : remote.content);
+      if (content == null) {
+        return null;
+      }
+      attempts.bytes = content.length;
+      try {
+        HttpURLConnection connection = this.openPut(path, content.length, null);
+        if (remote == null) {
+          connection.setRequestProperty("If-None-Match", "*");
+        } else if (remote.etag != null) {
+          connection.setRequestProperty("If-Match", remote.etag);
+        }
+        int status =
+            this.send(connection, path, outputStream -> outputStream.write(content), attempts);
+        if (status >= 200 && status < 300) {
+          return content;
+        }
+        if (status != STATUS_PRECONDITION_FAILED) {
+          throw unexpectedStatus(status, path);
+        }
+        if (attempt >= MAX_CONDITIONAL_ATTEMPTS) {
+          throw new IOException(
+              "Gave up updating " + path + " after " + attempt + " conflicting writes");
+        }
+      } catch (RetryableException e) {
+        if (attempt >= MAX_CONDITIONAL_ATTEMPTS) {
+          throw e;
+        }
+      }
+      // Publishers that conflicted together back off by different amounts, so they don't again
+      sleep(ThreadLocalRandom.current().nextLong(backoffMillis + 1), path);
+      backoffMillis = Math.min(backoffMillis * 2, MAX_CONDITIONAL_BACKOFF_MILLIS);
+      attempts.retries++;
+    }
+  }
+
+  // The lock is held on a sibling lock file, as the file itself is replaced rather than rewritten
+  @Nullable
+  private byte[] updateLocked(String path, ContentUpdate update, Attempts attempts)
+      throws IOException {
+    Path target = Paths.get(repository.resolve(path));
+    Files.createDirectories(target.getParent());
+    Path lockFile = target.resolveSibling("." + target.getFileName() + ".lock");
+    try (FileChannel channel =
+        FileChannel.open(lockFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+      // Released as the channel is closed
+      channel.lock();
+      byte[] content = update.apply(Files.exists(target) ? Files.readAllBytes(target) : null);
+      if (content == null) {
+        return null;
+      }
+      attempts.bytes = content.length;
+      writeAtomically(target, content);
+      return content;
+    }
+  }
+
+  private void putContent(String path, byte[] content, Attempts attempts) throws IOException {
+    if (isFileRepository()) {
+      Path target = Paths.get(repository.resolve(path));
+      Files.createDirectories(target.getParent());
+      writeAtomically(target, content);
+      return;
+    }
+    this.putWithRetries(
+        path, content.length, MAX_ATTEMPTS, outputStream -> outputStream.write(content), attempts);
+  }
+
+  private void putWithRetries(
+      String path, long length, int maxAttempts, ContentSource content, Attempts attempts)
+      throws IOException {
+    long backoffMillis = initialBackoffMillis;
+    for (int attempt = 1; ; attempt++) {
+      try {
+        int status = this.send(this.openPut(path, length, null), path, content, attempts);
+        if (status < 200 || status >= 300) {
+          throw unexpectedStatus(status, path);
+        }
+        return;
+      } catch (RetryableException e) {
+        if (attempt >= maxAttempts) {
+          throw e;
+        }
+      }
+      sleep(backoffMillis, path);
+      backoffMillis *= 2;
+      attempts.retries++;
+    }
+  }
+
+  /**
+   * Uploads a file in chunks, each a PUT carrying a {@code Content-Range} header. The repository
+   * answers 308 with a {@code Range: bytes=0-<last>} header for every chunk it has stored, and 2xx
+   * once the file is complete. After a failure the stored offset is queried with an empty PUT of
+   * {@code Content-Range: bytes *}{@code /<length>}, and the upload continues from there.
+   */
+  private void putResumable(String path, File file, long length, Attempts attempts)
+      throws IOException {
+    long offset = 0;
+    int failures = 0;
+    long backoffMillis = initialBackoffMillis;
+    boolean resuming = false;
+    while (offset < length) {
+      try {
+        if (resuming) {
+          resuming = false;
+          offset = this.fetchUploadedOffset(path, length, attempts);
+          continue;
+        }
+        long acknowledged =
+            this.putChunk(
+                path, file, offset, Math.min(chunkSize, length - offset), length, attempts);
+        // Only consecutive failures without progress count against the attempts
+        failures = 0;
+        backoffMillis = initialBackoffMillis;
+        offset = acknowledged;
+      } catch (RetryableException e) {
+        if (++failures >= MAX_LARGE_ARTIFACT_ATTEMPTS) {
+          throw e;
+        }
+        sleep(backoffMillis, path);
+        backoffMillis *= 2;
+        resuming = true;
+        attempts.retries++;
+      }
+    }
+  }
+
+  private long putChunk(
+      String path, File file, long offset, long count, long length, Attempts attempts)
+      throws IOException {
+    String contentRange = String.format("bytes %d-%d/%d", offset, offset + count - 1, length);
+    HttpURLConnection connection = this.openPut(path, count, contentRange);
+    int status =
+        this.send(
+            connection,
+            path,
+            outputStream -> transfer(file, offset, count, outputStream),
+            attempts);
+    if (status >= 200 && status < 300) {
+      if (offset + count < length) {
+        throw new IOException(
+            "Repository does not support resumable uploads, it stored a partial " + path);
+      }
+      return length;
+    }
+    if (status == STATUS_RESUME_INCOMPLETE) {
+      long acknowledged = acknowledgedOffset(connection);
+      if (acknowledged <= offset) {
+        throw new RetryableException("No progress uploading " + path + " from " + offset, null);
+      }
+      return acknowledged;
+    }
+    throw unexpectedStatus(status, path);
+  }
+
+  private long fetchUploadedOffset(String path, long length, Attempts attempts)
+      throws IOException {
+    HttpURLConnection connection = this.openPut(path, 0, "bytes */" + length);
+    int status = this.send(connection, path, outputStream -> {}, attempts);
+    if (status >= 200 && status < 300) {
+      return length;
+    }
+    if (status == STATUS_RESUME_INCOMPLETE) {
+      return acknowledgedOffset(connection);
+    }
+    throw unexpectedStatus(status, path);
+  }
+
+  private HttpURLConnection openPut(String path, long length, @Nullable String contentRange)
+      throws IOException {
+    HttpURLConnection connection =
+        (HttpURLConnection) repository.resolve(path).toURL().openConnection();
+    connection.setConnectTimeout(TIMEOUT_MILLIS);
+    connection.setReadTimeout(TIMEOUT_MILLIS);
+    connection.setInstanceFollowRedirects(false);
+    connection.setRequestMethod("PUT");
+    connection.setDoOutput(true);
+    if (length == STREAMED_LENGTH) {
+      connection.setChunkedStreamingMode(STREAMED_CHUNK_SIZE);
+    } else {
+      connection.setFixedLengthStreamingMode(length);
+    }
+    if (contentRange != null) {
+      connection.setRequestProperty("Content-Range", contentRange);
+    }
+    this.authenticate(connection);
+    return connection;
+  }
+
+  // Returns the response status, draining the body so the connection can be reused
+  private int send(
+      HttpURLConnection connection, String path, ContentSource content, Attempts attempts)
+      throws IOException {
+    try (OutputStream outputStream = connection.getOutputStream()) {
+      content.writeTo(outputStream);
+    } catch (IOException e) {
+      throw new RetryableException("Failed uploading " + path, e);
+    }
+    int status;
+    try {
+      status = connection.getResponseCode();
+    } catch (IOException e) {
+      throw new RetryableException("Failed uploading " + path, e);
+    }
+    attempts.status = status;
+    if (status >= 200 && status < 300) {
+      drain(connection.getInputStream());
+      return status;
+    }
+    drain(connection.getErrorStream());
+    if (status == 429 || status >= 500) {
+      throw new RetryableException("Unexpected status " + status + " uploading " + path, null);
+    }
+    return status;
+  }
+
+  private static IOException unexpectedStatus(int status, String path) {
+    return new IOException("Unexpected status " + status + " uploading " + path);
+  }
+
+  private static long acknowledgedOffset(HttpURLConnection connection) {
+    // "bytes=0-<last stored byte>", absent when nothing has been stored yet
+    String range = connection.getHeaderField("Range");
+    if (range == null || range.lastIndexOf('-') < 0) {
+      return 0;
+    }
+    return Long.parseLong(range.substring(range.lastIndexOf('-') + 1).trim()) + 1;
+  }
+
+  // Streams the range through the channel adapter's small heap buffer, as the connection only
+  // offers an output stream. The file is never held in memory whole, but it is copied.
+  private static void transfer(File file, long offset, long count, OutputStream outputStream)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      WritableByteChannel target = Channels.newChannel(outputStream);
+      long end = offset + count;
+      for (long position = offset; position < end; ) {
+        position += channel.transferTo(position, end - position, target);
+      }
+    }
+  }
+
+  /**
+   * Publishes a file into a file repository without copying it where possible. A hard link shares
+   * the file's data, which is safe for build outputs and staged files alike: Gradle deletes the
+   * previous outputs of a task that is not incremental before running it again, so they are
+   * replaced rather than rewritten. Across filesystems, or where links are not supported, the file
+   * is copied with {@code transferTo}, which the kernel may serve with a reflink or a server-side
+   * copy. Either way the file appears under its name complete, so readers never see it partially
+   * written.
+   */
+  private void linkOrCopy(Path source, Path target) throws IOException {
+    Files.createDirectories(target.getParent());
+    Path temporary = temporarySibling(target);
+    try {
+      try {
+        Files.createLink(temporary, source);
+      } catch (IOException | UnsupportedOperationException e) {
+        copy(source, temporary);
+      }
+      replace(temporary, target);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  private static void copy(Path source, Path target) throws IOException {
+    try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+        FileChannel targetChannel =
+            FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+      long size = sourceChannel.size();
+      for (long position = 0; position < size; ) {
+        position += sourceChannel.transferTo(position, size - position, targetChannel);
+      }
+    }
+  }
+
+  private static void writeAtomically(Path target, byte[] content) throws IOException {
+    Path temporary = temporarySibling(target);
+    try {
+      Files.write(temporary, content, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+      replace(temporary, target);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  private static void replace(Path source, Path target) throws IOException {
+    try {
+      Files.move(
+          source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  // Hidden, so a concurrent directory listing never picks it up as an artifact
+  private static Path temporarySibling(Path target) {
+    String suffix = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    return target.resolveSibling("." + target.getFileName() + "." + suffix + ".tmp");
+  }
+
+  private static void sleep(long millis, String path) throws InterruptedIOException {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while uploading " + path);
+    }
+  }
+
+  private boolean isFileRepository() {
+    return "file".equals(repository.getUrl().getScheme());
+  }
+
+  public static String fileName(PublishedArtifact artifact) {
+    String classifier = artifact.getClassifier();
+    return String.format(
+        "%s-%s%s.%s",
+        artifact.getArtifactId(),
+        artifact.getVersion(),
+        classifier == null || classifier.isEmpty() ? "" : "-" + classifier,
+        artifact.getExtension());
+  }
+
+  private void authenticate(HttpURLConnection connection) {
+    if (repository.hasCredentials()) {
+      String token = repository.getUsername() + ":" + repository.getPassword();
+      connection.setRequestProperty(
+          "Authorization",
+          "Basic " + Base64.getEncoder().encodeToString(token.getBytes(StandardCharsets.UTF_8)));
+    }
+  }
+
+  @Nullable
+  private static String childText(Element element, String tagName) {
+    NodeList children = element.getElementsByTagName(tagName);
+    return children.getLength() == 0 ? null : children.item(0).getTextContent().trim();
+  }
+
+  // Consuming the error body lets the connection be returned to the keep-alive pool
+  private static void drain(@Nullable InputStream inputStream) throws IOException {
+    if (inputStream == null) {
+      return;
+    }
+    try (InputStream stream = inputStream) {
+      byte[] buffer = new byte[8192];
+      while (stream.read(buffer) != -1) {
+        // discard
+      }
+    }
+  }
+
+  /** Computes a file's new content from its current remote content. */
+  public interface ContentUpdate {
+    /**
+     * @param remote the remote content, or null if the file doesn't exist yet
+     * @return the content to write, or null to leave the file as it is
+     */
+    @Nullable
+    byte[] apply(@Nullable byte[] remote) throws IOException;
+  }
+
+  private interface ContentSource {
+    void writeTo(OutputStream outputStream) throws IOException;
+  }
+
+  private interface Upload {
+    void run(Attempts attempts) throws IOException;
+  }
+
+  // The final status, retries and size of an upload, for its telemetry
+  private static class Attempts {
+    private int status = ArtifactMetric.NO_STATUS;
+    private int retries;
+    private long bytes;
+  }
+
+  private static class RemoteContent {
+    private final byte[] content;
+    @Nullable private final String etag;
+
+    RemoteContent(byte[] content, @Nullable String etag) {
+      this.content = content;
+      this.etag = etag;
+    }
+  }
+
+  private static class RetryableException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    RetryableException(String message, @Nullable Throwable cause) {
+      super(message, cause);
+    }
+  }
+}
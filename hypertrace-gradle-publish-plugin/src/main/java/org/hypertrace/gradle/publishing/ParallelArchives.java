@@ -0,0 +1,109 @@
+package org.hypertrace.gradle.publishing;
+
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.plugins.BasePlugin;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.bundling.Zip;
+
+/**
+ * Opt-in archive mode, enabled by the {@value #PARALLEL_ARCHIVES_PROPERTY} gradle property, where
+ * the archives the plugins publish are written by {@link ParallelZip} and {@link ParallelJar}
+ * tasks rather than by Gradle's single threaded zip writer.
+ */
+public final class ParallelArchives {
+  public static final String PARALLEL_ARCHIVES_PROPERTY = "publish_parallel_archives";
+  public static final String DISTRIBUTION_TASK_NAME = "parallelDistZip";
+  static final String ARCHIVE_DIRECTORY = "hypertrace-publish/archives";
+
+  private ParallelArchives() {}
+
+  public static boolean isEnabled(Project project) {
+    return project
+        .getProviders()
+        .gradleProperty(PARALLEL_ARCHIVES_PROPERTY)
+        .map(Boolean::parseBoolean)
+        .getOrElse(false);
+  }
+
+  /** The type of a zip task the plugins register themselves. */
+  public static Class<? extends Zip> zipType(Project project) {
+    return isEnabled(project) ? ParallelZip.class : Zip.class;
+  }
+
+  /**
+   * Registers the jar of the main feature's documentation of the given type, such as {@code
+   * javadoc}, as a {@link ParallelJar}, if enabled. As with Gradle's own, the jar holds the given
+   * contents and is classified by the documentation type. It must be registered before the java
+   * extension's {@code withJavadocJar()} or {@code withSourcesJar()}, which then publish it, as
+   * they only register a jar of their own if the project has no task of its name.
+   */
+  public static void registerDocumentationJar(
+      Project project, String taskName, String docsType, Object contents) {
+    if (!isEnabled(project) || project.getTasks().getNames().contains(taskName)) {
+      return;
+    }
+    TaskProvider<ParallelJar> jar =
+        project
+            .getTasks()
+            .register(
+                taskName,
+                ParallelJar.class,
+                task -> {
+                  task.setDescription(
+                      "Assembles a jar archive containing the main " + docsType + ".");
+                  task.setGroup(BasePlugin.BUILD_GROUP);
+                  task.from(contents);
+                  task.getArchiveClassifier().set(docsType);
+                });
+    project
+        .getTasks()
+        .named(BasePlugin.ASSEMBLE_TASK_NAME)
+        .configure(assemble -> assemble.dependsOn(jar));
+  }
+
+  /**
+   * The task writing the distribution archive to publish: if enabled a {@link ParallelZip} writing
+   * what the given task does, or else the task itself.
+   */
+  public static TaskProvider<? extends Zip> distribution(
+      Project project, TaskProvider<Zip> archiveTask) {
+    if (!isEnabled(project)) {
+      return archiveTask;
+    }
+    return registerCopy(
+        project,
+        DISTRIBUTION_TASK_NAME,
+        ParallelZip.class,
+        archiveTask,
+        task -> task.setDescription("Writes the distribution archive to publish in parallel"));
+  }
+
+  /**
+   * Registers a task writing the archive the given task writes, from its copy spec and under its
+   * file name, into a directory of its own.
+   */
+  static <T extends Zip> TaskProvider<T> registerCopy(
+      Project project,
+      String taskName,
+      Class<T> type,
+      TaskProvider<Zip> archiveTask,
+      Action<? super T> configuration) {
+    return project
+        .getTasks()
+        .register(
+            taskName,
+            type,
+            task -> {
+              Zip source = archiveTask.get();
+              task.setGroup(source.getGroup());
+              task.with(source);
+              task.setEntryCompression(source.getEntryCompression());
+              task.setZip64(source.isZip64());
+              task.getArchiveFileName().set(source.getArchiveFileName());
+              task.getDestinationDirectory()
+                  .set(project.getLayout().getBuildDirectory().dir(ARCHIVE_DIRECTORY));
+              configuration.execute(task);
+            });
+  }
+}
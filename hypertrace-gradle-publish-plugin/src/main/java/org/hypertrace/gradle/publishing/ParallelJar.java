@@ -0,0 +1,23 @@
+package org.hypertrace.gradle.publishing;
+
+import javax.inject.Inject;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.bundling.Jar;
+
+/**
+ * A {@link Jar} task whose archive is written by {@link WriteArchiveInParallel}, with the manifest
+ * leading, rather than by Gradle's single threaded zip writer.
+ */
+public abstract class ParallelJar extends Jar {
+  @Inject
+  protected abstract FileSystemOperations getFileSystemOperations();
+
+  @Override
+  @TaskAction
+  protected void copy() {
+    new WriteArchiveInParallel(
+            this.getFileSystemOperations(), Runtime.getRuntime().availableProcessors())
+        .execute(this);
+  }
+}
@@ -0,0 +1,28 @@
+package org.hypertrace.gradle.publishing;
+
+import javax.inject.Inject;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.bundling.Zip;
+
+/**
+ * A {@link Zip} task whose archive is written by {@link WriteArchiveInParallel} rather than by
+ * Gradle's single threaded zip writer. The copy spec, and any {@code doFirst} and {@code doLast}
+ * actions, apply as they do to a stock {@link Zip} task.
+ */
+public abstract class ParallelZip extends Zip {
+  @Inject
+  protected abstract FileSystemOperations getFileSystemOperations();
+
+  @Override
+  @TaskAction
+  protected void copy() {
+    this.archiveWriter().execute(this);
+  }
+
+  /** The writer of the archive, which is the task's action. */
+  protected WriteArchiveInParallel archiveWriter() {
+    return new WriteArchiveInParallel(
+        this.getFileSystemOperations(), Runtime.getRuntime().availableProcessors());
+  }
+}
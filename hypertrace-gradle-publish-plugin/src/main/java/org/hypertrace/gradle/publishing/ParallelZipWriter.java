@@ -0,0 +1,402 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Writes a zip archive whose entries are compressed in parallel, one entry per thread, and then
+ * written in order. Entries carry a constant timestamp and their unix mode, so the same entries
+ * always produce the same bytes. ZIP64 records are only written where a size, offset or the entry
+ * count needs them.
+ */
+public class ParallelZipWriter {
+  // 1980-02-01 00:00, as the DOS date of Gradle's reproducible archives
+  private static final int DOS_DATE = (2 << 5) | 1;
+  private static final int DOS_TIME = 0;
+  private static final int FLAG_UTF8_NAMES = 0x0800;
+  private static final int METHOD_STORED = 0;
+  private static final int METHOD_DEFLATED = 8;
+  private static final int VERSION_DEFAULT = 20;
+  private static final int VERSION_ZIP64 = 45;
+  private static final int MADE_BY_UNIX = 3 << 8;
+  private static final long MAX_32 = 0xFFFFFFFFL;
+  private static final int MAX_16 = 0xFFFF;
+  private static final int FILE_TYPE = 0100000;
+  private static final int DIRECTORY_TYPE = 040000;
+  private static final int MSDOS_DIRECTORY = 0x10;
+  // Compressed entries above this size are held in a temporary file rather than on the heap
+  private static final long IN_MEMORY_LIMIT = 8L * 1024 * 1024;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final boolean compress;
+  private final int threads;
+  private final Path temporaryDirectory;
+
+  /**
+   * @param compress whether entries are deflated, or stored as they are
+   * @param threads the number of entries compressed at the same time
+   * @param temporaryDirectory where large entries are held between compression and writing
+   */
+  public ParallelZipWriter(boolean compress, int threads, Path temporaryDirectory) {
+    this.compress = compress;
+    this.threads = threads;
+    this.temporaryDirectory = temporaryDirectory;
+  }
+
+  /** Writes the entries, in the given order, to the archive. */
+  public void write(Path archive, List<Entry> entries) throws IOException {
+    try (OutputStream outputStream = Files.newOutputStream(archive)) {
+      this.write(outputStream, entries);
+    }
+  }
+
+  /** Writes the entries, in the given order, to the stream, which is left open. */
+  public void write(OutputStream archive, List<Entry> entries) throws IOException {
+    this.write(
+        archive,
+        sink -> {
+          for (Entry entry : entries) {
+            sink.add(entry);
+          }
+        });
+  }
+
+  /** Writes the entries, in the given order, to the archive. */
+  public void write(Path archive, EntrySource entries) throws IOException {
+    try (OutputStream outputStream = Files.newOutputStream(archive)) {
+      this.write(outputStream, entries);
+    }
+  }
+
+  /**
+   * Writes the entries the source adds, in the order it adds them, to the stream, which is left
+   * open. Each entry is compressed as soon as it is added, while the source prepares the next.
+   */
+  public void write(OutputStream archive, EntrySource entries) throws IOException {
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            threads,
+            runnable -> {
+              Thread thread = new Thread(runnable, "parallel-zip");
+              thread.setDaemon(true);
+              return thread;
+            });
+    // Compression runs ahead of the writer by a bounded number of entries, bounding the memory
+    Deque<Future<CompressedEntry>> pending = new ArrayDeque<>();
+    List<CompressedEntry> written = new ArrayList<>();
+    CountingOutputStream outputStream =
+        new CountingOutputStream(new BufferedOutputStream(archive, BUFFER_SIZE));
+    try {
+      entries.addTo(
+          entry -> {
+            pending.add(executor.submit(() -> this.compress(entry)));
+            if (pending.size() >= 2 * threads) {
+              written.add(writeLocal(outputStream, await(pending.poll())));
+            }
+          });
+      while (!pending.isEmpty()) {
+        written.add(writeLocal(outputStream, await(pending.poll())));
+      }
+      writeCentralDirectory(outputStream, written);
+      outputStream.flush();
+    } finally {
+      executor.shutdownNow();
+      for (Future<CompressedEntry> future : pending) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  private CompressedEntry compress(Entry entry) throws IOException {
+    CompressedEntry compressed = new CompressedEntry(entry);
+    if (entry.file == null) {
+      compressed.method = METHOD_STORED;
+      return compressed;
+    }
+    CRC32 crc = new CRC32();
+    byte[] buffer = new byte[BUFFER_SIZE];
+    if (!compress) {
+      try (InputStream inputStream = Files.newInputStream(entry.file)) {
+        for (int read; (read = inputStream.read(buffer)) != -1; ) {
+          crc.update(buffer, 0, read);
+          compressed.size += read;
+        }
+      }
+      compressed.method = METHOD_STORED;
+      compressed.crc = crc.getValue();
+      compressed.compressedSize = compressed.size;
+      compressed.storedFile = entry.file;
+      return compressed;
+    }
+    boolean spill = Files.size(entry.file) > IN_MEMORY_LIMIT;
+    ByteArrayOutputStream inMemory = spill ? null : new ByteArrayOutputStream();
+    if (spill) {
+      compressed.temporaryFile =
+          Files.createTempFile(temporaryDirectory, "parallel-zip", ".deflate");
+    }
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try (InputStream inputStream = Files.newInputStream(entry.file);
+        DeflaterOutputStream deflaterStream =
+            new DeflaterOutputStream(
+                spill ? Files.newOutputStream(compressed.temporaryFile) : inMemory,
+                deflater,
+                BUFFER_SIZE)) {
+      for (int read; (read = inputStream.read(buffer)) != -1; ) {
+        crc.update(buffer, 0, read);
+        deflaterStream.write(buffer, 0, read);
+      }
+      deflaterStream.finish();
+      compressed.size = deflater.getBytesRead();
+      compressed.compressedSize = deflater.getBytesWritten();
+    } finally {
+      deflater.end();
+    }
+    compressed.method = METHOD_DEFLATED;
+    compressed.crc = crc.getValue();
+    compressed.data = inMemory == null ? null : inMemory.toByteArray();
+    return compressed;
+  }
+
+  private static CompressedEntry await(Future<CompressedEntry> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while compressing", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Failed to compress an entry", e.getCause());
+    }
+  }
+
+  private static CompressedEntry writeLocal(
+      CountingOutputStream outputStream, CompressedEntry entry) throws IOException {
+    entry.offset = outputStream.count;
+    boolean zip64 = entry.size >= MAX_32 || entry.compressedSize >= MAX_32;
+    writeInt(outputStream, 0x04034b50);
+    writeShort(outputStream, zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+    writeShort(outputStream, FLAG_UTF8_NAMES);
+    writeShort(outputStream, entry.method);
+    writeShort(outputStream, DOS_TIME);
+    writeShort(outputStream, DOS_DATE);
+    writeInt(outputStream, entry.crc);
+    writeInt(outputStream, zip64 ? MAX_32 : entry.compressedSize);
+    writeInt(outputStream, zip64 ? MAX_32 : entry.size);
+    writeShort(outputStream, entry.name.length);
+    writeShort(outputStream, zip64 ? 20 : 0);
+    outputStream.write(entry.name);
+    if (zip64) {
+      writeShort(outputStream, 0x0001);
+      writeShort(outputStream, 16);
+      writeLong(outputStream, entry.size);
+      writeLong(outputStream, entry.compressedSize);
+    }
+    if (entry.data != null) {
+      outputStream.write(entry.data);
+    } else if (entry.temporaryFile != null || entry.storedFile != null) {
+      Path source = entry.temporaryFile != null ? entry.temporaryFile : entry.storedFile;
+      try {
+        Files.copy(source, outputStream);
+      } finally {
+        if (entry.temporaryFile != null) {
+          Files.delete(entry.temporaryFile);
+        }
+      }
+    }
+    // Only what the central directory needs is kept
+    entry.data = null;
+    return entry;
+  }
+
+  private static void writeCentralDirectory(
+      CountingOutputStream outputStream, List<CompressedEntry> entries) throws IOException {
+    long start = outputStream.count;
+    for (CompressedEntry entry : entries) {
+      boolean sizeOverflow = entry.size >= MAX_32;
+      boolean compressedSizeOverflow = entry.compressedSize >= MAX_32;
+      boolean offsetOverflow = entry.offset >= MAX_32;
+      int extraLength =
+          (sizeOverflow ? 8 : 0) + (compressedSizeOverflow ? 8 : 0) + (offsetOverflow ? 8 : 0);
+      boolean zip64 = extraLength > 0;
+      int version = zip64 ? VERSION_ZIP64 : VERSION_DEFAULT;
+      writeInt(outputStream, 0x02014b50);
+      writeShort(outputStream, MADE_BY_UNIX | version);
+      writeShort(outputStream, version);
+      writeShort(outputStream, FLAG_UTF8_NAMES);
+      writeShort(outputStream, entry.method);
+      writeShort(outputStream, DOS_TIME);
+      writeShort(outputStream, DOS_DATE);
+      writeInt(outputStream, entry.crc);
+      writeInt(outputStream, compressedSizeOverflow ? MAX_32 : entry.compressedSize);
+      writeInt(outputStream, sizeOverflow ? MAX_32 : entry.size);
+      writeShort(outputStream, entry.name.length);
+      writeShort(outputStream, zip64 ? extraLength + 4 : 0);
+      writeShort(outputStream, 0);
+      writeShort(outputStream, 0);
+      writeShort(outputStream, 0);
+      writeInt(outputStream, entry.externalAttributes());
+      writeInt(outputStream, offsetOverflow ? MAX_32 : entry.offset);
+      outputStream.write(entry.name);
+      if (zip64) {
+        writeShort(outputStream, 0x0001);
+        writeShort(outputStream, extraLength);
+        if (sizeOverflow) {
+          writeLong(outputStream, entry.size);
+        }
+        if (compressedSizeOverflow) {
+          writeLong(outputStream, entry.compressedSize);
+        }
+        if (offsetOverflow) {
+          writeLong(outputStream, entry.offset);
+        }
+      }
+    }
+    long end = outputStream.count;
+    long size = end - start;
+    if (entries.size() >= MAX_16 || start >= MAX_32 || size >= MAX_32) {
+      writeInt(outputStream, 0x06064b50);
+      writeLong(outputStream, 44);
+      writeShort(outputStream, MADE_BY_UNIX | VERSION_ZIP64);
+      writeShort(outputStream, VERSION_ZIP64);
+      writeInt(outputStream, 0);
+      writeInt(outputStream, 0);
+      writeLong(outputStream, entries.size());
+      writeLong(outputStream, entries.size());
+      writeLong(outputStream, size);
+      writeLong(outputStream, start);
+      writeInt(outputStream, 0x07064b50);
+      writeInt(outputStream, 0);
+      writeLong(outputStream, end);
+      writeInt(outputStream, 1);
+    }
+    writeInt(outputStream, 0x06054b50);
+    writeShort(outputStream, 0);
+    writeShort(outputStream, 0);
+    writeShort(outputStream, Math.min(entries.size(), MAX_16));
+    writeShort(outputStream, Math.min(entries.size(), MAX_16));
+    writeInt(outputStream, Math.min(size, MAX_32));
+    writeInt(outputStream, Math.min(start, MAX_32));
+    writeShort(outputStream, 0);
+  }
+
+  private static void writeShort(OutputStream outputStream, int value) throws IOException {
+    outputStream.write(value & 0xFF);
+    outputStream.write((value >>> 8) & 0xFF);
+  }
+
+  private static void writeInt(OutputStream outputStream, long value) throws IOException {
+    writeShort(outputStream, (int) (value & MAX_16));
+    writeShort(outputStream, (int) ((value >>> 16) & MAX_16));
+  }
+
+  private static void writeLong(OutputStream outputStream, long value) throws IOException {
+    writeInt(outputStream, value & MAX_32);
+    writeInt(outputStream, value >>> 32);
+  }
+
+  /** Adds the entries of an archive, one after the other. */
+  public interface EntrySource {
+    void addTo(EntrySink sink) throws IOException;
+  }
+
+  /** Takes the entries of an archive, in the order they are written. */
+  public interface EntrySink {
+    void add(Entry entry) throws IOException;
+  }
+
+  /** A file, or a directory if it has no file, to add under the given path. */
+  public static class Entry {
+    private final String path;
+    @Nullable private final Path file;
+    private final int mode;
+
+    private Entry(String path, @Nullable Path file, int mode) {
+      this.path = path;
+      this.file = file;
+      this.mode = mode;
+    }
+
+    public static Entry file(String path, Path file, int mode) {
+      return new Entry(path, file, mode);
+    }
+
+    public static Entry directory(String path, int mode) {
+      return new Entry(path.endsWith("/") ? path : path + "/", null, mode);
+    }
+
+    public String getPath() {
+      return path;
+    }
+  }
+
+  private static class CompressedEntry {
+    private final byte[] name;
+    private final boolean directory;
+    private final int mode;
+    private int method;
+    private long crc;
+    private long size;
+    private long compressedSize;
+    private long offset;
+    @Nullable private byte[] data;
+    @Nullable private Path temporaryFile;
+    @Nullable private Path storedFile;
+
+    CompressedEntry(Entry entry) {
+      this.name = entry.path.getBytes(StandardCharsets.UTF_8);
+      this.directory = entry.file == null;
+      this.mode = entry.mode;
+    }
+
+    long externalAttributes() {
+      long unixMode = (directory ? DIRECTORY_TYPE : FILE_TYPE) | (mode & 07777);
+      return (unixMode << 16) | (directory ? MSDOS_DIRECTORY : 0);
+    }
+  }
+
+  private static class CountingOutputStream extends OutputStream {
+    private final OutputStream delegate;
+    private long count;
+
+    CountingOutputStream(OutputStream delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      delegate.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      delegate.write(b, off, len);
+      count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      delegate.flush();
+    }
+  }
+}
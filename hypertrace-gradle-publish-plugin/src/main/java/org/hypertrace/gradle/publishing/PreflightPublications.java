@@ -0,0 +1,289 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * Checks the publications {@link WritePublishPreflight} described for every project of the build
+ * at once, and fails with every problem found. Each release version is looked up in each of its
+ * repositories, and each POM published to Maven Central is checked for the metadata it requires,
+ * all concurrently through the shared {@link PublishUploadService}. Coordinates published by more
+ * than one project are reported too. A repository that can't be queried is only logged, as the
+ * upload reports its own failure.
+ */
+public abstract class PreflightPublications extends DefaultTask {
+  private static final String UNSPECIFIED_VERSION = "unspecified";
+  // Each required element's path below the POM's project element
+  private static final List<List<String>> MAVEN_CENTRAL_REQUIRED_ELEMENTS =
+      Collections.unmodifiableList(
+          Arrays.asList(
+              Collections.singletonList("name"),
+              Collections.singletonList("description"),
+              Collections.singletonList("url"),
+              Arrays.asList("licenses", "license", "name"),
+              Arrays.asList("developers", "developer", "name"),
+              Arrays.asList("scm", "url"),
+              Arrays.asList("scm", "connection")));
+
+  /** The directories the projects' descriptions were written to. */
+  @InputFiles
+  @PathSensitive(PathSensitivity.NONE)
+  public abstract ConfigurableFileCollection getDescriptions();
+
+  /** The build's repositories, whose credentials are used for the repositories of that name. */
+  @Internal
+  public abstract ListProperty<RemoteRepository> getCredentials();
+
+  @Internal
+  public abstract Property<PublishUploadService> getUploadService();
+
+  /** Lists the coordinates that were checked, for the uploads that wait on the preflight. */
+  @Internal
+  public abstract RegularFileProperty getResultFile();
+
+  @TaskAction
+  public void check() throws IOException {
+    // A streamed upload checks for the result, so a failed check must not leave an older one
+    Path resultFile = this.getResultFile().get().getAsFile().toPath();
+    Files.deleteIfExists(resultFile);
+    List<Description> descriptions = new ArrayList<>();
+    for (File directory : this.getDescriptions().getFiles()) {
+      descriptions.addAll(readDescriptions(directory.toPath()));
+    }
+    Map<String, RemoteRepository> credentials = new HashMap<>();
+    for (RemoteRepository repository : this.getCredentials().get()) {
+      credentials.put(repository.getName(), repository);
+    }
+
+    List<String> problems = Collections.synchronizedList(new ArrayList<>());
+    problems.addAll(findSharedCoordinates(descriptions));
+    PublishUploadService uploadService = this.getUploadService().get();
+    List<CompletableFuture<Void>> checks = new ArrayList<>();
+    for (Description description : descriptions) {
+      if (description.mavenCentral) {
+        checks.add(uploadService.submit(() -> problems.addAll(checkMavenCentralPom(description))));
+      }
+      if (description.pom.getVersion().equals(UNSPECIFIED_VERSION)) {
+        problems.add(description + " has no version");
+        continue;
+      }
+      if (description.pom.isSnapshot()) {
+        continue;
+      }
+      for (RemoteRepository target : description.repositories) {
+        RemoteRepository repository = withCredentials(target, credentials.get(target.getName()));
+        checks.add(
+            uploadService.submit(() -> this.checkNotPublished(description, repository, problems)));
+      }
+    }
+    CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0])).join();
+
+    if (!problems.isEmpty()) {
+      List<String> sorted = problems.stream().sorted().collect(Collectors.toList());
+      throw new GradleException(
+          String.format(
+              "Publish preflight found %d problem%s:%n  %s",
+              sorted.size(),
+              sorted.size() == 1 ? "" : "s",
+              String.join(String.format("%n  "), sorted)));
+    }
+    Files.createDirectories(resultFile.getParent());
+    Files.write(
+        resultFile,
+        descriptions.stream()
+            .map(Description::toString)
+            .sorted()
+            .collect(Collectors.toList()),
+        StandardCharsets.UTF_8);
+  }
+
+  private void checkNotPublished(
+      Description description, RemoteRepository repository, List<String> problems) {
+    PublishedArtifact pom = description.pom;
+    String path = pom.getVersionDirectory() + "/" + MavenRepositoryClient.fileName(pom);
+    try {
+      if (new MavenRepositoryClient(repository).exists(path)) {
+        problems.add(description + " is already published to " + repository);
+      }
+    } catch (IOException e) {
+      this.getLogger()
+          .warn(
+              "Could not check whether {} is already published to {}: {}",
+              description,
+              repository,
+              e.getMessage());
+    }
+  }
+
+  private static List<String> checkMavenCentralPom(Description description) throws IOException {
+    Element project;
+    try (InputStream inputStream = Files.newInputStream(description.pom.getFile().toPath())) {
+      project =
+          DocumentBuilderFactory.newInstance()
+              .newDocumentBuilder()
+              .parse(inputStream)
+              .getDocumentElement();
+    } catch (ParserConfigurationException | SAXException e) {
+      return Collections.singletonList(description + " has a POM that can't be parsed");
+    }
+    List<String> problems = new ArrayList<>();
+    for (List<String> path : MAVEN_CENTRAL_REQUIRED_ELEMENTS) {
+      if (!hasText(project, path)) {
+        problems.add(
+            String.format(
+                "%s POM is missing <%s>, required by Maven Central",
+                description, String.join("><", path)));
+      }
+    }
+    return problems;
+  }
+
+  private static List<String> findSharedCoordinates(List<Description> descriptions) {
+    Map<String, List<String>> projects = new HashMap<>();
+    for (Description description : descriptions) {
+      projects
+          .computeIfAbsent(description.getCoordinates(), unused -> new ArrayList<>())
+          .add(description.project);
+    }
+    List<String> problems = new ArrayList<>();
+    for (Map.Entry<String, List<String>> coordinates : projects.entrySet()) {
+      List<String> publishers =
+          coordinates.getValue().stream().distinct().sorted().collect(Collectors.toList());
+      if (publishers.size() > 1) {
+        problems.add(
+            String.format(
+                "%s is published by more than one project: %s",
+                coordinates.getKey(), String.join(", ", publishers)));
+      }
+    }
+    return problems;
+  }
+
+  private static boolean hasText(Element element, List<String> path) {
+    if (path.isEmpty()) {
+      return !element.getTextContent().trim().isEmpty();
+    }
+    for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child instanceof Element
+          && child.getNodeName().equals(path.get(0))
+          && hasText((Element) child, path.subList(1, path.size()))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static RemoteRepository withCredentials(
+      RemoteRepository target, @Nullable RemoteRepository credentials) {
+    if (credentials == null || !credentials.hasCredentials()) {
+      return target;
+    }
+    return new RemoteRepository(
+        target.getName(), target.getUrl(), credentials.getUsername(), credentials.getPassword());
+  }
+
+  private static List<Description> readDescriptions(Path directory) throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return Collections.emptyList();
+    }
+    List<Path> descriptionFiles;
+    try (Stream<Path> files = Files.list(directory)) {
+      descriptionFiles =
+          files
+              .filter(
+                  file ->
+                      file.getFileName()
+                          .toString()
+                          .endsWith(WritePublishPreflight.DESCRIPTION_EXTENSION))
+              .sorted()
+              .collect(Collectors.toList());
+    }
+    List<Description> descriptions = new ArrayList<>();
+    for (Path descriptionFile : descriptionFiles) {
+      Properties properties = new Properties();
+      try (InputStream inputStream = Files.newInputStream(descriptionFile)) {
+        properties.load(inputStream);
+      }
+      String fileName = descriptionFile.getFileName().toString();
+      Path pomFile =
+          directory.resolve(
+              fileName.substring(
+                      0, fileName.length() - WritePublishPreflight.DESCRIPTION_EXTENSION.length())
+                  + WritePublishPreflight.POM_EXTENSION);
+      descriptions.add(new Description(properties, pomFile.toFile()));
+    }
+    return descriptions;
+  }
+
+  private static class Description {
+    private final String project;
+    private final PublishedArtifact pom;
+    private final boolean mavenCentral;
+    private final List<RemoteRepository> repositories = new ArrayList<>();
+
+    Description(Properties properties, File pomFile) {
+      this.project = properties.getProperty(WritePublishPreflight.PROJECT_KEY);
+      this.pom =
+          new PublishedArtifact(
+              properties.getProperty(WritePublishPreflight.GROUP_ID_KEY),
+              properties.getProperty(WritePublishPreflight.ARTIFACT_ID_KEY),
+              properties.getProperty(WritePublishPreflight.VERSION_KEY),
+              null,
+              "pom",
+              pomFile);
+      this.mavenCentral =
+          Boolean.parseBoolean(properties.getProperty(WritePublishPreflight.MAVEN_CENTRAL_KEY));
+      for (int i = 0; ; i++) {
+        String name =
+            properties.getProperty(String.format(WritePublishPreflight.REPOSITORY_NAME_KEY, i));
+        String url =
+            properties.getProperty(String.format(WritePublishPreflight.REPOSITORY_URL_KEY, i));
+        if (name == null || url == null) {
+          break;
+        }
+        repositories.add(new RemoteRepository(name, URI.create(url), null, null));
+      }
+    }
+
+    String getCoordinates() {
+      return String.join(":", pom.getGroupId(), pom.getArtifactId(), pom.getVersion());
+    }
+
+    @Override
+    public String toString() {
+      return this.getCoordinates() + " (" + project + ")";
+    }
+  }
+}
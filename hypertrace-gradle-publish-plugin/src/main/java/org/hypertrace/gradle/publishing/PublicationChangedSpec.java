@@ -0,0 +1,65 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.gradle.api.Task;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.specs.Spec;
+
+/**
+ * Satisfied unless every one of the publications is a snapshot whose fingerprint, from {@link
+ * FingerprintPublications}, is the one recorded in the {@link PublishedFingerprints} for each
+ * repository.
+ */
+public class PublicationChangedSpec implements Spec<Task> {
+  private final Provider<List<String>> publications;
+  private final Provider<Boolean> snapshot;
+  private final Provider<List<RemoteRepository>> repositories;
+  private final Provider<RegularFile> fingerprintFile;
+  private final File manifestFile;
+
+  public PublicationChangedSpec(
+      Provider<List<String>> publications,
+      Provider<Boolean> snapshot,
+      Provider<List<RemoteRepository>> repositories,
+      Provider<RegularFile> fingerprintFile,
+      File manifestFile) {
+    this.publications = publications;
+    this.snapshot = snapshot;
+    this.repositories = repositories;
+    this.fingerprintFile = fingerprintFile;
+    this.manifestFile = manifestFile;
+  }
+
+  @Override
+  public boolean isSatisfiedBy(Task task) {
+    if (!snapshot.get()) {
+      return true;
+    }
+    String fingerprint;
+    try {
+      fingerprint = FingerprintPublications.read(fingerprintFile.get().getAsFile());
+    } catch (IOException e) {
+      task.getLogger()
+          .info("Unable to read publication fingerprint, publishing: {}", e.getMessage());
+      return true;
+    }
+    PublishedFingerprints published = new PublishedFingerprints(manifestFile);
+    for (RemoteRepository repository : repositories.get()) {
+      for (String publication : publications.get()) {
+        if (!fingerprint.equals(published.get(repository, publication))) {
+          return true;
+        }
+      }
+    }
+    task.getLogger()
+        .lifecycle(
+            "Skipping {}, neither the project nor its project dependencies changed since it was"
+                + " published to {}",
+            task.getPath(),
+            repositories.get());
+    return false;
+  }
+}
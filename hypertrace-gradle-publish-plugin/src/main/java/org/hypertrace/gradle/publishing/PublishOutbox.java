@@ -0,0 +1,79 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.gradle.api.Project;
+
+/**
+ * Opt-in publishing mode, enabled by the {@value #OUTBOX_PROPERTY} gradle property, where {@code
+ * publish} only adds the staged publications to a durable outbox, and {@value #DRAIN_TASK_NAME}
+ * uploads them later. The outbox of each project is kept under the root project's {@code .gradle}
+ * directory, so it survives {@code clean}. Each entry is a directory holding one build's staged
+ * repository and a journal per remote repository of the files already uploaded to it.
+ */
+public final class PublishOutbox {
+  public static final String OUTBOX_PROPERTY = "publish_outbox";
+  public static final String DRAIN_TASK_NAME = "drainPublishOutbox";
+  static final String ENQUEUE_TASK_NAME = "enqueueStagedPublications";
+  static final String REPOSITORY_DIRECTORY = "repository";
+  static final String TEMPORARY_SUFFIX = ".tmp";
+  static final String DRAINED_SUFFIX = ".drained";
+  private static final String OUTBOX_DIRECTORY = ".gradle/hypertrace-publish/outbox";
+  private static final String ENTRIES_DIRECTORY = "entries";
+  private static final String JOURNAL_PREFIX = "uploaded-";
+
+  private PublishOutbox() {}
+
+  public static boolean isEnabled(Project project) {
+    return project
+        .getProviders()
+        .gradleProperty(OUTBOX_PROPERTY)
+        .map(Boolean::parseBoolean)
+        .getOrElse(false);
+  }
+
+  /** The entries waiting to be uploaded, oldest first. */
+  static List<Path> listEntries(Path outboxDirectory) throws IOException {
+    if (!Files.isDirectory(outboxDirectory)) {
+      return Collections.emptyList();
+    }
+    try (Stream<Path> entries = Files.list(outboxDirectory)) {
+      return entries
+          .filter(entry -> isEntryName(entry.getFileName().toString()))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  /** Entries whose removal was interrupted. */
+  static List<File> listDrainedEntries(Path outboxDirectory) throws IOException {
+    try (Stream<Path> entries = Files.list(outboxDirectory)) {
+      return entries
+          .filter(entry -> entry.getFileName().toString().endsWith(DRAINED_SUFFIX))
+          .map(Path::toFile)
+          .collect(Collectors.toList());
+    }
+  }
+
+  static Path journal(Path entry, RemoteRepository repository) {
+    return entry.resolve(JOURNAL_PREFIX + repository.getName());
+  }
+
+  // Entries being written or removed carry a suffix
+  private static boolean isEntryName(String name) {
+    return name.indexOf('.') < 0;
+  }
+
+  static File outboxDirectory(Project project) {
+    String projectDirectory =
+        project.getPath().equals(":") ? "" : project.getPath().substring(1).replace(':', '/') + "/";
+    return new File(
+        project.getRootDir(), OUTBOX_DIRECTORY + "/" + projectDirectory + ENTRIES_DIRECTORY);
+  }
+}
@@ -1,21 +1,38 @@
 package org.hypertrace.gradle.publishing;
 
-import org.gradle.api.GradleException;
+import org.gradle.api.NamedDomainObjectProvider;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.credentials.PasswordCredentials;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.publish.PublicationContainer;
 import org.gradle.api.publish.PublishingExtension;
 import org.gradle.api.publish.maven.MavenPublication;
 import org.gradle.api.publish.maven.plugins.MavenPublishPlugin;
 import org.gradle.api.publish.maven.tasks.GenerateMavenPom;
+import org.gradle.api.publish.maven.tasks.PublishToMavenRepository;
+import org.gradle.api.publish.tasks.GenerateModuleMetadata;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.bundling.Zip;
+import org.gradle.build.event.BuildEventsListenerRegistry;
 
 import javax.annotation.Nonnull;
-import java.util.Optional;
+import javax.inject.Inject;
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class PublishPlugin implements Plugin<Project> {
 
   private static final String REPOSITORY_KEY = "gradle";
   private static final String EXTENSION_NAME = "hypertracePublish";
+  private static final String VALIDATE_TASK_NAME = "validatePublishGradleProperties";
+  private static final String VALIDATE_EXTENSION_TASK_NAME = "validatePublishExtension";
+  private static final String REMOTE_CHECKSUM_CACHE_PATH =
+    "caches/hypertrace-publish/remote-checksums.properties";
   private static final String PROPERTY_ARTIFACTORY_USER = "artifactory_user";
   private static final String PROPERTY_ARTIFACTORY_PASSWORD = "artifactory_password";
   private static final String PROPERTY_ARTIFACTORY_CONTEXT_URL = "artifactory_contextUrl";
@@ -23,10 +40,18 @@ public class PublishPlugin implements Plugin<Project> {
   private static final String MAVEN_USER = "maven_user";
   private static final String MAVEN_PASSWORD = "maven_password";
   private static final String MAVEN_REPO_URL = "maven_repo_url";
+  private static final String ARTIFACTORY_REPOSITORY_NAME = "artifactory";
+  private static final String MAVEN_REPOSITORY_NAME = "maven";
 
+  private final BuildEventsListenerRegistry buildEventsListenerRegistry;
   private Project project;
   private HypertracePublishExtension extension;
 
+  @Inject
+  public PublishPlugin(BuildEventsListenerRegistry buildEventsListenerRegistry) {
+    this.buildEventsListenerRegistry = buildEventsListenerRegistry;
+  }
+
   @Override
   public void apply(@Nonnull Project target) {
     project = target;
@@ -35,6 +60,14 @@ public class PublishPlugin implements Plugin<Project> {
     this.maybeAddArtifactoryPublishRepository();
     this.maybeAddMavenPublishRepository();
     this.addKnownPublications();
+    project.getPluginManager().apply(ReproducibleArtifacts.class);
+    this.addPreflight();
+    this.limitParallelUploads();
+    this.skipUnchangedSnapshots();
+    ChangedPublications.configure(project);
+    this.configureLargeArtifactUploads();
+    this.linkPublishedArtifacts();
+    this.recordTelemetry();
   }
 
   private void applyMavenPublish() {
@@ -43,29 +76,84 @@ public class PublishPlugin implements Plugin<Project> {
   }
 
   private void maybeAddArtifactoryPublishRepository() {
-    Optional<String> user = getProperty(PROPERTY_ARTIFACTORY_USER);
-    Optional<String> password = getProperty(PROPERTY_ARTIFACTORY_PASSWORD);
-    Optional<String> contextUrl = getProperty(PROPERTY_ARTIFACTORY_CONTEXT_URL);
-    if (contextUrl.isPresent() && user.isPresent() && password.isPresent()) {
+    Provider<String> user = getUsername(ARTIFACTORY_REPOSITORY_NAME, PROPERTY_ARTIFACTORY_USER);
+    Provider<String> password =
+      getPassword(ARTIFACTORY_REPOSITORY_NAME, PROPERTY_ARTIFACTORY_PASSWORD);
+    Provider<String> contextUrl = getProperty(PROPERTY_ARTIFACTORY_CONTEXT_URL);
+    if (this.isArtifactoryRepositoryConfigured()) {
       String repoUrl = contextUrl.get() + "/" + REPOSITORY_KEY;
-      addPublishRepository(repoUrl, user.get(), password.get());
+      addPublishRepository(ARTIFACTORY_REPOSITORY_NAME, repoUrl, user.get(), password.get());
     }
   }
 
   private void maybeAddMavenPublishRepository() {
-    Optional<String> user = getProperty(MAVEN_USER);
-    Optional<String> password = getProperty(MAVEN_PASSWORD);
-    Optional<String> repoUrl = getProperty(MAVEN_REPO_URL);
+    Provider<String> user = getUsername(MAVEN_REPOSITORY_NAME, MAVEN_USER);
+    Provider<String> password = getPassword(MAVEN_REPOSITORY_NAME, MAVEN_PASSWORD);
+    Provider<String> repoUrl = getProperty(MAVEN_REPO_URL);
 
-    if (repoUrl.isPresent() && user.isPresent() && password.isPresent()) {
-      addPublishRepository(repoUrl.get(), user.get(), password.get());
+    if (this.isMavenRepositoryConfigured()) {
+      addPublishRepository(MAVEN_REPOSITORY_NAME, repoUrl.get(), user.get(), password.get());
     }
   }
 
-  private void addPublishRepository(String repoUrl, String user, String password) {
+  private boolean isArtifactoryRepositoryConfigured() {
+    return getProperty(PROPERTY_ARTIFACTORY_CONTEXT_URL).isPresent()
+      && getUsername(ARTIFACTORY_REPOSITORY_NAME, PROPERTY_ARTIFACTORY_USER).isPresent()
+      && getPassword(ARTIFACTORY_REPOSITORY_NAME, PROPERTY_ARTIFACTORY_PASSWORD).isPresent();
+  }
+
+  private boolean isMavenRepositoryConfigured() {
+    return getProperty(MAVEN_REPO_URL).isPresent()
+      && getUsername(MAVEN_REPOSITORY_NAME, MAVEN_USER).isPresent()
+      && getPassword(MAVEN_REPOSITORY_NAME, MAVEN_PASSWORD).isPresent();
+  }
+
+  // Gradle reads a repository's identity based credentials, <name>Username and <name>Password,
+  // itself. It has no way to read them under another name, so the deprecated properties are
+  // explicit credentials.
+  private Provider<String> getUsername(String repositoryName, String legacyPropertyName) {
+    return getProperty(repositoryName + "Username").orElse(getProperty(legacyPropertyName));
+  }
+
+  private Provider<String> getPassword(String repositoryName, String legacyPropertyName) {
+    return getProperty(repositoryName + "Password").orElse(getProperty(legacyPropertyName));
+  }
+
+  // The names of the repository's identity based credentials, the username then the password
+  private static List<String> identityCredentials(String repositoryName) {
+    return Arrays.asList(repositoryName + "Username", repositoryName + "Password");
+  }
+
+  private boolean hasIdentityCredentials(String repositoryName) {
+    return getProperty(repositoryName + "Username").isPresent()
+      && getProperty(repositoryName + "Password").isPresent();
+  }
+
+  private void addPublishRepository(String name, String repoUrl, String user, String password) {
+    // If opted in, both repositories are published to from one staged copy, rather than one after
+    // the other
+    boolean fanOut = StagedPublishing.isFanOutEnabled(project)
+      && this.isArtifactoryRepositoryConfigured() && this.isMavenRepositoryConfigured();
+    PublishPreflight.addRepository(project,
+      new RemoteRepository(name, URI.create(repoUrl), user, password));
+    if (fanOut || StagedPublishing.isEnabled(project)) {
+      StagedPublishing.addRemoteRepository(project,
+        project.provider(() -> new RemoteRepository(name, URI.create(repoUrl), user, password)));
+      return;
+    }
     getPublishingExtension().repositories(artifactRepositories -> {
       artifactRepositories.maven(mavenArtifactRepository -> {
+        mavenArtifactRepository.setName(name);
         mavenArtifactRepository.setUrl(repoUrl);
+        if ("file".equals(URI.create(repoUrl).getScheme())) {
+          return; // A file repository takes no credentials
+        }
+        if (hasIdentityCredentials(name)) {
+          // Unlike explicit values, these keep the publish tasks compatible with the configuration
+          // cache
+          mavenArtifactRepository.credentials(PasswordCredentials.class);
+          return;
+        }
         mavenArtifactRepository.credentials(passwordCredentials -> {
           passwordCredentials.setUsername(user);
           passwordCredentials.setPassword(password);
@@ -88,10 +176,14 @@ public class PublishPlugin implements Plugin<Project> {
         if (this.isJavaGradlePluginPluginApplied()) {
           return; // This already creates a publication, we don't want to duplicate
         }
-        publications.create("javaLibrary", MavenPublication.class, publication -> {
-          publication.from(project.getComponents().getByName("java"));
-          updatePomMetadata(publication);
-        });
+        // org.hypertrace.publish-maven-central-plugin may have already registered this publication
+        if (!publications.getNames().contains("javaLibrary")) {
+          publications.register("javaLibrary", MavenPublication.class, publication ->
+            publication.from(project.getComponents().getByName("java")));
+        }
+        publications.withType(MavenPublication.class)
+          .matching(publication -> publication.getName().equals("javaLibrary"))
+          .configureEach(this::updatePomMetadata);
       });
   }
 
@@ -113,10 +205,150 @@ public class PublishPlugin implements Plugin<Project> {
 
   private void addDistributionPublicationWhenApplied(PublicationContainer publications) {
     project.getPluginManager()
-      .withPlugin("distribution", appliedPlugin ->
-        publications.create("distributionZip", MavenPublication.class, publication ->
-          publication.artifact(project.getTasks()
-            .getByName("distZip"))));
+      .withPlugin("distribution", appliedPlugin -> {
+        TaskProvider<Zip> distZip = project.getTasks().named("distZip", Zip.class);
+        NamedDomainObjectProvider<MavenPublication> distribution =
+          publications.register("distributionZip", MavenPublication.class);
+        TaskProvider<? extends Zip> archive = StreamingDistribution.isEnabled(project)
+          ? StreamingDistribution.register(project, distZip, distribution)
+          : ParallelArchives.distribution(project, distZip);
+        distribution.configure(publication -> publication.artifact(archive));
+        ReproducibleArtifacts.configureArchive(archive);
+      });
+  }
+
+  private void addPreflight() {
+    PublishPreflight.maybeRegisterRootTask(project);
+    PublishPreflight.describe(project);
+    project.getTasks().withType(PublishToMavenRepository.class).configureEach(task -> {
+      if (!StagedPublishing.isStagingTask(task)) {
+        PublishPreflight.requireBefore(project, task);
+      }
+    });
+    // An outbox drain uploads what earlier builds staged, and was checked when they enqueued it
+    project.getTasks().withType(UploadStagedPublications.class).configureEach(task -> {
+      if (!(task instanceof DrainPublishOutbox)) {
+        PublishPreflight.requireBefore(project, task);
+      }
+    });
+    project.getTasks().withType(EnqueueStagedPublications.class)
+      .configureEach(task -> PublishPreflight.requireBefore(project, task));
+  }
+
+  private void limitParallelUploads() {
+    Provider<PublishUploadService> uploadService = PublishUploadService.register(project);
+    project.getTasks().withType(PublishToMavenRepository.class).configureEach(task -> {
+      if (!StagedPublishing.isStagingTask(task)) {
+        task.usesService(uploadService);
+      }
+    });
+  }
+
+  // The checks are added whether or not the build opts in, and only compare snapshots if it does
+  private void skipUnchangedSnapshots() {
+    Provider<Boolean> enabled = extension.skipUnchangedSnapshots;
+    File cacheFile =
+      new File(project.getGradle().getGradleUserHomeDir(), REMOTE_CHECKSUM_CACHE_PATH);
+    Provider<ChecksumService> checksums = ChecksumService.register(project);
+    project.getTasks().withType(PublishToMavenRepository.class).configureEach(task -> {
+      // Staged publications are compared against the repositories they are finally uploaded to
+      boolean staged = StagedPublishing.isStagingTask(task);
+      Provider<List<RemoteRepository>> repositories = staged
+        ? project.getTasks()
+          .named(StagedPublishing.UPLOAD_TASK_NAME, UploadStagedPublications.class)
+          .flatMap(UploadStagedPublications::getRepositories)
+        : RemoteRepository.of(project.getProviders(), task).map(Collections::singletonList);
+      // Only resolved if enabled, so builds that don't opt in don't list the publication's
+      // artifacts
+      Provider<List<PublishedArtifact>> artifacts = enabled.map(skip -> skip
+        ? publishedArtifacts(task.getPublication())
+        : Collections.emptyList());
+
+      task.onlyIf("artifacts differ from the latest published snapshot", new SnapshotChangedSpec(
+        enabled, repositories, artifacts, cacheFile, extension.remoteChecksumCacheTtl, checksums));
+      task.usesService(checksums);
+      if (!staged) {
+        task.doLast(new RecordPublishedChecksums(enabled, repositories, artifacts, cacheFile,
+          extension.remoteChecksumCacheTtl, checksums));
+      }
+    });
+    // Staged publications are only published once uploaded, and one task can't configure another
+    project.getTasks().withType(UploadStagedPublications.class).configureEach(task -> {
+      if (task instanceof DrainPublishOutbox) {
+        return; // Its entries may have been staged by earlier builds
+      }
+      task.usesService(checksums);
+      task.doLast(new RecordPublishedChecksums(enabled, task.getRepositories(),
+        this.stagedArtifacts(), cacheFile, extension.remoteChecksumCacheTtl, checksums));
+    });
+  }
+
+  private void linkPublishedArtifacts() {
+    project.getTasks().withType(UploadStagedPublications.class).configureEach(task -> {
+      // An outbox entry may have been staged by an earlier build, from artifacts since rebuilt
+      if (!(task instanceof DrainPublishOutbox)) {
+        task.getArtifacts().set(this.stagedArtifacts());
+      }
+    });
+  }
+
+  private Provider<List<PublishedArtifact>> stagedArtifacts() {
+    return project.provider(() -> {
+      List<PublishedArtifact> stagedArtifacts = new ArrayList<>();
+      getPublishingExtension().getPublications().withType(MavenPublication.class)
+        .forEach(publication -> stagedArtifacts.addAll(publishedArtifacts(publication)));
+      return stagedArtifacts;
+    });
+  }
+
+  private void configureLargeArtifactUploads() {
+    project.getTasks().withType(UploadStagedPublications.class).configureEach(task -> {
+      task.getLargeArtifactThreshold().set(extension.largeArtifactThreshold);
+      task.getResumableUploads().set(extension.resumableUploads);
+      task.getConditionalMetadataUpdates().set(extension.conditionalMetadataUpdates);
+    });
+  }
+
+  private void recordTelemetry() {
+    Provider<PublishTelemetry> telemetry =
+      PublishTelemetry.register(project, buildEventsListenerRegistry);
+    // Publishing elsewhere, such as to maven local, doesn't count
+    List<String> repositoryNames = Arrays.asList(
+      ARTIFACTORY_REPOSITORY_NAME, MAVEN_REPOSITORY_NAME, StagedPublishing.STAGING_REPOSITORY_NAME);
+    PublishTelemetry.timePublishingTo(project, telemetry, repositoryNames);
+    project.getTasks().withType(UploadStagedPublications.class)
+      .configureEach(task -> PublishTelemetry.timePublishing(task, telemetry));
+  }
+
+  private List<PublishedArtifact> publishedArtifacts(MavenPublication publication) {
+    List<PublishedArtifact> artifacts = new ArrayList<>();
+    publication.getArtifacts().forEach(artifact -> artifacts.add(publishedArtifact(
+      publication, artifact.getClassifier(), artifact.getExtension(), artifact.getFile())));
+
+    String publicationTaskSuffix = capitalize(publication.getName()) + "Publication";
+    project.getTasks().withType(GenerateMavenPom.class)
+      .matching(task -> task.getName().equals("generatePomFileFor" + publicationTaskSuffix))
+      .forEach(task ->
+        artifacts.add(publishedArtifact(publication, null, "pom", task.getDestination())));
+    project.getTasks().withType(GenerateModuleMetadata.class)
+      .matching(task -> task.getName().equals("generateMetadataFileFor" + publicationTaskSuffix))
+      .forEach(task -> {
+        if (task.getEnabled()) {
+          File moduleFile = task.getOutputFile().get().getAsFile();
+          artifacts.add(publishedArtifact(publication, null, "module", moduleFile));
+        }
+      });
+    return artifacts;
+  }
+
+  private static PublishedArtifact publishedArtifact(
+    MavenPublication publication, String classifier, String extension, File file) {
+    return new PublishedArtifact(publication.getGroupId(), publication.getArtifactId(),
+      publication.getVersion(), classifier, extension, file);
+  }
+
+  private static String capitalize(String name) {
+    return name.substring(0, 1).toUpperCase() + name.substring(1);
   }
 
   private void updatePomMetadata(MavenPublication publication) {
@@ -138,8 +370,8 @@ public class PublishPlugin implements Plugin<Project> {
       .getByType(PublishingExtension.class);
   }
 
-  private Optional<String> getProperty(String propertyName) {
-    return Optional.ofNullable(project.findProperty(propertyName)).map(String::valueOf);
+  private Provider<String> getProperty(String propertyName) {
+    return project.getProviders().gradleProperty(propertyName);
   }
 
   private boolean isJavaGradlePluginPluginApplied() {
@@ -148,39 +380,47 @@ public class PublishPlugin implements Plugin<Project> {
   }
 
   private void validateGradlePropertiesBeforePublishTask() {
-    project.getTasks().named("publish").configure(task -> {
-      task.doFirst(unused -> {
-        if (project.hasProperty(PROPERTY_ARTIFACTORY_CONTEXT_URL)) {
-          validateGradleProperty(PROPERTY_ARTIFACTORY_USER);
-          validateGradleProperty(PROPERTY_ARTIFACTORY_PASSWORD);
-        }
-        if (project.hasProperty(MAVEN_REPO_URL)) {
-          validateGradleProperty(MAVEN_USER);
-          validateGradleProperty(MAVEN_PASSWORD);
-        } else if (!project.hasProperty(PROPERTY_ARTIFACTORY_CONTEXT_URL)) {
-          // If neither, fail the repro url validation
-          validateGradleProperty(MAVEN_REPO_URL);
-        }
-      });
-    });
-  }
+    Provider<String> contextUrl = getProperty(PROPERTY_ARTIFACTORY_CONTEXT_URL);
+    Provider<String> repoUrl = getProperty(MAVEN_REPO_URL);
+    List<String> artifactoryCredentials = identityCredentials(ARTIFACTORY_REPOSITORY_NAME);
+    List<String> mavenCredentials = identityCredentials(MAVEN_REPOSITORY_NAME);
+    Provider<List<String>> artifactoryProperties = contextUrl
+      .map(unused -> artifactoryCredentials)
+      .orElse(Collections.emptyList());
+    Provider<List<String>> mavenProperties = repoUrl
+      .map(unused -> mavenCredentials)
+      // If neither, fail the repo url validation
+      .orElse(contextUrl
+        .map(unused -> Collections.<String>emptyList())
+        .orElse(Collections.singletonList(MAVEN_REPO_URL)));
 
-  private void validateExtensionBeforeGeneratePom() {
-    project.getTasks().withType(GenerateMavenPom.class).configureEach(task -> {
-      task.doFirst(unused -> {
-        if (!this.extension.license.isPresent()) {
-          throw new GradleException(
-            "A license type must be specified in the build DSL to use the Hypertrace publish plugin");
-        }
+    TaskProvider<ValidateGradleProperties> validateTask = project.getTasks()
+      .register(VALIDATE_TASK_NAME, ValidateGradleProperties.class, task -> {
+        task.getRequiredProperties().addAll(artifactoryProperties);
+        task.getRequiredProperties().addAll(mavenProperties);
+        task.getDeprecatedNames().put(PROPERTY_ARTIFACTORY_USER, artifactoryCredentials.get(0));
+        task.getDeprecatedNames().put(PROPERTY_ARTIFACTORY_PASSWORD, artifactoryCredentials.get(1));
+        task.getDeprecatedNames().put(MAVEN_USER, mavenCredentials.get(0));
+        task.getDeprecatedNames().put(MAVEN_PASSWORD, mavenCredentials.get(1));
+        List<String> trackedProperties = new ArrayList<>(Arrays.asList(
+          PROPERTY_ARTIFACTORY_CONTEXT_URL, MAVEN_REPO_URL, PROPERTY_ARTIFACTORY_USER,
+          PROPERTY_ARTIFACTORY_PASSWORD, MAVEN_USER, MAVEN_PASSWORD));
+        trackedProperties.addAll(artifactoryCredentials);
+        trackedProperties.addAll(mavenCredentials);
+        trackedProperties.forEach(propertyName ->
+          task.trackProperty(propertyName, getProperty(propertyName)));
       });
-    });
+    project.getTasks().named("publish").configure(task -> task.dependsOn(validateTask));
+    project.getTasks().withType(PublishToMavenRepository.class)
+      .configureEach(task -> task.dependsOn(validateTask));
   }
 
-  private void validateGradleProperty(String propertyName) {
-    if (!project.hasProperty(propertyName)) {
-      throw new GradleException("Missing expected gradle property: " + propertyName + ". It should be added " +
-        "in your ~/.gradle/gradle.properties file, or in a an environment variable of the form " +
-        "ORG_GRADLE_PROJECT_" + propertyName);
-    }
+  private void validateExtensionBeforeGeneratePom() {
+    TaskProvider<ValidatePublishExtension> validateTask = project.getTasks()
+      .register(VALIDATE_EXTENSION_TASK_NAME, ValidatePublishExtension.class, task ->
+        task.require(this.extension.license,
+          "A license type must be specified in the build DSL to use the Hypertrace publish plugin"));
+    project.getTasks().withType(GenerateMavenPom.class)
+      .configureEach(task -> task.dependsOn(validateTask));
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,279 @@
+package org.hypertrace.gradle.publishing;
+
+import java.util.Collections;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.attributes.AttributeContainer;
+import org.gradle.api.attributes.Usage;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.publish.PublishingExtension;
+import org.gradle.api.publish.maven.MavenPublication;
+import org.gradle.api.publish.maven.tasks.GenerateMavenPom;
+import org.gradle.api.tasks.TaskProvider;
+
+/**
+ * Checks every publication of the build before anything is uploaded, so a release that would be
+ * refused part way through fails within seconds instead. Each publishing project describes its
+ * publications, their generated POMs and the repositories they go to, with {@link
+ * WritePublishPreflight}. The {@value #PREFLIGHT_TASK_NAME} task of the root project, registered
+ * when either plugin is applied to it, gathers the descriptions of every project and checks them
+ * together with {@link PreflightPublications}. Each project's uploads depend on its result, found
+ * through a project dependency on the root project, so projects of a build whose root applies
+ * neither plugin upload without a preflight. Setting the {@value #PREFLIGHT_PROPERTY} gradle
+ * property to {@code false} turns it off.
+ */
+public final class PublishPreflight {
+  public static final String PREFLIGHT_PROPERTY = "publish_preflight";
+  public static final String PREFLIGHT_TASK_NAME = "preflightPublish";
+  static final String DESCRIBE_TASK_NAME = "describePublicationsForPreflight";
+  private static final String DESCRIPTIONS_DIRECTORY = "hypertrace-publish/preflight";
+  private static final String RESULT_FILE = "hypertrace-publish/preflight-result.txt";
+  private static final String DESCRIPTION_ELEMENTS_CONFIGURATION_NAME =
+      "publishPreflightDescriptionElements";
+  private static final String DESCRIPTIONS_CONFIGURATION_NAME = "publishPreflightDescriptions";
+  private static final String DESCRIPTION_USAGE = "hypertrace-publish-preflight";
+  private static final String RESULT_ELEMENTS_CONFIGURATION_NAME = "publishPreflightResultElements";
+  private static final String RESULT_CONFIGURATION_NAME = "publishPreflightResult";
+  private static final String RESULT_USAGE = "hypertrace-publish-preflight-result";
+
+  private PublishPreflight() {}
+
+  public static boolean isEnabled(Project project) {
+    return project
+        .getProviders()
+        .gradleProperty(PREFLIGHT_PROPERTY)
+        .map(Boolean::parseBoolean)
+        .getOrElse(true);
+  }
+
+  /** Registers the task checking the whole build, if this is the root project. */
+  public static void maybeRegisterRootTask(Project project) {
+    if (!isEnabled(project)
+        || !project.equals(project.getRootProject())
+        || project.getTasks().getNames().contains(PREFLIGHT_TASK_NAME)) {
+      return;
+    }
+    Configuration descriptions =
+        project
+            .getConfigurations()
+            .create(
+                DESCRIPTIONS_CONFIGURATION_NAME,
+                configuration -> {
+                  configuration.setCanBeConsumed(false);
+                  configuration.setCanBeResolved(true);
+                  configuration.attributes(
+                      attributes -> usageAttribute(project, attributes, DESCRIPTION_USAGE));
+                });
+    project
+        .getSubprojects()
+        .forEach(
+            subproject ->
+                project
+                    .getDependencies()
+                    .add(
+                        DESCRIPTIONS_CONFIGURATION_NAME,
+                        project
+                            .getDependencies()
+                            .project(Collections.singletonMap("path", subproject.getPath()))));
+    // Subprojects that don't publish have no description variant and are skipped
+    FileCollection descriptionDirectories =
+        descriptions.getIncoming().artifactView(view -> view.lenient(true)).getFiles();
+    Provider<PublishUploadService> uploadService = PublishUploadService.register(project);
+    TaskProvider<PreflightPublications> preflightTask =
+        project
+            .getTasks()
+            .register(
+                PREFLIGHT_TASK_NAME,
+                PreflightPublications.class,
+                task -> {
+                  task.setGroup("publishing");
+                  task.setDescription(
+                      "Checks every publication of the build before any is uploaded");
+                  task.getDescriptions().from(descriptionDirectories);
+                  task.getResultFile()
+                      .set(project.getLayout().getBuildDirectory().file(RESULT_FILE));
+                  task.getUploadService().set(uploadService);
+                  task.usesService(uploadService);
+                });
+
+    project
+        .getConfigurations()
+        .create(
+            RESULT_ELEMENTS_CONFIGURATION_NAME,
+            configuration -> {
+              configuration.setCanBeConsumed(true);
+              configuration.setCanBeResolved(false);
+              configuration.attributes(
+                  attributes -> usageAttribute(project, attributes, RESULT_USAGE));
+            });
+    project
+        .getArtifacts()
+        .add(
+            RESULT_ELEMENTS_CONFIGURATION_NAME,
+            preflightTask.flatMap(PreflightPublications::getResultFile),
+            artifact -> artifact.builtBy(preflightTask));
+  }
+
+  /**
+   * Describes the project's publications for the preflight of the build. A repository added with
+   * {@link #addRepository} is checked for the release version of each publication.
+   */
+  public static TaskProvider<WritePublishPreflight> describe(Project project) {
+    if (project.getTasks().getNames().contains(DESCRIBE_TASK_NAME)) {
+      return project.getTasks().named(DESCRIBE_TASK_NAME, WritePublishPreflight.class);
+    }
+    PublishingExtension publishing = project.getExtensions().getByType(PublishingExtension.class);
+    TaskProvider<WritePublishPreflight> describeTask =
+        project
+            .getTasks()
+            .register(
+                DESCRIBE_TASK_NAME,
+                WritePublishPreflight.class,
+                task -> {
+                  task.setDescription("Describes the publications for the publish preflight");
+                  task.getProjectPath().set(project.getPath());
+                  task.getOutputDirectory()
+                      .set(project.getLayout().getBuildDirectory().dir(DESCRIPTIONS_DIRECTORY));
+                  publishing
+                      .getPublications()
+                      .withType(MavenPublication.class)
+                      .forEach(publication -> describePublication(project, task, publication));
+                });
+    if (!isEnabled(project)) {
+      return describeTask;
+    }
+
+    project
+        .getConfigurations()
+        .create(
+            DESCRIPTION_ELEMENTS_CONFIGURATION_NAME,
+            configuration -> {
+              configuration.setCanBeConsumed(true);
+              configuration.setCanBeResolved(false);
+              configuration.attributes(
+                  attributes -> usageAttribute(project, attributes, DESCRIPTION_USAGE));
+            });
+    project
+        .getArtifacts()
+        .add(
+            DESCRIPTION_ELEMENTS_CONFIGURATION_NAME,
+            describeTask.flatMap(WritePublishPreflight::getOutputDirectory),
+            artifact -> artifact.builtBy(describeTask));
+    if (project.equals(project.getRootProject())) {
+      // The root project checks its own publications along with its subprojects'
+      project
+          .getTasks()
+          .withType(PreflightPublications.class)
+          .configureEach(
+              task ->
+                  task.getDescriptions()
+                      .from(describeTask.flatMap(WritePublishPreflight::getOutputDirectory)));
+    }
+    return describeTask;
+  }
+
+  /** Checks the repository for a release version of each of the project's publications. */
+  public static void addRepository(Project project, RemoteRepository repository) {
+    describe(project).configure(task -> task.getRepositories().add(repository));
+    project
+        .getTasks()
+        .withType(PreflightPublications.class)
+        .configureEach(task -> task.getCredentials().add(repository));
+  }
+
+  /** Makes the task, an upload of the project, wait for the preflight of the whole build. */
+  public static void requireBefore(Project project, Task task) {
+    if (!isEnabled(project)) {
+      return;
+    }
+    if (project.equals(project.getRootProject())) {
+      task.dependsOn(project.getTasks().withType(PreflightPublications.class));
+      return;
+    }
+    task.dependsOn(resultFiles(project));
+  }
+
+  /**
+   * Orders the task, which uploads only if the build publishes, after the preflight of the whole
+   * build without making the preflight part of every build that runs the task. The task checks
+   * {@link #result} before uploading instead.
+   */
+  public static void orderBefore(Project project, Task task) {
+    if (!isEnabled(project)) {
+      return;
+    }
+    if (project.equals(project.getRootProject())) {
+      task.mustRunAfter(project.getTasks().withType(PreflightPublications.class));
+      return;
+    }
+    task.mustRunAfter(resultFiles(project));
+  }
+
+  /**
+   * The result of the preflight of the whole build, which only exists once it passed. It is empty
+   * if the build isn't checked.
+   */
+  public static FileCollection result(Project project) {
+    if (!isEnabled(project)) {
+      return project.files();
+    }
+    if (project.equals(project.getRootProject())) {
+      return project.files(project.getLayout().getBuildDirectory().file(RESULT_FILE));
+    }
+    return resultFiles(project);
+  }
+
+  // The root project's preflight result, or nothing if the root project doesn't check the build
+  private static FileCollection resultFiles(Project project) {
+    Configuration result = project.getConfigurations().findByName(RESULT_CONFIGURATION_NAME);
+    if (result == null) {
+      result =
+          project
+              .getConfigurations()
+              .create(
+                  RESULT_CONFIGURATION_NAME,
+                  configuration -> {
+                    configuration.setCanBeConsumed(false);
+                    configuration.setCanBeResolved(true);
+                    configuration.attributes(
+                        attributes -> usageAttribute(project, attributes, RESULT_USAGE));
+                  });
+      project
+          .getDependencies()
+          .add(
+              RESULT_CONFIGURATION_NAME,
+              project.getDependencies().project(Collections.singletonMap("path", ":")));
+    }
+    return result.getIncoming().artifactView(view -> view.lenient(true)).getFiles();
+  }
+
+  private static void describePublication(
+      Project project, WritePublishPreflight task, MavenPublication publication) {
+    String pomTaskName =
+        "generatePomFileFor" + capitalize(publication.getName()) + "Publication";
+    TaskProvider<GenerateMavenPom> pomTask =
+        project.getTasks().named(pomTaskName, GenerateMavenPom.class);
+    task.dependsOn(pomTask);
+    task.getPublications()
+        .add(
+            project.provider(
+                () ->
+                    new PublishedArtifact(
+                        publication.getGroupId(),
+                        publication.getArtifactId(),
+                        publication.getVersion(),
+                        null,
+                        "pom",
+                        pomTask.get().getDestination())));
+  }
+
+  private static void usageAttribute(Project project, AttributeContainer attributes, String usage) {
+    attributes.attribute(Usage.USAGE_ATTRIBUTE, project.getObjects().named(Usage.class, usage));
+  }
+
+  private static String capitalize(String name) {
+    return name.substring(0, 1).toUpperCase() + name.substring(1);
+  }
+}
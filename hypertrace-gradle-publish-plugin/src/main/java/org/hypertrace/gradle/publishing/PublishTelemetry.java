@@ -0,0 +1,247 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.publish.maven.tasks.PublishToMavenRepository;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.build.event.BuildEventsListenerRegistry;
+import org.gradle.tooling.events.FinishEvent;
+import org.gradle.tooling.events.OperationCompletionListener;
+import org.gradle.tooling.events.task.TaskFailureResult;
+import org.gradle.tooling.events.task.TaskFinishEvent;
+import org.gradle.tooling.events.task.TaskOperationResult;
+import org.gradle.tooling.events.task.TaskSkippedResult;
+import org.gradle.tooling.events.task.TaskSuccessResult;
+
+/**
+ * Build-wide recorder of how long publishing takes. Uploads, signatures and checksums report each
+ * file they handle, and the tasks the plugins contribute to publishing are timed from the build's
+ * task completion events. Those events carry no task type, so the plugins' own publishing tasks,
+ * picked by type, mark themselves with {@link #timePublishing} as they start. At the end of a
+ * build that published, the report is written to {@value #REPORT_PATH} under the root project, a
+ * one line summary is logged, and every {@link PublishTelemetryListener} found on the plugin
+ * classpath is notified.
+ */
+public abstract class PublishTelemetry
+    implements BuildService<PublishTelemetry.Params>,
+        OperationCompletionListener,
+        PublishTelemetryListener,
+        AutoCloseable {
+  public static final String REPORT_PATH =
+      "build/reports/hypertrace-publish/publish-telemetry.json";
+  private static final String SERVICE_NAME = "hypertracePublishTelemetry";
+  private static final Logger LOGGER = Logging.getLogger(PublishTelemetry.class);
+
+  // The tasks that only prepare what is published are known by name
+  private static final List<String> CONTRIBUTED_TASK_PREFIXES =
+      Arrays.asList(
+          "sign",
+          "generatePomFileFor",
+          "generateMetadataFileFor",
+          "validatePublish",
+          "validateMavenCentral",
+          "validateNexusStaging",
+          "cleanStagedPublications",
+          "cleanCentralBundleRepository",
+          "mavenCentralBundle");
+  private static final Set<String> CONTRIBUTED_TASK_NAMES =
+      new HashSet<>(Arrays.asList("javadoc", "javadocJar", "sourcesJar"));
+
+  public interface Params extends BuildServiceParameters {
+    RegularFileProperty getReportFile();
+  }
+
+  private final Queue<ArtifactMetric> artifacts = new ConcurrentLinkedQueue<>();
+  private final Queue<TaskMetric> tasks = new ConcurrentLinkedQueue<>();
+  private final Set<String> publishingTaskPaths = ConcurrentHashMap.newKeySet();
+  private final List<PublishTelemetryListener> listeners = loadListeners();
+  private volatile boolean published;
+
+  public static Provider<PublishTelemetry> register(Project project) {
+    File reportFile = new File(project.getRootDir(), REPORT_PATH);
+    return project
+        .getGradle()
+        .getSharedServices()
+        .registerIfAbsent(
+            SERVICE_NAME,
+            PublishTelemetry.class,
+            spec -> spec.getParameters().getReportFile().set(reportFile));
+  }
+
+  /** Registers the service and times the build's tasks with it. */
+  public static Provider<PublishTelemetry> register(
+      Project project, BuildEventsListenerRegistry buildEventsListenerRegistry) {
+    Provider<PublishTelemetry> telemetry = register(project);
+    // Subscribing the same service again, from another project or plugin, is a no-op
+    buildEventsListenerRegistry.onTaskCompletion(telemetry);
+    return telemetry;
+  }
+
+  /**
+   * Times the project's tasks that publish to one of the named repositories. A task's repository
+   * is only set once it is configured, so it is told by the task name Gradle gives it.
+   */
+  public static void timePublishingTo(
+      Project project, Provider<PublishTelemetry> telemetry, Collection<String> repositoryNames) {
+    List<String> suffixes =
+        repositoryNames.stream()
+            .map(name -> "To" + capitalize(name) + "Repository")
+            .collect(Collectors.toList());
+    project
+        .getTasks()
+        .withType(PublishToMavenRepository.class)
+        .configureEach(
+            task -> {
+              if (suffixes.stream().anyMatch(task.getName()::endsWith)) {
+                timePublishing(task, telemetry);
+              }
+            });
+  }
+
+  /** Times the task as one that publishes, from when it starts. */
+  public static void timePublishing(Task task, Provider<PublishTelemetry> telemetry) {
+    task.usesService(telemetry);
+    task.doFirst(new MarkPublishing(telemetry));
+  }
+
+  @Override
+  public void onArtifact(ArtifactMetric metric) {
+    artifacts.add(metric);
+    if (ArtifactMetric.OPERATION_UPLOAD.equals(metric.getOperation())) {
+      published = true;
+    }
+    this.notifyListeners(listener -> listener.onArtifact(metric));
+  }
+
+  @Override
+  public void onTask(TaskMetric metric) {
+    tasks.add(metric);
+    this.notifyListeners(listener -> listener.onTask(metric));
+  }
+
+  @Override
+  public void onFinish(FinishEvent event) {
+    if (!(event instanceof TaskFinishEvent)) {
+      return;
+    }
+    TaskFinishEvent taskEvent = (TaskFinishEvent) event;
+    String path = taskEvent.getDescriptor().getTaskPath();
+    String name = path.substring(path.lastIndexOf(':') + 1);
+    boolean publishing = publishingTaskPaths.contains(path);
+    if (!publishing
+        && !startsWithAny(name, CONTRIBUTED_TASK_PREFIXES)
+        && !CONTRIBUTED_TASK_NAMES.contains(name)) {
+      return;
+    }
+    TaskOperationResult result = taskEvent.getResult();
+    this.onTask(
+        new TaskMetric(
+            path,
+            result.getStartTime(),
+            result.getEndTime() - result.getStartTime(),
+            outcome(result)));
+    if (publishing) {
+      published = true;
+    }
+  }
+
+  @Override
+  public void close() {
+    // Builds that only compiled, or only generated metadata, have nothing worth reporting
+    if (!published) {
+      return;
+    }
+    PublishTelemetryReport report = new PublishTelemetryReport(artifacts, tasks);
+    File reportFile = this.getParameters().getReportFile().get().getAsFile();
+    try {
+      Files.createDirectories(reportFile.getParentFile().toPath());
+      Files.write(reportFile.toPath(), report.toJson().getBytes(StandardCharsets.UTF_8));
+      LOGGER.lifecycle("{}. Report: {}", report.toSummaryLine(), reportFile.toURI());
+    } catch (IOException e) {
+      // Telemetry must never fail a build that published successfully
+      LOGGER.warn("Unable to write the publish telemetry report: {}", e.getMessage());
+      LOGGER.lifecycle(report.toSummaryLine());
+    }
+    this.notifyListeners(listener -> listener.onReport(report));
+  }
+
+  private void notifyListeners(Consumer<PublishTelemetryListener> notification) {
+    for (PublishTelemetryListener listener : listeners) {
+      try {
+        notification.accept(listener);
+      } catch (RuntimeException e) {
+        LOGGER.warn("Publish telemetry listener {} failed: {}", listener, e.getMessage());
+      }
+    }
+  }
+
+  private static List<PublishTelemetryListener> loadListeners() {
+    List<PublishTelemetryListener> listeners = new ArrayList<>();
+    try {
+      ServiceLoader.load(
+              PublishTelemetryListener.class, PublishTelemetryListener.class.getClassLoader())
+          .forEach(listeners::add);
+    } catch (ServiceConfigurationError e) {
+      LOGGER.warn("Unable to load publish telemetry listeners: {}", e.getMessage());
+    }
+    return listeners;
+  }
+
+  private static String outcome(TaskOperationResult result) {
+    if (result instanceof TaskFailureResult) {
+      return "FAILED";
+    }
+    if (result instanceof TaskSkippedResult) {
+      return "SKIPPED";
+    }
+    TaskSuccessResult success = (TaskSuccessResult) result;
+    if (success.isFromCache()) {
+      return "FROM-CACHE";
+    }
+    return success.isUpToDate() ? "UP-TO-DATE" : "SUCCESS";
+  }
+
+  private static class MarkPublishing implements Action<Task> {
+    private final Provider<PublishTelemetry> telemetry;
+
+    MarkPublishing(Provider<PublishTelemetry> telemetry) {
+      this.telemetry = telemetry;
+    }
+
+    @Override
+    public void execute(Task task) {
+      telemetry.get().publishingTaskPaths.add(task.getPath());
+    }
+  }
+
+  private static String capitalize(String name) {
+    return name.substring(0, 1).toUpperCase() + name.substring(1);
+  }
+
+  private static boolean startsWithAny(String name, Collection<String> prefixes) {
+    return prefixes.stream().anyMatch(name::startsWith);
+  }
+}
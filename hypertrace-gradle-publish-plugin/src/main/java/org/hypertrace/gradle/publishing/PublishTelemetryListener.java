@@ -0,0 +1,20 @@
+package org.hypertrace.gradle.publishing;
+
+/**
+ * Receives the publish telemetry of a build as it is recorded. Implementations on the same
+ * buildscript classpath as the plugins are discovered through {@link java.util.ServiceLoader}, so
+ * they are listed in a {@code META-INF/services} file named after this interface. Callbacks may
+ * arrive concurrently from upload and signing threads.
+ */
+public interface PublishTelemetryListener {
+  PublishTelemetryListener NONE = new PublishTelemetryListener() {};
+
+  /** Called once a file has been uploaded, signed or checksummed, whether it succeeded or not. */
+  default void onArtifact(ArtifactMetric metric) {}
+
+  /** Called once a task contributed to publishing by the plugins has finished. */
+  default void onTask(TaskMetric metric) {}
+
+  /** Called at the end of a build that published, after the report has been written. */
+  default void onReport(PublishTelemetryReport report) {}
+}
@@ -0,0 +1,271 @@
+package org.hypertrace.gradle.publishing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+/** Everything the plugins recorded while a build published, with per-repository totals. */
+public class PublishTelemetryReport {
+  private final List<ArtifactMetric> artifacts;
+  private final List<TaskMetric> tasks;
+
+  public PublishTelemetryReport(
+      Collection<ArtifactMetric> artifacts, Collection<TaskMetric> tasks) {
+    List<ArtifactMetric> sortedArtifacts = new ArrayList<>(artifacts);
+    sortedArtifacts.sort(Comparator.comparingLong(ArtifactMetric::getStartMillis));
+    List<TaskMetric> sortedTasks = new ArrayList<>(tasks);
+    sortedTasks.sort(Comparator.comparingLong(TaskMetric::getStartMillis));
+    this.artifacts = Collections.unmodifiableList(sortedArtifacts);
+    this.tasks = Collections.unmodifiableList(sortedTasks);
+  }
+
+  public List<ArtifactMetric> getArtifacts() {
+    return artifacts;
+  }
+
+  public List<TaskMetric> getTasks() {
+    return tasks;
+  }
+
+  /** Totals of every operation of one kind, such as {@link ArtifactMetric#OPERATION_SIGN}. */
+  public Summary summarize(String operation) {
+    return new Summary(this.artifacts(operation, null));
+  }
+
+  /** Upload totals keyed by repository name. */
+  public Map<String, Summary> getRepositories() {
+    Map<String, Summary> repositories = new TreeMap<>();
+    this.artifacts(ArtifactMetric.OPERATION_UPLOAD, null).stream()
+        .map(ArtifactMetric::getRepository)
+        .distinct()
+        .forEach(
+            repository ->
+                repositories.put(
+                    repository,
+                    new Summary(this.artifacts(ArtifactMetric.OPERATION_UPLOAD, repository))));
+    return repositories;
+  }
+
+  /** The one line printed at the end of the build. */
+  public String toSummaryLine() {
+    List<String> parts = new ArrayList<>();
+    Summary uploads = this.summarize(ArtifactMetric.OPERATION_UPLOAD);
+    if (uploads.getFiles() > 0) {
+      parts.add(
+          String.format(
+              Locale.ROOT,
+              "uploaded %s (%s) to %s in %s at %s/s, %s, %d failed",
+              count(uploads.getFiles(), "file"),
+              formatBytes(uploads.getBytes()),
+              count(this.getRepositories().size(), "repository", "repositories"),
+              formatMillis(uploads.getDurationMillis()),
+              formatBytes(uploads.getThroughputBytesPerSecond()),
+              count(uploads.getRetries(), "retry", "retries"),
+              uploads.getFailures()));
+    }
+    Summary signatures = this.summarize(ArtifactMetric.OPERATION_SIGN);
+    if (signatures.getFiles() > 0) {
+      parts.add(
+          String.format(
+              Locale.ROOT,
+              "signed %s in %s",
+              count(signatures.getFiles(), "file"),
+              formatMillis(signatures.getDurationMillis())));
+    }
+    if (!tasks.isEmpty()) {
+      TaskMetric slowest =
+          Collections.max(tasks, Comparator.comparingLong(TaskMetric::getDurationMillis));
+      parts.add(
+          String.format(
+              Locale.ROOT,
+              "%s, slowest %s (%s)",
+              count(tasks.size(), "task"),
+              slowest.getPath(),
+              formatMillis(slowest.getDurationMillis())));
+    }
+    return "Hypertrace publish: " + String.join("; ", parts);
+  }
+
+  public String toJson() {
+    StringBuilder json = new StringBuilder("{\n");
+    json.append("  \"summary\": {");
+    appendNamedSummary(json, "upload", this.summarize(ArtifactMetric.OPERATION_UPLOAD));
+    json.append(", ");
+    appendNamedSummary(json, "sign", this.summarize(ArtifactMetric.OPERATION_SIGN));
+    json.append(", ");
+    appendNamedSummary(json, "checksum", this.summarize(ArtifactMetric.OPERATION_CHECKSUM));
+    json.append("},\n  \"repositories\": [");
+    String separator = "\n    ";
+    for (Map.Entry<String, Summary> repository : this.getRepositories().entrySet()) {
+      json.append(separator).append("{\"name\": ").append(quote(repository.getKey())).append(", ");
+      appendSummary(json, repository.getValue());
+      json.append('}');
+      separator = ",\n    ";
+    }
+    json.append("\n  ],\n  \"artifacts\": [");
+    separator = "\n    ";
+    for (ArtifactMetric artifact : artifacts) {
+      json.append(separator)
+          .append("{\"operation\": ")
+          .append(quote(artifact.getOperation()))
+          .append(", \"repository\": ")
+          .append(quote(artifact.getRepository()))
+          .append(", \"artifact\": ")
+          .append(quote(artifact.getArtifact()))
+          .append(", \"bytes\": ")
+          .append(artifact.getBytes())
+          .append(", \"startMillis\": ")
+          .append(artifact.getStartMillis())
+          .append(", \"durationMillis\": ")
+          .append(artifact.getDurationMillis())
+          .append(", \"throughputBytesPerSecond\": ")
+          .append(artifact.getThroughputBytesPerSecond())
+          .append(", \"status\": ")
+          .append(artifact.getStatus())
+          .append(", \"retries\": ")
+          .append(artifact.getRetries())
+          .append(", \"failure\": ")
+          .append(quote(artifact.getFailure()))
+          .append('}');
+      separator = ",\n    ";
+    }
+    json.append("\n  ],\n  \"tasks\": [");
+    separator = "\n    ";
+    for (TaskMetric task : tasks) {
+      json.append(separator)
+          .append("{\"path\": ")
+          .append(quote(task.getPath()))
+          .append(", \"startMillis\": ")
+          .append(task.getStartMillis())
+          .append(", \"durationMillis\": ")
+          .append(task.getDurationMillis())
+          .append(", \"outcome\": ")
+          .append(quote(task.getOutcome()))
+          .append('}');
+      separator = ",\n    ";
+    }
+    return json.append("\n  ]\n}\n").toString();
+  }
+
+  private List<ArtifactMetric> artifacts(String operation, @Nullable String repository) {
+    return artifacts.stream()
+        .filter(artifact -> artifact.getOperation().equals(operation))
+        .filter(artifact -> repository == null || repository.equals(artifact.getRepository()))
+        .collect(Collectors.toList());
+  }
+
+  private static void appendNamedSummary(StringBuilder json, String name, Summary summary) {
+    json.append(quote(name)).append(": {");
+    appendSummary(json, summary);
+    json.append('}');
+  }
+
+  private static void appendSummary(StringBuilder json, Summary summary) {
+    Map<String, Long> fields = new LinkedHashMap<>();
+    fields.put("files", (long) summary.getFiles());
+    fields.put("bytes", summary.getBytes());
+    fields.put("durationMillis", summary.getDurationMillis());
+    fields.put("throughputBytesPerSecond", summary.getThroughputBytesPerSecond());
+    fields.put("retries", (long) summary.getRetries());
+    fields.put("failures", (long) summary.getFailures());
+    json.append(
+        fields.entrySet().stream()
+            .map(field -> quote(field.getKey()) + ": " + field.getValue())
+            .collect(Collectors.joining(", ")));
+  }
+
+  private static String quote(@Nullable String value) {
+    if (value == null) {
+      return "null";
+    }
+    StringBuilder quoted = new StringBuilder("\"");
+    for (char c : value.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        quoted.append('\\').append(c);
+      } else if (c < 0x20) {
+        quoted.append(String.format("\\u%04x", (int) c));
+      } else {
+        quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+
+  private static String count(int count, String noun) {
+    return count(count, noun, noun + "s");
+  }
+
+  private static String count(int count, String singular, String plural) {
+    return count + " " + (count == 1 ? singular : plural);
+  }
+
+  private static String formatBytes(long bytes) {
+    if (bytes < 1024) {
+      return bytes + " B";
+    }
+    if (bytes < 1024 * 1024) {
+      return String.format(Locale.ROOT, "%.1f KiB", bytes / 1024.0);
+    }
+    return String.format(Locale.ROOT, "%.1f MiB", bytes / (1024.0 * 1024));
+  }
+
+  private static String formatMillis(long millis) {
+    return String.format(Locale.ROOT, "%.1fs", millis / 1000.0);
+  }
+
+  /**
+   * Totals of a set of operations. The duration is the wall clock time from the first start to
+   * the last end, so the throughput of concurrent uploads is not understated.
+   */
+  public static class Summary {
+    private final int files;
+    private final long bytes;
+    private final long durationMillis;
+    private final int retries;
+    private final int failures;
+
+    Summary(List<ArtifactMetric> artifacts) {
+      this.files = artifacts.size();
+      this.bytes = artifacts.stream().mapToLong(ArtifactMetric::getBytes).sum();
+      this.durationMillis =
+          artifacts.isEmpty()
+              ? 0
+              : artifacts.stream().mapToLong(ArtifactMetric::getEndMillis).max().getAsLong()
+                  - artifacts.stream().mapToLong(ArtifactMetric::getStartMillis).min().getAsLong();
+      this.retries = artifacts.stream().mapToInt(ArtifactMetric::getRetries).sum();
+      this.failures = (int) artifacts.stream().filter(ArtifactMetric::isFailed).count();
+    }
+
+    public int getFiles() {
+      return files;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    public long getDurationMillis() {
+      return durationMillis;
+    }
+
+    public long getThroughputBytesPerSecond() {
+      return bytes * 1000 / Math.max(1, durationMillis);
+    }
+
+    public int getRetries() {
+      return retries;
+    }
+
+    public int getFailures() {
+      return failures;
+    }
+  }
+}
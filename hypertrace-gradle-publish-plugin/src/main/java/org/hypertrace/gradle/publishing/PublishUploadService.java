@@ -0,0 +1,107 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.gradle.api.Project;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Build-wide scheduler for repository uploads. Every project's uploads share one bounded pool, so
+ * the number of requests in flight against a repository host is capped for the whole build, and
+ * connections are reused through the JVM's keep-alive cache instead of being opened per project.
+ */
+public abstract class PublishUploadService
+    implements BuildService<PublishUploadService.Params>, AutoCloseable {
+  public static final String MAX_PARALLEL_UPLOADS_PROPERTY = "publish_parallel_uploads";
+  private static final String SERVICE_NAME = "hypertracePublishUploads";
+  private static final int DEFAULT_MAX_PARALLEL_UPLOADS = 8;
+
+  public interface Params extends BuildServiceParameters {
+    Property<Integer> getMaxParallelUploads();
+  }
+
+  private final ExecutorService executor;
+  private final Map<String, Set<String>> streamedPaths = new ConcurrentHashMap<>();
+
+  public PublishUploadService() {
+    this.executor =
+        Executors.newFixedThreadPool(
+            this.getParameters().getMaxParallelUploads().get(), new UploadThreadFactory());
+  }
+
+  public static Provider<PublishUploadService> register(Project project) {
+    Provider<Integer> maxParallelUploads =
+        project.getProviders().gradleProperty(MAX_PARALLEL_UPLOADS_PROPERTY).map(Integer::valueOf);
+    return project
+        .getGradle()
+        .getSharedServices()
+        .registerIfAbsent(
+            SERVICE_NAME,
+            PublishUploadService.class,
+            spec -> {
+              spec.getParameters()
+                  .getMaxParallelUploads()
+                  .set(maxParallelUploads.orElse(DEFAULT_MAX_PARALLEL_UPLOADS));
+              if (maxParallelUploads.isPresent()) {
+                spec.getMaxParallelUsages().set(maxParallelUploads);
+              }
+            });
+  }
+
+  public CompletableFuture<Void> submit(Upload upload) {
+    return CompletableFuture.runAsync(
+        () -> {
+          try {
+            upload.run();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        },
+        executor);
+  }
+
+  /** Records a file uploaded to a repository while it was written, so it isn't uploaded again. */
+  void recordStreamed(String repositoryName, String path) {
+    streamedPaths
+        .computeIfAbsent(repositoryName, unused -> ConcurrentHashMap.newKeySet())
+        .add(path);
+  }
+
+  /** The files uploaded to a repository in this build while they were written. */
+  Set<String> getStreamedPaths(String repositoryName) {
+    return Collections.unmodifiableSet(
+        streamedPaths.getOrDefault(repositoryName, Collections.emptySet()));
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  public interface Upload {
+    void run() throws IOException;
+  }
+
+  private static class UploadThreadFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "hypertrace-publish-upload-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+public class PublishedArtifact implements Serializable {
+  private static final long serialVersionUID = 1L;
+  // The timestamp and build number that replace SNAPSHOT in a published snapshot's file names
+  private static final Pattern SNAPSHOT_TIMESTAMP = Pattern.compile("\\d{8}\\.\\d{6}-\\d+");
+
+  private final String groupId;
+  private final String artifactId;
+  private final String version;
+  @Nullable private final String classifier;
+  private final String extension;
+  private final File file;
+
+  public PublishedArtifact(
+      String groupId,
+      String artifactId,
+      String version,
+      @Nullable String classifier,
+      String extension,
+      File file) {
+    this.groupId = groupId;
+    this.artifactId = artifactId;
+    this.version = version;
+    this.classifier = classifier;
+    this.extension = extension;
+    this.file = file;
+  }
+
+  public String getGroupId() {
+    return groupId;
+  }
+
+  public String getArtifactId() {
+    return artifactId;
+  }
+
+  public String getVersion() {
+    return version;
+  }
+
+  @Nullable
+  public String getClassifier() {
+    return classifier;
+  }
+
+  public String getExtension() {
+    return extension;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public boolean isSnapshot() {
+    return version.endsWith("-SNAPSHOT");
+  }
+
+  public String getVersionDirectory() {
+    return String.format("%s/%s/%s", groupId.replace('.', '/'), artifactId, version);
+  }
+
+  /** The classifier and extension, which identify an artifact within its version. */
+  public String getArtifactKey() {
+    return classifier == null || classifier.isEmpty() ? extension : classifier + ":" + extension;
+  }
+
+  /**
+   * Whether the repository path is this artifact's file, published under its version or, for a
+   * snapshot, under a timestamped version.
+   */
+  public boolean isPublishedAt(String path) {
+    String directory = getVersionDirectory() + "/";
+    if (!path.startsWith(directory)) {
+      return false;
+    }
+    String fileName = path.substring(directory.length());
+    String suffix =
+        (classifier == null || classifier.isEmpty() ? "" : "-" + classifier) + "." + extension;
+    if (fileName.equals(artifactId + "-" + version + suffix)) {
+      return true;
+    }
+    if (!isSnapshot()) {
+      return false;
+    }
+    String prefix = artifactId + "-" + version.substring(0, version.length() - "SNAPSHOT".length());
+    return fileName.startsWith(prefix)
+        && fileName.endsWith(suffix)
+        && fileName.length() >= prefix.length() + suffix.length()
+        && SNAPSHOT_TIMESTAMP
+            .matcher(fileName.substring(prefix.length(), fileName.length() - suffix.length()))
+            .matches();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s:%s:%s:%s", groupId, artifactId, version, getArtifactKey());
+  }
+}
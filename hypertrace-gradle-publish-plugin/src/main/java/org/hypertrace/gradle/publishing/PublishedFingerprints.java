@@ -0,0 +1,81 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import javax.annotation.Nullable;
+
+/**
+ * An on-disk record of the fingerprint, written by {@link FingerprintPublications}, that each
+ * publication last had when it was published to each repository.
+ */
+public class PublishedFingerprints {
+  // Guards the read-modify-write of the manifest between tasks running in parallel
+  private static final Object FILE_LOCK = new Object();
+
+  private final File manifestFile;
+  private final Properties entries = new Properties();
+  private final Properties updates = new Properties();
+
+  public PublishedFingerprints(File manifestFile) {
+    this.manifestFile = manifestFile;
+    synchronized (FILE_LOCK) {
+      this.entries.putAll(read(manifestFile));
+    }
+  }
+
+  @Nullable
+  public String get(RemoteRepository repository, String publication) {
+    return entries.getProperty(key(repository, publication));
+  }
+
+  public void put(RemoteRepository repository, String publication, String fingerprint) {
+    entries.setProperty(key(repository, publication), fingerprint);
+    updates.setProperty(key(repository, publication), fingerprint);
+  }
+
+  public void save() throws IOException {
+    if (updates.isEmpty()) {
+      return;
+    }
+    synchronized (FILE_LOCK) {
+      // Merge with entries written by other tasks or builds since this manifest was read
+      Properties merged = read(manifestFile);
+      merged.putAll(updates);
+      Path parent = manifestFile.toPath().getParent();
+      Files.createDirectories(parent);
+      Path tempFile = Files.createTempFile(parent, manifestFile.getName(), ".tmp");
+      try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+        merged.store(outputStream, null);
+      }
+      Files.move(
+          tempFile,
+          manifestFile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    }
+    updates.clear();
+  }
+
+  private static String key(RemoteRepository repository, String publication) {
+    return repository.getUrl() + "|" + publication;
+  }
+
+  private static Properties read(File file) {
+    Properties properties = new Properties();
+    if (file.isFile()) {
+      try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+        properties.load(inputStream);
+      } catch (IOException | IllegalArgumentException e) {
+        // A corrupt manifest only means every publication is published again
+        properties.clear();
+      }
+    }
+    return properties;
+  }
+}
@@ -0,0 +1,65 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.provider.Provider;
+
+/**
+ * Remembers the checksums of a just published snapshot so the next build can skip it offline, if
+ * enabled.
+ */
+public class RecordPublishedChecksums implements Action<Task> {
+  private final Provider<Boolean> enabled;
+  private final Provider<List<RemoteRepository>> repositories;
+  private final Provider<List<PublishedArtifact>> artifacts;
+  private final File cacheFile;
+  private final Provider<Duration> cacheTtl;
+  private final Provider<ChecksumService> checksums;
+
+  public RecordPublishedChecksums(
+      Provider<Boolean> enabled,
+      Provider<List<RemoteRepository>> repositories,
+      Provider<List<PublishedArtifact>> artifacts,
+      File cacheFile,
+      Provider<Duration> cacheTtl,
+      Provider<ChecksumService> checksums) {
+    this.enabled = enabled;
+    this.repositories = repositories;
+    this.artifacts = artifacts;
+    this.cacheFile = cacheFile;
+    this.cacheTtl = cacheTtl;
+    this.checksums = checksums;
+  }
+
+  @Override
+  public void execute(Task task) {
+    if (!enabled.get()) {
+      return;
+    }
+    RemoteChecksumCache cache = new RemoteChecksumCache(cacheFile, cacheTtl.get());
+    try {
+      for (PublishedArtifact artifact : artifacts.get()) {
+        if (artifact.isSnapshot()) {
+          String sha256 = checksums.get().hex(artifact.getFile(), Checksums.SHA256);
+          repositories.get().stream()
+              .filter(repository -> isUploaded(task, repository))
+              .forEach(repository -> cache.put(repository, artifact, sha256));
+        }
+      }
+      cache.save();
+    } catch (IOException e) {
+      // The cache is only an optimization, so it must never fail a successful publish
+      task.getLogger().warn("Unable to record published checksums: {}", e.getMessage());
+    }
+  }
+
+  // A best-effort repository may have failed without failing the upload
+  private static boolean isUploaded(Task task, RemoteRepository repository) {
+    return !(task instanceof UploadStagedPublications)
+        || ((UploadStagedPublications) task).isUploaded(repository);
+  }
+}
@@ -0,0 +1,53 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Provider;
+
+/** Records the fingerprint of just published publications, so the next build can skip them. */
+public class RecordPublishedFingerprints implements Action<Task> {
+  private final Provider<List<String>> publications;
+  private final Provider<List<RemoteRepository>> repositories;
+  private final Provider<RegularFile> fingerprintFile;
+  private final File manifestFile;
+
+  public RecordPublishedFingerprints(
+      Provider<List<String>> publications,
+      Provider<List<RemoteRepository>> repositories,
+      Provider<RegularFile> fingerprintFile,
+      File manifestFile) {
+    this.publications = publications;
+    this.repositories = repositories;
+    this.fingerprintFile = fingerprintFile;
+    this.manifestFile = manifestFile;
+  }
+
+  @Override
+  public void execute(Task task) {
+    try {
+      String fingerprint = FingerprintPublications.read(fingerprintFile.get().getAsFile());
+      PublishedFingerprints published = new PublishedFingerprints(manifestFile);
+      for (RemoteRepository repository : repositories.get()) {
+        if (isUploaded(task, repository)) {
+          for (String publication : publications.get()) {
+            published.put(repository, publication, fingerprint);
+          }
+        }
+      }
+      published.save();
+    } catch (IOException e) {
+      // Without a record the publications are only published again, so never fail the publish
+      task.getLogger().warn("Unable to record published fingerprints: {}", e.getMessage());
+    }
+  }
+
+  // A best-effort repository may have failed without failing the upload
+  private static boolean isUploaded(Task task, RemoteRepository repository) {
+    return !(task instanceof UploadStagedPublications)
+        || ((UploadStagedPublications) task).isUploaded(repository);
+  }
+}
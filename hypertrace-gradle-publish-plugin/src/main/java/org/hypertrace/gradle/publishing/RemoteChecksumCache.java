@@ -0,0 +1,109 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Properties;
+import javax.annotation.Nullable;
+
+/**
+ * A per-user, on-disk record of the sha256 last known to be published for each artifact. Entries
+ * older than the TTL are evicted, forcing the remote repository to be consulted again.
+ */
+public class RemoteChecksumCache {
+  // Guards the read-modify-write of the cache file between tasks running in parallel
+  private static final Object FILE_LOCK = new Object();
+
+  private final File cacheFile;
+  private final Duration ttl;
+  private final Clock clock;
+  private final Properties entries = new Properties();
+  private boolean modified;
+
+  public RemoteChecksumCache(File cacheFile, Duration ttl) {
+    this(cacheFile, ttl, Clock.systemUTC());
+  }
+
+  RemoteChecksumCache(File cacheFile, Duration ttl, Clock clock) {
+    this.cacheFile = cacheFile;
+    this.ttl = ttl;
+    this.clock = clock;
+    synchronized (FILE_LOCK) {
+      this.entries.putAll(read(cacheFile));
+    }
+    this.modified = this.evictExpired(this.entries);
+  }
+
+  @Nullable
+  public String get(RemoteRepository repository, PublishedArtifact artifact) {
+    String entry = entries.getProperty(key(repository, artifact));
+    return entry == null ? null : entry.substring(0, entry.indexOf('@'));
+  }
+
+  public void put(RemoteRepository repository, PublishedArtifact artifact, String sha256) {
+    entries.setProperty(key(repository, artifact), sha256 + "@" + clock.millis());
+    modified = true;
+  }
+
+  public void save() throws IOException {
+    if (!modified) {
+      return;
+    }
+    synchronized (FILE_LOCK) {
+      // Merge with entries written by other tasks or builds since this cache was loaded
+      Properties merged = read(cacheFile);
+      merged.putAll(entries);
+      this.evictExpired(merged);
+      Path parent = cacheFile.toPath().getParent();
+      Files.createDirectories(parent);
+      Path tempFile = Files.createTempFile(parent, cacheFile.getName(), ".tmp");
+      try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+        merged.store(outputStream, null);
+      }
+      Files.move(
+          tempFile,
+          cacheFile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    }
+    modified = false;
+  }
+
+  private boolean evictExpired(Properties properties) {
+    long oldestValid = clock.millis() - ttl.toMillis();
+    return properties
+        .values()
+        .removeIf(entry -> timestamp(String.valueOf(entry)) < oldestValid);
+  }
+
+  private static long timestamp(String entry) {
+    try {
+      return Long.parseLong(entry.substring(entry.indexOf('@') + 1));
+    } catch (NumberFormatException e) {
+      return Long.MIN_VALUE;
+    }
+  }
+
+  private static String key(RemoteRepository repository, PublishedArtifact artifact) {
+    return repository.getUrl() + "|" + artifact;
+  }
+
+  private static Properties read(File file) {
+    Properties properties = new Properties();
+    if (file.isFile()) {
+      try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+        properties.load(inputStream);
+      } catch (IOException | IllegalArgumentException e) {
+        // A corrupt cache is equivalent to an empty one
+        properties.clear();
+      }
+    }
+    return properties;
+  }
+}
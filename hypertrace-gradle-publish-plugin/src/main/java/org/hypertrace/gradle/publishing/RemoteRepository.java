@@ -0,0 +1,99 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.Serializable;
+import java.net.URI;
+import javax.annotation.Nullable;
+import org.gradle.api.artifacts.repositories.MavenArtifactRepository;
+import org.gradle.api.artifacts.repositories.PasswordCredentials;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.publish.maven.tasks.PublishToMavenRepository;
+
+public class RemoteRepository implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final String name;
+  private final URI url;
+  @Nullable private final String username;
+  @Nullable private final String password;
+
+  public RemoteRepository(
+      String name, URI url, @Nullable String username, @Nullable String password) {
+    this.name = name;
+    this.url = url;
+    this.username = username;
+    this.password = password;
+  }
+
+  public static RemoteRepository of(MavenArtifactRepository repository) {
+    PasswordCredentials credentials = repository.getCredentials();
+    return new RemoteRepository(
+        repository.getName(),
+        repository.getUrl(),
+        credentials.getUsername(),
+        credentials.getPassword());
+  }
+
+  /**
+   * The repository the task publishes to, read once the task is configured, as its repository is
+   * only set then. Its credentials are read only as a task runs, as {@link #of(ProviderFactory,
+   * MavenArtifactRepository)} describes.
+   */
+  public static Provider<RemoteRepository> of(
+      ProviderFactory providers, PublishToMavenRepository task) {
+    return providers.provider(task::getRepository).flatMap(repository -> of(providers, repository));
+  }
+
+  /**
+   * The repository, with its credentials read only as a task runs. Identity based credentials,
+   * {@code <name>Username} and {@code <name>Password}, are read by Gradle, which keeps them out of
+   * the configuration cache. Credentials set on the repository are read from it.
+   */
+  public static Provider<RemoteRepository> of(
+      ProviderFactory providers, MavenArtifactRepository repository) {
+    String name = repository.getName();
+    URI url = repository.getUrl();
+    if (providers.gradleProperty(name + "Username").isPresent()
+        && providers.gradleProperty(name + "Password").isPresent()) {
+      return providers
+          .credentials(org.gradle.api.credentials.PasswordCredentials.class, name)
+          .map(
+              credentials ->
+                  new RemoteRepository(
+                      name, url, credentials.getUsername(), credentials.getPassword()));
+    }
+    return providers.provider(() -> of(repository));
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public URI getUrl() {
+    return url;
+  }
+
+  @Nullable
+  public String getUsername() {
+    return username;
+  }
+
+  @Nullable
+  public String getPassword() {
+    return password;
+  }
+
+  public boolean hasCredentials() {
+    return username != null && password != null;
+  }
+
+  public URI resolve(String path) {
+    String base = url.toString();
+    return URI.create(base.endsWith("/") ? base + path : base + "/" + path);
+  }
+
+  @Override
+  public String toString() {
+    return name + " (" + url + ")";
+  }
+}
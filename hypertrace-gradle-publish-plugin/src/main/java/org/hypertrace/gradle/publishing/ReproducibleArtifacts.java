@@ -0,0 +1,114 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import org.gradle.api.Action;
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.file.FileCopyDetails;
+import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.plugins.JavaPluginExtension;
+import org.gradle.api.publish.maven.tasks.GenerateMavenPom;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.bundling.AbstractArchiveTask;
+
+/**
+ * Makes the published archives and POMs of a project depend on their contents alone, so that the
+ * same sources produce the same bytes on every machine and in every checkout. Archives get constant
+ * timestamps, entries in path order and normalized permissions, and POMs get {@code \n} line
+ * separators rather than the platform's. Archives the project doesn't publish are left as they are.
+ *
+ * <p>Applied by each publish plugin, and as a plugin only configures a project once, whichever of
+ * them applies it.
+ */
+public class ReproducibleArtifacts implements Plugin<Project> {
+  static final int FILE_MODE = 0644;
+  static final int EXECUTABLE_FILE_MODE = 0755;
+  static final int DIRECTORY_MODE = 0755;
+
+  @Override
+  public void apply(@Nonnull Project project) {
+    // The archives of the java component, which its publications publish
+    project
+        .getPluginManager()
+        .withPlugin(
+            "java",
+            unused -> {
+              SourceSet main =
+                  project
+                      .getExtensions()
+                      .getByType(JavaPluginExtension.class)
+                      .getSourceSets()
+                      .getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+              Set<String> archiveTaskNames =
+                  new HashSet<>(
+                      Arrays.asList(
+                          JavaPlugin.JAR_TASK_NAME,
+                          main.getJavadocJarTaskName(),
+                          main.getSourcesJarTaskName()));
+              project
+                  .getTasks()
+                  .withType(AbstractArchiveTask.class)
+                  .matching(task -> archiveTaskNames.contains(task.getName()))
+                  .configureEach(ReproducibleArtifacts::configureArchiveTask);
+            });
+    project
+        .getTasks()
+        .withType(GenerateMavenPom.class)
+        .configureEach(task -> task.doLast(new NormalizeLineSeparators()));
+  }
+
+  /** Makes an archive the plugins publish, other than those of the java component, reproducible. */
+  public static void configureArchive(TaskProvider<? extends AbstractArchiveTask> archiveTask) {
+    archiveTask.configure(ReproducibleArtifacts::configureArchiveTask);
+  }
+
+  private static void configureArchiveTask(AbstractArchiveTask task) {
+    task.setPreserveFileTimestamps(false);
+    task.setReproducibleFileOrder(true);
+    task.dirPermissions(permissions -> permissions.unix(DIRECTORY_MODE));
+    task.eachFile(new NormalizePermissions());
+  }
+
+  /**
+   * Keeps only whether a file is executable, as git does, so that the umask of the checkout does
+   * not leak into the archive. Modes set by the copy spec, such as those of start scripts, are
+   * applied first and kept the same way.
+   */
+  static int normalizedMode(int mode) {
+    return (mode & 0100) != 0 ? EXECUTABLE_FILE_MODE : FILE_MODE;
+  }
+
+  private static class NormalizePermissions implements Action<FileCopyDetails> {
+    @Override
+    public void execute(@Nonnull FileCopyDetails details) {
+      int mode = normalizedMode(details.getPermissions().toUnixNumeric());
+      details.permissions(permissions -> permissions.unix(mode));
+    }
+  }
+
+  private static class NormalizeLineSeparators implements Action<Task> {
+    @Override
+    public void execute(@Nonnull Task task) {
+      Path pom = ((GenerateMavenPom) task).getDestination().toPath();
+      try {
+        String content = new String(Files.readAllBytes(pom), StandardCharsets.UTF_8);
+        String normalized = content.replace("\r\n", "\n");
+        if (!normalized.equals(content)) {
+          Files.write(pom, normalized.getBytes(StandardCharsets.UTF_8));
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
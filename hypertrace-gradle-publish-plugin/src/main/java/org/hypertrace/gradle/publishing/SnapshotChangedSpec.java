@@ -0,0 +1,110 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import org.gradle.api.Task;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.specs.Spec;
+
+/**
+ * Satisfied unless every artifact of a snapshot publication matches the latest snapshot already in
+ * each repository, first by consulting the {@link RemoteChecksumCache} and then the remote
+ * checksums. Always satisfied unless enabled, as the publish tasks are configured before the build
+ * script decides whether unchanged snapshots are skipped.
+ */
+public class SnapshotChangedSpec implements Spec<Task> {
+  private final Provider<Boolean> enabled;
+  private final Provider<List<RemoteRepository>> repositories;
+  private final Provider<List<PublishedArtifact>> artifacts;
+  private final File cacheFile;
+  private final Provider<Duration> cacheTtl;
+  private final Provider<ChecksumService> checksums;
+
+  public SnapshotChangedSpec(
+      Provider<Boolean> enabled,
+      Provider<List<RemoteRepository>> repositories,
+      Provider<List<PublishedArtifact>> artifacts,
+      File cacheFile,
+      Provider<Duration> cacheTtl,
+      Provider<ChecksumService> checksums) {
+    this.enabled = enabled;
+    this.repositories = repositories;
+    this.artifacts = artifacts;
+    this.cacheFile = cacheFile;
+    this.cacheTtl = cacheTtl;
+    this.checksums = checksums;
+  }
+
+  @Override
+  public boolean isSatisfiedBy(Task task) {
+    if (!enabled.get()) {
+      return true;
+    }
+    List<PublishedArtifact> publishedArtifacts = artifacts.get();
+    if (publishedArtifacts.isEmpty() || !publishedArtifacts.get(0).isSnapshot()) {
+      return true;
+    }
+    RemoteChecksumCache cache = new RemoteChecksumCache(cacheFile, cacheTtl.get());
+    try {
+      for (RemoteRepository remoteRepository : repositories.get()) {
+        if (this.anyChanged(remoteRepository, publishedArtifacts, cache)) {
+          cache.save();
+          return true;
+        }
+      }
+      task.getLogger()
+          .lifecycle(
+              "Skipping {}, all artifacts match the latest snapshot in {}",
+              task.getPath(),
+              repositories.get());
+      cache.save();
+      return false;
+    } catch (IOException e) {
+      task.getLogger()
+          .info("Unable to compare with published snapshot, publishing: {}", e.getMessage());
+      return true;
+    }
+  }
+
+  private boolean anyChanged(
+      RemoteRepository remoteRepository,
+      List<PublishedArtifact> publishedArtifacts,
+      RemoteChecksumCache cache)
+      throws IOException {
+    MavenRepositoryClient client = new MavenRepositoryClient(remoteRepository);
+    Map<String, String> remoteFileNames = null;
+    for (PublishedArtifact artifact : publishedArtifacts) {
+      String localSha256 = checksums.get().hex(artifact.getFile(), Checksums.SHA256);
+      String cachedSha256 = cache.get(remoteRepository, artifact);
+      if (cachedSha256 != null) {
+        if (!cachedSha256.equals(localSha256)) {
+          return true;
+        }
+        continue;
+      }
+
+      if (remoteFileNames == null) {
+        remoteFileNames = client.fetchSnapshotFileNames(artifact);
+      }
+      String remoteFileName = remoteFileNames.get(artifact.getArtifactKey());
+      if (remoteFileName == null) {
+        return true;
+      }
+      String remotePath = artifact.getVersionDirectory() + "/" + remoteFileName;
+      String remoteSha256 = client.fetchChecksum(remotePath + ".sha256");
+      boolean matches =
+          remoteSha256 != null
+              ? remoteSha256.equals(localSha256)
+              : checksums.get().hex(artifact.getFile(), Checksums.SHA1)
+                  .equals(client.fetchChecksum(remotePath + ".sha1"));
+      if (!matches) {
+        return true;
+      }
+      cache.put(remoteRepository, artifact, localSha256);
+    }
+    return false;
+  }
+}
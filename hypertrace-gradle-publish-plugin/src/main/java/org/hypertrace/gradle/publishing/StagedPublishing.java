@@ -0,0 +1,182 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.file.Directory;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.publish.PublishingExtension;
+import org.gradle.api.publish.maven.tasks.PublishToMavenRepository;
+import org.gradle.api.tasks.Delete;
+import org.gradle.api.tasks.TaskProvider;
+
+/**
+ * Opt-in publishing mode, enabled by the {@value
+ * PublishUploadService#MAX_PARALLEL_UPLOADS_PROPERTY}, {@value PublishOutbox#OUTBOX_PROPERTY} or
+ * {@value StreamingDistribution#STREAMING_DISTRIBUTION_PROPERTY} gradle property, where
+ * publications are written to a local staging repository and then uploaded to each remote
+ * repository through the shared {@link PublishUploadService}. The {@value #FAN_OUT_PROPERTY} gradle
+ * property stages them too when they go to more than one remote repository. The repositories named
+ * by the {@value #BEST_EFFORT_REPOSITORIES_PROPERTY} gradle property, separated by commas, may fail
+ * without failing the build.
+ */
+public final class StagedPublishing {
+  public static final String FAN_OUT_PROPERTY = "publish_fan_out";
+  public static final String BEST_EFFORT_REPOSITORIES_PROPERTY =
+      "publish_best_effort_repositories";
+  public static final String STAGING_REPOSITORY_NAME = "hypertraceStaging";
+  public static final String UPLOAD_TASK_NAME = "uploadStagedPublications";
+  private static final String CLEAN_TASK_NAME = "cleanStagedPublications";
+  private static final String STAGING_DIRECTORY = "hypertrace-publish/staging";
+  private static final String PUBLISH_TO_STAGING_TASK_NAME =
+      "publishAllPublicationsTo" + capitalize(STAGING_REPOSITORY_NAME) + "Repository";
+
+  private StagedPublishing() {}
+
+  public static boolean isEnabled(Project project) {
+    return project
+            .getProviders()
+            .gradleProperty(PublishUploadService.MAX_PARALLEL_UPLOADS_PROPERTY)
+            .isPresent()
+        || PublishOutbox.isEnabled(project)
+        || StreamingDistribution.isEnabled(project);
+  }
+
+  public static boolean isFanOutEnabled(Project project) {
+    return project
+        .getProviders()
+        .gradleProperty(FAN_OUT_PROPERTY)
+        .map(Boolean::parseBoolean)
+        .getOrElse(false);
+  }
+
+  public static boolean isStagingTask(PublishToMavenRepository task) {
+    return task.getName().endsWith("To" + capitalize(STAGING_REPOSITORY_NAME) + "Repository");
+  }
+
+  /** Stages publications for the given remote repository instead of publishing to it directly. */
+  public static void addRemoteRepository(Project project, Provider<RemoteRepository> repository) {
+    maybeRegisterUploadTask(project)
+        .configure(task -> task.getRepositories().add(repository));
+  }
+
+  private static TaskProvider<UploadStagedPublications> maybeRegisterUploadTask(Project project) {
+    if (project.getTasks().getNames().contains(UPLOAD_TASK_NAME)) {
+      return project.getTasks().named(UPLOAD_TASK_NAME, UploadStagedPublications.class);
+    }
+    Provider<Directory> stagingDirectory =
+        project.getLayout().getBuildDirectory().dir(STAGING_DIRECTORY);
+    project
+        .getExtensions()
+        .getByType(PublishingExtension.class)
+        .getRepositories()
+        .maven(
+            repository -> {
+              repository.setName(STAGING_REPOSITORY_NAME);
+              repository.setUrl(stagingDirectory);
+            });
+
+    // Earlier builds must not leak into this build's upload
+    TaskProvider<Delete> cleanTask =
+        project
+            .getTasks()
+            .register(CLEAN_TASK_NAME, Delete.class, task -> task.delete(stagingDirectory));
+    project
+        .getTasks()
+        .withType(PublishToMavenRepository.class)
+        .configureEach(
+            task -> {
+              if (isStagingTask(task)) {
+                task.dependsOn(cleanTask);
+              }
+            });
+
+    Provider<PublishUploadService> uploadService = PublishUploadService.register(project);
+    Provider<PublishTelemetry> telemetry = PublishTelemetry.register(project);
+    Provider<Set<String>> bestEffortRepositories =
+        project
+            .getProviders()
+            .gradleProperty(BEST_EFFORT_REPOSITORIES_PROPERTY)
+            .map(StagedPublishing::splitNames)
+            .orElse(Collections.emptySet());
+    Action<UploadStagedPublications> configureUpload =
+        task -> {
+          task.setGroup("publishing");
+          task.getBestEffortRepositories().set(bestEffortRepositories);
+          task.getUploadService().set(uploadService);
+          task.usesService(uploadService);
+          task.getTelemetry().set(telemetry);
+          task.usesService(telemetry);
+        };
+    TaskProvider<UploadStagedPublications> uploadTask =
+        project
+            .getTasks()
+            .register(
+                UPLOAD_TASK_NAME,
+                UploadStagedPublications.class,
+                task -> {
+                  configureUpload.execute(task);
+                  task.setDescription(
+                      "Uploads the staged publications to the remote repositories");
+                  task.getStagingDirectory().set(stagingDirectory);
+                  task.dependsOn(PUBLISH_TO_STAGING_TASK_NAME);
+                });
+    if (PublishOutbox.isEnabled(project)) {
+      addOutboxTasks(project, uploadTask, stagingDirectory, configureUpload);
+    } else {
+      project.getTasks().named("publish").configure(task -> task.dependsOn(uploadTask));
+    }
+    return uploadTask;
+  }
+
+  // Publishing only enqueues, and the drain task uploads to the repositories of the upload task
+  private static void addOutboxTasks(
+      Project project,
+      TaskProvider<UploadStagedPublications> uploadTask,
+      Provider<Directory> stagingDirectory,
+      Action<UploadStagedPublications> configureUpload) {
+    File outboxDirectory = PublishOutbox.outboxDirectory(project);
+    TaskProvider<EnqueueStagedPublications> enqueueTask =
+        project
+            .getTasks()
+            .register(
+                PublishOutbox.ENQUEUE_TASK_NAME,
+                EnqueueStagedPublications.class,
+                task -> {
+                  task.setGroup("publishing");
+                  task.setDescription("Adds the staged publications to the publish outbox");
+                  task.getStagingDirectory().set(stagingDirectory);
+                  task.getOutboxDirectory().set(outboxDirectory);
+                  task.dependsOn(PUBLISH_TO_STAGING_TASK_NAME);
+                });
+    project
+        .getTasks()
+        .register(
+            PublishOutbox.DRAIN_TASK_NAME,
+            DrainPublishOutbox.class,
+            task -> {
+              configureUpload.execute(task);
+              task.setDescription("Uploads the publish outbox to the remote repositories");
+              task.getStagingDirectory().set(outboxDirectory);
+              task.getRepositories()
+                  .set(uploadTask.flatMap(UploadStagedPublications::getRepositories));
+              task.mustRunAfter(enqueueTask);
+            });
+    project.getTasks().named("publish").configure(task -> task.dependsOn(enqueueTask));
+  }
+
+  private static Set<String> splitNames(String names) {
+    return Arrays.stream(names.split(","))
+        .map(String::trim)
+        .filter(name -> !name.isEmpty())
+        .collect(Collectors.toSet());
+  }
+
+  private static String capitalize(String name) {
+    return name.substring(0, 1).toUpperCase() + name.substring(1);
+  }
+}
@@ -0,0 +1,277 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.bundling.Zip;
+
+/**
+ * Writes an archive as {@link WriteArchiveInParallel} does, while uploading it to every remote
+ * repository. Each repository's upload reads the archive's bytes from a bounded buffer as they are
+ * written, so compression and upload overlap and the archive is never read back from disk. The
+ * checksums are computed from the same bytes and uploaded once the archive is complete.
+ *
+ * <p>The archive is still written to its file, which the publication stages as usual. A
+ * repository whose streamed upload failed gets the staged file instead, with the usual retries.
+ * Nothing is streamed unless the build publishes and its preflight passed, as the archive is built
+ * by builds that don't publish too.
+ */
+public class StreamArchiveToRepositories extends WriteArchiveInParallel {
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final int BUFFER_CHUNKS = 64;
+
+  private final Provider<Boolean> publishing;
+  private final FileCollection preflightResult;
+  private final Provider<List<RemoteRepository>> repositories;
+  private final Provider<String> repositoryPath;
+  private final Provider<PublishUploadService> uploadService;
+  private final Provider<PublishTelemetry> telemetry;
+
+  /**
+   * @param publishing whether the build uploads the archive's publication
+   * @param preflightResult the result of the build's preflight, whose files only exist once it
+   *     passed
+   * @param repositoryPath the path of the archive in the repositories, or absent if the archive is
+   *     not streamed
+   */
+  public StreamArchiveToRepositories(
+      FileSystemOperations fileSystemOperations,
+      int threads,
+      Provider<Boolean> publishing,
+      FileCollection preflightResult,
+      Provider<List<RemoteRepository>> repositories,
+      Provider<String> repositoryPath,
+      Provider<PublishUploadService> uploadService,
+      Provider<PublishTelemetry> telemetry) {
+    super(fileSystemOperations, threads);
+    this.publishing = publishing;
+    this.preflightResult = preflightResult;
+    this.repositories = repositories;
+    this.repositoryPath = repositoryPath;
+    this.uploadService = uploadService;
+    this.telemetry = telemetry;
+  }
+
+  @Override
+  protected void writeArchive(
+      Zip archiveTask,
+      ParallelZipWriter writer,
+      Path archive,
+      ParallelZipWriter.EntrySource entries)
+      throws IOException {
+    List<RemoteRepository> remoteRepositories = repositories.get();
+    if (!publishing.get()
+        || !preflightResult.getFiles().stream().allMatch(File::isFile)
+        || !repositoryPath.isPresent()
+        || remoteRepositories.isEmpty()) {
+      super.writeArchive(archiveTask, writer, archive, entries);
+      return;
+    }
+    String path = repositoryPath.get();
+    PublishUploadService service = uploadService.get();
+    List<BoundedPipe> pipes = new ArrayList<>();
+    List<CompletableFuture<Void>> uploads = new ArrayList<>();
+    for (RemoteRepository repository : remoteRepositories) {
+      BoundedPipe pipe = new BoundedPipe();
+      MavenRepositoryClient client = this.newClient(repository);
+      pipes.add(pipe);
+      uploads.add(
+          service.submit(
+              () -> {
+                try {
+                  client.putStreamed(path, pipe);
+                } finally {
+                  // Unblocks the writer if the upload stopped reading early
+                  pipe.abandon();
+                }
+              }));
+    }
+
+    Map<String, MessageDigest> digests = new LinkedHashMap<>();
+    for (String algorithm : Checksums.REPOSITORY_ALGORITHMS) {
+      digests.put(algorithm, Checksums.newDigest(algorithm));
+    }
+    try (OutputStream file = Files.newOutputStream(archive)) {
+      writer.write(new TeeOutputStream(file, digests.values(), pipes), entries);
+    } catch (IOException | RuntimeException e) {
+      pipes.forEach(BoundedPipe::fail);
+      throw e;
+    }
+    for (BoundedPipe pipe : pipes) {
+      pipe.finish();
+    }
+
+    Map<String, byte[]> checksums = new LinkedHashMap<>();
+    for (Map.Entry<String, MessageDigest> digest : digests.entrySet()) {
+      checksums.put(
+          path + "." + Checksums.extension(digest.getKey()),
+          Checksums.toHex(digest.getValue().digest()).getBytes(StandardCharsets.UTF_8));
+    }
+    for (int i = 0; i < remoteRepositories.size(); i++) {
+      RemoteRepository repository = remoteRepositories.get(i);
+      MavenRepositoryClient client = this.newClient(repository);
+      try {
+        uploads.get(i).join();
+        service.recordStreamed(repository.getName(), path);
+        for (Map.Entry<String, byte[]> checksum : checksums.entrySet()) {
+          client.put(checksum.getKey(), checksum.getValue());
+          service.recordStreamed(repository.getName(), checksum.getKey());
+        }
+      } catch (CompletionException | IOException e) {
+        archiveTask
+            .getLogger()
+            .info(
+                "Streaming {} to {} failed, it is uploaded once staged instead",
+                path,
+                repository,
+                e);
+      }
+    }
+  }
+
+  private MavenRepositoryClient newClient(RemoteRepository repository) {
+    return new MavenRepositoryClient(repository, Long.MAX_VALUE, false, telemetry.get());
+  }
+
+  // Writes the archive to its file, its digests and every pipe still being read
+  private static class TeeOutputStream extends OutputStream {
+    private final OutputStream file;
+    private final Iterable<MessageDigest> digests;
+    private final List<BoundedPipe> pipes;
+
+    TeeOutputStream(OutputStream file, Iterable<MessageDigest> digests, List<BoundedPipe> pipes) {
+      this.file = file;
+      this.digests = digests;
+      this.pipes = pipes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      this.write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      file.write(b, off, len);
+      for (MessageDigest digest : digests) {
+        digest.update(b, off, len);
+      }
+      if (pipes.isEmpty()) {
+        return;
+      }
+      // Large entries arrive in one write, and are split so the buffers stay small
+      for (int start = off; start < off + len; start += CHUNK_SIZE) {
+        byte[] chunk = Arrays.copyOfRange(b, start, Math.min(start + CHUNK_SIZE, off + len));
+        for (BoundedPipe pipe : pipes) {
+          pipe.put(chunk);
+        }
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      file.flush();
+    }
+  }
+
+  /**
+   * Hands chunks of the archive from the writer to one upload. Once its upload has started the
+   * writer blocks while the buffer is full, so memory stays bounded. An upload still waiting for a
+   * slot of the upload service when its buffer fills is failed instead, as it may be waiting for
+   * uploads that wait for the writer.
+   */
+  private static class BoundedPipe extends InputStream {
+    private static final byte[] END = new byte[0];
+    private static final byte[] FAILED = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(BUFFER_CHUNKS);
+    private volatile boolean started;
+    private volatile boolean closed;
+    private byte[] current = new byte[0];
+    private int position;
+
+    void put(byte[] chunk) throws InterruptedIOException {
+      if (closed || chunks.offer(chunk)) {
+        return;
+      }
+      if (!started) {
+        this.fail();
+        return;
+      }
+      try {
+        chunks.put(chunk);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while streaming the archive");
+      }
+      if (closed) {
+        chunks.clear();
+      }
+    }
+
+    void finish() throws InterruptedIOException {
+      this.put(END);
+    }
+
+    // The writer is the only producer, so once cleared the buffer has room for the marker
+    void fail() {
+      closed = true;
+      chunks.clear();
+      chunks.offer(FAILED);
+    }
+
+    // Called by the upload once it stops reading, to release a writer blocked on the buffer
+    void abandon() {
+      closed = true;
+      chunks.clear();
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] single = new byte[1];
+      return this.read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      started = true;
+      while (position == current.length) {
+        if (current == END) {
+          return -1;
+        }
+        if (current == FAILED) {
+          throw new IOException("Streaming the archive was abandoned");
+        }
+        try {
+          current = chunks.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while streaming the archive");
+        }
+        position = 0;
+      }
+      int count = Math.min(len, current.length - position);
+      System.arraycopy(current, position, b, off, count);
+      position += count;
+      return count;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package org.hypertrace.gradle.publishing;
+
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Internal;
+
+/**
+ * A {@link ParallelZip} task whose archive is uploaded to the remote repositories while it is
+ * written, by {@link StreamArchiveToRepositories}.
+ */
+public abstract class StreamedZip extends ParallelZip {
+  /** Whether the build uploads the archive's publication. */
+  @Internal
+  public abstract Property<Boolean> getPublishing();
+
+  /** The result of the build's preflight, whose files only exist once it passed. */
+  @Internal
+  public abstract ConfigurableFileCollection getPreflightResult();
+
+  @Internal
+  public abstract ListProperty<RemoteRepository> getRepositories();
+
+  /** The path of the archive in the repositories, or absent if the archive is not streamed. */
+  @Internal
+  public abstract Property<String> getRepositoryPath();
+
+  @Internal
+  public abstract Property<PublishUploadService> getUploadService();
+
+  @Internal
+  public abstract Property<PublishTelemetry> getTelemetry();
+
+  @Override
+  protected WriteArchiveInParallel archiveWriter() {
+    return new StreamArchiveToRepositories(
+        this.getFileSystemOperations(),
+        Runtime.getRuntime().availableProcessors(),
+        this.getPublishing(),
+        this.getPreflightResult(),
+        this.getRepositories(),
+        this.getRepositoryPath(),
+        this.getUploadService(),
+        this.getTelemetry());
+  }
+}
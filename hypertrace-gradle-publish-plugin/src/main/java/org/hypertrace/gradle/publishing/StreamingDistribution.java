@@ -0,0 +1,99 @@
+package org.hypertrace.gradle.publishing;
+
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.gradle.api.Project;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.publish.maven.MavenPublication;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.bundling.Zip;
+
+/**
+ * Opt-in publishing mode, enabled by the {@value #STREAMING_DISTRIBUTION_PROPERTY} gradle
+ * property, where the distribution archive is uploaded to the remote repositories while the
+ * {@value #DISTRIBUTION_TASK_NAME} task writes it, in place of {@code distZip}. The staged upload
+ * then skips the files that were streamed. The archive is only streamed when the build uploads
+ * the publication, after the preflight passed, so running the task alone uploads nothing.
+ * Publications are staged in this mode, as with {@value
+ * PublishUploadService#MAX_PARALLEL_UPLOADS_PROPERTY}. It does not apply alongside the {@value
+ * PublishOutbox#OUTBOX_PROPERTY}, whose publish must not upload anything.
+ */
+public final class StreamingDistribution {
+  public static final String STREAMING_DISTRIBUTION_PROPERTY = "publish_streaming_distribution";
+  public static final String DISTRIBUTION_TASK_NAME = "streamedDistZip";
+
+  private StreamingDistribution() {}
+
+  public static boolean isEnabled(Project project) {
+    return project
+            .getProviders()
+            .gradleProperty(STREAMING_DISTRIBUTION_PROPERTY)
+            .map(Boolean::parseBoolean)
+            .getOrElse(false)
+        && !PublishOutbox.isEnabled(project);
+  }
+
+  /**
+   * Registers the task writing the distribution archive to publish, a {@link StreamedZip} writing
+   * what the given task does, the only artifact of the given publication, and streaming it to the
+   * repositories the publication is staged for. Snapshots are written without streaming, as their
+   * timestamped file names are only chosen when they are staged.
+   */
+  public static TaskProvider<StreamedZip> register(
+      Project project, TaskProvider<Zip> archiveTask, Provider<MavenPublication> distribution) {
+    Provider<List<RemoteRepository>> repositories =
+        project.getTasks().getNames().contains(StagedPublishing.UPLOAD_TASK_NAME)
+            ? project
+                .getTasks()
+                .named(StagedPublishing.UPLOAD_TASK_NAME, UploadStagedPublications.class)
+                .flatMap(UploadStagedPublications::getRepositories)
+            : project.provider(Collections::emptyList);
+    // Set once the task graph is known, as the archive is also built without publishing it
+    Property<Boolean> publishing = project.getObjects().property(Boolean.class).convention(false);
+    String uploadTaskPath = project.absoluteProjectPath(StagedPublishing.UPLOAD_TASK_NAME);
+    project
+        .getGradle()
+        .getTaskGraph()
+        .whenReady(graph -> publishing.set(graph.hasTask(uploadTaskPath)));
+    FileCollection preflightResult = PublishPreflight.result(project);
+    Provider<PublishUploadService> uploadService = PublishUploadService.register(project);
+    Provider<PublishTelemetry> telemetry = PublishTelemetry.register(project);
+    return ParallelArchives.registerCopy(
+        project,
+        DISTRIBUTION_TASK_NAME,
+        StreamedZip.class,
+        archiveTask,
+        task -> {
+          task.setDescription("Writes the distribution archive to publish, streaming it");
+          task.getPublishing().set(publishing);
+          task.getPreflightResult().from(preflightResult);
+          task.getRepositories().set(repositories);
+          task.getRepositoryPath().set(project.provider(() -> repositoryPath(distribution, task)));
+          task.getUploadService().set(uploadService);
+          task.getTelemetry().set(telemetry);
+          task.usesService(uploadService);
+          task.usesService(telemetry);
+          PublishPreflight.orderBefore(project, task);
+        });
+  }
+
+  @Nullable
+  private static String repositoryPath(Provider<MavenPublication> distribution, Zip task) {
+    MavenPublication publication = distribution.get();
+    if (publication.getVersion().endsWith("-SNAPSHOT")) {
+      return null;
+    }
+    PublishedArtifact artifact =
+        new PublishedArtifact(
+            publication.getGroupId(),
+            publication.getArtifactId(),
+            publication.getVersion(),
+            task.getArchiveClassifier().getOrNull(),
+            task.getArchiveExtension().get(),
+            task.getArchiveFile().get().getAsFile());
+    return artifact.getVersionDirectory() + "/" + MavenRepositoryClient.fileName(artifact);
+  }
+}
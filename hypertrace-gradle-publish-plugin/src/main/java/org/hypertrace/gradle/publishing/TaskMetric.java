@@ -0,0 +1,39 @@
+package org.hypertrace.gradle.publishing;
+
+/** Timing of one task the plugins contribute to publishing. */
+public class TaskMetric {
+  private final String path;
+  private final long startMillis;
+  private final long durationMillis;
+  private final String outcome;
+
+  public TaskMetric(String path, long startMillis, long durationMillis, String outcome) {
+    this.path = path;
+    this.startMillis = startMillis;
+    this.durationMillis = durationMillis;
+    this.outcome = outcome;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  /** Epoch millis at which the task started. */
+  public long getStartMillis() {
+    return startMillis;
+  }
+
+  public long getDurationMillis() {
+    return durationMillis;
+  }
+
+  /** One of SUCCESS, UP-TO-DATE, FROM-CACHE, SKIPPED or FAILED. */
+  public String getOutcome() {
+    return outcome;
+  }
+
+  @Override
+  public String toString() {
+    return path + " " + outcome;
+  }
+}
@@ -0,0 +1,63 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * The repository paths already uploaded from a staged directory to one repository, one per line.
+ * Each path is written through to disk as its upload completes, so an interrupted upload resumes
+ * with the files it had not yet uploaded.
+ */
+final class UploadJournal {
+  private static final UploadJournal NONE = new UploadJournal(null, Collections.emptySet());
+
+  @Nullable private final Path file;
+  private final Set<String> uploaded;
+
+  private UploadJournal(@Nullable Path file, Set<String> uploaded) {
+    this.file = file;
+    this.uploaded = uploaded;
+  }
+
+  /** A journal that remembers nothing, for uploads that always start over. */
+  static UploadJournal none() {
+    return NONE;
+  }
+
+  /** A journal of files uploaded by other means, which records nothing further. */
+  static UploadJournal of(Set<String> uploaded) {
+    return new UploadJournal(null, uploaded);
+  }
+
+  static UploadJournal open(Path file) throws IOException {
+    Set<String> uploaded = new HashSet<>();
+    if (Files.exists(file)) {
+      // A line cut short by a crash names no staged file, so that file is uploaded again
+      uploaded.addAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+    return new UploadJournal(file, uploaded);
+  }
+
+  synchronized boolean contains(String path) {
+    return uploaded.contains(path);
+  }
+
+  synchronized void record(String path) throws IOException {
+    if (file == null || !uploaded.add(path)) {
+      return;
+    }
+    Files.write(
+        file,
+        (path + "\n").getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND,
+        StandardOpenOption.DSYNC);
+  }
+}
@@ -0,0 +1,387 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.SetProperty;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Uploads a project's staged maven repository to its remote repositories. Every file is scheduled
+ * through the shared {@link PublishUploadService}; each maven-metadata.xml is merged with the
+ * remote copy and written once, as soon as every staged file it describes has been uploaded. The
+ * repositories are uploaded to concurrently, each failing or succeeding on its own.
+ *
+ * <p>The staging repository starts out empty, so Gradle numbers every staged snapshot build 1. A
+ * snapshot is uploaded as the build after the latest one in each repository instead, with its files
+ * renamed to match.
+ */
+public abstract class UploadStagedPublications extends DefaultTask {
+  public static final long DEFAULT_LARGE_ARTIFACT_THRESHOLD = 64L * 1024 * 1024;
+  private static final String METADATA_FILE_NAME = "maven-metadata.xml";
+
+  @Internal
+  public abstract DirectoryProperty getStagingDirectory();
+
+  @Internal
+  public abstract ListProperty<RemoteRepository> getRepositories();
+
+  /**
+   * The artifacts of the staged publications. File repositories link these files, rather than their
+   * staged copies, so publishing to one writes no copy of them.
+   */
+  @Internal
+  public abstract ListProperty<PublishedArtifact> getArtifacts();
+
+  /** Names of the repositories whose failed uploads are logged rather than failing the task. */
+  @Internal
+  public abstract SetProperty<String> getBestEffortRepositories();
+
+  @Internal
+  public abstract Property<PublishUploadService> getUploadService();
+
+  @Internal
+  public abstract Property<PublishTelemetry> getTelemetry();
+
+  /** Size in bytes from which a file is uploaded with the large artifact settings. */
+  @Internal
+  public abstract Property<Long> getLargeArtifactThreshold();
+
+  /** Whether the repositories accept chunked uploads that can resume after a failure. */
+  @Internal
+  public abstract Property<Boolean> getResumableUploads();
+
+  /**
+   * Whether maven-metadata.xml is updated with conditional requests, so that concurrent publishers
+   * of the same coordinates merge their changes instead of overwriting each other's.
+   */
+  @Internal
+  public abstract Property<Boolean> getConditionalMetadataUpdates();
+
+  private final Set<String> failedRepositories = new HashSet<>();
+
+  public UploadStagedPublications() {
+    this.getLargeArtifactThreshold().convention(DEFAULT_LARGE_ARTIFACT_THRESHOLD);
+    this.getResumableUploads().convention(false);
+    this.getConditionalMetadataUpdates().convention(false);
+    this.getArtifacts().convention(Collections.emptyList());
+  }
+
+  @TaskAction
+  public void upload() throws IOException {
+    Path stagingDirectory = this.getStagingDirectory().get().getAsFile().toPath();
+    if (!Files.isDirectory(stagingDirectory)) {
+      return;
+    }
+    // The files streamed to a repository while they were written are already uploaded
+    PublishUploadService uploadService = this.getUploadService().get();
+    Map<String, String> failures =
+        this.uploadDirectory(
+            stagingDirectory,
+            repository -> UploadJournal.of(uploadService.getStreamedPaths(repository.getName())));
+    failedRepositories.addAll(failures.keySet());
+    this.reportFailures(failures);
+  }
+
+  /** Whether the last upload to the repository succeeded, which best-effort ones may not have. */
+  boolean isUploaded(RemoteRepository repository) {
+    return !failedRepositories.contains(repository.getName());
+  }
+
+  /**
+   * Uploads a staged maven repository to every repository at once, skipping the files each
+   * repository's journal lists as uploaded.
+   *
+   * @return the failure of each repository that failed, by repository name
+   */
+  Map<String, String> uploadDirectory(Path directory, JournalFactory journals)
+      throws IOException {
+    List<String> stagedFiles;
+    try (Stream<Path> files = Files.walk(directory)) {
+      stagedFiles =
+          files
+              .filter(Files::isRegularFile)
+              .map(file -> toRepositoryPath(directory.relativize(file)))
+              .sorted()
+              .collect(Collectors.toList());
+    }
+    List<String> artifactFiles =
+        stagedFiles.stream().filter(path -> !isMetadata(path)).collect(Collectors.toList());
+    List<String> metadataFiles =
+        stagedFiles.stream()
+            .filter(path -> path.endsWith("/" + METADATA_FILE_NAME))
+            .collect(Collectors.toList());
+
+    List<RemoteRepository> repositories = this.getRepositories().get();
+    List<CompletableFuture<Void>> uploads = new ArrayList<>();
+    for (RemoteRepository repository : repositories) {
+      uploads.add(
+          this.uploadRepository(
+              repository, directory, artifactFiles, metadataFiles, journals.open(repository)));
+    }
+
+    Map<String, String> failures = new LinkedHashMap<>();
+    for (int i = 0; i < uploads.size(); i++) {
+      RemoteRepository repository = repositories.get(i);
+      try {
+        uploads.get(i).join();
+      } catch (CompletionException e) {
+        failures.put(repository.getName(), repository + ": " + rootMessage(e));
+      }
+    }
+    return failures;
+  }
+
+  /** Logs the failures of best-effort repositories, and fails the task for any other. */
+  void reportFailures(Map<String, String> failures) {
+    Set<String> bestEffortRepositories = this.getBestEffortRepositories().get();
+    List<String> requiredFailures = new ArrayList<>();
+    for (Map.Entry<String, String> failure : failures.entrySet()) {
+      if (bestEffortRepositories.contains(failure.getKey())) {
+        this.getLogger().warn("Failed to upload staged publications to {}", failure.getValue());
+      } else {
+        requiredFailures.add(failure.getValue());
+      }
+    }
+    if (!requiredFailures.isEmpty()) {
+      throw new GradleException(
+          "Failed to upload staged publications to " + String.join(", ", requiredFailures));
+    }
+  }
+
+  private CompletableFuture<Void> uploadRepository(
+      RemoteRepository repository,
+      Path stagingDirectory,
+      List<String> artifactFiles,
+      List<String> metadataFiles,
+      UploadJournal journal) {
+    MavenRepositoryClient client =
+        new MavenRepositoryClient(
+            repository,
+            this.getLargeArtifactThreshold().get(),
+            this.getResumableUploads().get(),
+            this.getTelemetry().get());
+    PublishUploadService uploadService = this.getUploadService().get();
+    boolean conditional = this.getConditionalMetadataUpdates().get();
+    List<PublishedArtifact> artifacts =
+        "file".equals(repository.getUrl().getScheme())
+            ? this.getArtifacts().get()
+            : Collections.emptyList();
+    SnapshotBuilds snapshotBuilds = new SnapshotBuilds(client, stagingDirectory);
+    Map<String, CompletableFuture<Void>> artifactUploads = new LinkedHashMap<>();
+    for (String path : artifactFiles) {
+      File staged = stagingDirectory.resolve(path).toFile();
+      artifactUploads.put(
+          path,
+          submit(
+              uploadService,
+              journal,
+              path,
+              () ->
+                  client.put(
+                      snapshotBuilds.remotePath(path), sourceFile(artifacts, path, staged))));
+    }
+    List<CompletableFuture<Void>> uploads = new ArrayList<>(artifactUploads.values());
+    for (String path : metadataFiles) {
+      // Artifact metadata describes every staged version below it, version metadata its files
+      String directory = path.substring(0, path.lastIndexOf('/') + 1);
+      CompletableFuture<?>[] described =
+          artifactUploads.entrySet().stream()
+              .filter(upload -> upload.getKey().startsWith(directory))
+              .map(Map.Entry::getValue)
+              .toArray(CompletableFuture[]::new);
+      uploads.add(
+          CompletableFuture.allOf(described)
+              .thenCompose(
+                  unused ->
+                      submit(
+                          uploadService,
+                          journal,
+                          path,
+                          () ->
+                              uploadMetadata(
+                                  client, stagingDirectory, snapshotBuilds, path, conditional))));
+    }
+    return CompletableFuture.allOf(uploads.toArray(new CompletableFuture<?>[0]));
+  }
+
+  // Gradle copies artifacts into the staging repository unchanged, so a file of another size is
+  // not the one that was staged, and the staged copy is published instead
+  private static File sourceFile(List<PublishedArtifact> artifacts, String path, File staged) {
+    for (PublishedArtifact artifact : artifacts) {
+      File file = artifact.getFile();
+      if (artifact.isPublishedAt(path) && file.isFile() && file.length() == staged.length()) {
+        return file;
+      }
+    }
+    return staged;
+  }
+
+  private static CompletableFuture<Void> submit(
+      PublishUploadService uploadService,
+      UploadJournal journal,
+      String path,
+      PublishUploadService.Upload upload) {
+    if (journal.contains(path)) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return uploadService.submit(
+        () -> {
+          upload.run();
+          journal.record(path);
+        });
+  }
+
+  private static void uploadMetadata(
+      MavenRepositoryClient client,
+      Path stagingDirectory,
+      SnapshotBuilds snapshotBuilds,
+      String path,
+      boolean conditional)
+      throws IOException {
+    String directory = path.substring(0, path.lastIndexOf('/'));
+    // Artifact metadata lists the versions, snapshot version metadata the latest file of each kind
+    MavenRepositoryClient.ContentUpdate update;
+    if (directory.endsWith("-SNAPSHOT")) {
+      byte[] staged = snapshotBuilds.get(directory).metadata;
+      update = remote -> MavenMetadata.mergeSnapshot(remote, staged);
+    } else {
+      byte[] staged = Files.readAllBytes(stagingDirectory.resolve(path));
+      update = remote -> MavenMetadata.merge(remote, staged);
+    }
+    byte[] merged;
+    if (conditional) {
+      merged = client.putConditionally(path, update);
+      if (merged == null) {
+        return;
+      }
+    } else {
+      merged = update.apply(client.fetch(path));
+      if (merged == null) {
+        return;
+      }
+      client.put(path, merged);
+    }
+    for (Map.Entry<String, String> checksum :
+        Checksums.hex(merged, Checksums.REPOSITORY_ALGORITHMS).entrySet()) {
+      client.put(
+          path + "." + Checksums.extension(checksum.getKey()),
+          checksum.getValue().getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * The build number each staged snapshot is uploaded to a repository as, one after the latest in
+   * the repository's snapshot version metadata, which is read once per snapshot.
+   */
+  private static class SnapshotBuilds {
+    private final MavenRepositoryClient client;
+    private final Path stagingDirectory;
+    private final Map<String, SnapshotBuild> builds = new HashMap<>();
+
+    SnapshotBuilds(MavenRepositoryClient client, Path stagingDirectory) {
+      this.client = client;
+      this.stagingDirectory = stagingDirectory;
+    }
+
+    /** The path a staged file is uploaded to, renamed for the build it is uploaded as. */
+    String remotePath(String path) throws IOException {
+      String directory = path.substring(0, path.lastIndexOf('/'));
+      if (!directory.endsWith("-SNAPSHOT")) {
+        return path;
+      }
+      SnapshotBuild build = this.get(directory);
+      if (build.stagedVersion == null || build.stagedVersion.equals(build.uploadedVersion)) {
+        return path;
+      }
+      String fileName = path.substring(directory.length() + 1);
+      int index = fileName.indexOf("-" + build.stagedVersion);
+      if (index < 0) {
+        return path;
+      }
+      return directory
+          + "/"
+          + fileName.substring(0, index + 1)
+          + build.uploadedVersion
+          + fileName.substring(index + 1 + build.stagedVersion.length());
+    }
+
+    synchronized SnapshotBuild get(String directory) throws IOException {
+      SnapshotBuild build = builds.get(directory);
+      if (build == null) {
+        String metadataPath = directory + "/" + METADATA_FILE_NAME;
+        Path stagedMetadata = stagingDirectory.resolve(metadataPath);
+        byte[] staged =
+            Files.isRegularFile(stagedMetadata) ? Files.readAllBytes(stagedMetadata) : null;
+        build = new SnapshotBuild(staged, client.fetch(metadataPath));
+        builds.put(directory, build);
+      }
+      return build;
+    }
+  }
+
+  private static class SnapshotBuild {
+    @Nullable private final String stagedVersion;
+    @Nullable private final String uploadedVersion;
+    @Nullable private final byte[] metadata;
+
+    SnapshotBuild(@Nullable byte[] staged, @Nullable byte[] remote) throws IOException {
+      stagedVersion = MavenMetadata.snapshotVersion(staged);
+      if (staged == null || stagedVersion == null) {
+        uploadedVersion = stagedVersion;
+        metadata = staged;
+        return;
+      }
+      int buildNumber =
+          Math.max(
+              MavenMetadata.snapshotBuildNumber(staged),
+              MavenMetadata.snapshotBuildNumber(remote) + 1);
+      metadata = MavenMetadata.renumberSnapshot(staged, buildNumber);
+      uploadedVersion = MavenMetadata.snapshotVersion(metadata);
+    }
+  }
+
+  /** Opens the journal of the files already uploaded to a repository. */
+  interface JournalFactory {
+    UploadJournal open(RemoteRepository repository) throws IOException;
+  }
+
+  private static String toRepositoryPath(Path relativePath) {
+    return relativePath.toString().replace(File.separatorChar, '/');
+  }
+
+  private static boolean isMetadata(String path) {
+    return path.substring(path.lastIndexOf('/') + 1).startsWith(METADATA_FILE_NAME);
+  }
+
+  private static String rootMessage(Throwable throwable) {
+    Throwable cause = throwable;
+    while (cause.getCause() != null
+        && (cause instanceof CompletionException || cause instanceof UncheckedIOException)) {
+      cause = cause.getCause();
+    }
+    return cause.getMessage();
+  }
+}
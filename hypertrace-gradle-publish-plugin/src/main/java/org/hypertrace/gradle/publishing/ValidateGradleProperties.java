@@ -0,0 +1,69 @@
+package org.hypertrace.gradle.publishing;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.SetProperty;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Fails the build if any of the required gradle properties are missing. Property presence is
+ * captured through providers at configuration time, so the task holds no reference to the project
+ * and can be restored from the configuration cache. A property can still be given by its older,
+ * deprecated name, with a warning.
+ */
+public abstract class ValidateGradleProperties extends DefaultTask {
+
+  @Internal
+  public abstract ListProperty<String> getRequiredProperties();
+
+  @Internal
+  public abstract SetProperty<String> getPresentProperties();
+
+  /** The deprecated names of properties, each mapped to the name that replaces it. */
+  @Internal
+  public abstract MapProperty<String, String> getDeprecatedNames();
+
+  public void trackProperty(String propertyName, Provider<String> value) {
+    this.getPresentProperties()
+        .addAll(
+            value
+                .map(unused -> Collections.singleton(propertyName))
+                .orElse(Collections.emptySet()));
+  }
+
+  @TaskAction
+  public void validate() {
+    Set<String> presentProperties = new HashSet<>(this.getPresentProperties().get());
+    for (Map.Entry<String, String> names : this.getDeprecatedNames().get().entrySet()) {
+      if (presentProperties.contains(names.getKey())
+          && presentProperties.add(names.getValue())) {
+        this.getLogger()
+            .warn(
+                "The {} gradle property is deprecated, rename it to {}. Gradle reads {} itself, "
+                    + "which keeps publishing compatible with the configuration cache.",
+                names.getKey(),
+                names.getValue(),
+                names.getValue());
+      }
+    }
+    for (String propertyName : this.getRequiredProperties().get()) {
+      if (!presentProperties.contains(propertyName)) {
+        throw new GradleException(
+            "Missing expected gradle property: "
+                + propertyName
+                + ". It should be added "
+                + "in your ~/.gradle/gradle.properties file, or in a an environment variable of the form "
+                + "ORG_GRADLE_PROJECT_"
+                + propertyName);
+      }
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package org.hypertrace.gradle.publishing;
+
+import java.util.Collections;
+import java.util.List;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Fails the build if a value the publications require is missing from the build DSL. Running as
+ * its own task keeps the metadata generation tasks free of extra actions, so they stay eligible
+ * for up-to-date checks and caching.
+ */
+public abstract class ValidatePublishExtension extends DefaultTask {
+
+  /** Messages of every requirement that is not met, resolved when the task runs. */
+  @Internal
+  public abstract ListProperty<String> getViolations();
+
+  public void require(Provider<?> value, String message) {
+    this.getViolations()
+        .addAll(
+            value
+                .map(unused -> Collections.<String>emptyList())
+                .orElse(Collections.singletonList(message)));
+  }
+
+  @TaskAction
+  public void validate() {
+    List<String> violations = this.getViolations().get();
+    if (!violations.isEmpty()) {
+      throw new GradleException(String.join("\n", violations));
+    }
+  }
+}
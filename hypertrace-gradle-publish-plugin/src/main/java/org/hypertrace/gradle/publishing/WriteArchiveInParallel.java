@@ -0,0 +1,209 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.Task;
+import org.gradle.api.file.FileCopyDetails;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.tasks.bundling.Jar;
+import org.gradle.api.tasks.bundling.Zip;
+import org.gradle.api.tasks.bundling.ZipEntryCompression;
+
+/**
+ * Writes the archive of a {@link ParallelZip} or {@link ParallelJar} task, as its action. The
+ * task's own copy spec is synced into its temporary directory, so every rename, filter and file
+ * mode of the spec applies as it would to the stock archive. Each file is handed to a {@link
+ * ParallelZipWriter} as soon as the sync has written it, so files are compressed while the rest
+ * are still being copied, and the archive gets them in the order the spec visits them, with
+ * constant timestamps.
+ *
+ * <p>The files are written out first because the final name, content and mode of a file are only
+ * known once every action of the spec applied to it. Actions added from outside the spec run
+ * before the spec's own, so none can take the file's details from the spec as they end up.
+ */
+public class WriteArchiveInParallel implements Action<Task> {
+  private static final String MANIFEST_DIRECTORY = "META-INF/";
+  private static final String MANIFEST_PATH = MANIFEST_DIRECTORY + "MANIFEST.MF";
+
+  private final FileSystemOperations fileSystemOperations;
+  private final int threads;
+
+  public WriteArchiveInParallel(FileSystemOperations fileSystemOperations, int threads) {
+    this.fileSystemOperations = fileSystemOperations;
+    this.threads = threads;
+  }
+
+  @Override
+  public void execute(Task task) {
+    Zip archiveTask = (Zip) task;
+    File contents = new File(task.getTemporaryDir(), "contents");
+    File spill = new File(task.getTemporaryDir(), "spill");
+    File manifest = new File(task.getTemporaryDir(), "MANIFEST.MF");
+    // Whatever an interrupted earlier run left must not be taken for a copied file
+    fileSystemOperations.delete(spec -> spec.delete(contents, spill, manifest));
+    try {
+      Files.createDirectories(spill.toPath());
+      Path archive = archiveTask.getArchiveFile().get().getAsFile().toPath();
+      Files.createDirectories(archive.getParent());
+      this.writeArchive(
+          archiveTask,
+          new ParallelZipWriter(
+              archiveTask.getEntryCompression() == ZipEntryCompression.DEFLATED,
+              threads,
+              spill.toPath()),
+          archive,
+          sink -> this.addEntries(archiveTask, contents.toPath(), manifest, sink));
+    } catch (IOException | UncheckedIOException e) {
+      throw new GradleException("Failed to write " + archiveTask.getArchiveFileName().get(), e);
+    } finally {
+      fileSystemOperations.delete(spec -> spec.delete(contents, spill, manifest));
+    }
+  }
+
+  /** Writes the entries the source adds to the archive file. */
+  protected void writeArchive(
+      Zip archiveTask,
+      ParallelZipWriter writer,
+      Path archive,
+      ParallelZipWriter.EntrySource entries)
+      throws IOException {
+    writer.write(archive, entries);
+  }
+
+  private void addEntries(
+      Zip archiveTask, Path contents, File manifest, ParallelZipWriter.EntrySink sink)
+      throws IOException {
+    Set<String> added = new HashSet<>();
+    if (archiveTask instanceof Jar) {
+      // The manifest leads, where jar readers look for it
+      ((Jar) archiveTask).getManifest().writeTo(manifest);
+      sink.add(ParallelZipWriter.Entry.directory(MANIFEST_DIRECTORY, 0755));
+      sink.add(ParallelZipWriter.Entry.file(MANIFEST_PATH, manifest.toPath(), 0644));
+      added.add(MANIFEST_DIRECTORY);
+      added.add(MANIFEST_PATH);
+    }
+    CopiedFiles copiedFiles = new CopiedFiles(contents, sink, added);
+    fileSystemOperations.sync(
+        spec -> {
+          spec.into(contents);
+          spec.with(archiveTask);
+          spec.eachFile(copiedFiles);
+        });
+    copiedFiles.finish();
+    // Directories the spec copied no file into
+    if (!Files.isDirectory(contents)) {
+      return;
+    }
+    List<Path> directories;
+    try (Stream<Path> paths = Files.walk(contents)) {
+      directories =
+          paths
+              .filter(path -> !path.equals(contents) && Files.isDirectory(path))
+              .sorted()
+              .collect(Collectors.toList());
+    }
+    for (Path directory : directories) {
+      addDirectory(contents, directory, sink, added);
+    }
+  }
+
+  // Each directory precedes the first file in it, as in the stock archive
+  private static void addDirectory(
+      Path contents, Path directory, ParallelZipWriter.EntrySink sink, Set<String> added)
+      throws IOException {
+    if (directory.equals(contents)) {
+      return;
+    }
+    String name = entryName(contents, directory) + "/";
+    if (added.contains(name)) {
+      return;
+    }
+    addDirectory(contents, directory.getParent(), sink, added);
+    sink.add(ParallelZipWriter.Entry.directory(name, mode(directory, 0755)));
+    added.add(name);
+  }
+
+  private static String entryName(Path contents, Path path) {
+    return contents.relativize(path).toString().replace(File.separatorChar, '/');
+  }
+
+  // The sync applied the spec's file and directory modes, where the filesystem keeps them
+  private static int mode(Path path, int defaultMode) throws IOException {
+    PosixFileAttributeView view = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+    if (view == null) {
+      return defaultMode;
+    }
+    int mode = 0;
+    for (PosixFilePermission permission : view.readAttributes().permissions()) {
+      mode |= 0400 >> permission.ordinal();
+    }
+    return mode;
+  }
+
+  /**
+   * Adds each file the sync wrote to the archive. Runs first of the spec's actions for each file,
+   * when the file before it has been written, and adds that one. Its details then hold what every
+   * action of the spec made of it. A file the spec excluded, or a duplicate it skipped, was not
+   * written, and is not added.
+   */
+  private static class CopiedFiles implements Action<FileCopyDetails> {
+    private final Path contents;
+    private final ParallelZipWriter.EntrySink sink;
+    private final Set<String> added;
+    @Nullable private FileCopyDetails previous;
+    // Thrown once the sync is done, rather than through it
+    @Nullable private IOException failure;
+
+    CopiedFiles(Path contents, ParallelZipWriter.EntrySink sink, Set<String> added) {
+      this.contents = contents;
+      this.sink = sink;
+      this.added = added;
+    }
+
+    @Override
+    public void execute(FileCopyDetails details) {
+      this.addPrevious();
+      previous = details;
+    }
+
+    void finish() throws IOException {
+      this.addPrevious();
+      if (failure != null) {
+        throw failure;
+      }
+    }
+
+    private void addPrevious() {
+      FileCopyDetails details = previous;
+      previous = null;
+      if (details == null || failure != null) {
+        return;
+      }
+      String name = details.getRelativePath().getPathString();
+      Path file = contents.resolve(name);
+      if (!Files.isRegularFile(file) || added.contains(name)) {
+        return;
+      }
+      try {
+        addDirectory(contents, file.getParent(), sink, added);
+        sink.add(ParallelZipWriter.Entry.file(name, file, mode(file, 0644)));
+        added.add(name);
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+import javax.inject.Inject;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Describes a project's publications for {@link PreflightPublications}: for each, a properties
+ * file with its coordinates and the repositories it is published to, and a copy of its generated
+ * POM. It declares no outputs, so it runs every time and never hands over a stale description.
+ */
+public abstract class WritePublishPreflight extends DefaultTask {
+  static final String PROJECT_KEY = "project";
+  static final String GROUP_ID_KEY = "groupId";
+  static final String ARTIFACT_ID_KEY = "artifactId";
+  static final String VERSION_KEY = "version";
+  static final String MAVEN_CENTRAL_KEY = "mavenCentral";
+  static final String REPOSITORY_NAME_KEY = "repository.%d.name";
+  static final String REPOSITORY_URL_KEY = "repository.%d.url";
+  static final String DESCRIPTION_EXTENSION = ".properties";
+  static final String POM_EXTENSION = ".pom";
+
+  @Internal
+  public abstract Property<String> getProjectPath();
+
+  /** The POM of each publication, with the publication's coordinates. */
+  @Internal
+  public abstract ListProperty<PublishedArtifact> getPublications();
+
+  /** The repositories each publication is checked against, whose credentials are not written. */
+  @Internal
+  public abstract ListProperty<RemoteRepository> getRepositories();
+
+  /** Whether the publications must meet the requirements of Maven Central. */
+  @Internal
+  public abstract Property<Boolean> getMavenCentral();
+
+  @Internal
+  public abstract DirectoryProperty getOutputDirectory();
+
+  @Inject
+  protected abstract FileSystemOperations getFileSystemOperations();
+
+  public WritePublishPreflight() {
+    this.getMavenCentral().convention(false);
+  }
+
+  @TaskAction
+  public void describe() throws IOException {
+    File outputDirectory = this.getOutputDirectory().get().getAsFile();
+    this.getFileSystemOperations().delete(spec -> spec.delete(outputDirectory));
+    Files.createDirectories(outputDirectory.toPath());
+    List<PublishedArtifact> publications = this.getPublications().get();
+    List<RemoteRepository> repositories = this.getRepositories().get();
+    for (int i = 0; i < publications.size(); i++) {
+      PublishedArtifact pom = publications.get(i);
+      Properties description = new Properties();
+      description.setProperty(PROJECT_KEY, this.getProjectPath().get());
+      description.setProperty(GROUP_ID_KEY, pom.getGroupId());
+      description.setProperty(ARTIFACT_ID_KEY, pom.getArtifactId());
+      description.setProperty(VERSION_KEY, pom.getVersion());
+      description.setProperty(MAVEN_CENTRAL_KEY, this.getMavenCentral().get().toString());
+      for (int j = 0; j < repositories.size(); j++) {
+        RemoteRepository repository = repositories.get(j);
+        description.setProperty(String.format(REPOSITORY_NAME_KEY, j), repository.getName());
+        description.setProperty(
+            String.format(REPOSITORY_URL_KEY, j), repository.getUrl().toString());
+      }
+      Path descriptionFile = outputDirectory.toPath().resolve(i + DESCRIPTION_EXTENSION);
+      try (OutputStream outputStream = Files.newOutputStream(descriptionFile)) {
+        description.store(outputStream, null);
+      }
+      Files.copy(
+          pom.getFile().toPath(),
+          outputDirectory.toPath().resolve(i + POM_EXTENSION),
+          StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+}
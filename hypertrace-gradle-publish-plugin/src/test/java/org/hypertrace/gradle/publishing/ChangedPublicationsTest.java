@@ -0,0 +1,95 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ChangedPublicationsTest {
+  @TempDir Path projectDir;
+
+  @BeforeEach
+  public void writeBuild() throws IOException {
+    writeFile("settings.gradle", "rootProject.name = 'root'\ninclude 'core', 'api', 'other'\n");
+    writeFile("build.gradle", "");
+    writeFile(
+        "gradle.properties",
+        "maven_repo_url="
+            + projectDir.resolve("repo").toUri()
+            + "\nmaven_user=user\nmaven_password=password\npublish_parallel_uploads=2\n");
+    writeLibrary("core", "");
+    writeLibrary("api", "dependencies {\n  api project(':core')\n}\n");
+    writeLibrary("other", "");
+    writeClass("core", "Core", "");
+    writeClass("api", "Api", "");
+    writeClass("other", "Other", "");
+  }
+
+  @Test
+  public void testPublishesChangedProjectsAndTheirDependents() throws IOException {
+    assertUploaded(publish(), ":core", ":api", ":other");
+    assertUploaded(publish());
+
+    writeClass("core", "Core", "int changed;");
+    assertUploaded(publish(), ":core", ":api");
+
+    writeClass("other", "Other", "int changed;");
+    assertUploaded(publish(), ":other");
+  }
+
+  private void assertUploaded(BuildResult result, String... projects) {
+    for (String project : new String[] {":core", ":api", ":other"}) {
+      boolean uploaded = Arrays.asList(projects).contains(project);
+      Assertions.assertEquals(
+          uploaded ? TaskOutcome.SUCCESS : TaskOutcome.SKIPPED,
+          result.task(project + ":uploadStagedPublications").getOutcome(),
+          result.getOutput());
+    }
+  }
+
+  private BuildResult publish() {
+    return GradleRunner.create()
+        .withProjectDir(projectDir.toFile())
+        .withPluginClasspath()
+        .withArguments(
+            "publish",
+            "-Ppublish_changed_only=true",
+            "-Dorg.gradle.unsafe.isolated-projects=true")
+        .build();
+  }
+
+  private void writeLibrary(String name, String dependencies) throws IOException {
+    writeFile(
+        name + "/build.gradle",
+        "plugins {\n"
+            + "  id 'java-library'\n"
+            + "  id 'org.hypertrace.publish-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '1.0.0-SNAPSHOT'\n"
+            + "hypertracePublish {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "}\n"
+            + dependencies);
+  }
+
+  private void writeClass(String project, String name, String body) throws IOException {
+    writeFile(
+        project + "/src/main/java/org/hypertrace/test/" + name + ".java",
+        "package org.hypertrace.test;\n\npublic class " + name + " {" + body + "}\n");
+  }
+
+  private void writeFile(String path, String content) throws IOException {
+    Path file = projectDir.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,46 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ChecksumsTest {
+  @TempDir Path tempDir;
+
+  @Test
+  public void testStreamedFileMatchesEachDigest() throws IOException {
+    assertMatchesEachDigest(randomContent(100_000));
+  }
+
+  @Test
+  public void testMemoryMappedFileMatchesEachDigest() throws IOException {
+    // Large enough to be memory mapped, spanning two mapped windows
+    assertMatchesEachDigest(randomContent(70 * 1024 * 1024));
+  }
+
+  private void assertMatchesEachDigest(byte[] content) throws IOException {
+    File file = tempDir.resolve("artifact.jar").toFile();
+    Files.write(file.toPath(), content);
+
+    Map<String, String> checksums = Checksums.hex(file, Checksums.REPOSITORY_ALGORITHMS);
+
+    Assertions.assertEquals(Checksums.REPOSITORY_ALGORITHMS.size(), checksums.size());
+    for (String algorithm : Checksums.REPOSITORY_ALGORITHMS) {
+      Assertions.assertEquals(
+          Checksums.toHex(Checksums.newDigest(algorithm).digest(content)),
+          checksums.get(algorithm));
+    }
+  }
+
+  private static byte[] randomContent(int size) {
+    byte[] content = new byte[size];
+    new Random(size).nextBytes(content);
+    return content;
+  }
+}
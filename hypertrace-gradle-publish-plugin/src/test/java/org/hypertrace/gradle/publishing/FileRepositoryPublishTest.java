@@ -0,0 +1,79 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FileRepositoryPublishTest {
+  private static final String VERSION_DIRECTORY = "org/hypertrace/test/lib/1.0.0-SNAPSHOT";
+
+  @TempDir Path projectDir;
+
+  @Test
+  public void testLinksBuiltArtifactsIntoFileRepository() throws IOException {
+    Path repository = projectDir.resolve("repo");
+    writeFile("settings.gradle", "rootProject.name = 'root'\ninclude 'lib'\n");
+    writeFile("build.gradle", "");
+    writeFile(
+        "gradle.properties",
+        "maven_repo_url="
+            + repository.toUri()
+            + "\nmavenUsername=user\nmavenPassword=password\npublish_parallel_uploads=2\n");
+    writeFile(
+        "lib/build.gradle",
+        "plugins {\n"
+            + "  id 'java-library'\n"
+            + "  id 'org.hypertrace.publish-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '1.0.0-SNAPSHOT'\n"
+            + "hypertracePublish {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "}\n");
+    writeFile(
+        "lib/src/main/java/org/hypertrace/test/Lib.java",
+        "package org.hypertrace.test;\n\npublic class Lib {}\n");
+
+    GradleRunner.create()
+        .withProjectDir(projectDir.toFile())
+        .withPluginClasspath()
+        .withArguments("publish")
+        .build();
+
+    // Published under a timestamped snapshot version, from the jar the build wrote
+    Path published = onlyJar(repository.resolve(VERSION_DIRECTORY));
+    Path staged =
+        projectDir
+            .resolve("lib/build/hypertrace-publish/staging")
+            .resolve(VERSION_DIRECTORY)
+            .resolve(published.getFileName());
+    Assertions.assertTrue(
+        Files.isSameFile(projectDir.resolve("lib/build/libs/lib-1.0.0-SNAPSHOT.jar"), published));
+    Assertions.assertFalse(Files.isSameFile(staged, published));
+  }
+
+  private static Path onlyJar(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      List<Path> jars =
+          files
+              .filter(file -> file.getFileName().toString().endsWith(".jar"))
+              .collect(Collectors.toList());
+      Assertions.assertEquals(1, jars.size(), jars.toString());
+      return jars.get(0);
+    }
+  }
+
+  private void writeFile(String path, String content) throws IOException {
+    Path file = projectDir.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,113 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MavenMetadataTest {
+
+  @Test
+  public void testMergeKeepsRemoteVersions() throws IOException {
+    String remote = metadata("1.1.0", "<version>1.0.0</version><version>1.1.0</version>");
+    String staged = metadata("1.2.0", "<version>1.2.0</version>");
+
+    String merged =
+        new String(
+            MavenMetadata.merge(
+                remote.getBytes(StandardCharsets.UTF_8), staged.getBytes(StandardCharsets.UTF_8)),
+            StandardCharsets.UTF_8);
+
+    Assertions.assertTrue(
+        merged.contains(
+            "<versions><version>1.0.0</version><version>1.1.0</version><version>1.2.0</version></versions>"));
+    Assertions.assertTrue(merged.contains("<latest>1.2.0</latest>"));
+  }
+
+  @Test
+  public void testMergeWithoutRemoteUsesStaged() throws IOException {
+    byte[] staged = metadata("1.0.0", "<version>1.0.0</version>").getBytes(StandardCharsets.UTF_8);
+    Assertions.assertArrayEquals(staged, MavenMetadata.merge(null, staged));
+  }
+
+  @Test
+  public void testMergeSnapshotKeepsLaterRemote() throws IOException {
+    byte[] earlier = snapshotMetadata(1, "<snapshotVersion>" + jar(1) + "</snapshotVersion>");
+    byte[] later = snapshotMetadata(2, "<snapshotVersion>" + jar(2) + "</snapshotVersion>");
+
+    Assertions.assertNull(MavenMetadata.mergeSnapshot(later, earlier));
+    Assertions.assertNull(MavenMetadata.mergeSnapshot(later, later));
+    Assertions.assertArrayEquals(earlier, MavenMetadata.mergeSnapshot(null, earlier));
+  }
+
+  @Test
+  public void testMergeSnapshotKeepsRemoteFilesOfOtherKinds() throws IOException {
+    byte[] remote =
+        snapshotMetadata(
+            1,
+            "<snapshotVersion>"
+                + jar(1)
+                + "</snapshotVersion><snapshotVersion><classifier>sources</classifier>"
+                + jar(1)
+                + "</snapshotVersion>");
+    byte[] staged = snapshotMetadata(2, "<snapshotVersion>" + jar(2) + "</snapshotVersion>");
+
+    String merged =
+        new String(MavenMetadata.mergeSnapshot(remote, staged), StandardCharsets.UTF_8);
+
+    Assertions.assertTrue(merged.contains("<buildNumber>2</buildNumber>"), merged);
+    Assertions.assertTrue(
+        merged.contains(
+            "<snapshotVersions><snapshotVersion>"
+                + jar(2)
+                + "</snapshotVersion><snapshotVersion><classifier>sources</classifier>"
+                + jar(1)
+                + "</snapshotVersion></snapshotVersions>"),
+        merged);
+  }
+
+  @Test
+  public void testRenumberSnapshotRenamesItsFiles() throws IOException {
+    byte[] staged = snapshotMetadata(1, "<snapshotVersion>" + jar(1) + "</snapshotVersion>");
+
+    byte[] renumbered = MavenMetadata.renumberSnapshot(staged, 3);
+
+    Assertions.assertEquals("20210101.000000-3", MavenMetadata.snapshotVersion(renumbered));
+    Assertions.assertEquals(3, MavenMetadata.snapshotBuildNumber(renumbered));
+    Assertions.assertTrue(
+        new String(renumbered, StandardCharsets.UTF_8).contains(jar(3)),
+        new String(renumbered, StandardCharsets.UTF_8));
+    Assertions.assertEquals(0, MavenMetadata.snapshotBuildNumber(null));
+  }
+
+  private static byte[] snapshotMetadata(int buildNumber, String snapshotVersions) {
+    return ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<metadata><groupId>org.hypertrace</groupId><artifactId>lib</artifactId>"
+            + "<version>1.0.0-SNAPSHOT</version><versioning><snapshot>"
+            + "<timestamp>20210101.000000</timestamp><buildNumber>"
+            + buildNumber
+            + "</buildNumber></snapshot><lastUpdated>20210101000000</lastUpdated>"
+            + "<snapshotVersions>"
+            + snapshotVersions
+            + "</snapshotVersions></versioning></metadata>")
+        .getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String jar(int buildNumber) {
+    return "<extension>jar</extension><value>1.0.0-20210101.000000-"
+        + buildNumber
+        + "</value><updated>20210101000000</updated>";
+  }
+
+  private static String metadata(String latest, String versions) {
+    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<metadata><groupId>org.hypertrace</groupId><artifactId>lib</artifactId><versioning>"
+        + "<latest>"
+        + latest
+        + "</latest><release>"
+        + latest
+        + "</release><versions>"
+        + versions
+        + "</versions><lastUpdated>20210101000000</lastUpdated></versioning></metadata>";
+  }
+}
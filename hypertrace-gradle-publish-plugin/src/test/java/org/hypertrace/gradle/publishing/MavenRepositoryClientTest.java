@@ -0,0 +1,302 @@
+package org.hypertrace.gradle.publishing;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MavenRepositoryClientTest {
+  private static final int FILE_SIZE = 10_000;
+  private static final int CHUNK_SIZE = 4_000;
+  private static final String PATH = "org/hypertrace/test/service/1.0.0/service-1.0.0.zip";
+  private static final String METADATA_PATH = "metadata/org/hypertrace/test/maven-metadata.xml";
+
+  @TempDir Path tempDir;
+
+  private HttpServer server;
+  private final ByteArrayOutputStream stored = new ByteArrayOutputStream();
+  private final AtomicInteger chunkRequests = new AtomicInteger();
+  private final AtomicLong bytesReceived = new AtomicLong();
+  private final AtomicReference<String> metadata = new AtomicReference<>();
+  private final AtomicInteger metadataVersion = new AtomicInteger();
+  private final List<String> metadataConditions = new ArrayList<>();
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", this::handleResumablePut);
+    server.createContext("/metadata/", this::handleConditionalMetadata);
+    server.start();
+  }
+
+  @AfterEach
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testResumesLargeUploadFromAcknowledgedOffset() throws IOException {
+    byte[] content = new byte[FILE_SIZE];
+    new Random(1).nextBytes(content);
+    File file = tempDir.resolve("service-1.0.0.zip").toFile();
+    Files.write(file.toPath(), content);
+
+    List<ArtifactMetric> metrics = new ArrayList<>();
+    newClient(new RecordingListener(metrics)).put(PATH, file);
+
+    Assertions.assertArrayEquals(content, stored.toByteArray());
+    // The interrupted second chunk is resumed rather than restarting the whole file
+    Assertions.assertEquals(3, chunkRequests.get());
+    Assertions.assertTrue(bytesReceived.get() < 2L * FILE_SIZE);
+
+    Assertions.assertEquals(1, metrics.size());
+    ArtifactMetric metric = metrics.get(0);
+    Assertions.assertEquals("test", metric.getRepository());
+    Assertions.assertEquals(PATH, metric.getArtifact());
+    Assertions.assertEquals(FILE_SIZE, metric.getBytes());
+    Assertions.assertEquals(201, metric.getStatus());
+    Assertions.assertEquals(1, metric.getRetries());
+    Assertions.assertFalse(metric.isFailed());
+  }
+
+  @Test
+  public void testSmallFilesAreUploadedInOneRequest() throws IOException {
+    File file = tempDir.resolve("service-1.0.0.pom").toFile();
+    Files.write(file.toPath(), new byte[] {1, 2, 3});
+
+    newClient(PublishTelemetryListener.NONE).put(PATH, file);
+
+    Assertions.assertArrayEquals(new byte[] {1, 2, 3}, stored.toByteArray());
+    Assertions.assertEquals(1, chunkRequests.get());
+  }
+
+  @Test
+  public void testCopiesIntoFileRepository() throws IOException {
+    byte[] content = new byte[FILE_SIZE];
+    new Random(2).nextBytes(content);
+    File file = tempDir.resolve("service-1.0.0.zip").toFile();
+    Files.write(file.toPath(), content);
+    Path repository = tempDir.resolve("repository");
+
+    new MavenRepositoryClient(new RemoteRepository("local", repository.toUri(), null, null))
+        .put(PATH, file);
+
+    Assertions.assertArrayEquals(content, Files.readAllBytes(repository.resolve(PATH)));
+  }
+
+  @Test
+  public void testLinksIntoFileRepositoryAndReplacesFilesWhole() throws IOException {
+    Path staged = tempDir.resolve("service-1.0.0.zip");
+    Files.write(staged, new byte[] {1, 2, 3});
+    Path repository = tempDir.resolve("repository");
+    MavenRepositoryClient client =
+        new MavenRepositoryClient(new RemoteRepository("local", repository.toUri(), null, null));
+
+    client.put(PATH, staged.toFile());
+    client.put(PATH + ".sha1", "old".getBytes(StandardCharsets.UTF_8));
+    client.put(PATH + ".sha1", "new".getBytes(StandardCharsets.UTF_8));
+
+    Path published = repository.resolve(PATH);
+    // Same filesystem, so the staged file is linked rather than copied
+    Assertions.assertTrue(Files.isSameFile(staged, published));
+    Assertions.assertEquals(
+        "new", new String(
+            Files.readAllBytes(repository.resolve(PATH + ".sha1")), StandardCharsets.UTF_8));
+    // Republishing replaces the link, leaving the previously published file as it was
+    Path restaged = tempDir.resolve("restaged.zip");
+    Files.write(restaged, new byte[] {4});
+    client.put(PATH, restaged.toFile());
+    Assertions.assertArrayEquals(new byte[] {1, 2, 3}, Files.readAllBytes(staged));
+    Assertions.assertArrayEquals(new byte[] {4}, Files.readAllBytes(published));
+    try (Stream<Path> files = Files.list(published.getParent())) {
+      Assertions.assertEquals(
+          Arrays.asList("service-1.0.0.zip", "service-1.0.0.zip.sha1"),
+          files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  public void testConditionalUpdateMergesAgainAfterConflict() throws IOException {
+    metadata.set("1.0.0");
+    metadataVersion.set(1);
+    List<ArtifactMetric> metrics = new ArrayList<>();
+
+    byte[] written =
+        newClient(new RecordingListener(metrics))
+            .putConditionally(
+                METADATA_PATH,
+                remote -> {
+                  String merged = new String(remote, StandardCharsets.UTF_8) + ",2.0.0";
+                  // Another publisher writes between this read and the conditional write, once
+                  if (metadataVersion.get() == 1) {
+                    metadata.set("1.0.0,1.1.0");
+                    metadataVersion.set(2);
+                  }
+                  return merged.getBytes(StandardCharsets.UTF_8);
+                });
+
+    Assertions.assertEquals("1.0.0,1.1.0,2.0.0", metadata.get());
+    Assertions.assertEquals("1.0.0,1.1.0,2.0.0", new String(written, StandardCharsets.UTF_8));
+    Assertions.assertEquals(
+        Arrays.asList("If-Match \"v1\"", "If-Match \"v2\""), metadataConditions);
+    Assertions.assertEquals(1, metrics.size());
+    Assertions.assertEquals(1, metrics.get(0).getRetries());
+    Assertions.assertEquals(written.length, metrics.get(0).getBytes());
+  }
+
+  @Test
+  public void testConditionalUpdateCreatesMissingFileOnlyIfStillMissing() throws IOException {
+    newClient(PublishTelemetryListener.NONE)
+        .putConditionally(METADATA_PATH, remote -> "1.0.0".getBytes(StandardCharsets.UTF_8));
+
+    Assertions.assertEquals("1.0.0", metadata.get());
+    Assertions.assertEquals(Collections.singletonList("If-None-Match *"), metadataConditions);
+  }
+
+  @Test
+  public void testConditionalUpdateOfFileRepository() throws IOException {
+    Path repository = tempDir.resolve("repository");
+    MavenRepositoryClient client =
+        new MavenRepositoryClient(new RemoteRepository("local", repository.toUri(), null, null));
+
+    client.putConditionally(PATH, remote -> new byte[] {1});
+    client.putConditionally(PATH, remote -> new byte[] {remote[0], 2});
+    Assertions.assertNull(client.putConditionally(PATH, remote -> null));
+
+    Assertions.assertArrayEquals(new byte[] {1, 2}, Files.readAllBytes(repository.resolve(PATH)));
+  }
+
+  private MavenRepositoryClient newClient(PublishTelemetryListener telemetry) {
+    URI url = URI.create("http://localhost:" + server.getAddress().getPort() + "/");
+    return new MavenRepositoryClient(
+        new RemoteRepository("test", url, "user", "password"),
+        CHUNK_SIZE,
+        true,
+        telemetry,
+        CHUNK_SIZE,
+        1);
+  }
+
+  // Stores chunks at the offsets they claim, dropping half of the second chunk as if the
+  // connection had failed mid-request
+  private void handleResumablePut(HttpExchange exchange) throws IOException {
+    byte[] body = read(exchange.getRequestBody());
+    bytesReceived.addAndGet(body.length);
+    String contentRange = exchange.getRequestHeaders().getFirst("Content-Range");
+    if (contentRange == null) {
+      stored.write(body);
+      chunkRequests.incrementAndGet();
+      respond(exchange, 201);
+      return;
+    }
+    if (contentRange.startsWith("bytes */")) {
+      respondWithRange(exchange);
+      return;
+    }
+    int request = chunkRequests.incrementAndGet();
+    String[] range = contentRange.substring("bytes ".length()).split("[-/]");
+    long start = Long.parseLong(range[0]);
+    long total = Long.parseLong(range[2]);
+    Assertions.assertEquals(stored.size(), start);
+    if (request == 2) {
+      stored.write(body, 0, body.length / 2);
+      respond(exchange, 503);
+      return;
+    }
+    stored.write(body);
+    if (stored.size() == total) {
+      respond(exchange, 201);
+    } else {
+      respondWithRange(exchange);
+    }
+  }
+
+  // Serves the metadata with a version ETag, and only accepts writes conditional on the current one
+  private synchronized void handleConditionalMetadata(HttpExchange exchange) throws IOException {
+    String etag = "\"v" + metadataVersion.get() + "\"";
+    // The server closes connections whose request was not read, even an empty one
+    byte[] body = read(exchange.getRequestBody());
+    if ("GET".equals(exchange.getRequestMethod())) {
+      if (metadata.get() == null) {
+        respond(exchange, 404);
+        return;
+      }
+      byte[] content = metadata.get().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("ETag", etag);
+      exchange.sendResponseHeaders(200, content.length);
+      exchange.getResponseBody().write(content);
+      exchange.close();
+      return;
+    }
+    String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+    String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+    metadataConditions.add(
+        ifMatch != null ? "If-Match " + ifMatch : "If-None-Match " + ifNoneMatch);
+    boolean matches =
+        ifMatch != null ? ifMatch.equals(etag) : metadata.get() == null && "*".equals(ifNoneMatch);
+    if (!matches) {
+      respond(exchange, 412);
+      return;
+    }
+    metadata.set(new String(body, StandardCharsets.UTF_8));
+    metadataVersion.incrementAndGet();
+    respond(exchange, 201);
+  }
+
+  private void respondWithRange(HttpExchange exchange) throws IOException {
+    if (stored.size() > 0) {
+      exchange.getResponseHeaders().add("Range", "bytes=0-" + (stored.size() - 1));
+    }
+    respond(exchange, 308);
+  }
+
+  private static void respond(HttpExchange exchange, int status) throws IOException {
+    exchange.sendResponseHeaders(status, -1);
+    exchange.close();
+  }
+
+  private static class RecordingListener implements PublishTelemetryListener {
+    private final List<ArtifactMetric> metrics;
+
+    RecordingListener(List<ArtifactMetric> metrics) {
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void onArtifact(ArtifactMetric metric) {
+      metrics.add(metric);
+    }
+  }
+
+  private static byte[] read(InputStream inputStream) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = inputStream.read(buffer)) != -1) {
+      outputStream.write(buffer, 0, read);
+    }
+    return outputStream.toByteArray();
+  }
+}
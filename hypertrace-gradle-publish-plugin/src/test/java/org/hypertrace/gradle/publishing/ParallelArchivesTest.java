@@ -0,0 +1,110 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ParallelArchivesTest {
+  @TempDir Path projectDir;
+
+  @Test
+  public void testWritesTheDistributionFromTheSpecOfDistZip() throws IOException {
+    writeFile("settings.gradle", "rootProject.name = 'dist'\n");
+    writeFile(
+        "build.gradle",
+        "plugins {\n"
+            + "  id 'distribution'\n"
+            + "  id 'org.hypertrace.publish-plugin'\n"
+            + "}\n"
+            + "version = '1.0.0'\n"
+            + "hypertracePublish {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "}\n"
+            + "distributions { main { contents {\n"
+            + "  from('data') { rename('a.txt', 'renamed.txt') }\n"
+            + "  from('other') { exclude('skipped.txt') }\n"
+            + "} } }\n");
+    writeFile("data/a.txt", "a");
+    writeFile("data/nested/b.txt", "b");
+    writeFile("other/skipped.txt", "skipped");
+
+    BuildResult result =
+        run(ParallelArchives.DISTRIBUTION_TASK_NAME, "-Ppublish_parallel_archives=true");
+
+    // The distribution is published from its own task, so distZip is left as it is
+    Assertions.assertNull(result.task(":distZip"), result.getOutput());
+    Assertions.assertEquals(
+        Arrays.asList(
+            "dist-1.0.0/",
+            "dist-1.0.0/nested/",
+            "dist-1.0.0/nested/b.txt",
+            "dist-1.0.0/renamed.txt"),
+        entryNames(projectDir.resolve("build/hypertrace-publish/archives/dist-1.0.0.zip")));
+  }
+
+  @Test
+  public void testParallelJarKeepsActionsAddedToIt() throws IOException {
+    writeFile("settings.gradle", "rootProject.name = 'docs'\n");
+    writeFile(
+        "build.gradle",
+        "plugins {\n"
+            + "  id 'base'\n"
+            + "  id 'org.hypertrace.publish-plugin'\n"
+            + "}\n"
+            + "version = '1.0.0'\n"
+            + "hypertracePublish {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "}\n"
+            + "tasks.register('docsJar', org.hypertrace.gradle.publishing.ParallelJar) {\n"
+            + "  from('data')\n"
+            + "  archiveClassifier.set('docs')\n"
+            + "  destinationDirectory.set(layout.buildDirectory.dir('libs'))\n"
+            + "  doFirst { println('before docsJar') }\n"
+            + "  doLast { println('after docsJar') }\n"
+            + "}\n");
+    writeFile("data/a.txt", "a");
+
+    BuildResult result = run("docsJar");
+
+    Assertions.assertTrue(result.getOutput().contains("before docsJar"), result.getOutput());
+    Assertions.assertTrue(result.getOutput().contains("after docsJar"), result.getOutput());
+    Assertions.assertEquals(
+        Arrays.asList("META-INF/", "META-INF/MANIFEST.MF", "a.txt"),
+        entryNames(projectDir.resolve("build/libs/docs-1.0.0-docs.jar")));
+  }
+
+  private BuildResult run(String... arguments) {
+    return GradleRunner.create()
+        .withProjectDir(projectDir.toFile())
+        .withPluginClasspath()
+        .withArguments(arguments)
+        .build();
+  }
+
+  private static List<String> entryNames(Path archive) throws IOException {
+    try (ZipFile zip = new ZipFile(archive.toFile())) {
+      return Collections.list(zip.entries()).stream()
+          .map(ZipEntry::getName)
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private void writeFile(String path, String content) throws IOException {
+    Path file = projectDir.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
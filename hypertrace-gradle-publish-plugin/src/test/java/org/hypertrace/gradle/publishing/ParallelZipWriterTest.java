@@ -0,0 +1,103 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ParallelZipWriterTest {
+  @TempDir Path tempDir;
+
+  @Test
+  public void testWritesEntriesInOrderAndReproducibly() throws IOException {
+    String repeated = String.join("", Collections.nCopies(1000, "compressible "));
+    byte[] text = repeated.getBytes(StandardCharsets.UTF_8);
+    // Above the in-memory limit, so it is compressed into a temporary file
+    byte[] large = new byte[9 * 1024 * 1024];
+    new Random(1).nextBytes(large);
+    Path textFile = Files.write(tempDir.resolve("text"), text);
+    Path largeFile = Files.write(tempDir.resolve("large"), large);
+    List<ParallelZipWriter.Entry> entries =
+        Arrays.asList(
+            ParallelZipWriter.Entry.directory("bin", 0755),
+            ParallelZipWriter.Entry.file("bin/start", textFile, 0755),
+            ParallelZipWriter.Entry.file("lib/large.jar", largeFile, 0644));
+
+    Path first = tempDir.resolve("first.zip");
+    Path second = tempDir.resolve("second.zip");
+    new ParallelZipWriter(true, 4, tempDir).write(first, entries);
+    new ParallelZipWriter(true, 1, tempDir).write(second, entries);
+
+    Assertions.assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+    try (ZipFile zipFile = new ZipFile(first.toFile())) {
+      List<String> names = new ArrayList<>();
+      zipFile.stream().forEach(entry -> names.add(entry.getName()));
+      Assertions.assertEquals(Arrays.asList("bin/", "bin/start", "lib/large.jar"), names);
+      ZipEntry start = zipFile.getEntry("bin/start");
+      Assertions.assertEquals(ZipEntry.DEFLATED, start.getMethod());
+      Assertions.assertTrue(start.getCompressedSize() < text.length);
+      Assertions.assertArrayEquals(text, read(zipFile, start));
+      Assertions.assertArrayEquals(large, read(zipFile, zipFile.getEntry("lib/large.jar")));
+    }
+    // Only the archives are left behind
+    try (Stream<Path> files = Files.list(tempDir)) {
+      Assertions.assertEquals(4, files.count());
+    }
+  }
+
+  @Test
+  public void testStoresEntriesUncompressed() throws IOException {
+    byte[] content = "stored".getBytes(StandardCharsets.UTF_8);
+    Path file = Files.write(tempDir.resolve("file"), content);
+    Path archive = tempDir.resolve("stored.zip");
+
+    new ParallelZipWriter(false, 2, tempDir)
+        .write(archive, Collections.singletonList(ParallelZipWriter.Entry.file("a", file, 0644)));
+
+    try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+      ZipEntry entry = zipFile.getEntry("a");
+      Assertions.assertEquals(ZipEntry.STORED, entry.getMethod());
+      Assertions.assertArrayEquals(content, read(zipFile, entry));
+    }
+  }
+
+  @Test
+  public void testWritesZip64DirectoryForManyEntries() throws IOException {
+    List<ParallelZipWriter.Entry> entries = new ArrayList<>();
+    for (int i = 0; i < 70_000; i++) {
+      entries.add(ParallelZipWriter.Entry.directory("d" + i, 0755));
+    }
+    Path archive = tempDir.resolve("many.zip");
+
+    new ParallelZipWriter(true, 2, tempDir).write(archive, entries);
+
+    try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+      Assertions.assertEquals(70_000, zipFile.size());
+      Assertions.assertNotNull(zipFile.getEntry("d69999/"));
+    }
+  }
+
+  private static byte[] read(ZipFile zipFile, ZipEntry entry) throws IOException {
+    try (InputStream inputStream = zipFile.getInputStream(entry)) {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      for (int read; (read = inputStream.read(buffer)) != -1; ) {
+        outputStream.write(buffer, 0, read);
+      }
+      return outputStream.toByteArray();
+    }
+  }
+}
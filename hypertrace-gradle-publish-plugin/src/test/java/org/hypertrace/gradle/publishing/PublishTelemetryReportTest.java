@@ -0,0 +1,70 @@
+package org.hypertrace.gradle.publishing;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PublishTelemetryReportTest {
+
+  @Test
+  public void testRepositoryTotalsUseWallClockDuration() {
+    PublishTelemetryReport report =
+        new PublishTelemetryReport(
+            Arrays.asList(
+                upload("artifactory", "a.jar", 1000, 0, 1000, 0, null),
+                // Overlaps the first upload, so the repository took 1.5s rather than 2s
+                upload("artifactory", "b.jar", 2000, 500, 1000, 2, null),
+                upload("mavenCentral", "a.jar", 4000, 0, 2000, 0, "Unexpected status 400")),
+            Collections.singletonList(new TaskMetric(":lib:javadoc", 0, 3000, "SUCCESS")));
+
+    Map<String, PublishTelemetryReport.Summary> repositories = report.getRepositories();
+    PublishTelemetryReport.Summary artifactory = repositories.get("artifactory");
+    Assertions.assertEquals(2, artifactory.getFiles());
+    Assertions.assertEquals(3000, artifactory.getBytes());
+    Assertions.assertEquals(1500, artifactory.getDurationMillis());
+    Assertions.assertEquals(2000, artifactory.getThroughputBytesPerSecond());
+    Assertions.assertEquals(2, artifactory.getRetries());
+    Assertions.assertEquals(1, repositories.get("mavenCentral").getFailures());
+
+    Assertions.assertEquals(
+        "Hypertrace publish: uploaded 3 files (6.8 KiB) to 2 repositories in 2.0s at 3.4 KiB/s,"
+            + " 2 retries, 1 failed; 1 task, slowest :lib:javadoc (3.0s)",
+        report.toSummaryLine());
+  }
+
+  @Test
+  public void testJsonEscapesValues() {
+    PublishTelemetryReport report =
+        new PublishTelemetryReport(
+            Collections.singletonList(
+                upload("maven", "a.jar", 10, 0, 1, 0, "Unexpected \"status\"\n")),
+            Collections.emptyList());
+
+    String json = report.toJson();
+
+    Assertions.assertTrue(json.contains("\"failure\": \"Unexpected \\\"status\\\"\\u000a\""));
+    Assertions.assertTrue(json.contains("{\"name\": \"maven\", \"files\": 1, \"bytes\": 10,"));
+  }
+
+  private static ArtifactMetric upload(
+      String repository,
+      String artifact,
+      long bytes,
+      long startMillis,
+      long durationMillis,
+      int retries,
+      String failure) {
+    return new ArtifactMetric(
+        ArtifactMetric.OPERATION_UPLOAD,
+        repository,
+        artifact,
+        bytes,
+        startMillis,
+        durationMillis,
+        failure == null ? 201 : 400,
+        retries,
+        failure);
+  }
+}
@@ -0,0 +1,84 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PublishTelemetryTest {
+  @TempDir Path projectDir;
+
+  @BeforeEach
+  public void writeBuild() throws IOException {
+    writeFile("settings.gradle", "rootProject.name = 'root'\ninclude 'lib'\n");
+    writeFile("build.gradle", "");
+    writeFile(
+        "gradle.properties",
+        "maven_repo_url="
+            + projectDir.resolve("repo").toUri()
+            + "\nmavenUsername=user\nmavenPassword=password\n");
+    writeFile(
+        "lib/build.gradle",
+        "plugins {\n"
+            + "  id 'java-library'\n"
+            + "  id 'org.hypertrace.publish-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '1.0.0'\n"
+            + "hypertracePublish {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "}\n"
+            + "tasks.register('uploadArchive') {\n"
+            + "  doLast { println('uploading') }\n"
+            + "}\n");
+  }
+
+  @Test
+  public void testPublishingElsewhereWritesNoReport() {
+    run(
+        "publishToMavenLocal",
+        "uploadArchive",
+        "-Dmaven.repo.local=" + projectDir.resolve("maven-local"));
+
+    Assertions.assertFalse(Files.exists(projectDir.resolve(PublishTelemetry.REPORT_PATH)));
+  }
+
+  @Test
+  public void testTimesPublishingToThePluginsRepositories() throws IOException {
+    run("publish");
+    // The tasks mark themselves as they run, so a reused configuration still counts them
+    BuildResult result = run("publish");
+
+    Assertions.assertTrue(
+        result.getOutput().contains("Configuration cache entry reused"), result.getOutput());
+    String report =
+        new String(
+            Files.readAllBytes(projectDir.resolve(PublishTelemetry.REPORT_PATH)),
+            StandardCharsets.UTF_8);
+    Assertions.assertTrue(
+        report.contains(":lib:publishJavaLibraryPublicationToMavenRepository"), report);
+  }
+
+  private BuildResult run(String... tasks) {
+    String[] arguments = new String[tasks.length + 1];
+    System.arraycopy(tasks, 0, arguments, 0, tasks.length);
+    arguments[tasks.length] = "--configuration-cache";
+    return GradleRunner.create()
+        .withProjectDir(projectDir.toFile())
+        .withPluginClasspath()
+        .withArguments(arguments)
+        .build();
+  }
+
+  private void writeFile(String path, String content) throws IOException {
+    Path file = projectDir.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
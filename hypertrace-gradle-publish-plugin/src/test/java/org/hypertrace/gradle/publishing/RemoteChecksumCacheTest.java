@@ -0,0 +1,48 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RemoteChecksumCacheTest {
+  private static final RemoteRepository REPOSITORY =
+      new RemoteRepository("test", URI.create("https://repo.example.com/maven"), null, null);
+  private static final PublishedArtifact ARTIFACT =
+      new PublishedArtifact(
+          "org.hypertrace", "lib", "1.0.0-SNAPSHOT", null, "jar", new File("lib.jar"));
+
+  @TempDir Path cacheDir;
+
+  @Test
+  public void testEntriesArePersisted() throws IOException {
+    File cacheFile = cacheDir.resolve("checksums.properties").toFile();
+    RemoteChecksumCache cache = new RemoteChecksumCache(cacheFile, Duration.ofHours(1));
+    cache.put(REPOSITORY, ARTIFACT, "abc123");
+    cache.save();
+
+    Assertions.assertEquals(
+        "abc123", new RemoteChecksumCache(cacheFile, Duration.ofHours(1)).get(REPOSITORY, ARTIFACT));
+  }
+
+  @Test
+  public void testExpiredEntriesAreEvicted() throws IOException {
+    File cacheFile = cacheDir.resolve("checksums.properties").toFile();
+    Instant now = Instant.parse("2021-01-01T00:00:00Z");
+    RemoteChecksumCache cache =
+        new RemoteChecksumCache(cacheFile, Duration.ofHours(1), Clock.fixed(now, ZoneOffset.UTC));
+    cache.put(REPOSITORY, ARTIFACT, "abc123");
+    cache.save();
+
+    Clock later = Clock.fixed(now.plus(Duration.ofMinutes(61)), ZoneOffset.UTC);
+    Assertions.assertNull(
+        new RemoteChecksumCache(cacheFile, Duration.ofHours(1), later).get(REPOSITORY, ARTIFACT));
+  }
+}
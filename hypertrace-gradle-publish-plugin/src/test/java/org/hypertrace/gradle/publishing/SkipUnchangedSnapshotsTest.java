@@ -0,0 +1,94 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SkipUnchangedSnapshotsTest {
+  private static final String PUBLISH_TASK_PATH =
+      ":lib:publishJavaLibraryPublicationToMavenRepository";
+
+  @TempDir Path projectDir;
+
+  @Test
+  public void testSkipsUnchangedSnapshotWithReusedConfigurationCache() throws IOException {
+    try (MavenRepositoryServer server =
+        MavenRepositoryServer.start().withCredentials("user", "password")) {
+      writeLibrary(server, true);
+
+      BuildResult first = publish();
+      Assertions.assertEquals(
+          TaskOutcome.SUCCESS, first.task(PUBLISH_TASK_PATH).getOutcome(), first.getOutput());
+
+      // The credentials are read from the repository as the reused configuration runs
+      BuildResult second = publish();
+      Assertions.assertTrue(
+          second.getOutput().contains("Configuration cache entry reused"), second.getOutput());
+      Assertions.assertEquals(
+          TaskOutcome.SKIPPED, second.task(PUBLISH_TASK_PATH).getOutcome(), second.getOutput());
+    }
+  }
+
+  @Test
+  public void testAddsNothingUnlessEnabled() throws IOException {
+    try (MavenRepositoryServer server =
+        MavenRepositoryServer.start().withCredentials("user", "password")) {
+      writeLibrary(server, false);
+
+      publish();
+      BuildResult second = publish();
+      Assertions.assertEquals(
+          TaskOutcome.SUCCESS, second.task(PUBLISH_TASK_PATH).getOutcome(), second.getOutput());
+      Assertions.assertFalse(
+          second.getOutput().contains("artifacts differ from the latest published snapshot"),
+          second.getOutput());
+    }
+  }
+
+  private void writeLibrary(MavenRepositoryServer server, boolean skipUnchangedSnapshots)
+      throws IOException {
+    writeFile("settings.gradle", "rootProject.name = 'root'\ninclude 'lib'\n");
+    writeFile("build.gradle", "");
+    writeFile(
+        "gradle.properties",
+        "maven_repo_url=" + server.getUrl() + "\nmavenUsername=user\nmavenPassword=password\n");
+    writeFile(
+        "lib/build.gradle",
+        "plugins {\n"
+            + "  id 'java-library'\n"
+            + "  id 'org.hypertrace.publish-plugin'\n"
+            + "}\n"
+            + "group = 'org.hypertrace.test'\n"
+            + "version = '1.0.0-SNAPSHOT'\n"
+            + "hypertracePublish {\n"
+            + "  license.set(org.hypertrace.gradle.publishing.License.APACHE_2_0)\n"
+            + "  skipUnchangedSnapshots.set("
+            + skipUnchangedSnapshots
+            + ")\n"
+            + "}\n"
+            + "publishing.repositories.named('maven') {\n"
+            + "  allowInsecureProtocol = true\n"
+            + "}\n");
+  }
+
+  private BuildResult publish() {
+    return GradleRunner.create()
+        .withProjectDir(projectDir.toFile())
+        .withPluginClasspath()
+        .withArguments("publish", "--configuration-cache", "--info")
+        .build();
+  }
+
+  private void writeFile(String path, String content) throws IOException {
+    Path file = projectDir.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
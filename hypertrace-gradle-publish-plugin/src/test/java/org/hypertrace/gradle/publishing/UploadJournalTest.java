@@ -0,0 +1,41 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class UploadJournalTest {
+  @TempDir Path tempDir;
+
+  @Test
+  public void testResumesWithRecordedPaths() throws IOException {
+    Path file = tempDir.resolve("uploaded-maven");
+    UploadJournal journal = UploadJournal.open(file);
+    journal.record("org/example/lib/1.0.0/lib-1.0.0.jar");
+    journal.record("org/example/lib/1.0.0/lib-1.0.0.jar");
+    // A line cut short by a crash
+    Files.write(
+        file,
+        "org/example/lib/1.0.0/lib-1.0".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+
+    UploadJournal reopened = UploadJournal.open(file);
+
+    Assertions.assertTrue(reopened.contains("org/example/lib/1.0.0/lib-1.0.0.jar"));
+    Assertions.assertFalse(reopened.contains("org/example/lib/1.0.0/lib-1.0.0.pom"));
+    Assertions.assertEquals(2, Files.readAllLines(file).size());
+  }
+
+  @Test
+  public void testNoJournalRemembersNothing() throws IOException {
+    UploadJournal journal = UploadJournal.none();
+    journal.record("org/example/lib/1.0.0/lib-1.0.0.jar");
+
+    Assertions.assertFalse(journal.contains("org/example/lib/1.0.0/lib-1.0.0.jar"));
+  }
+}
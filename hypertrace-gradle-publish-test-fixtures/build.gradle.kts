@@ -0,0 +1,12 @@
+plugins {
+  `java-library`
+}
+
+java {
+  targetCompatibility = JavaVersion.VERSION_1_8
+  sourceCompatibility = JavaVersion.VERSION_1_8
+}
+
+repositories {
+  jcenter()
+}
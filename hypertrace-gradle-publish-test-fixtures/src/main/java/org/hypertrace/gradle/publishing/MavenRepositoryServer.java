@@ -0,0 +1,534 @@
+package org.hypertrace.gradle.publishing;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-memory maven repository served over HTTP on a free local port, for tests and benchmarks
+ * that publish. Files are stored with {@code PUT} and read with {@code GET} or {@code HEAD}, and
+ * requests are served concurrently, as a repository would serve parallel uploads.
+ *
+ * <p>The repository can be made to behave like a remote one: every request can be delayed, all
+ * transfers can share a bandwidth cap, and {@link RepositoryFault faults} answer matching requests
+ * with an error status, a 429 or a reset connection. It can check credentials, verify or generate
+ * checksums, refuse to redeploy releases, write conditionally on ETags and accept resumable
+ * {@code Content-Range} uploads. Every setting can be changed while the server runs, and applies
+ * to the requests that arrive after it.
+ */
+public final class MavenRepositoryServer implements AutoCloseable {
+  private static final int BUFFER_SIZE = 16 * 1024;
+  private static final int STATUS_RESUME_INCOMPLETE = 308;
+  private static final String[] CHECKSUM_EXTENSIONS = {".md5", ".sha1", ".sha256", ".sha512"};
+  private static final String[] CHECKSUM_ALGORITHMS = {"MD5", "SHA-1", "SHA-256", "SHA-512"};
+  private static final String METADATA_FILE_NAME = "maven-metadata.xml";
+
+  /** How uploaded checksum files are treated. */
+  public enum ChecksumPolicy {
+    /** Checksums are stored as uploaded. */
+    ACCEPT,
+    /** A checksum that does not match its already uploaded file is refused with 400. */
+    VERIFY,
+    /** Uploaded checksums are discarded, and the checksums of every stored file are served. */
+    GENERATE
+  }
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Map<String, StoredFile> files = new ConcurrentHashMap<>();
+  private final Map<String, ByteArrayOutputStream> partialUploads = new ConcurrentHashMap<>();
+  private final List<RepositoryFault> faults = new CopyOnWriteArrayList<>();
+  private final List<Request> requests = new CopyOnWriteArrayList<>();
+  private final Object bandwidthLock = new Object();
+  private long nextTransferNanos;
+
+  private volatile long latencyMillis;
+  private volatile long bytesPerSecond;
+  private volatile String authorization;
+  private volatile ChecksumPolicy checksumPolicy = ChecksumPolicy.ACCEPT;
+  private volatile boolean redeployment = true;
+  private volatile boolean conditionalWrites;
+  private volatile boolean resumableUploads;
+
+  private MavenRepositoryServer(HttpServer server, ExecutorService executor) {
+    this.server = server;
+    this.executor = executor;
+  }
+
+  public static MavenRepositoryServer start() throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    ExecutorService executor =
+        Executors.newCachedThreadPool(
+            runnable -> {
+              Thread thread = new Thread(runnable, "maven-repository-server");
+              thread.setDaemon(true);
+              return thread;
+            });
+    MavenRepositoryServer repositoryServer = new MavenRepositoryServer(server, executor);
+    server.createContext("/", repositoryServer::handle);
+    server.setExecutor(executor);
+    server.start();
+    return repositoryServer;
+  }
+
+  /** The URL of the repository, ending with a slash. */
+  public URI getUrl() {
+    return URI.create("http://localhost:" + server.getAddress().getPort() + "/");
+  }
+
+  /** Delays the handling of every request by the given time. */
+  public MavenRepositoryServer withLatency(long millis) {
+    this.latencyMillis = millis;
+    return this;
+  }
+
+  /** Caps the bytes per second sent and received over all connections, or 0 for no cap. */
+  public MavenRepositoryServer withBandwidth(long bytesPerSecond) {
+    this.bytesPerSecond = bytesPerSecond;
+    return this;
+  }
+
+  /** Answers 401 to requests without the given basic credentials. */
+  public MavenRepositoryServer withCredentials(String user, String password) {
+    this.authorization =
+        "Basic "
+            + Base64.getEncoder()
+                .encodeToString((user + ":" + password).getBytes(StandardCharsets.UTF_8));
+    return this;
+  }
+
+  public MavenRepositoryServer withChecksumPolicy(ChecksumPolicy checksumPolicy) {
+    this.checksumPolicy = checksumPolicy;
+    return this;
+  }
+
+  /**
+   * Whether a file of a release version may be uploaded again. Without redeployment, uploading a
+   * file that exists outside of a snapshot version is refused with 409, as release repositories
+   * do. Metadata can always be updated.
+   */
+  public MavenRepositoryServer withRedeployment(boolean redeployment) {
+    this.redeployment = redeployment;
+    return this;
+  }
+
+  /**
+   * Sends an {@code ETag} with every file, and answers 412 to a {@code PUT} whose {@code If-Match}
+   * names another version, or whose {@code If-None-Match: *} finds the file already there.
+   */
+  public MavenRepositoryServer withConditionalWrites(boolean conditionalWrites) {
+    this.conditionalWrites = conditionalWrites;
+    return this;
+  }
+
+  /**
+   * Accepts uploads in {@code Content-Range} chunks, answering 308 with the stored {@code Range}
+   * until the file is complete. Otherwise the range is ignored and each chunk replaces the file.
+   */
+  public MavenRepositoryServer withResumableUploads(boolean resumableUploads) {
+    this.resumableUploads = resumableUploads;
+    return this;
+  }
+
+  public MavenRepositoryServer inject(RepositoryFault fault) {
+    faults.add(fault);
+    return this;
+  }
+
+  /** Removes every file, fault and recorded request, leaving the other settings as they are. */
+  public void clear() {
+    files.clear();
+    partialUploads.clear();
+    faults.clear();
+    requests.clear();
+  }
+
+  /** The content of a stored file, or null if there is none. */
+  public byte[] getContent(String path) {
+    StoredFile file = files.get(path);
+    return file == null ? null : file.content;
+  }
+
+  /** The paths of every stored file, in order. */
+  public Set<String> getPaths() {
+    return new TreeSet<>(files.keySet());
+  }
+
+  /** Every request handled so far, in the order they were answered. */
+  public List<Request> getRequests() {
+    return Collections.unmodifiableList(new ArrayList<>(requests));
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    long startNanos = System.nanoTime();
+    String method = exchange.getRequestMethod();
+    String path = exchange.getRequestURI().getPath().replaceFirst("^/+", "");
+    Response response;
+    try {
+      sleep(latencyMillis);
+      response = this.respond(exchange, method, path);
+    } catch (IOException e) {
+      response = new Response(0, 0);
+    }
+    requests.add(
+        new Request(method, path, response.status, response.bytes, startNanos, System.nanoTime()));
+    exchange.close();
+  }
+
+  private Response respond(HttpExchange exchange, String method, String path) throws IOException {
+    String expectedAuthorization = authorization;
+    if (expectedAuthorization != null
+        && !expectedAuthorization.equals(
+            exchange.getRequestHeaders().getFirst("Authorization"))) {
+      long bytes = this.discard(exchange.getRequestBody());
+      exchange.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"repository\"");
+      return this.send(exchange, 401, null, bytes);
+    }
+    for (RepositoryFault fault : faults) {
+      if (fault.claim(method, path)) {
+        return this.fail(exchange, fault);
+      }
+    }
+    switch (method) {
+      case "GET":
+      case "HEAD":
+        return this.get(exchange, path, method.equals("HEAD"));
+      case "PUT":
+        return this.put(exchange, path);
+      default:
+        return this.send(exchange, 405, null, this.discard(exchange.getRequestBody()));
+    }
+  }
+
+  private Response fail(HttpExchange exchange, RepositoryFault fault) throws IOException {
+    if (fault.getStatus() == RepositoryFault.CONNECTION_RESET) {
+      // Closing with unread request data makes the connection reset rather than end cleanly
+      byte[] buffer = new byte[BUFFER_SIZE];
+      long bytes = Math.max(0, exchange.getRequestBody().read(buffer));
+      exchange.close();
+      return new Response(0, bytes);
+    }
+    long bytes = this.discard(exchange.getRequestBody());
+    if (fault.getRetryAfterSeconds() > 0) {
+      exchange
+          .getResponseHeaders()
+          .set("Retry-After", Integer.toString(fault.getRetryAfterSeconds()));
+    }
+    return this.send(exchange, fault.getStatus(), null, bytes);
+  }
+
+  private Response get(HttpExchange exchange, String path, boolean headOnly) throws IOException {
+    byte[] content;
+    StoredFile file = files.get(path);
+    if (checksumPolicy == ChecksumPolicy.GENERATE && checksumIndex(path) >= 0) {
+      content = this.generateChecksum(path);
+    } else {
+      content = file == null ? null : file.content;
+    }
+    if (content == null) {
+      return this.send(exchange, 404, "Not found".getBytes(StandardCharsets.UTF_8), 0);
+    }
+    if (conditionalWrites && file != null) {
+      exchange.getResponseHeaders().set("ETag", file.etag());
+    }
+    if (headOnly) {
+      exchange.getResponseHeaders().set("Content-Length", Integer.toString(content.length));
+      exchange.sendResponseHeaders(200, -1);
+      return new Response(200, 0);
+    }
+    return this.send(exchange, 200, content, 0);
+  }
+
+  private Response put(HttpExchange exchange, String path) throws IOException {
+    String contentRange = exchange.getRequestHeaders().getFirst("Content-Range");
+    if (resumableUploads && contentRange != null) {
+      return this.putChunk(exchange, path, contentRange);
+    }
+    byte[] content = this.receive(exchange.getRequestBody());
+    StoredFile existing = files.get(path);
+    int refused = this.checkPreconditions(exchange, path, existing);
+    if (refused != 0) {
+      return this.send(exchange, refused, null, content.length);
+    }
+    int checksumIndex = checksumIndex(path);
+    if (checksumIndex >= 0 && checksumPolicy != ChecksumPolicy.ACCEPT) {
+      if (checksumPolicy == ChecksumPolicy.GENERATE) {
+        return this.send(exchange, 201, null, content.length);
+      }
+      StoredFile target = files.get(path.substring(0, path.length() - extensionLength(path)));
+      String uploaded = new String(content, StandardCharsets.UTF_8).trim();
+      if (target != null
+          && !uploaded.equalsIgnoreCase(hex(target.content, CHECKSUM_ALGORITHMS[checksumIndex]))) {
+        return this.send(exchange, 400, null, content.length);
+      }
+    }
+    this.store(path, content, existing);
+    return this.send(exchange, existing == null ? 201 : 200, null, content.length);
+  }
+
+  // Returns the status refusing the upload, or 0 if it may go ahead
+  private int checkPreconditions(HttpExchange exchange, String path, StoredFile existing) {
+    if (conditionalWrites) {
+      String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+      String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+      if (ifMatch != null && (existing == null || !existing.etag().equals(ifMatch))) {
+        return 412;
+      }
+      if ("*".equals(ifNoneMatch) && existing != null) {
+        return 412;
+      }
+    }
+    if (!redeployment
+        && existing != null
+        && !path.contains("-SNAPSHOT/")
+        && !fileName(path).startsWith(METADATA_FILE_NAME)) {
+      return 409;
+    }
+    return 0;
+  }
+
+  private Response putChunk(HttpExchange exchange, String path, String contentRange)
+      throws IOException {
+    // "bytes <first>-<last>/<length>", or "bytes */<length>" to ask for the stored range
+    String range = contentRange.replaceFirst("^bytes\\s+", "");
+    long length = Long.parseLong(range.substring(range.indexOf('/') + 1).trim());
+    byte[] chunk = this.receive(exchange.getRequestBody());
+    synchronized (partialUploads) {
+      ByteArrayOutputStream partial =
+          partialUploads.computeIfAbsent(path, unused -> new ByteArrayOutputStream());
+      if (!range.startsWith("*")) {
+        long first = Long.parseLong(range.substring(0, range.indexOf('-')).trim());
+        // A chunk that does not continue the stored bytes is dropped, and the range resent
+        if (first == partial.size()) {
+          partial.write(chunk);
+        }
+      }
+      if (partial.size() >= length) {
+        partialUploads.remove(path);
+        StoredFile existing = files.get(path);
+        this.store(path, partial.toByteArray(), existing);
+        return this.send(exchange, existing == null ? 201 : 200, null, chunk.length);
+      }
+      if (partial.size() > 0) {
+        exchange.getResponseHeaders().set("Range", "bytes=0-" + (partial.size() - 1));
+      }
+      return this.send(exchange, STATUS_RESUME_INCOMPLETE, null, chunk.length);
+    }
+  }
+
+  private void store(String path, byte[] content, StoredFile existing) {
+    files.put(path, new StoredFile(content, existing == null ? 1 : existing.version + 1));
+  }
+
+  private byte[] generateChecksum(String path) {
+    StoredFile target = files.get(path.substring(0, path.length() - extensionLength(path)));
+    if (target == null) {
+      return null;
+    }
+    return hex(target.content, CHECKSUM_ALGORITHMS[checksumIndex(path)])
+        .getBytes(StandardCharsets.UTF_8);
+  }
+
+  private Response send(HttpExchange exchange, int status, byte[] content, long bytesReceived)
+      throws IOException {
+    if (content == null) {
+      exchange.sendResponseHeaders(status, -1);
+      return new Response(status, bytesReceived);
+    }
+    exchange.sendResponseHeaders(status, content.length);
+    try (OutputStream outputStream = exchange.getResponseBody()) {
+      for (int offset = 0; offset < content.length; offset += BUFFER_SIZE) {
+        int count = Math.min(BUFFER_SIZE, content.length - offset);
+        this.throttle(count);
+        outputStream.write(content, offset, count);
+      }
+    }
+    return new Response(status, bytesReceived);
+  }
+
+  private byte[] receive(InputStream inputStream) throws IOException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int read;
+    while ((read = inputStream.read(buffer)) != -1) {
+      this.throttle(read);
+      content.write(buffer, 0, read);
+    }
+    return content.toByteArray();
+  }
+
+  private long discard(InputStream inputStream) throws IOException {
+    return this.receive(inputStream).length;
+  }
+
+  // Waits until the shared bandwidth allows the given number of bytes through
+  private void throttle(int bytes) throws InterruptedIOException {
+    long rate = bytesPerSecond;
+    if (rate <= 0) {
+      return;
+    }
+    long waitNanos;
+    synchronized (bandwidthLock) {
+      long now = System.nanoTime();
+      long start = Math.max(now, nextTransferNanos);
+      nextTransferNanos = start + TimeUnit.SECONDS.toNanos(bytes) / rate;
+      waitNanos = start - now;
+    }
+    sleep(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+  }
+
+  private static void sleep(long millis) throws InterruptedIOException {
+    if (millis <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while delaying a request");
+    }
+  }
+
+  private static int checksumIndex(String path) {
+    for (int i = 0; i < CHECKSUM_EXTENSIONS.length; i++) {
+      if (path.endsWith(CHECKSUM_EXTENSIONS[i])) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int extensionLength(String path) {
+    return CHECKSUM_EXTENSIONS[checksumIndex(path)].length();
+  }
+
+  private static String fileName(String path) {
+    return path.substring(path.lastIndexOf('/') + 1);
+  }
+
+  private static String hex(byte[] content, String algorithm) {
+    try {
+      StringBuilder hex = new StringBuilder();
+      for (byte b : MessageDigest.getInstance(algorithm).digest(content)) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** A request the server answered. */
+  public static final class Request {
+    private final String method;
+    private final String path;
+    private final int status;
+    private final long bytesReceived;
+    private final long startNanos;
+    private final long endNanos;
+
+    Request(
+        String method,
+        String path,
+        int status,
+        long bytesReceived,
+        long startNanos,
+        long endNanos) {
+      this.method = method;
+      this.path = path;
+      this.status = status;
+      this.bytesReceived = bytesReceived;
+      this.startNanos = startNanos;
+      this.endNanos = endNanos;
+    }
+
+    public String getMethod() {
+      return method;
+    }
+
+    /** The repository path, without a leading slash. */
+    public String getPath() {
+      return path;
+    }
+
+    /** The status answered, or 0 if the connection was reset or failed instead. */
+    public int getStatus() {
+      return status;
+    }
+
+    public boolean isSuccessful() {
+      return status >= 200 && status < 300;
+    }
+
+    /** The bytes of request body the server read. */
+    public long getBytesReceived() {
+      return bytesReceived;
+    }
+
+    /** When the request arrived, in {@link System#nanoTime()} terms. */
+    public long getStartNanos() {
+      return startNanos;
+    }
+
+    /** When the request was answered, in {@link System#nanoTime()} terms. */
+    public long getEndNanos() {
+      return endNanos;
+    }
+
+    @Override
+    public String toString() {
+      return method + " " + path + " " + status;
+    }
+  }
+
+  private static class StoredFile {
+    private final byte[] content;
+    private final int version;
+
+    StoredFile(byte[] content, int version) {
+      this.content = content;
+      this.version = version;
+    }
+
+    String etag() {
+      return "\"v" + version + "\"";
+    }
+  }
+
+  private static class Response {
+    private final int status;
+    private final long bytes;
+
+    Response(int status, long bytes) {
+      this.status = status;
+      this.bytes = bytes;
+    }
+  }
+}
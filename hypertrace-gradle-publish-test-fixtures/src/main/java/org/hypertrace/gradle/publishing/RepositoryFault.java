@@ -0,0 +1,95 @@
+package org.hypertrace.gradle.publishing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * A failure a {@link MavenRepositoryServer} answers matching requests with, in place of handling
+ * them, for a number of times. By default a fault applies once, to any {@code PUT}.
+ */
+public final class RepositoryFault {
+  static final int CONNECTION_RESET = -1;
+
+  private final int status;
+  private final int retryAfterSeconds;
+  private final String method;
+  private final Pattern paths;
+  private final AtomicInteger remaining;
+
+  private RepositoryFault(
+      int status,
+      int retryAfterSeconds,
+      String method,
+      Pattern paths,
+      int times) {
+    this.status = status;
+    this.retryAfterSeconds = retryAfterSeconds;
+    this.method = method;
+    this.paths = paths;
+    this.remaining = new AtomicInteger(times);
+  }
+
+  /** Answers with the given status, such as 500 or 503. */
+  public static RepositoryFault status(int status) {
+    return new RepositoryFault(status, 0, "PUT", Pattern.compile(".*"), 1);
+  }
+
+  /** Answers 429 Too Many Requests with a {@code Retry-After} header. */
+  public static RepositoryFault tooManyRequests(int retryAfterSeconds) {
+    return new RepositoryFault(429, retryAfterSeconds, "PUT", Pattern.compile(".*"), 1);
+  }
+
+  /**
+   * Reads part of the request body and closes the connection without answering, so the client
+   * sees its connection reset while it is still sending.
+   */
+  public static RepositoryFault connectionReset() {
+    return new RepositoryFault(CONNECTION_RESET, 0, "PUT", Pattern.compile(".*"), 1);
+  }
+
+  /** Applies to requests with the given method only. */
+  public RepositoryFault forMethod(String method) {
+    return new RepositoryFault(status, retryAfterSeconds, method, paths, remaining.get());
+  }
+
+  /** Applies to requests for a repository path matching the regular expression only. */
+  public RepositoryFault forPaths(String regex) {
+    return new RepositoryFault(
+        status, retryAfterSeconds, method, Pattern.compile(regex), remaining.get());
+  }
+
+  /** Applies to the given number of matching requests. */
+  public RepositoryFault times(int times) {
+    return new RepositoryFault(status, retryAfterSeconds, method, paths, times);
+  }
+
+  /** Applies to every matching request. */
+  public RepositoryFault always() {
+    return this.times(Integer.MAX_VALUE);
+  }
+
+  int getStatus() {
+    return status;
+  }
+
+  // Zero when the fault sends no Retry-After header
+  int getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+
+  // Claims one application of the fault if it matches the request and has any left
+  boolean claim(String requestMethod, String path) {
+    if (!method.equals(requestMethod) || !paths.matcher(path).matches()) {
+      return false;
+    }
+    while (true) {
+      int left = remaining.get();
+      if (left <= 0) {
+        return false;
+      }
+      if (left == Integer.MAX_VALUE || remaining.compareAndSet(left, left - 1)) {
+        return true;
+      }
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package org.hypertrace.gradle.publishing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A throwaway armored PGP secret key, for builds that sign their publications through the
+ * {@code signingKey} and {@code signingPassword} gradle properties. It signs nothing outside of
+ * tests.
+ */
+public final class TestSigningKey {
+  public static final String KEY_ID = "73596A7C";
+  public static final String PASSWORD = "password";
+  private static final String RESOURCE = "test-signing-key.asc";
+
+  private TestSigningKey() {}
+
+  public static String armoredKey() {
+    try (InputStream inputStream = TestSigningKey.class.getResourceAsStream(RESOURCE)) {
+      if (inputStream == null) {
+        throw new IllegalStateException("Missing resource " + RESOURCE);
+      }
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = inputStream.read(buffer)) != -1) {
+        content.write(buffer, 0, read);
+      }
+      return new String(content.toByteArray(), StandardCharsets.US_ASCII);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -15,4 +15,6 @@ plugins {
 rootProject.name = "hypertrace-gradle-publish-plugin"
 
 include(":hypertrace-gradle-publish-plugin")
-include(":hypertrace-gradle-publish-maven-central-plugin")
\ No newline at end of file
+include(":hypertrace-gradle-publish-maven-central-plugin")
+include(":hypertrace-gradle-publish-benchmark")
+include(":hypertrace-gradle-publish-test-fixtures")
\ No newline at end of file